@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.content.Context;
+import android.widget.FrameLayout;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures binding the rows of {@link NewsAdapter} on a device, for lists built from the
+ * recorded Guardian response repeated to 10, 50, 200 and 1000 articles. Each measured run binds
+ * every article into one recycled holder, as scrolling through the whole list would.
+ * Run with ./gradlew connectedAndroidTest; figures from a debuggable build are only indicative.
+ */
+@RunWith(Parameterized.class)
+public class NewsAdapterBindBenchmark {
+
+    /** Recorded page of 20 results, shared with the local unit tests */
+    private static final String RECORDED_PAGE = "guardian_search_brexit.json";
+
+    @Parameterized.Parameters(name = "{0} articles")
+    public static List<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{10}, {50}, {200}, {1000}});
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mArticleCount;
+    private List<News> mArticles;
+    private List<NewsListItem> mItems;
+    private FrameLayout mParent;
+    private NewsAdapter mAdapter;
+
+    public NewsAdapterBindBenchmark(int articleCount) {
+        mArticleCount = articleCount;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        List<News> recorded;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(RECORDED_PAGE)) {
+            recorded = NewsJsonParser.parse(in);
+        }
+        mArticles = new ArrayList<>(mArticleCount);
+        for (int i = 0; i < mArticleCount; i++) {
+            News news = recorded.get(i % recorded.size());
+            mArticles.add(new News(news.getSectionName(), news.getTitle(), news.getPublicationDate(),
+                    news.getAuthor(), news.getUrl() + "-" + i));
+        }
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mParent = new FrameLayout(context);
+        NewsRowFormatter rowFormatter = NewsQueries.buildRowFormatter(context);
+        // As the fetch threads do before the articles reach the list
+        rowFormatter.prepare(mArticles, System.currentTimeMillis());
+        mItems = NewsListItem.of(mArticles);
+        mAdapter = new NewsAdapter(news -> { }, rowFormatter);
+    }
+
+    @UiThreadTest
+    @Test
+    public void bindEveryRow() {
+        NewsAdapter.NewsViewHolder holder = mAdapter.onCreateViewHolder(mParent, 0);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (NewsListItem item : mItems) {
+                holder.bind(item);
+            }
+        }
+    }
+
+    @UiThreadTest
+    @Test
+    public void createAndBindVisibleRows() {
+        // About a screenful of rows is inflated when the list first shows
+        int visible = Math.min(mArticleCount, 12);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (int i = 0; i < visible; i++) {
+                mAdapter.onCreateViewHolder(mParent, 0).bind(mItems.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.app.Instrumentation;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts how many rows {@link NewsAdapter} binds when a refreshed list is submitted to a
+ * RecyclerView tall enough to show every row.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NewsAdapterBindTest {
+
+    private Instrumentation mInstrumentation;
+    private RecyclerView mRecyclerView;
+    private CountingAdapter mAdapter;
+
+    /** Counts the calls to onBindViewHolder */
+    private static final class CountingAdapter extends NewsAdapter {
+        int mBinds;
+
+        CountingAdapter(NewsRowFormatter rowFormatter) {
+            super(news -> { }, rowFormatter);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull NewsViewHolder holder, int position) {
+            mBinds++;
+            super.onBindViewHolder(holder, position);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mInstrumentation.runOnMainSync(() -> {
+            mRecyclerView = new RecyclerView(mInstrumentation.getTargetContext());
+            mRecyclerView.setLayoutManager(new LinearLayoutManager(mInstrumentation.getTargetContext()));
+            // Change animations bind a second holder; count the adapter's work, not the animator's
+            mRecyclerView.setItemAnimator(null);
+            mRecyclerView.setLayoutParams(new FrameLayout.LayoutParams(1080, 100_000));
+            mAdapter = new CountingAdapter(
+                    NewsQueries.buildRowFormatter(mInstrumentation.getTargetContext()));
+            mRecyclerView.setAdapter(mAdapter);
+        });
+    }
+
+    private static News news(String url, String title) {
+        return new News("Politics", title, "2021-03-28T10:00:00Z", "Author", url);
+    }
+
+    private static List<News> articles(int count) {
+        List<News> articles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            articles.add(news("https://www.theguardian.com/" + i, "Title " + i));
+        }
+        return articles;
+    }
+
+    /** Submit the list, wait for the background diff to be applied, then lay the rows out. */
+    private int submitAndCountBinds(List<News> articles) throws InterruptedException {
+        final CountDownLatch committed = new CountDownLatch(1);
+        mInstrumentation.runOnMainSync(() -> {
+            mAdapter.mBinds = 0;
+            mAdapter.submitList(NewsListItem.of(articles), committed::countDown);
+        });
+        assertTrue(committed.await(5, TimeUnit.SECONDS));
+        final int[] binds = new int[1];
+        mInstrumentation.runOnMainSync(() -> {
+            mRecyclerView.measure(
+                    View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(100_000, View.MeasureSpec.EXACTLY));
+            mRecyclerView.layout(0, 0, 1080, 100_000);
+            binds[0] = mAdapter.mBinds;
+        });
+        return binds[0];
+    }
+
+    @Test
+    public void firstList_bindsEveryRow() throws InterruptedException {
+        assertEquals(20, submitAndCountBinds(articles(20)));
+    }
+
+    @Test
+    public void refresh_onlyBindsInsertedAndChangedRows() throws InterruptedException {
+        submitAndCountBinds(articles(20));
+
+        List<News> refreshed = articles(20);
+        refreshed.add(0, news("https://www.theguardian.com/new", "Breaking"));
+        refreshed.set(5, news(refreshed.get(5).getUrl(), "Updated headline"));
+
+        assertEquals(2, submitAndCountBinds(refreshed));
+    }
+
+    @Test
+    public void sameArticles_bindNothing() throws InterruptedException {
+        submitAndCountBinds(articles(20));
+
+        // Equal articles in new objects, as a refresh that found nothing new would deliver
+        assertEquals(0, submitAndCountBinds(articles(20)));
+    }
+}
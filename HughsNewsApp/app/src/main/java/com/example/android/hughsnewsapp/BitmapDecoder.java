@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * Decodes the thumbnails for {@link NewsImageLoader}, sampled down to the height of the row and
+ * in 16 bit colour, which is plenty for a photo that small. Each is decoded into a bitmap from
+ * the {@link BitmapPool} when one is big enough, and handed back to the pool once no longer used.
+ */
+public class BitmapDecoder implements NewsImageLoader.Decoder<Bitmap> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BitmapDecoder.class.getSimpleName();
+
+    private static final Bitmap.Config CONFIG = Bitmap.Config.RGB_565;
+
+    /** Bytes per pixel of {@link #CONFIG} */
+    private static final int BYTES_PER_PIXEL = 2;
+
+    private final BitmapPool mPool;
+
+    public BitmapDecoder(BitmapPool pool) {
+        mPool = pool;
+    }
+
+    @Override
+    public Bitmap decode(byte[] data, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(LOG_TAG, "Not an image");
+            return null;
+        }
+
+        int sampleSize = NewsImageLoader.sampleSize(options.outHeight, targetHeight);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = CONFIG;
+        options.inMutable = true;
+        options.inBitmap = mPool.get(width * height * BYTES_PER_PIXEL, CONFIG);
+        try {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (bitmap == null && options.inBitmap != null) {
+                mPool.put(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap didn't fit after all; decode into a new one
+            mPool.put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    @Override
+    public int sizeOf(Bitmap image) {
+        return image.getAllocationByteCount();
+    }
+
+    @Override
+    public void recycle(Bitmap image) {
+        mPool.put(image);
+    }
+}
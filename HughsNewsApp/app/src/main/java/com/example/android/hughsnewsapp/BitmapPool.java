@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps bitmaps that are no longer shown so their memory can be decoded into again, instead of
+ * being garbage collected while the list scrolls. A bitmap is reused for an image that needs no
+ * more bytes than it has allocated, and the pool drops the oldest bitmaps once it holds more
+ * than its maximum size. Thread safe.
+ */
+public class BitmapPool {
+
+    /** Bitmaps available, oldest first */
+    private final List<Bitmap> mBitmaps = new ArrayList<>();
+
+    private final long mMaxBytes;
+
+    private long mBytes;
+
+    /**
+     * Constructor
+     * @param maxBytes maximum size of the bitmaps kept
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Remove and return the smallest bitmap of the given config holding at least the given number
+     * of bytes, or null if there is none.
+     */
+    public synchronized Bitmap get(int bytes, Bitmap.Config config) {
+        int best = -1;
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            Bitmap bitmap = mBitmaps.get(i);
+            int size = bitmap.getAllocationByteCount();
+            if (bitmap.getConfig() == config && size >= bytes
+                    && (best == -1 || size < mBitmaps.get(best).getAllocationByteCount())) {
+                best = i;
+            }
+        }
+        if (best == -1) {
+            return null;
+        }
+        Bitmap bitmap = mBitmaps.remove(best);
+        mBytes -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /** Keep the bitmap for reuse. It must no longer be shown anywhere. */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getAllocationByteCount() > mMaxBytes) {
+            // Can't be decoded into again
+            bitmap.recycle();
+            return;
+        }
+        mBitmaps.add(bitmap);
+        mBytes += bitmap.getAllocationByteCount();
+        while (mBytes > mMaxBytes) {
+            Bitmap eldest = mBitmaps.remove(0);
+            mBytes -= eldest.getAllocationByteCount();
+            eldest.recycle();
+        }
+    }
+
+    /** Drop every bitmap. */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+}
@@ -1,7 +0,0 @@
-package com.example.android.hughsnewsapp;
-
-public class Constants {
-    final static int HTTP_SUCCESS_CODE = 200;
-    final static int HTTP_SET_READ_TIME = 10000;
-    final static int HTTP_SET_CONNECT_TIMEOUT = 15000;
-}
@@ -15,137 +15,465 @@
  * limitations under the License.
  */
 package com.example.android.hughsnewsapp;
-import android.app.LoaderManager;
 import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.util.Log;
 import android.view.View;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
-public class NewsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<News>> {
+import static com.example.android.hughsnewsapp.Constants.BROWSER_LIKELY_ROWS;
+import static com.example.android.hughsnewsapp.Constants.PREFETCH_DISTANCE;
+import static com.example.android.hughsnewsapp.Constants.RELATIVE_TIME_REFRESH_INTERVAL;
 
-    /** URL for Brexit news data from the Guardian news site  dataset */
-    private static final String GUARDIAN_REQUEST_URL ="https://content.guardianapis.com/search?";
+public class NewsActivity extends AppCompatActivity {
 
-    /** Constant value for the earthquake loader ID. */
-    private static final int NEWS_LOADER_ID = 1;
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsActivity.class.getSimpleName();
+
+    /** Time in milliseconds between refreshes of the performance overlay */
+    private static final long PERF_OVERLAY_REFRESH = 1000;
 
     /** Adapter for the list of news articles */
     private NewsAdapter mAdapter;
 
+    /** The list of news articles */
+    private RecyclerView mNewsListView;
+
+    /** Fetches what was published since the newest article when the list is pulled down */
+    private SwipeRefreshLayout mSwipeRefresh;
+
+    /** Lays out the list, and tells which rows are on screen */
+    private LinearLayoutManager mLayoutManager;
+
+    /** Opens the articles whose text is not stored, kept warm while the list is shown */
+    private NewsBrowser mBrowser;
+
+    /** Holds the text of the articles fetched ahead, shown without the network */
+    private NewsReader mReader;
+
     /** TextView that is displayed when the list is empty */
     private TextView mEmptyStateTextView;
 
+    /** Holds the loaded articles across configuration changes and fetches new ones */
+    private NewsViewModel mViewModel;
+
+    /** Shows the stage latencies and counters in debug builds */
+    private TextView mPerfOverlay;
+
+    /** Refreshes the performance overlay for as long as it is shown */
+    private final Runnable mRefreshPerfOverlay = new Runnable() {
+        @Override
+        public void run() {
+            mPerfOverlay.setText(NewsTrace.summary());
+            mPerfOverlay.postDelayed(this, PERF_OVERLAY_REFRESH);
+        }
+    };
+
+    /** Brings the relative publication times up to date, in one batch a minute, while started */
+    private final Runnable mRefreshRelativeTimes = new Runnable() {
+        @Override
+        public void run() {
+            mViewModel.refreshRelativeTimes(() -> mAdapter.refreshRelativeTimes());
+            mNewsListView.postDelayed(this, RELATIVE_TIME_REFRESH_INTERVAL);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstance){
+        // Spans are only recorded in debug builds; the time to first article always is
+        if (BuildConfig.DEBUG) {
+            NewsTrace.setEnabled(true);
+        }
+        if (savedInstance == null) {
+            NewsTrace.markLaunch();
+        }
+        long start = NewsTrace.begin(NewsTrace.Stage.CREATE);
         super.onCreate(savedInstance);
         setContentView(R.layout.news_activity);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView newsListView = findViewById(R.id.news_list);
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView newsListView = findViewById(R.id.news_list);
+        mNewsListView = newsListView;
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        mLayoutManager = layoutManager;
+        newsListView.setLayoutManager(layoutManager);
+        // Every row has the same fixed height, so adapter changes never resize the list itself
+        newsListView.setHasFixedSize(true);
+
+        // Pulling the list down only fetches what is newer than the newest article held
+        mSwipeRefresh = findViewById(R.id.swipe_refresh);
+        mSwipeRefresh.setOnRefreshListener(() ->
+                mViewModel.refresh(NewsQueries.buildRequestUrls(this)));
 
         // View when no data is available
         mEmptyStateTextView = findViewById(R.id.empty_view);
-        newsListView.setEmptyView(mEmptyStateTextView);
+        mPerfOverlay = findViewById(R.id.perf_overlay);
+
+        // The view model survives configuration changes, so articles already loaded are reused
+        mViewModel = new ViewModelProvider(this).get(NewsViewModel.class);
 
-        // Create a new adapter that takes an empty list of news articles as input
-        mAdapter = new NewsAdapter(this, new ArrayList<>());
+        mBrowser = new NewsBrowser(this);
+        mReader = NewsStorage.getReader(this);
 
-        // Set the adapter on the {@link ListView} so the list can be populated in the user interface
+        // Create a new adapter that opens the clicked news article, from storage if its text was
+        // fetched ahead and in the browser if not, and shows each article's thumbnail.
+        mAdapter = new NewsAdapter(this::openArticle, mViewModel.getRowFormatter(),
+                NewsStorage.getImageLoader(this),
+                getResources().getDimensionPixelSize(R.dimen.news_thumbnail_height));
+        // Show or hide the near duplicates grouped under a row
+        mAdapter.setOnSimilarClickListener(news -> {
+            mViewModel.toggleSimilar(news);
+            List<News> results = mViewModel.getSearchResults().getValue();
+            if (results != null) {
+                showSearchResults(results);
+            } else {
+                List<News> articles = mViewModel.getArticles().getValue();
+                if (articles != null) {
+                    showArticles(articles);
+                }
+            }
+        });
+
+        // Set the adapter on the {@link RecyclerView} so the list can be populated in the user interface
         newsListView.setAdapter(mAdapter);
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected news article.
-        newsListView.setOnItemClickListener((adapterView, view, position, l) -> {
-            // Find the current news article that was clicked on
-            News currentNews = mAdapter.getItem(position);
+        // Rows put on top by a refresh would be inserted above the screen, so while the top of the
+        // list is shown it is kept shown
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                if (positionStart == 0 && layoutManager.findFirstCompletelyVisibleItemPosition() == 0) {
+                    newsListView.scrollToPosition(0);
+                }
+            }
+        });
 
-            // Convert the String URL into a URI object (to pass into the Intent constructor)
-            Uri newsUri = Uri.parse(currentNews.getUrl());
+        // On a cold start, show the articles as they were last shown before any network work
+        mViewModel.restoreSnapshot();
+        mViewModel.getArticles().observe(this, this::showArticles);
+        mViewModel.isLoading().observe(this, this::showLoading);
+        mViewModel.getSearchResults().observe(this, this::showSearchResults);
 
-            // Create a new intent to view the news URI
-            Intent websiteIntent = new Intent(Intent.ACTION_VIEW, newsUri);
+        // Keep the stored articles fresh in the background, so opening the app needs no network
+        NewsSync.schedule(this);
 
-            // Send the intent to launch a new activity
-            startActivity(websiteIntent);
+        // Fetch further pages in the background as the user nears the end of the list, and make
+        // the rows around those shown as the user scrolls through a long list
+        newsListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (isSearching()) {
+                    // Search results come from the index, further pages would not be among them
+                    return;
+                }
+                mViewModel.onScrolled(mAdapter.getCurrentList(), layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition(), PREFETCH_DISTANCE);
+            }
+
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    tellLikelyArticles();
+                }
+            }
         });
 
-        // Get a reference to the ConnectivityManager to check state of network connectivity
-        ConnectivityManager connMgr = (ConnectivityManager)
-                getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (savedInstance == null) {
+            watchFirstArticle(newsListView);
+        }
+        NewsTrace.end(NewsTrace.Stage.CREATE, start);
+    }
 
-        // Get details on the currently active default data network
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+    /** Open the article, from storage if its text was fetched ahead and in the browser if not. */
+    private void openArticle(News news) {
+        NewsTrace.markArticleTapped();
+        // Only the file's attributes are read, which is quicker than a hop to another thread
+        if (mReader.contains(news.getUrl())) {
+            startActivity(ReaderActivity.newIntent(this, news));
+        } else {
+            mBrowser.open(this, news.getUrl());
+        }
+    }
+
+    /**
+     * Tell the browser which articles are likely to be tapped: the first rows on screen.
+     * It connects to their host, and starts loading the first of them, ahead of the tap.
+     */
+    private void tellLikelyArticles() {
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        List<NewsListItem> rows = mAdapter.getCurrentList();
+        if (first == RecyclerView.NO_POSITION || last >= rows.size()) {
+            return;
+        }
+        List<String> urls = new ArrayList<>(BROWSER_LIKELY_ROWS);
+        for (int i = first; i <= last && urls.size() < BROWSER_LIKELY_ROWS; i++) {
+            urls.add(rows.get(i).getNews().getUrl());
+        }
+        mBrowser.mayLaunch(urls);
+    }
+
+    /** Record the time to first article when rows are about to be drawn for the first time. */
+    private void watchFirstArticle(final RecyclerView newsListView) {
+        newsListView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (newsListView.getChildCount() > 0) {
+                    newsListView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    if (NewsTrace.markFirstArticle() >= 0) {
+                        mViewModel.saveMetrics();
+                    }
+                }
+                return true;
+            }
+        });
+    }
 
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
 
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader(NEWS_LOADER_ID, null, this);
-        } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
+        // Search the articles already fetched as the user types, without going to the network
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mViewModel.search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mViewModel.search(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
 
-            // Update empty state with no connection error message
-            mEmptyStateTextView.setText(R.string.no_internet_connection);
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                mViewModel.search(null);
+                return true;
+            }
+        });
+
+        menu.findItem(R.id.action_perf_overlay).setVisible(BuildConfig.DEBUG)
+                .setChecked(mPerfOverlay.getVisibility() == View.VISIBLE);
+        menu.findItem(R.id.action_perf_dump).setVisible(BuildConfig.DEBUG);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_settings) {
+            // The changed queries are fetched once this screen is shown again, in onStart
+            startActivity(new Intent(this, SettingsActivity.class));
+            return true;
+        } else if (id == R.id.action_perf_overlay) {
+            item.setChecked(!item.isChecked());
+            showPerfOverlay(item.isChecked());
+            return true;
+        } else if (id == R.id.action_perf_dump) {
+            exportTrace();
+            return true;
         }
+        return super.onOptionsItemSelected(item);
     }
 
-    // onCreateLoader instantiates and returns a new Loader for the given ID
-    // Uri builder to construct the URL string to pass into the Loader constructor
     @Override
-    public Loader<List<News>> onCreateLoader(int i, Bundle bundle){
-        // parse breaks apart the URI string that's passed into its parameter
-        Uri baseUri = Uri.parse(GUARDIAN_REQUEST_URL);
+    protected void onStop() {
+        super.onStop();
+        mPerfOverlay.removeCallbacks(mRefreshPerfOverlay);
+        mNewsListView.removeCallbacks(mRefreshRelativeTimes);
+        mBrowser.unbind();
+        mViewModel.stopPolling();
+    }
 
-        // buildUpon prepares the baseUri that was just parsed so that the add query param can added to it
-        Uri.Builder uriBuilder = baseUri.buildUpon();
-        //https://content.guardianapis.com/search?section=politics&order-by=relevance&show-tags=contributor&page-size=10&q=brexit&api-key=test
-        // Append query parameter and its value. E.g. the 'order-by=relevance'
-        uriBuilder.appendQueryParameter("order-by", "newest");
-        uriBuilder.appendQueryParameter("show-tags", "contributor");
-        uriBuilder.appendQueryParameter("page-size", "20");
-        uriBuilder.appendQueryParameter("q", "brexit");
-        uriBuilder.appendQueryParameter("api-key", "test");
+    /** Show or hide the stage latencies and counters over the list. */
+    private void showPerfOverlay(boolean show) {
+        mPerfOverlay.removeCallbacks(mRefreshPerfOverlay);
+        mPerfOverlay.setVisibility(show ? View.VISIBLE : View.GONE);
+        if (show) {
+            mRefreshPerfOverlay.run();
+        }
+    }
 
-        // Return the completed uri 'https://content.guardianapis.com/search?order-by=newest&q=brexit%2520AND%2520debate&api-key=test'
-        return new NewsLoader(this, uriBuilder.toString());
+    /**
+     * Write the latest spans as a Chrome trace, and the histograms and counters as JSON, to the
+     * app's external files directory where adb can pull them. Debug builds only.
+     */
+    private void exportTrace() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        File trace = new File(directory, "news-trace.json");
+        try (Writer traceOut = new OutputStreamWriter(new FileOutputStream(trace), StandardCharsets.UTF_8);
+             Writer metricsOut = new OutputStreamWriter(
+                     new FileOutputStream(new File(directory, "news-metrics.json")), StandardCharsets.UTF_8)) {
+            NewsTrace.writeChromeTrace(traceOut);
+            NewsTrace.writeMetrics(metricsOut);
+            Toast.makeText(this, getString(R.string.perf_dump_saved, directory), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the trace.", e);
+            Toast.makeText(this, R.string.perf_dump_failed, Toast.LENGTH_SHORT).show();
+        }
     }
 
     @Override
-    public void onLoadFinished(Loader<List<News>> loader, List<News> newsArticlesList) {
-        // Hide loading indicator because the data has been loaded
+    protected void onStart() {
+        super.onStart();
+        if (mPerfOverlay.getVisibility() == View.VISIBLE) {
+            showPerfOverlay(true);
+        }
+        // Only reloads if nothing is loaded yet or what is loaded has gone stale, and only goes to
+        // the network if the background sync has not kept the stored articles fresh enough.
+        // Loading starts even without a connection so cached articles can be shown.
+        mViewModel.load(NewsQueries.buildRequestUrls(this));
+        // Rows shown with settings from before they were changed are made again as they are bound
+        mAdapter.setRowFormatter(mViewModel.getRowFormatter());
+        // The times went on passing while stopped
+        mNewsListView.removeCallbacks(mRefreshRelativeTimes);
+        mRefreshRelativeTimes.run();
+        // Started ahead of the first tap; told the likely articles once the rows are laid out
+        mBrowser.bind();
+        // The other sources are only polled while the list is shown, and only over a connection
+        // the background refresh may use
+        List<NewsSource> sources = NewsQueries.buildSources(this);
+        if (sources.isEmpty()) {
+            mViewModel.dropPolledArticles();
+        } else if (isConnected() && !(NewsSync.isUnmeteredOnly(this) && isMetered())) {
+            mViewModel.startPolling(sources);
+        }
+    }
+
+    /** Return true if there is a network connection to fetch data over. */
+    private boolean isConnected() {
+        // Get a reference to the ConnectivityManager to check state of network connectivity
+        ConnectivityManager connMgr = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        // Get details on the currently active default data network
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /** Return true if the network connection is one the user may pay for by the byte. */
+    private boolean isMetered() {
+        ConnectivityManager connMgr = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connMgr.isActiveNetworkMetered();
+    }
+
+    /**
+     * Show the articles delivered by the view model. The adapter works out on a background
+     * thread which rows changed, so only those are bound again.
+     */
+    private void showArticles(List<News> articles) {
+        // Hide loading indicator because there is data to show, even if it is only cached
         View loadingIndicator = findViewById(R.id.loading_indicator);
         loadingIndicator.setVisibility(View.GONE);
+        if (isSearching()) {
+            // Shown again once the search ends
+            return;
+        }
+        mEmptyStateTextView.setVisibility(articles.isEmpty() ? View.VISIBLE : View.GONE);
 
-        // Set empty state text to display "No news articles found."
-        mEmptyStateTextView.setText(R.string.no_news);
+        // The articles of the window are a new list in memory every time, read back off the main
+        // thread if they were spilled: only the rows grouping their near duplicates are made here.
+        mAdapter.submitList(mViewModel.buildRows(articles), this::tellLikelyArticlesOnceLaidOut);
+    }
 
-        // If there is a valid list of {@link News} articles, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (newsArticlesList != null && !newsArticlesList.isEmpty()) {
-            mAdapter.addAll(newsArticlesList);
+    /** Show the articles matching the search, or every article again once the search ends. */
+    private void showSearchResults(List<News> results) {
+        if (results == null) {
+            mEmptyStateTextView.setText(emptyStateText());
+            List<News> articles = mViewModel.getArticles().getValue();
+            if (articles != null) {
+                showArticles(articles);
+            }
+            return;
         }
+        mEmptyStateTextView.setText(R.string.no_search_results);
+        mEmptyStateTextView.setVisibility(results.isEmpty() ? View.VISIBLE : View.GONE);
+        // The rows are a new list every time, owned by the adapter from now on
+        mAdapter.submitList(mViewModel.buildRows(results), this::tellLikelyArticlesOnceLaidOut);
     }
 
-    @Override
-    public void onLoaderReset(Loader<List<News>> loader) {
-        // Loader reset, so we can clear out our existing data.
-        mAdapter.clear();
+    /** Tell the browser the likely articles once the rows just submitted are on screen. */
+    private void tellLikelyArticlesOnceLaidOut() {
+        mNewsListView.post(this::tellLikelyArticles);
+    }
+
+    /** Return true while the list shows search results rather than every article */
+    private boolean isSearching() {
+        return mViewModel.getSearchResults().getValue() != null;
+    }
+
+    /** Show the loading indicator while the first page is fetched, or the empty state once done. */
+    private void showLoading(boolean loading) {
+        View loadingIndicator = findViewById(R.id.loading_indicator);
+        // The adapter takes in new lists asynchronously, so ask the view model what there is
+        List<News> articles = mViewModel.getArticles().getValue();
+        boolean empty = articles == null || articles.isEmpty();
+        loadingIndicator.setVisibility(loading && empty ? View.VISIBLE : View.GONE);
+        mEmptyStateTextView.setVisibility(!loading && empty ? View.VISIBLE : View.GONE);
+        if (!loading) {
+            mEmptyStateTextView.setText(emptyStateText());
+            mSwipeRefresh.setRefreshing(false);
+        }
+    }
+
+    /**
+     * Return the empty state text: "No news articles found.", or why none could be fetched
+     * when there was nothing cached to show instead.
+     */
+    private int emptyStateText() {
+        if (!isConnected()) {
+            return R.string.no_internet_connection;
+        }
+        NewsFetchPolicy.Failure failure = mViewModel.getFailure().getValue();
+        if (failure == null) {
+            return R.string.no_news;
+        }
+        switch (failure) {
+            case RATE_LIMITED:
+                return R.string.error_rate_limited;
+            case CLIENT_ERROR:
+            case MALFORMED:
+                return R.string.error_bad_response;
+            default:
+                return R.string.error_unavailable;
+        }
     }
-}
\ No newline at end of file
+}
@@ -15,71 +15,296 @@
  */
 package com.example.android.hughsnewsapp;
 
-import android.content.Context;
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * An {@link NewsAdapter} knows how to create a list item layout for each news article
- * in the data source (a list of {@link News} objects).
- * These list item layouts will be provided to an adapter view like ListView to be displayed to the user.
+ * in the data source (a list of {@link News} objects) and bind it to a RecyclerView.
+ * New lists are compared with the one shown on a background thread, keyed on the article URL,
+ * so only the rows that were inserted, removed or changed are bound again.
+ * Thumbnails are loaded by a {@link NewsImageLoader}, and a recycled row cancels its request.
+ * The text of each row is made ahead of binding by a {@link NewsRowFormatter}, so binding only
+ * hands each view its text. Relative publication times are brought up to date by
+ * {@link #refreshRelativeTimes} on the rows on screen, without binding them again.
+ * A row with near duplicates grouped under it shows how many, and clicking that shows or hides
+ * them below it.
  */
-public class NewsAdapter extends ArrayAdapter<News> {
+public class NewsAdapter extends ListAdapter<NewsListItem, NewsAdapter.NewsViewHolder> {
+
+    /** Receives the article whose row was clicked */
+    public interface OnNewsClickListener {
+        void onNewsClicked(News news);
+    }
+
+    /** Receives the article whose row's count of near duplicates was clicked */
+    public interface OnSimilarClickListener {
+        void onSimilarClicked(News news);
+    }
+
+    /**
+     * A row is the same item if its article has the same URL, and unchanged if it displays the
+     * same and groups the same number of near duplicates.
+     */
+    static final DiffUtil.ItemCallback<NewsListItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<NewsListItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NewsListItem oldItem, @NonNull NewsListItem newItem) {
+            return oldItem.getNews().getUrl().equals(newItem.getNews().getUrl());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull NewsListItem oldItem, @NonNull NewsListItem newItem) {
+            if (!oldItem.sameGroupingAs(newItem)) {
+                return false;
+            }
+            News oldNews = oldItem.getNews();
+            News newNews = newItem.getNews();
+            return oldNews == newNews
+                    || (oldNews.getPublicationTime() == newNews.getPublicationTime()
+                    && equals(oldNews.getTitle(), newNews.getTitle())
+                    && equals(oldNews.getSectionName(), newNews.getSectionName())
+                    && equals(oldNews.getAuthor(), newNews.getAuthor())
+                    && equals(oldNews.getThumbnailUrl(), newNews.getThumbnailUrl()));
+        }
+
+        private boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    };
+
+    /** Told which article was clicked */
+    private final OnNewsClickListener mClickListener;
+
+    /** Told which row's near duplicates to show or hide, or null if they cannot be */
+    private OnSimilarClickListener mSimilarClickListener;
+
+    /** Loads the thumbnails, or null to show none */
+    private final NewsImageLoader<Bitmap> mImageLoader;
+
+    /** Makes the text of rows it has not made ahead of binding */
+    private NewsRowFormatter mRowFormatter;
+
+    /** Rows currently on screen */
+    private final List<NewsViewHolder> mAttachedHolders = new ArrayList<>();
+
+    /** Height in pixels the thumbnails are shown at */
+    private final int mThumbnailHeight;
+
+    /**
+     * Constructs a new {@link NewsAdapter} without thumbnails.
+     * @param clickListener is told when a news article is clicked
+     * @param rowFormatter makes the text of rows it has not made ahead of binding
+     */
+    public NewsAdapter(OnNewsClickListener clickListener, NewsRowFormatter rowFormatter) {
+        this(clickListener, rowFormatter, null, 0);
+    }
+
     /**
      * Constructs a new {@link NewsAdapter}.
-     * @param context of the app
-     * @param newsArticlesList is the list of news articles, which is the data source of the adapter
+     * @param clickListener is told when a news article is clicked
+     * @param rowFormatter makes the text of rows it has not made ahead of binding
+     * @param imageLoader loads the thumbnails, or null to show none
+     * @param thumbnailHeight height in pixels the thumbnails are shown at
      */
-    public NewsAdapter(Context context, List<News> newsArticlesList) {
-        super(context, 0, newsArticlesList);
+    public NewsAdapter(OnNewsClickListener clickListener, NewsRowFormatter rowFormatter,
+                       NewsImageLoader<Bitmap> imageLoader, int thumbnailHeight) {
+        super(DIFF_CALLBACK);
+        mClickListener = clickListener;
+        mRowFormatter = rowFormatter;
+        mImageLoader = imageLoader;
+        mThumbnailHeight = thumbnailHeight;
+    }
+
+    /** Set what is told when the count of near duplicates grouped under a row is clicked. */
+    public void setOnSimilarClickListener(OnSimilarClickListener similarClickListener) {
+        mSimilarClickListener = similarClickListener;
     }
 
     /**
-     * Returns a list item view that displays information about the news at the given position
-     * in the list of news articles.
+     * Use the given formatter from now on, as when the settings changed. Every row is bound again
+     * unless it formats rows the same as the one before.
      */
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent){
-        // Check if there is an existing list item view (called convertView) that could be reused,
-        // otherwise, if convertView is null, then inflate a new list item layout.
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.news_list_item, parent, false);
+    public void setRowFormatter(NewsRowFormatter rowFormatter) {
+        if (rowFormatter == mRowFormatter) {
+            return;
+        }
+        boolean changed = !rowFormatter.sameAs(mRowFormatter);
+        mRowFormatter = rowFormatter;
+        if (changed && getItemCount() > 0) {
+            notifyItemRangeChanged(0, getItemCount());
+        }
+    }
+
+    /**
+     * Show the relative publication times of the rows on screen as last refreshed by the
+     * formatter. Only the rows whose time changed have their text set.
+     */
+    public void refreshRelativeTimes() {
+        for (int i = 0; i < mAttachedHolders.size(); i++) {
+            mAttachedHolders.get(i).refreshRelativeTime();
         }
+    }
+
+    /** Inflate a new list item layout and keep its views in a holder. */
+    @NonNull
+    @Override
+    public NewsViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext()).inflate(
+                R.layout.news_list_item, parent, false);
+        return new NewsViewHolder(listItemView);
+    }
+
+    /** Display the news at the given position in the list of news articles. */
+    @Override
+    public void onBindViewHolder(@NonNull NewsViewHolder holder, int position) {
+        long start = NewsTrace.begin(NewsTrace.Stage.BIND);
+        holder.bind(getItem(position));
+        NewsTrace.end(NewsTrace.Stage.BIND, start);
+        NewsTrace.count(NewsTrace.Counter.ROWS_BOUND);
+    }
+
+    @Override
+    public void onViewAttachedToWindow(@NonNull NewsViewHolder holder) {
+        mAttachedHolders.add(holder);
+    }
 
-        // Find the news at the given position in the list of news articles
-        News currentNews = getItem(position);
-        // Find the TextView with view ID Section
-        TextView authorTextView = listItemView.findViewById(R.id.author_textView);
-        authorTextView.setText(currentNews.getAuthor());
-
-        // Find the TextView with view ID title
-        TextView titleOfArticleTextView = listItemView.findViewById(R.id.news_article_title_textView);
-        // get the title of the news article from the current location news object and set in title view
-        titleOfArticleTextView.setText(currentNews.getTitle());
-
-        // Find the TextView with view ID author
-        TextView sectionNameTextView = listItemView.findViewById(R.id.news_section_textView);
-        sectionNameTextView.setText(currentNews.getSectionName());
-
-        // Find the TextView with view ID publication date
-        TextView publicationDateTextView = listItemView.findViewById(R.id.article_publication_date_textView);
-        String formattedDate = formatDate(currentNews.getPublicationDate());
-        // get the publication date  of the news article from the current location news object and set in date view
-        publicationDateTextView.setText(formattedDate);
-
-        // Return the list item view that is now showing the appropriate data
-        return listItemView;
+    @Override
+    public void onViewDetachedFromWindow(@NonNull NewsViewHolder holder) {
+        mAttachedHolders.remove(holder);
+    }
+
+    /** The row is off screen and about to be reused: stop loading or showing its thumbnail. */
+    @Override
+    public void onViewRecycled(@NonNull NewsViewHolder holder) {
+        holder.clearThumbnail();
     }
 
-    /** Return the formatted date string (i.e. YYYY-MM-DD) from a Date object.*/
-    private String formatDate(String publicationDate) {
-        return publicationDate.substring(0,10);
+    /** Holds the views of one list item, so they are only looked up when it is inflated */
+    class NewsViewHolder extends RecyclerView.ViewHolder {
+        private final TextView mSectionNameTextView;
+        private final TextView mTitleTextView;
+        private final TextView mPublicationDateTextView;
+        private final TextView mAuthorTextView;
+        private final ImageView mThumbnailView;
+        private final TextView mClusterCountTextView;
+
+        /** Start padding of the row, and how much further near duplicates shown below a row start */
+        private final int mPaddingStart;
+        private final int mDuplicateIndent;
+
+        /** Sets the thumbnail once loaded; made once rather than on every bind */
+        private final NewsImageLoader.Target<Bitmap> mThumbnailTarget;
+
+        /** Text of the row bound, and the relative time it shows */
+        private NewsRow mRow;
+        private CharSequence mShownRelativeTime;
+
+        /** Request for the thumbnail shown or being loaded, or null */
+        private NewsImageLoader<Bitmap>.Request mThumbnailRequest;
+
+        NewsViewHolder(View listItemView) {
+            super(listItemView);
+            mSectionNameTextView = listItemView.findViewById(R.id.news_section_textView);
+            mTitleTextView = listItemView.findViewById(R.id.news_article_title_textView);
+            mPublicationDateTextView = listItemView.findViewById(R.id.article_publication_date_textView);
+            mAuthorTextView = listItemView.findViewById(R.id.author_textView);
+            mThumbnailView = listItemView.findViewById(R.id.news_thumbnail);
+            mClusterCountTextView = listItemView.findViewById(R.id.cluster_count_textView);
+            mPaddingStart = listItemView.getPaddingStart();
+            mDuplicateIndent = listItemView.getResources().getDimensionPixelSize(
+                    R.dimen.news_duplicate_indent);
+            mThumbnailTarget = mThumbnailView::setImageBitmap;
+            listItemView.setOnClickListener(view -> {
+                int position = getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    mClickListener.onNewsClicked(getItem(position).getNews());
+                }
+            });
+            mClusterCountTextView.setOnClickListener(view -> {
+                int position = getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && mSimilarClickListener != null) {
+                    mSimilarClickListener.onSimilarClicked(getItem(position).getNews());
+                }
+            });
+        }
+
+        /**
+         * Set the text of each view from the given row's article, show how many near duplicates
+         * are grouped under it, and start loading its thumbnail
+         */
+        void bind(NewsListItem item) {
+            bindCluster(item);
+            News news = item.getNews();
+            NewsRow row = news.getRow();
+            if (row == null || row.mFormatter != mRowFormatter) {
+                // Not made ahead, e.g. by a formatter from before the settings changed
+                NewsTrace.count(NewsTrace.Counter.ROWS_FORMATTED_ON_BIND);
+                row = mRowFormatter.rowFor(news, System.currentTimeMillis());
+            }
+            mRow = row;
+            mSectionNameTextView.setText(row.mSection);
+            mTitleTextView.setText(row.mTitle);
+            mShownRelativeTime = row.getRelativeTime();
+            mPublicationDateTextView.setText(mShownRelativeTime);
+            mAuthorTextView.setText(row.mAuthor);
+
+            clearThumbnail();
+            String thumbnailUrl = news.getThumbnailUrl();
+            if (mImageLoader == null || thumbnailUrl == null) {
+                mThumbnailView.setVisibility(View.GONE);
+                return;
+            }
+            mThumbnailView.setVisibility(View.VISIBLE);
+            // An image already in memory is set before this returns, so the row never flickers
+            mThumbnailRequest = mImageLoader.load(thumbnailUrl, mThumbnailHeight, mThumbnailTarget);
+        }
+
+        /** Show the number of near duplicates grouped under the row, and indent those shown below it */
+        private void bindCluster(NewsListItem item) {
+            int similarCount = item.getSimilarCount();
+            if (similarCount == 0) {
+                mClusterCountTextView.setVisibility(View.GONE);
+            } else {
+                mClusterCountTextView.setVisibility(View.VISIBLE);
+                mClusterCountTextView.setText(itemView.getResources().getQuantityString(
+                        item.isExpanded() ? R.plurals.cluster_less : R.plurals.cluster_more,
+                        similarCount, similarCount));
+            }
+            itemView.setPaddingRelative(mPaddingStart + (item.isDuplicate() ? mDuplicateIndent : 0),
+                    itemView.getPaddingTop(), itemView.getPaddingEnd(), itemView.getPaddingBottom());
+        }
+
+        /** Show the relative time of the row bound if it changed since it was set */
+        void refreshRelativeTime() {
+            if (mRow == null) {
+                return;
+            }
+            CharSequence relativeTime = mRow.getRelativeTime();
+            if (relativeTime != mShownRelativeTime) {
+                mShownRelativeTime = relativeTime;
+                mPublicationDateTextView.setText(relativeTime);
+            }
+        }
+
+        /** Stop showing the thumbnail, which lets its bitmap be reused, and cancel its request */
+        void clearThumbnail() {
+            mThumbnailView.setImageDrawable(null);
+            if (mThumbnailRequest != null) {
+                mThumbnailRequest.cancel();
+                mThumbnailRequest = null;
+            }
+        }
     }
 }
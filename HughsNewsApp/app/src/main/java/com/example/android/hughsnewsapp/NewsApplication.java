@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Connects the platform-independent news core to Android as the process starts: its errors go to
+ * logcat and its trace spans are systrace sections too. When the system runs short of memory,
+ * the {@link NewsMemoryGovernor} gives some back.
+ */
+public class NewsApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        NewsLog.setSink((tag, message, error) -> Log.e(tag, message, error));
+        NewsTrace.setSections(new NewsTrace.Sections() {
+            @Override
+            public void begin(String name) {
+                Trace.beginSection(name);
+            }
+
+            @Override
+            public void end() {
+                Trace.endSection();
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        NewsMemoryGovernor governor = NewsStorage.getMemoryGovernor(this);
+        switch (level) {
+            case ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN:
+                governor.trim(NewsMemoryGovernor.Level.UI_HIDDEN);
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+            case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+                governor.trim(NewsMemoryGovernor.Level.CRITICAL);
+                break;
+            default:
+                // Running moderate or low, or in the background and among the next to be killed
+                governor.trim(NewsMemoryGovernor.Level.LOW);
+                break;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        NewsStorage.getMemoryGovernor(this).trim(NewsMemoryGovernor.Level.CRITICAL);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.browser.customtabs.CustomTabsClient;
+import androidx.browser.customtabs.CustomTabsIntent;
+import androidx.browser.customtabs.CustomTabsService;
+import androidx.browser.customtabs.CustomTabsServiceConnection;
+import androidx.browser.customtabs.CustomTabsSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opens articles in a Custom Tab of the user's browser, which is kept warm while the list is
+ * shown: the browser is started ahead of the first tap, and told which rows on screen are likely
+ * to be tapped so it can connect to their host and start loading the first of them. Without a
+ * browser supporting Custom Tabs, articles are opened by whichever app views their URL.
+ * Used on the main thread only.
+ */
+public final class NewsBrowser {
+
+    private final Context mContext;
+
+    /** Connection to the browser's Custom Tabs service while bound, or null */
+    private CustomTabsServiceConnection mConnection;
+
+    /** Session the likely URLs are told to, and the tabs opened in, once connected */
+    private CustomTabsSession mSession;
+
+    /** URLs most likely to be opened next, most likely first */
+    private List<String> mLikelyUrls = Collections.emptyList();
+
+    public NewsBrowser(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /** Connect to the browser and warm it up, unless already connected. */
+    public void bind() {
+        if (mConnection != null) {
+            return;
+        }
+        String packageName = CustomTabsClient.getPackageName(mContext, null);
+        if (packageName == null) {
+            // No browser supports Custom Tabs
+            return;
+        }
+        mConnection = new CustomTabsServiceConnection() {
+            @Override
+            public void onCustomTabsServiceConnected(@NonNull ComponentName name,
+                                                     @NonNull CustomTabsClient client) {
+                client.warmup(0);
+                mSession = client.newSession(null);
+                tellLikelyUrls();
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                mSession = null;
+            }
+        };
+        if (!CustomTabsClient.bindCustomTabsService(mContext, packageName, mConnection)) {
+            mConnection = null;
+        }
+    }
+
+    /** Let the browser go, as when the list is no longer shown. */
+    public void unbind() {
+        if (mConnection != null) {
+            mContext.unbindService(mConnection);
+            mConnection = null;
+            mSession = null;
+        }
+    }
+
+    /**
+     * Tell the browser which URLs are likely to be opened next, most likely first. Only the
+     * first is loaded ahead; the browser may connect to the hosts of the others.
+     */
+    public void mayLaunch(List<String> urls) {
+        if (urls.isEmpty() || urls.equals(mLikelyUrls)) {
+            return;
+        }
+        mLikelyUrls = new ArrayList<>(urls);
+        tellLikelyUrls();
+    }
+
+    private void tellLikelyUrls() {
+        if (mSession == null || mLikelyUrls.isEmpty()) {
+            return;
+        }
+        List<Bundle> others = new ArrayList<>(mLikelyUrls.size() - 1);
+        for (int i = 1; i < mLikelyUrls.size(); i++) {
+            Bundle other = new Bundle();
+            other.putParcelable(CustomTabsService.KEY_URL, Uri.parse(mLikelyUrls.get(i)));
+            others.add(other);
+        }
+        mSession.mayLaunchUrl(Uri.parse(mLikelyUrls.get(0)), null, others);
+    }
+
+    /** Open the article at the given URL, in the warmed up Custom Tab if there is one. */
+    public void open(Activity activity, String url) {
+        // Convert the String URL into a URI object
+        Uri uri = Uri.parse(url);
+        if (mSession != null) {
+            new CustomTabsIntent.Builder(mSession).build().launchUrl(activity, uri);
+            return;
+        }
+        // Create a new intent to view the news URI, and send it to launch a new activity
+        activity.startActivity(new Intent(Intent.ACTION_VIEW, uri));
+    }
+}
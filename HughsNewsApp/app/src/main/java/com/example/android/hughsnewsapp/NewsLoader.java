@@ -1,60 +0,0 @@
-/*
- * Copyright (C) 2021 Hugh Davidson
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.example.android.hughsnewsapp;
-
-
-import android.content.AsyncTaskLoader;
-import android.content.Context;
-import android.os.Build;
-
-import androidx.annotation.RequiresApi;
-
-import java.util.List;
-
-/** Loads a list of news articles by using an AsyncTask to perform the network request to the given URL.*/
-public class NewsLoader extends AsyncTaskLoader<List<News>> {
-
-    /** Query URL */
-    private final String mUrl;
-
-    /**
-     * Constructor for the new NewsLoader
-     * @param context of the activity
-     * @param url to load data from
-     * */
-    public NewsLoader(Context context, String url) {
-        super(context);
-        mUrl = url;
-    }
-
-    @Override
-    protected void onStartLoading() {
-        forceLoad();
-    }
-
-    /** This is on a background thread. */
-
-    @RequiresApi(api = Build.VERSION_CODES.KITKAT)
-    @Override
-    public List<News> loadInBackground() {
-        if (mUrl == null) {
-            return null;
-        }
-
-        // Perform the network request, parse the response, and extract a list of earthquakes.
-        return QueryUtils.fetchNewsData(mUrl);
-    }
-}
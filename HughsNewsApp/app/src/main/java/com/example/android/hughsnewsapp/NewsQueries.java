@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import androidx.core.os.ConfigurationCompat;
+import androidx.preference.PreferenceManager;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.hughsnewsapp.Constants.SOURCE_POLL_INTERVAL;
+
+/**
+ * Builds the Guardian requests for the topics and sections followed in the settings, the other
+ * news sources polled alongside them, and the {@link NewsRowFormatter} showing their articles as
+ * the settings say.
+ */
+public final class NewsQueries {
+
+    /** Create a private constructor because no one should ever create a {@link NewsQueries} object.*/
+    private NewsQueries() {
+    }
+
+    /** Return the request URL of the first page of each followed topic and section. */
+    public static List<String> buildRequestUrls(Context context) {
+        List<String> urls = new ArrayList<>();
+        for (GuardianQuery query : buildQueries(context)) {
+            urls.add(query.toUrl());
+        }
+        return urls;
+    }
+
+    /** Return one query for each topic and section followed in the settings. */
+    public static List<GuardianQuery> buildQueries(Context context) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        GuardianQuery.Builder template = new GuardianQuery.Builder()
+                .orderBy(GuardianQuery.Order.fromValue(
+                        getString(context, settings, R.string.settings_order_by_key,
+                                R.string.settings_order_by_default),
+                        GuardianQuery.Order.NEWEST))
+                .showContributors(getBoolean(context, settings, R.string.settings_show_authors_key,
+                        R.bool.settings_show_authors_default))
+                .showThumbnails(getBoolean(context, settings, R.string.settings_show_thumbnails_key,
+                        R.bool.settings_show_thumbnails_default));
+        int pageSize = getInt(context, settings, R.string.settings_page_size_key,
+                R.string.settings_page_size_default);
+        if (pageSize >= 1 && pageSize <= GuardianQuery.MAX_PAGE_SIZE) {
+            template.pageSize(pageSize);
+        }
+        int days = getInt(context, settings, R.string.settings_date_range_key,
+                R.string.settings_date_range_default);
+        template.fromDate(fromDate(days, System.currentTimeMillis()));
+
+        return buildQueries(template.build(),
+                getString(context, settings, R.string.settings_topics_key, R.string.settings_topics_default),
+                getString(context, settings, R.string.settings_sections_key, R.string.settings_sections_default));
+    }
+
+    /**
+     * Return the RSS and Atom feeds polled alongside the Guardian queries, none unless they are
+     * turned on in the settings.
+     */
+    public static List<NewsSource> buildSources(Context context) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!getBoolean(context, settings, R.string.settings_other_sources_key,
+                R.bool.settings_other_sources_default)) {
+            return new ArrayList<>();
+        }
+        Resources resources = context.getResources();
+        String[] names = resources.getStringArray(R.array.news_source_names);
+        String[] urls = resources.getStringArray(R.array.news_source_urls);
+        List<NewsSource> sources = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            sources.add(new NewsSource(names[i], urls[i], NewsFeedParser.XML, SOURCE_POLL_INTERVAL));
+        }
+        return sources;
+    }
+
+    /** Return a row formatter for the current locale, time zone and settings. */
+    public static NewsRowFormatter buildRowFormatter(Context context) {
+        Resources resources = context.getResources();
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        return new NewsRowFormatter(resources.getString(R.string.relative_time_just_now),
+                resources.getString(R.string.relative_time_minutes),
+                resources.getString(R.string.relative_time_hours),
+                resources.getString(R.string.relative_time_days),
+                resources.getString(R.string.letter_to_editor),
+                getBoolean(context, settings, R.string.settings_show_authors_key,
+                        R.bool.settings_show_authors_default),
+                ConfigurationCompat.getLocales(resources.getConfiguration()).get(0),
+                TimeZone.getDefault());
+    }
+
+    /**
+     * Return one query like the template for each of the comma separated topics and then each
+     * of the comma separated sections, or just the template if there are none.
+     */
+    static List<GuardianQuery> buildQueries(GuardianQuery template, String topics, String sections) {
+        List<GuardianQuery> queries = new ArrayList<>();
+        for (String topic : topics.split(",")) {
+            if (!topic.trim().isEmpty()) {
+                queries.add(template.newBuilder().topic(topic).build());
+            }
+        }
+        for (String section : sections.split(",")) {
+            if (!section.trim().isEmpty()) {
+                queries.add(template.newBuilder().section(section).build());
+            }
+        }
+        if (queries.isEmpty()) {
+            queries.add(template);
+        }
+        return queries;
+    }
+
+    /**
+     * Return the date (yyyy-MM-dd, in UTC as the API takes it) the given number of days before
+     * the given time, or null for no limit if the number of days is not positive.
+     */
+    static String fromDate(int days, long now) {
+        if (days <= 0) {
+            return null;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(now - TimeUnit.DAYS.toMillis(days)));
+    }
+
+    private static String getString(Context context, SharedPreferences settings, int key, int defaultValue) {
+        return settings.getString(context.getString(key), context.getString(defaultValue));
+    }
+
+    private static boolean getBoolean(Context context, SharedPreferences settings, int key, int defaultValue) {
+        return settings.getBoolean(context.getString(key), context.getResources().getBoolean(defaultValue));
+    }
+
+    /** Return the setting stored as a string by a list preference, or the default if it is not a number. */
+    private static int getInt(Context context, SharedPreferences settings, int key, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(context, settings, key, defaultValue));
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(context.getString(defaultValue));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.hughsnewsapp.Constants.DISK_CACHE_MAX_AGE;
+import static com.example.android.hughsnewsapp.Constants.DISK_CACHE_MAX_BYTES;
+import static com.example.android.hughsnewsapp.Constants.IMAGE_MEMORY_CACHE_HEAP_DIVISOR;
+import static com.example.android.hughsnewsapp.Constants.IMAGE_THREADS;
+import static com.example.android.hughsnewsapp.Constants.LIST_HEAP_BUDGET_DIVISOR;
+import static com.example.android.hughsnewsapp.Constants.MEMORY_CACHE_MAX_BYTES;
+import static com.example.android.hughsnewsapp.Constants.MEMORY_CACHE_TTL;
+import static com.example.android.hughsnewsapp.Constants.READER_STORE_MAX_AGE;
+import static com.example.android.hughsnewsapp.Constants.READER_STORE_MAX_BYTES;
+import static com.example.android.hughsnewsapp.Constants.THUMBNAIL_DISK_CACHE_MAX_AGE;
+import static com.example.android.hughsnewsapp.Constants.THUMBNAIL_DISK_CACHE_MAX_BYTES;
+
+/** Holds the process-wide stores shared by every screen and loader. */
+public final class NewsStorage {
+
+    /** Directory under the app's files directory holding the cached responses */
+    private static final String DISK_CACHE_DIRECTORY = "news-cache";
+
+    /** Directory under the app's cache directory holding the downloaded thumbnails */
+    private static final String THUMBNAIL_CACHE_DIRECTORY = "thumbnails";
+
+    /** Directory under the app's files directory holding the text of articles fetched ahead */
+    private static final String READER_DIRECTORY = "reader";
+
+    /**
+     * Directory under the app's no-backup directory holding the articles spilled out of memory,
+     * which the system does not clear from under the running app as it may the cache directory
+     */
+    private static final String SPILL_DIRECTORY = "spill";
+
+    /** An idle thread spilling articles is let go after this many seconds */
+    private static final int SPILL_KEEP_ALIVE_SECONDS = 30;
+
+    /** File under the app's files directory holding the article list as last shown */
+    private static final String SNAPSHOT_FILE = "news-snapshot.bin";
+
+    /** Preferences holding the time to first article of earlier runs of the app */
+    private static final String METRICS_PREFERENCES = "news-metrics";
+    private static final String KEY_FIRST_ARTICLE = "first_article";
+
+    private static NewsDiskCache sDiskCache;
+
+    private static NewsSearchIndex sSearchIndex;
+
+    private static NewsMemoryCache sMemoryCache;
+
+    private static NewsFetchPolicy sFetchPolicy;
+
+    private static NewsSnapshot sSnapshot;
+
+    private static NewsImageLoader<Bitmap> sImageLoader;
+
+    private static BitmapPool sBitmapPool;
+
+    private static NewsSpillStore sSpillStore;
+
+    private static NewsMemoryGovernor sMemoryGovernor;
+
+    private static NewsReader sReader;
+
+    /** True once the time to first article of earlier runs has been added to this run's */
+    private static boolean sMetricsRestored;
+
+    /** Create a private constructor because no one should ever create a {@link NewsStorage} object.*/
+    private NewsStorage() {
+    }
+
+    /** Return the persistent store of Guardian responses. */
+    public static synchronized NewsDiskCache getDiskCache(Context context) {
+        if (sDiskCache == null) {
+            File directory = new File(context.getApplicationContext().getFilesDir(), DISK_CACHE_DIRECTORY);
+            sDiskCache = new NewsDiskCache(directory, DISK_CACHE_MAX_BYTES, DISK_CACHE_MAX_AGE);
+        }
+        return sDiskCache;
+    }
+
+    /** Return the store of the text of articles fetched ahead, so they open without the network. */
+    public static synchronized NewsReader getReader(Context context) {
+        if (sReader == null) {
+            File directory = new File(context.getApplicationContext().getFilesDir(), READER_DIRECTORY);
+            sReader = new NewsReader(new NewsDiskCache(directory, READER_STORE_MAX_BYTES, READER_STORE_MAX_AGE));
+        }
+        return sReader;
+    }
+
+    /**
+     * Return the loader of the thumbnails, whose memory cache takes up to an eighth of the heap
+     * and whose pool of bitmaps up to a quarter of that again.
+     */
+    public static synchronized NewsImageLoader<Bitmap> getImageLoader(Context context) {
+        if (sImageLoader == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), THUMBNAIL_CACHE_DIRECTORY);
+            long memoryBytes = Runtime.getRuntime().maxMemory() / IMAGE_MEMORY_CACHE_HEAP_DIVISOR;
+            sBitmapPool = new BitmapPool(memoryBytes / 4);
+            sImageLoader = new NewsImageLoader<>(IMAGE_THREADS, memoryBytes,
+                    new NewsDiskCache(directory, THUMBNAIL_DISK_CACHE_MAX_BYTES, THUMBNAIL_DISK_CACHE_MAX_AGE),
+                    new BitmapDecoder(sBitmapPool),
+                    new Handler(Looper.getMainLooper())::post);
+        }
+        return sImageLoader;
+    }
+
+    /** Return the snapshot of the article list as last shown. */
+    public static synchronized NewsSnapshot getSnapshot(Context context) {
+        if (sSnapshot == null) {
+            sSnapshot = new NewsSnapshot(new File(context.getApplicationContext().getFilesDir(), SNAPSHOT_FILE));
+        }
+        return sSnapshot;
+    }
+
+    /**
+     * Return the cache of pages fetched in the last few moments, shared by every fetch engine so
+     * a recreated screen neither repeats nor duplicates the requests of the one before it.
+     */
+    public static synchronized NewsMemoryCache getMemoryCache() {
+        if (sMemoryCache == null) {
+            sMemoryCache = new NewsMemoryCache(MEMORY_CACHE_MAX_BYTES, MEMORY_CACHE_TTL);
+        }
+        return sMemoryCache;
+    }
+
+    /**
+     * Return the policy shared by every request to the Guardian API, so that they all back off
+     * together while it is failing or limiting requests.
+     */
+    public static synchronized NewsFetchPolicy getFetchPolicy() {
+        if (sFetchPolicy == null) {
+            sFetchPolicy = new NewsFetchPolicy.Builder().build();
+        }
+        return sFetchPolicy;
+    }
+
+    /**
+     * Return the store keeping the loaded and indexed articles within an eighth of the heap,
+     * spilling the rest to the app's no-backup directory.
+     */
+    public static synchronized NewsSpillStore getSpillStore(Context context) {
+        if (sSpillStore == null) {
+            File directory = new File(context.getApplicationContext().getNoBackupFilesDir(),
+                    SPILL_DIRECTORY);
+            sSpillStore = new NewsSpillStore(directory,
+                    Runtime.getRuntime().maxMemory() / LIST_HEAP_BUDGET_DIVISOR);
+        }
+        return sSpillStore;
+    }
+
+    /**
+     * Return the governor giving back memory when the system runs short of it, which also drops
+     * the pages fetched moments ago and the decoded thumbnails. The articles are spilled on a
+     * thread of its own, as the system reports the pressure on the main thread.
+     */
+    public static synchronized NewsMemoryGovernor getMemoryGovernor(Context context) {
+        if (sMemoryGovernor == null) {
+            ThreadPoolExecutor spillExecutor = new ThreadPoolExecutor(1, 1,
+                    SPILL_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            spillExecutor.allowCoreThreadTimeOut(true);
+            sMemoryGovernor = new NewsMemoryGovernor(getSpillStore(context), spillExecutor);
+            sMemoryGovernor.register(level -> trimCaches());
+        }
+        return sMemoryGovernor;
+    }
+
+    /** Drop the caches that only save fetching or decoding again, those that were made. */
+    private static synchronized void trimCaches() {
+        if (sMemoryCache != null) {
+            sMemoryCache.clear();
+        }
+        if (sImageLoader != null) {
+            sImageLoader.clear();
+            sBitmapPool.clear();
+        }
+    }
+
+    /**
+     * Return the search index over every article fetched, which {@link QueryUtils} keeps up to
+     * date. It starts out empty; see {@link QueryUtils#indexCachedPages}.
+     */
+    public static synchronized NewsSearchIndex getSearchIndex(Context context) {
+        if (sSearchIndex == null) {
+            sSearchIndex = new NewsSearchIndex(getSpillStore(context));
+            QueryUtils.setSearchIndex(sSearchIndex);
+        }
+        return sSearchIndex;
+    }
+
+    /**
+     * Store the time to first article of every launch so far, so its percentiles cover earlier
+     * runs of the app too. The first call adds those earlier runs to this run's histogram.
+     * This reads and writes preferences, so it is on a background thread.
+     */
+    public static synchronized void saveMetrics(Context context) {
+        SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(METRICS_PREFERENCES, Context.MODE_PRIVATE);
+        LatencyHistogram firstArticle = NewsTrace.getHistogram(NewsTrace.Stage.FIRST_ARTICLE);
+        if (!sMetricsRestored) {
+            firstArticle.decode(preferences.getString(KEY_FIRST_ARTICLE, null));
+            sMetricsRestored = true;
+        }
+        preferences.edit().putString(KEY_FIRST_ARTICLE, firstArticle.encode()).apply();
+    }
+}
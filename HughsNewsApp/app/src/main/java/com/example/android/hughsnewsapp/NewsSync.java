@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.hughsnewsapp.Constants.HTTP_NOT_MODIFIED_CODE;
+import static com.example.android.hughsnewsapp.Constants.SYNC_BACKOFF_DELAY;
+import static com.example.android.hughsnewsapp.Constants.SYNC_INTERVAL;
+
+/**
+ * Schedules the background refresh of the followed queries into the {@link NewsDiskCache}, and
+ * keeps track of when it last succeeded so opening the app can decide whether it needs the
+ * network at all.
+ */
+public final class NewsSync {
+
+    /** Unique name of the periodic work, so it is only ever scheduled once */
+    private static final String PERIODIC_WORK_NAME = "news-sync";
+
+    /** Preferences file holding the sync state, kept apart from the user's settings */
+    private static final String STATE_PREFERENCES = "news-sync";
+    private static final String KEY_SYNCED_AT = "synced_at";
+
+    /** Create a private constructor because no one should ever create a {@link NewsSync} object.*/
+    private NewsSync() {
+    }
+
+    /** Schedule the periodic sync unless it is already scheduled. */
+    public static void schedule(Context context) {
+        enqueue(context, ExistingPeriodicWorkPolicy.KEEP);
+    }
+
+    /** Schedule the periodic sync again, so changes to the sync settings take effect. */
+    public static void reschedule(Context context) {
+        enqueue(context, ExistingPeriodicWorkPolicy.REPLACE);
+    }
+
+    private static void enqueue(Context context, ExistingPeriodicWorkPolicy policy) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean unmeteredOnly = isUnmeteredOnly(context);
+        boolean batteryNotLow = settings.getBoolean(
+                context.getString(R.string.settings_sync_battery_not_low_key),
+                context.getResources().getBoolean(R.bool.settings_sync_battery_not_low_default));
+
+        // Runs are skipped until the constraints are met, rather than failing
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(unmeteredOnly ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(batteryNotLow)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(NewsSyncWorker.class,
+                SYNC_INTERVAL, TimeUnit.MILLISECONDS)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, SYNC_BACKOFF_DELAY, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(PERIODIC_WORK_NAME, policy, request);
+    }
+
+    /**
+     * Fetch the first page of the given query into the cache, revalidating any cached copy.
+     * Failed requests are retried as the policy allows, or not made at all while its circuit is
+     * open; the policy may be null. Return true if the cache now holds the current page.
+     * This is on a background thread.
+     */
+    static boolean refresh(String url, NewsDiskCache cache, NewsFetchPolicy policy) {
+        FetchHandle handle = new FetchHandle();
+        NewsPage page = policy == null ? QueryUtils.fetchNewsPage(url, cache, handle)
+                : policy.execute(handle, attemptHandle ->
+                        QueryUtils.fetchNewsPage(url, cache, attemptHandle));
+        return page != null || handle.getResponseCode() == HTTP_NOT_MODIFIED_CODE;
+    }
+
+    /**
+     * Fetch ahead the text of the first articles of the given queries as the list would merge
+     * them, within the given budget of bytes, so they can be opened without the network.
+     * Only the first pages already cached are read. Return the number of bytes fetched.
+     * This is on a background thread.
+     */
+    static long prefetchArticles(List<String> urls, NewsDiskCache cache, NewsReader reader,
+                                 int maxArticles, long byteBudget) {
+        NewsFeed feed = new NewsFeed(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            NewsPage page = QueryUtils.readCachedPage(cache, urls.get(i));
+            if (page != null) {
+                feed.setFirstPage(i, page);
+            }
+        }
+        return reader.prefetch(feed.getArticles(), maxArticles, byteBudget);
+    }
+
+    /** Return true if the network is only to be used in the background over Wi-Fi. */
+    public static boolean isUnmeteredOnly(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.settings_sync_unmetered_only_key),
+                context.getResources().getBoolean(R.bool.settings_sync_unmetered_only_default));
+    }
+
+    /** Return true if the text of the first articles is to be fetched ahead by every sync. */
+    public static boolean isPrefetchEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.settings_prefetch_articles_key),
+                context.getResources().getBoolean(R.bool.settings_prefetch_articles_default));
+    }
+
+    /** Return the time in milliseconds of the last successful sync, or 0 if there was none. */
+    public static long getSyncedAt(Context context) {
+        return state(context).getLong(KEY_SYNCED_AT, 0);
+    }
+
+    /** Record that the followed queries were just refreshed, in the background or not. */
+    public static void markSynced(Context context) {
+        state(context).edit().putLong(KEY_SYNCED_AT, System.currentTimeMillis()).apply();
+    }
+
+    /** Return how old in milliseconds the stored articles may be before opening the app waits for the network. */
+    public static long getMaxStaleness(Context context) {
+        String minutes = PreferenceManager.getDefaultSharedPreferences(context).getString(
+                context.getString(R.string.settings_max_staleness_key),
+                context.getString(R.string.settings_max_staleness_default));
+        try {
+            return TimeUnit.MINUTES.toMillis(Long.parseLong(minutes));
+        } catch (NumberFormatException e) {
+            return TimeUnit.MINUTES.toMillis(
+                    Long.parseLong(context.getString(R.string.settings_max_staleness_default)));
+        }
+    }
+
+    /** Return true if the stored articles are recent enough to be shown without going to the network. */
+    public static boolean isFresh(Context context) {
+        return isFresh(getSyncedAt(context), System.currentTimeMillis(), getMaxStaleness(context));
+    }
+
+    /** Return true if a sync at the given time is no older than the maximum staleness by now. */
+    static boolean isFresh(long syncedAt, long now, long maxStaleness) {
+        // A clock set backwards makes the last sync look like it is in the future; don't trust it
+        return syncedAt > 0 && syncedAt <= now && now - syncedAt <= maxStaleness;
+    }
+
+    private static SharedPreferences state(Context context) {
+        return context.getApplicationContext().getSharedPreferences(STATE_PREFERENCES, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.List;
+
+import static com.example.android.hughsnewsapp.Constants.MAX_SYNC_ATTEMPTS;
+import static com.example.android.hughsnewsapp.Constants.READER_PREFETCH_ARTICLES;
+import static com.example.android.hughsnewsapp.Constants.READER_PREFETCH_BUDGET;
+import static com.example.android.hughsnewsapp.Constants.SYNC_COALESCE_WINDOW;
+
+/**
+ * Refreshes the first page of each followed query into the {@link NewsDiskCache}, scheduled by
+ * {@link NewsSync}. A run that fails for every query is retried with exponential backoff.
+ * A run that succeeds then fetches ahead the text of the first articles for the reader, within
+ * a budget of bytes per run.
+ */
+public class NewsSyncWorker extends Worker {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsSyncWorker.class.getSimpleName();
+
+    public NewsSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /** This is on a background thread. */
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+
+        // Coalesce with a sync that has only just happened, in the background or in the app
+        long sinceLastSync = System.currentTimeMillis() - NewsSync.getSyncedAt(context);
+        if (sinceLastSync >= 0 && sinceLastSync < SYNC_COALESCE_WINDOW) {
+            return Result.success();
+        }
+
+        NewsDiskCache cache = NewsStorage.getDiskCache(context);
+        NewsFetchPolicy policy = NewsStorage.getFetchPolicy();
+        List<String> urls = NewsQueries.buildRequestUrls(context);
+        int refreshed = 0;
+        for (String url : urls) {
+            if (isStopped()) {
+                // The constraints no longer hold; WorkManager runs us again once they do
+                return Result.retry();
+            }
+            if (NewsSync.refresh(url, cache, policy)) {
+                refreshed++;
+            }
+        }
+
+        if (refreshed > 0) {
+            NewsSync.markSynced(context);
+            if (NewsSync.isPrefetchEnabled(context) && !isStopped()) {
+                NewsSync.prefetchArticles(urls, cache, NewsStorage.getReader(context),
+                        READER_PREFETCH_ARTICLES, READER_PREFETCH_BUDGET);
+            }
+            return Result.success();
+        }
+        Log.e(LOG_TAG, "Sync failed, attempt " + (getRunAttemptCount() + 1));
+        // Give up until the next period rather than backing off for ever
+        return getRunAttemptCount() + 1 < MAX_SYNC_ATTEMPTS ? Result.retry() : Result.failure();
+    }
+}
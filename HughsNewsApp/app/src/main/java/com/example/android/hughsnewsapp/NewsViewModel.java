@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.android.hughsnewsapp.Constants.FETCH_THREADS;
+import static com.example.android.hughsnewsapp.Constants.LIST_WINDOW_ARTICLES;
+import static com.example.android.hughsnewsapp.Constants.LIST_WINDOW_MARGIN;
+import static com.example.android.hughsnewsapp.Constants.MAX_IN_FLIGHT_PAGES;
+import static com.example.android.hughsnewsapp.Constants.MAX_REQUESTS_PER_HOST;
+import static com.example.android.hughsnewsapp.Constants.SEARCH_RESULTS_LIMIT;
+import static com.example.android.hughsnewsapp.Constants.SNAPSHOT_MAX_ARTICLES;
+import static com.example.android.hughsnewsapp.Constants.SOURCE_THREADS;
+import static com.example.android.hughsnewsapp.Constants.STALE_AFTER;
+
+/**
+ * Holds the loaded news articles for {@link NewsActivity} across configuration changes and
+ * drives the {@link NewsFetcher}. The followed queries are fanned out in parallel and merged;
+ * their first pages are only fetched again once they are stale. When the followed queries change,
+ * those left unchanged keep their articles and only the new ones are fetched. While the background
+ * {@link NewsSync} keeps the cache fresh enough, they are only read from the cache.
+ * The first articles are saved in a {@link NewsSnapshot} each time they have been loaded, so
+ * the next cold start can show them before anything else.
+ * The text of each row is made by a {@link NewsRowFormatter} on the thread that loaded the
+ * article, and the relative publication times are refreshed off the main thread.
+ * Near-duplicate articles are grouped under one row by a {@link NewsClusterer}, which takes in
+ * each page as it arrives.
+ * Pull-to-refresh only fetches what was published since the newest article held.
+ * A {@link NewsSourcePoller} polls a few other news feeds while the model lives, and their
+ * articles are merged in with those of the queries.
+ * However many articles are loaded, only a {@link NewsWindow} of them around the rows shown is
+ * made into rows, and the rest are spilled to disk by the {@link NewsSpillStore} as the heap
+ * budget or the {@link NewsMemoryGovernor} calls for. Reading them back goes to disk, so the
+ * fan-out and everything else using the merged articles runs on a feed thread of its own, and
+ * the main thread is only handed the articles of the window, in memory.
+ */
+public class NewsViewModel extends AndroidViewModel {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsViewModel.class.getSimpleName();
+
+    /** An idle feed thread is let go after this many seconds */
+    private static final int FEED_KEEP_ALIVE_SECONDS = 30;
+
+    /** Runs the background fetches and hands their results to the main thread */
+    private final NewsFetchEngine mEngine;
+
+    /** Posts to the main thread */
+    private final Handler mMainHandler;
+
+    /**
+     * Runs the fan-out, whose fetches are delivered here, and everything else reading or changing
+     * the merged articles, one task at a time. The fields only used on it say so.
+     */
+    private final ThreadPoolExecutor mFeedExecutor;
+
+    /**
+     * The articles of the window over those loaded so far, in memory. A new list each time the
+     * articles or the window change.
+     */
+    private final MutableLiveData<List<News>> mArticles = new MutableLiveData<>();
+
+    /** True while the first pages are being fetched */
+    private final MutableLiveData<Boolean> mLoading = new MutableLiveData<>(false);
+
+    /** Why the last load from the network failed, or null if it did not */
+    private final MutableLiveData<NewsFetchPolicy.Failure> mFailure = new MutableLiveData<>();
+
+    /** Articles matching the current search, or null when not searching */
+    private final MutableLiveData<List<News>> mSearchResults = new MutableLiveData<>();
+
+    /** Index over every article fetched, searched without going to the network */
+    private final NewsSearchIndex mSearchIndex;
+
+    /** The article list as last shown */
+    private final NewsSnapshot mSnapshot;
+
+    /** Runs the searches, one at a time off the main thread */
+    private final ExecutorService mBackgroundExecutor = Executors.newSingleThreadExecutor();
+
+    /** Bumped by every search, so the results of a search overtaken by a newer one are dropped */
+    private final AtomicInteger mSearchGeneration = new AtomicInteger();
+
+    /** Runs the followed queries and merges their results. Only used on the feed thread. */
+    private NewsFanOut mFanOut;
+
+    /**
+     * Every article loaded so far, merged from all queries, or null. Only used on the feed
+     * thread.
+     */
+    private List<News> mFeedArticles;
+
+    /** Polls the other news sources while the list is shown, or null */
+    private NewsSourcePoller mPoller;
+
+    /** Counts the times polled articles were dropped, so polls already under way are ignored */
+    private final AtomicInteger mPollGeneration = new AtomicInteger();
+
+    /**
+     * Articles last polled from the other sources, with their rows made. Only used on the feed
+     * thread.
+     */
+    private List<News> mPolledArticles = Collections.emptyList();
+
+    /** Groups the near-duplicate articles, added to as further pages arrive */
+    private final NewsClusterer mClusterer = new NewsClusterer();
+
+    /** The articles made into rows, around those shown. Only used on the feed thread. */
+    private final NewsWindow mWindow = new NewsWindow(LIST_WINDOW_ARTICLES, LIST_WINDOW_MARGIN);
+
+    /** The articles as last made into rows */
+    private List<News> mShown = new ArrayList<>();
+
+    /**
+     * Index among the articles loaded of each article of the window last handed over, by URL,
+     * as those read back from disk are new copies each time
+     */
+    private Map<String, Integer> mShownPositions = Collections.emptyMap();
+
+    /**
+     * Articles the spill store had lost when the first pages were last fetched again for them.
+     * Only used on the feed thread.
+     */
+    private long mRefetchedLost;
+
+    /** Keeps the loaded articles within the heap budget */
+    private final NewsSpillStore mSpillStore;
+
+    /** Gives back memory when the system runs short of it */
+    private final NewsMemoryGovernor mMemoryGovernor;
+
+    /** Forgets the articles grouped so far when the system is low on memory */
+    private final NewsMemoryGovernor.Trimmable mTrimClusterer = level -> {
+        // Called on the main thread, as the clusterer is used; the window is added again as it is shown
+        if (level != NewsMemoryGovernor.Level.UI_HIDDEN) {
+            mClusterer.clear();
+        }
+    };
+
+    /** URLs of the rows whose near duplicates are shown below them */
+    private final Set<String> mExpandedUrls = new HashSet<>();
+
+    /** Makes the text of the rows, replaced on the main thread when the settings change */
+    private volatile NewsRowFormatter mRowFormatter;
+
+    /**
+     * Time of the last successful fetch of the first pages, from
+     * {@link SystemClock#elapsedRealtime()}. Only used on the feed thread.
+     */
+    private long mFetchedAt;
+
+    /**
+     * True if the current load goes to the network, false if it only reads the cache. Only used
+     * on the feed thread.
+     */
+    private boolean mUsingNetwork;
+
+    /**
+     * True if the current load only fetches the queries added since the last full load. Only
+     * used on the feed thread.
+     */
+    private boolean mAddedOnly;
+
+    public NewsViewModel(@NonNull Application application) {
+        super(application);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mFeedExecutor = new ThreadPoolExecutor(1, 1, FEED_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        mFeedExecutor.allowCoreThreadTimeOut(true);
+        mEngine = new NewsFetchEngine(FETCH_THREADS, MAX_REQUESTS_PER_HOST,
+                NewsStorage.getDiskCache(application), NewsStorage.getMemoryCache(),
+                NewsStorage.getFetchPolicy(), mFeedExecutor);
+
+        mSnapshot = NewsStorage.getSnapshot(application);
+        mRowFormatter = NewsQueries.buildRowFormatter(application);
+        mEngine.setRowFormatter(mRowFormatter);
+
+        mSpillStore = NewsStorage.getSpillStore(application);
+        mMemoryGovernor = NewsStorage.getMemoryGovernor(application);
+        mMemoryGovernor.register(mTrimClusterer);
+
+        // Articles stored by earlier runs can be found too once their pages are indexed
+        mSearchIndex = NewsStorage.getSearchIndex(application);
+        final NewsDiskCache cache = NewsStorage.getDiskCache(application);
+        mBackgroundExecutor.execute(() -> QueryUtils.indexCachedPages(cache));
+    }
+
+    /** Return the articles of the window over those loaded so far */
+    public LiveData<List<News>> getArticles() {
+        return mArticles;
+    }
+
+    /** Return whether the first pages are being fetched */
+    public LiveData<Boolean> isLoading() {
+        return mLoading;
+    }
+
+    /** Return why the last load from the network failed, or null if it did not */
+    public LiveData<NewsFetchPolicy.Failure> getFailure() {
+        return mFailure;
+    }
+
+    /** Return the articles matching the current search, or null when not searching */
+    public LiveData<List<News>> getSearchResults() {
+        return mSearchResults;
+    }
+
+    /** Return the formatter the text of the rows is made by */
+    public NewsRowFormatter getRowFormatter() {
+        return mRowFormatter;
+    }
+
+    /**
+     * Show the articles saved when they were last loaded, unless articles are already loaded.
+     * This reads a small file on the main thread, so the first screen of rows can be bound as
+     * the activity is created, before anything is fetched.
+     */
+    public void restoreSnapshot() {
+        if (mArticles.getValue() != null) {
+            return;
+        }
+        List<News> articles = mSnapshot.read();
+        if (articles != null) {
+            mRowFormatter.prepare(articles, System.currentTimeMillis());
+            NewsClusterer.sign(articles);
+            // Fewer than fill a window
+            mShownPositions = positionsOf(articles, 0);
+            mArticles.setValue(articles);
+        }
+    }
+
+    /** Search the articles fetched so far. An empty or null query ends the search. */
+    public void search(final String query) {
+        final int generation = mSearchGeneration.incrementAndGet();
+        if (query == null || query.trim().isEmpty()) {
+            mSearchResults.setValue(null);
+            return;
+        }
+        final NewsRowFormatter rowFormatter = mRowFormatter;
+        mBackgroundExecutor.execute(() -> {
+            final List<News> results = mSearchIndex.search(query, SEARCH_RESULTS_LIMIT);
+            rowFormatter.prepare(results, System.currentTimeMillis());
+            NewsClusterer.sign(results);
+            // Checked again on the main thread, where the search may have been ended meanwhile
+            mMainHandler.post(() -> {
+                if (generation == mSearchGeneration.get()) {
+                    mSearchResults.setValue(results);
+                }
+            });
+        });
+    }
+
+    /**
+     * Return the rows to show the given articles in, those of the window or the search results,
+     * with near duplicates grouped under the first of them. Only the articles not seen before are
+     * compared with the others. The list is not changed afterwards.
+     */
+    public List<NewsListItem> buildRows(List<News> articles) {
+        mShown = articles;
+        // Articles the window has long moved past are forgotten, and grouped again if shown again
+        if (mClusterer.size() > 4 * LIST_WINDOW_ARTICLES) {
+            mClusterer.clear();
+        }
+        return mClusterer.collapse(mShown, mExpandedUrls);
+    }
+
+    /** Show the near duplicates grouped under the row of the given article, or hide them again. */
+    public void toggleSimilar(News news) {
+        if (!mExpandedUrls.remove(news.getUrl())) {
+            mExpandedUrls.add(news.getUrl());
+        }
+    }
+
+    /**
+     * Load the first page of each of the given query URLs, unless they are already loading or
+     * were fetched recently enough to still be fresh.
+     */
+    public void load(final List<String> urls) {
+        updateRowFormatter();
+        mFeedExecutor.execute(() -> loadFeed(urls));
+    }
+
+    /** As {@link #load}, on the feed thread. */
+    private void loadFeed(List<String> urls) {
+        boolean sameQueries = mFanOut != null && urls.equals(mFanOut.getUrls());
+        boolean fresh = SystemClock.elapsedRealtime() - mFetchedAt < STALE_AFTER;
+        if (sameQueries && (mFanOut.isRunning() || (mFetchedAt != 0 && fresh))) {
+            return;
+        }
+        if (!sameQueries) {
+            NewsFanOut previous = mFanOut;
+            mFanOut = new NewsFanOut(urls, MAX_IN_FLIGHT_PAGES, mEngine, mSpillStore, new NewsFanOut.Listener() {
+                @Override
+                public void onArticlesChanged(List<News> articles) {
+                    mFeedArticles = articles;
+                    showWindow();
+                }
+
+                @Override
+                public void onFinished(boolean anySucceeded) {
+                    if (!mUsingNetwork && !anySucceeded) {
+                        // Nothing was cached for these queries after all
+                        if (mAddedOnly) {
+                            startAdded(true);
+                        } else {
+                            start(true);
+                        }
+                        return;
+                    }
+                    if (mUsingNetwork) {
+                        postValue(mFailure, anySucceeded ? null
+                                : NewsStorage.getFetchPolicy().getLastFailure());
+                    }
+                    if (anySucceeded) {
+                        saveSnapshot(mFeedArticles);
+                        // Only a load of every query makes them all fresh
+                        if (!mAddedOnly) {
+                            mFetchedAt = SystemClock.elapsedRealtime();
+                            if (mUsingNetwork) {
+                                NewsSync.markSynced(getApplication());
+                            }
+                        }
+                    }
+                    postValue(mLoading, false);
+                }
+            });
+            if (previous == null && !mPolledArticles.isEmpty()) {
+                mFanOut.setPolledArticles(mPolledArticles);
+            }
+            // The queries left unchanged by a change of settings keep their articles, and are
+            // not fetched again unless they have gone stale
+            int takenOver = previous == null ? 0 : mFanOut.takeOver(previous);
+            if (previous != null) {
+                // Its merged list was emptied; the window shown stays until articles arrive
+                mFeedArticles = takenOver > 0 ? mFanOut.getArticles() : null;
+            }
+            if (takenOver > 0) {
+                showWindow();
+                if (mFetchedAt != 0 && fresh) {
+                    startAdded(!NewsSync.isFresh(getApplication()));
+                    return;
+                }
+            }
+            mFetchedAt = 0;
+        }
+        // Opening the app is a pure local read unless the last sync is older than the maximum
+        // staleness, in which case the list waits for the network
+        start(!NewsSync.isFresh(getApplication()));
+    }
+
+    /**
+     * Fetch only what each of the given queries published since the newest article held and put
+     * it on top of the list, for pull-to-refresh. Nothing more is fetched while a load is running,
+     * and the first pages are fetched again if none could be loaded yet.
+     */
+    public void refresh(final List<String> urls) {
+        updateRowFormatter();
+        mFeedExecutor.execute(() -> {
+            if (mFanOut == null || !urls.equals(mFanOut.getUrls())) {
+                // Only the queries added by a change of settings are fetched at first
+                loadFeed(urls);
+            }
+            if (mFanOut.isRunning()) {
+                return;
+            }
+            if (mFetchedAt == 0) {
+                start(true);
+                return;
+            }
+            mAddedOnly = false;
+            mUsingNetwork = true;
+            postValue(mLoading, true);
+            mFanOut.refresh();
+        });
+    }
+
+    /**
+     * Poll the given other news sources, merging their articles into the list, until
+     * {@link #stopPolling}. Nothing is done if they are already being polled.
+     */
+    public void startPolling(List<NewsSource> sources) {
+        if (mPoller != null) {
+            return;
+        }
+        mPoller = new NewsSourcePoller(sources, SOURCE_THREADS, MAX_REQUESTS_PER_HOST,
+                mMainHandler::post, this::onPolled);
+        mPoller.start();
+    }
+
+    /** Stop polling the other news sources. Their articles stay in the list. */
+    public void stopPolling() {
+        if (mPoller != null) {
+            stopPolling();
+            mPoller = null;
+        }
+    }
+
+    /** Stop polling the other news sources and take their articles out of the list. */
+    public void dropPolledArticles() {
+        stopPolling();
+        mPollGeneration.incrementAndGet();
+        mFeedExecutor.execute(() -> {
+            if (mPolledArticles.isEmpty()) {
+                return;
+            }
+            mPolledArticles = Collections.emptyList();
+            if (mFanOut != null) {
+                mFanOut.setPolledArticles(mPolledArticles);
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread with the articles just polled from the other sources. Their rows
+     * are made off the main thread before they are merged in.
+     */
+    private void onPolled(final List<News> timeline) {
+        if (mPoller == null) {
+            // Handed over as polling stopped
+            return;
+        }
+        final int generation = mPollGeneration.get();
+        final NewsRowFormatter rowFormatter = mRowFormatter;
+        mBackgroundExecutor.execute(() -> {
+            rowFormatter.prepare(timeline, System.currentTimeMillis());
+            NewsClusterer.sign(timeline);
+            mFeedExecutor.execute(() -> {
+                if (generation != mPollGeneration.get()) {
+                    return;
+                }
+                mPolledArticles = timeline;
+                if (mFanOut != null) {
+                    mFanOut.setPolledArticles(timeline);
+                }
+            });
+        });
+    }
+
+    /** Replace the row formatter if the settings or the locale changed how rows are shown. */
+    private void updateRowFormatter() {
+        NewsRowFormatter rowFormatter = NewsQueries.buildRowFormatter(getApplication());
+        if (!rowFormatter.sameAs(mRowFormatter)) {
+            mRowFormatter = rowFormatter;
+            mEngine.setRowFormatter(rowFormatter);
+        }
+    }
+
+    /**
+     * Bring the relative publication times of the articles shown up to date off the main thread,
+     * then run the given callback on the main thread if any of them changed.
+     */
+    public void refreshRelativeTimes(final Runnable onChanged) {
+        // Only the articles of the window are made into rows
+        final List<News> shown = new ArrayList<>(mShown);
+        List<News> results = mSearchResults.getValue();
+        if (results != null) {
+            shown.addAll(results);
+        }
+        if (shown.isEmpty()) {
+            return;
+        }
+        final NewsRowFormatter rowFormatter = mRowFormatter;
+        mBackgroundExecutor.execute(() -> {
+            if (rowFormatter.refreshRelativeTimes(shown, System.currentTimeMillis()) > 0) {
+                mMainHandler.post(onChanged);
+            }
+        });
+    }
+
+    /** Fetch the first page of every query, on the feed thread. */
+    private void start(boolean useNetwork) {
+        mAddedOnly = false;
+        mUsingNetwork = useNetwork;
+        postValue(mLoading, true);
+        mFanOut.start(useNetwork);
+    }
+
+    /** Fetch the first page of the queries added since the last full load, on the feed thread. */
+    private void startAdded(boolean useNetwork) {
+        mAddedOnly = true;
+        mUsingNetwork = useNetwork;
+        if (mFanOut.startAdded(useNetwork)) {
+            postValue(mLoading, true);
+        }
+    }
+
+    /**
+     * Hand the articles of the window over to the main thread, read back from disk if they were
+     * spilled. This is on the feed thread.
+     */
+    private void showWindow() {
+        final List<News> window = mWindow.slice(mFeedArticles);
+        final Map<String, Integer> positions = positionsOf(window, mWindow.getStart());
+        if (removeLost(window)) {
+            // Not from within the fan-out, which is delivering the articles
+            mFeedExecutor.execute(this::refetchLost);
+        }
+        // Those read back from disk are made without their rows and title signatures
+        mRowFormatter.prepare(window, System.currentTimeMillis());
+        NewsClusterer.sign(window);
+        mMainHandler.post(() -> {
+            mShownPositions = positions;
+            mArticles.setValue(window);
+        });
+    }
+
+    /** Return the index of each of the given articles by URL, counting from the given one. */
+    private static Map<String, Integer> positionsOf(List<News> articles, int start) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < articles.size(); i++) {
+            positions.put(articles.get(i).getUrl(), start + i);
+        }
+        return positions;
+    }
+
+    /**
+     * Fetch the first pages again for articles the spill store could not read back, unless they
+     * are being fetched or were lost before the last time. This is on the feed thread.
+     */
+    private void refetchLost() {
+        long lost = mSpillStore.getLostArticles();
+        if (mFanOut == null || mFanOut.isRunning() || lost <= mRefetchedLost) {
+            return;
+        }
+        mRefetchedLost = lost;
+        start(true);
+    }
+
+    /** Remove the stand-ins for articles lost from the spill store, and return true if any were. */
+    private static boolean removeLost(List<News> articles) {
+        boolean removed = false;
+        Iterator<News> iterator = articles.iterator();
+        while (iterator.hasNext()) {
+            if (NewsSpillStore.isLost(iterator.next())) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /** Set the value on the main thread, in order with the others set from the feed thread. */
+    private <T> void postValue(final MutableLiveData<T> liveData, final T value) {
+        mMainHandler.post(() -> liveData.setValue(value));
+    }
+
+    /** Save the first of the given articles as the snapshot. This is on the feed thread. */
+    private void saveSnapshot(List<News> articles) {
+        if (articles == null) {
+            return;
+        }
+        List<News> snapshot = new ArrayList<>(
+                articles.subList(0, Math.min(articles.size(), SNAPSHOT_MAX_ARTICLES)));
+        removeLost(snapshot);
+        try {
+            mSnapshot.write(snapshot);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the snapshot.", e);
+        }
+    }
+
+    /** Store the time to first article just recorded, with those of earlier launches. */
+    public void saveMetrics() {
+        final Application application = getApplication();
+        mBackgroundExecutor.execute(() -> NewsStorage.saveMetrics(application));
+    }
+
+    /**
+     * Called as the list of the given rows scrolls, to prefetch further pages near the end of the
+     * articles, and to move the window once the rows shown near one of its edges. The rows are
+     * then made again around those shown.
+     */
+    public void onScrolled(List<NewsListItem> rows, int firstVisible, int lastVisible,
+                           final int prefetchDistance) {
+        if (mArticles.getValue() == null || firstVisible < 0 || lastVisible >= rows.size()) {
+            return;
+        }
+        Integer firstShown = mShownPositions.get(rows.get(firstVisible).getNews().getUrl());
+        Integer lastShown = mShownPositions.get(rows.get(lastVisible).getNews().getUrl());
+        if (firstShown == null || lastShown == null) {
+            // The rows are still being made for a new window
+            return;
+        }
+        final int first = firstShown;
+        final int last = lastShown;
+        mFeedExecutor.execute(() -> {
+            if (mFeedArticles == null) {
+                // Only the snapshot is shown so far
+                return;
+            }
+            int count = mFeedArticles.size();
+            mFanOut.onScrolled(last, count, prefetchDistance);
+            if (mWindow.onShown(first, last, count)) {
+                showWindow();
+            }
+        });
+    }
+
+    @Override
+    protected void onCleared() {
+        // The activity is finishing for good, abort whatever is still in flight and give the
+        // chunks of the articles back. Tasks already queued for the feed thread run first, and
+        // find nothing more is delivered.
+        mFeedExecutor.execute(() -> {
+            if (mFanOut != null) {
+                mFanOut.release();
+                mFeedArticles = null;
+            }
+            mEngine.shutdown();
+        });
+        mPoller.stop();
+        mMemoryGovernor.unregister(mTrimClusterer);
+        // Lets a search still running finish
+        mBackgroundExecutor.shutdown();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows the text of an article fetched ahead by {@link NewsReader}, read from storage rather than
+ * loaded as a web page. The whole article can still be opened in the browser from the menu, and
+ * is if its text turns out to be gone.
+ */
+public class ReaderActivity extends AppCompatActivity {
+
+    /** Extras of the intent: the web URL and title of the article */
+    private static final String EXTRA_URL = "url";
+    private static final String EXTRA_TITLE = "title";
+
+    /** Reads the stored text off the main thread */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private String mUrl;
+
+    /** Return the intent showing the given article, whose text must be stored. */
+    public static Intent newIntent(Context context, News news) {
+        return new Intent(context, ReaderActivity.class)
+                .putExtra(EXTRA_URL, news.getUrl())
+                .putExtra(EXTRA_TITLE, news.getTitle());
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstance) {
+        super.onCreate(savedInstance);
+        setContentView(R.layout.reader_activity);
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+        mUrl = getIntent().getStringExtra(EXTRA_URL);
+        TextView titleView = findViewById(R.id.reader_title_textView);
+        titleView.setText(getIntent().getStringExtra(EXTRA_TITLE));
+
+        final NewsReader reader = NewsStorage.getReader(this);
+        mExecutor.execute(() -> {
+            final String bodyText = reader.getBodyText(mUrl);
+            runOnUiThread(() -> showBodyText(bodyText));
+        });
+    }
+
+    private void showBodyText(String bodyText) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        if (bodyText == null) {
+            // Dropped from storage since the tap, as too old or to make room
+            openInBrowser();
+            finish();
+            return;
+        }
+        findViewById(R.id.reader_loading_indicator).setVisibility(View.GONE);
+        TextView bodyView = findViewById(R.id.reader_body_textView);
+        bodyView.setText(bodyText);
+        // Drawn as the next frame
+        NewsTrace.markArticleShown();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.reader, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            openInBrowser();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void openInBrowser() {
+        new NewsBrowser(this).open(this, mUrl);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mExecutor.shutdownNow();
+    }
+}
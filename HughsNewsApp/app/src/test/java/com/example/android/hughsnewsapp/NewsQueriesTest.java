@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NewsQueriesTest {
+
+    @Test
+    public void buildQueries_makesOneQueryPerTopicAndSection() {
+        GuardianQuery template = new GuardianQuery.Builder().pageSize(10).build();
+        List<GuardianQuery> queries =
+                NewsQueries.buildQueries(template, "brexit, , northern ireland protocol", "politics,");
+
+        assertEquals(3, queries.size());
+        assertEquals("northern ireland protocol", queries.get(1).getTopic());
+        assertEquals("politics", queries.get(2).getSection());
+        assertEquals(10, queries.get(2).getPageSize());
+        assertEquals(1, NewsQueries.buildQueries(template, " ", "").size());
+    }
+
+    @Test
+    public void fromDate_countsBackWholeDaysInUtc() {
+        // 2021-03-01T00:30Z
+        long now = 1614558600000L;
+        assertEquals("2021-02-28", NewsQueries.fromDate(1, now));
+        assertEquals("2021-02-22", NewsQueries.fromDate(7, now));
+        assertNull(NewsQueries.fromDate(0, now));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class NewsSyncTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+    private NewsDiskCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        final byte[] page = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        mCache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, 60 * MINUTE);
+        mServer = new StubServer()
+                .handle("/search", exchange -> {
+                    if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        StubServer.respond(exchange, 304, null);
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                    StubServer.respond(exchange, 200, page);
+                })
+                .handle("/broken", exchange -> StubServer.respond(exchange, 503, null));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void refresh_storesThePageThenCountsARevalidationAsSuccess() {
+        String url = mServer.url("/search?q=brexit");
+
+        assertTrue(NewsSync.refresh(url, mCache, null));
+        assertNotNull(mCache.get(url));
+        assertTrue(NewsSync.refresh(url, mCache, null));
+        assertEquals(2, mServer.requests().size());
+    }
+
+    @Test
+    public void refresh_reportsAFailedRequest() {
+        assertFalse(NewsSync.refresh(mServer.url("/broken"), mCache, null));
+    }
+
+    @Test
+    public void isFresh_withinTheMaximumStalenessOnly() {
+        long now = 1_000 * MINUTE;
+
+        assertTrue(NewsSync.isFresh(now - 119 * MINUTE, now, 120 * MINUTE));
+        assertFalse(NewsSync.isFresh(now - 121 * MINUTE, now, 120 * MINUTE));
+        // Never synced, or synced "in the future" by a clock that has since been set back
+        assertFalse(NewsSync.isFresh(0, now, 120 * MINUTE));
+        assertFalse(NewsSync.isFresh(now + MINUTE, now, 120 * MINUTE));
+        // A maximum staleness of zero always waits for the network
+        assertFalse(NewsSync.isFresh(now - 1, now, 0));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.android.hughsnewsapp;
+
+public class Constants {
+    final static int HTTP_SUCCESS_CODE = 200;
+    final static int HTTP_SET_READ_TIME = 10000;
+    final static int HTTP_SET_CONNECT_TIMEOUT = 15000;
+    final static int HTTP_NOT_MODIFIED_CODE = 304;
+    final static long DISK_CACHE_MAX_BYTES = 4 * 1024 * 1024;
+    final static long DISK_CACHE_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+    final static int PAGE_SIZE = 20;
+    final static int MAX_IN_FLIGHT_PAGES = 2;
+    final static int PREFETCH_DISTANCE = 5;
+    final static int FETCH_THREADS = 6;
+    final static int MAX_REQUESTS_PER_HOST = 4;
+    final static long STALE_AFTER = 5 * 60 * 1000;
+    final static long SYNC_INTERVAL = 60 * 60 * 1000;
+    final static long SYNC_BACKOFF_DELAY = 30 * 1000;
+    final static int MAX_SYNC_ATTEMPTS = 5;
+    final static long SYNC_COALESCE_WINDOW = 60 * 1000;
+    final static int SEARCH_RESULTS_LIMIT = 200;
+    final static long MEMORY_CACHE_MAX_BYTES = 2 * 1024 * 1024;
+    final static long MEMORY_CACHE_TTL = 30 * 1000;
+    final static int FETCH_MAX_ATTEMPTS = 3;
+    final static long FETCH_BACKOFF_BASE = 500;
+    final static long FETCH_BACKOFF_MAX = 8 * 1000;
+    final static long FETCH_MAX_RETRY_AFTER = 30 * 1000;
+    final static int CIRCUIT_FAILURE_THRESHOLD = 5;
+    final static long CIRCUIT_OPEN_TIME = 60 * 1000;
+    final static int SNAPSHOT_MAX_ARTICLES = 100;
+    final static int IMAGE_THREADS = 3;
+    final static int IMAGE_MEMORY_CACHE_HEAP_DIVISOR = 8;
+    final static long THUMBNAIL_DISK_CACHE_MAX_BYTES = 20 * 1024 * 1024;
+    final static long THUMBNAIL_DISK_CACHE_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+    final static int MAX_IMAGE_BYTES = 1024 * 1024;
+    final static int TRACE_MAX_SPANS = 2048;
+    final static int SECTION_LABEL_MAX_LENGTH = 20;
+    final static long RELATIVE_TIME_REFRESH_INTERVAL = 60 * 1000;
+    final static int CLUSTER_BANDS = 10;
+    final static int CLUSTER_BAND_ROWS = 3;
+    final static double CLUSTER_MIN_SIMILARITY = 0.5;
+    final static int CLUSTER_BUCKET_LIMIT = 32;
+    final static int READER_PREFETCH_ARTICLES = 10;
+    final static long READER_PREFETCH_BUDGET = 512 * 1024;
+    final static long READER_STORE_MAX_BYTES = 4 * 1024 * 1024;
+    final static long READER_STORE_MAX_AGE = 2L * 24 * 60 * 60 * 1000;
+    final static int BROWSER_LIKELY_ROWS = 4;
+    final static int DELTA_MAX_PAGES = 3;
+    final static long SOURCE_START_SPREAD = 2 * 1000;
+    final static long SOURCE_HOST_BUSY_DELAY = 250;
+    final static int SOURCE_THREADS = 2;
+    final static long SOURCE_POLL_INTERVAL = 15 * 60 * 1000;
+    final static int SPILL_CHUNK_ARTICLES = 64;
+    final static int SPILL_ARTICLE_BYTES = 1024;
+    final static int LIST_HEAP_BUDGET_DIVISOR = 8;
+    final static int LIST_WINDOW_ARTICLES = 600;
+    final static int LIST_WINDOW_MARGIN = 100;
+}
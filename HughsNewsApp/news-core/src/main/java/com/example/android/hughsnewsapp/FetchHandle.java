@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Future;
+
+/**
+ * A handle on one fetch submitted to a {@link NewsFetcher}. Cancelling it disconnects the
+ * {@link HttpURLConnection} the fetch is reading from, which aborts a blocked socket read,
+ * and guarantees that no callback is made for the fetch afterwards.
+ */
+public class FetchHandle {
+
+    private boolean mCancelled;
+
+    /** Connection the fetch is currently using, if any */
+    private HttpURLConnection mConnection;
+
+    /** Background task running the fetch */
+    private Future<?> mFuture;
+
+    /** HTTP status of the last response, or 0 if none was received */
+    private volatile int mResponseCode;
+
+    /** Why the last attempt failed, or null if it did not */
+    private volatile NewsFetchPolicy.Failure mFailure;
+
+    /** Wait in milliseconds the server asked for before the next request, or 0 */
+    private volatile long mRetryAfter;
+
+    /** Run once the fetch is cancelled, if it ever is */
+    private Runnable mCancelListener;
+
+    /** Cancel the fetch. Safe to call from any thread, any number of times. */
+    public void cancel() {
+        HttpURLConnection connection;
+        Future<?> future;
+        Runnable cancelListener;
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            connection = mConnection;
+            future = mFuture;
+            cancelListener = mCancelListener;
+        }
+        if (cancelListener != null) {
+            cancelListener.run();
+        }
+        if (future != null) {
+            future.cancel(true);
+        }
+        if (connection != null) {
+            // Closes the socket, so a read blocked on it fails straight away
+            connection.disconnect();
+        }
+    }
+
+    /** Return true if the fetch has been cancelled */
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /** Return the HTTP status of the last response, or 0 if none was received */
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    /** Return why the last attempt failed, or null if it succeeded or there was none */
+    public NewsFetchPolicy.Failure getFailure() {
+        return mFailure;
+    }
+
+    /** Return the wait in milliseconds the server asked for in a Retry-After header, or 0 */
+    public long getRetryAfter() {
+        return mRetryAfter;
+    }
+
+    void setFuture(Future<?> future) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mFuture = future;
+                return;
+            }
+        }
+        future.cancel(true);
+    }
+
+    /**
+     * Set what to run when the fetch is cancelled, on the cancelling thread. Runs it straight
+     * away if the fetch has already been cancelled.
+     */
+    void setCancelListener(Runnable cancelListener) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mCancelListener = cancelListener;
+                return;
+            }
+        }
+        cancelListener.run();
+    }
+
+    /** Called before the connection is used. Throws if the fetch was already cancelled. */
+    synchronized void attach(HttpURLConnection connection) throws IOException {
+        if (mCancelled) {
+            throw new IOException("Fetch cancelled");
+        }
+        mConnection = connection;
+    }
+
+    void setResponseCode(int responseCode) {
+        mResponseCode = responseCode;
+    }
+
+    void setFailure(NewsFetchPolicy.Failure failure, long retryAfter) {
+        mFailure = failure;
+        mRetryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * A typed Guardian content search: what to look for, in which order, how many results per page
+ * and which of the optional tags and fields to send back. Only the optional parts the list
+ * shows should be asked for, since each one makes every result in the response larger.
+ * Equal queries build identical request URLs, so the caches keyed on them are shared.
+ */
+public final class GuardianQuery {
+
+    /** URL for news data from the Guardian news site dataset */
+    private static final String GUARDIAN_REQUEST_URL = "https://content.guardianapis.com/search";
+
+    /** Largest page the API serves */
+    static final int MAX_PAGE_SIZE = 200;
+
+    /** Dates as the API takes them: a day, or a UTC time to the second */
+    private static final Pattern DATE =
+            Pattern.compile("\\d{4}-\\d{2}-\\d{2}(T\\d{2}:\\d{2}:\\d{2}Z)?");
+
+    /** Order of the results */
+    public enum Order {
+        NEWEST("newest"),
+        OLDEST("oldest"),
+        RELEVANCE("relevance");
+
+        private final String mValue;
+
+        Order(String value) {
+            mValue = value;
+        }
+
+        /** Return the value of the order-by parameter */
+        public String getValue() {
+            return mValue;
+        }
+
+        /** Return the order with the given order-by value, or the default one if there is none. */
+        public static Order fromValue(String value, Order defaultOrder) {
+            for (Order order : values()) {
+                if (order.mValue.equals(value)) {
+                    return order;
+                }
+            }
+            return defaultOrder;
+        }
+    }
+
+    private final String mTopic;
+    private final String mSection;
+    private final Order mOrder;
+    private final int mPageSize;
+    private final String mFromDate;
+    private final String mToDate;
+    private final boolean mShowContributors;
+    private final boolean mShowThumbnails;
+    private final String mApiKey;
+
+    private GuardianQuery(Builder builder) {
+        mTopic = builder.mTopic;
+        mSection = builder.mSection;
+        mOrder = builder.mOrder;
+        mPageSize = builder.mPageSize;
+        mFromDate = builder.mFromDate;
+        mToDate = builder.mToDate;
+        mShowContributors = builder.mShowContributors;
+        mShowThumbnails = builder.mShowThumbnails;
+        mApiKey = builder.mApiKey;
+    }
+
+    /** Return the search terms (q=), or null */
+    public String getTopic() { return mTopic; }
+
+    /** Return the section id (section=), or null */
+    public String getSection() { return mSection; }
+
+    /** Return the order of the results */
+    public Order getOrder() { return mOrder; }
+
+    /** Return the number of results per page */
+    public int getPageSize() { return mPageSize; }
+
+    /** Return the earliest publication date (yyyy-MM-dd or an ISO-8601 UTC time) of the results, or null */
+    public String getFromDate() { return mFromDate; }
+
+    /** Return the latest publication date (yyyy-MM-dd or an ISO-8601 UTC time) of the results, or null */
+    public String getToDate() { return mToDate; }
+
+    /** Return true if the contributor tags, read for the author, are asked for */
+    public boolean showsContributors() { return mShowContributors; }
+
+    /** Return true if the thumbnail field is asked for */
+    public boolean showsThumbnails() { return mShowThumbnails; }
+
+    /** Return a builder starting from this query. */
+    public Builder newBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Return the request URL of the first page of results. The parameters are always in the
+     * same order and encoded as {@code android.net.Uri} encodes them, e.g.
+     * https://content.guardianapis.com/search?order-by=newest&show-tags=contributor&show-fields=thumbnail&page-size=20&q=brexit&api-key=test
+     */
+    public String toUrl() {
+        StringBuilder url = new StringBuilder(GUARDIAN_REQUEST_URL);
+        char separator = '?';
+        separator = append(url, separator, "order-by", mOrder.getValue());
+        if (mShowContributors) {
+            separator = append(url, separator, "show-tags", "contributor");
+        }
+        if (mShowThumbnails) {
+            separator = append(url, separator, "show-fields", "thumbnail");
+        }
+        separator = append(url, separator, "page-size", String.valueOf(mPageSize));
+        if (mSection != null) {
+            separator = append(url, separator, "section", mSection);
+        }
+        if (mTopic != null) {
+            separator = append(url, separator, "q", mTopic);
+        }
+        if (mFromDate != null) {
+            separator = append(url, separator, "from-date", mFromDate);
+        }
+        if (mToDate != null) {
+            separator = append(url, separator, "to-date", mToDate);
+        }
+        append(url, separator, "api-key", mApiKey);
+        return url.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof GuardianQuery && toUrl().equals(((GuardianQuery) other).toUrl());
+    }
+
+    @Override
+    public int hashCode() {
+        return toUrl().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toUrl();
+    }
+
+    /**
+     * Return the given request URL changed to ask, newest first, only for what was published
+     * after the given time, such as that of the newest article already held: the delta of its
+     * results. The API includes content published at the from-date itself, to the second, so the
+     * delta starts a second later and holds no results at all when nothing new was published.
+     * Return null if the URL has a to-date, as nothing newer ever comes in then.
+     */
+    static String deltaUrl(String url, long newestTime) {
+        int start = url.indexOf('?');
+        StringBuilder delta = new StringBuilder(url.length() + 40)
+                .append(start < 0 ? url : url.substring(0, start));
+        char separator = '?';
+        if (start >= 0) {
+            for (String parameter : url.substring(start + 1).split("&")) {
+                if (parameter.startsWith("to-date=")) {
+                    return null;
+                }
+                if (parameter.isEmpty() || parameter.startsWith("order-by=")
+                        || parameter.startsWith("from-date=") || parameter.startsWith("page=")) {
+                    continue;
+                }
+                delta.append(separator).append(parameter);
+                separator = '&';
+            }
+        }
+        separator = append(delta, separator, "order-by", Order.NEWEST.getValue());
+        append(delta, separator, "from-date", NewsDates.formatIso(newestTime + 1000));
+        return delta.toString();
+    }
+
+    private static char append(StringBuilder url, char separator, String name, String value) {
+        url.append(separator).append(name).append('=').append(encode(value));
+        return '&';
+    }
+
+    /**
+     * Return the value with everything but letters, digits and _-!.~'()* percent encoded as
+     * UTF-8, as {@code android.net.Uri.encode(String)} does, which is not available off Android.
+     */
+    static String encode(String value) {
+        StringBuilder encoded = new StringBuilder(value.length());
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || "_-!.~'()*".indexOf(c) >= 0) {
+                encoded.append(c);
+            } else {
+                encoded.append('%')
+                        .append(Character.toUpperCase(Character.forDigit((c >> 4) & 0xf, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return encoded.toString();
+    }
+
+    /** Builds a {@link GuardianQuery}. Everything but the API key is optional. */
+    public static final class Builder {
+        private String mTopic;
+        private String mSection;
+        private Order mOrder = Order.NEWEST;
+        private int mPageSize = Constants.PAGE_SIZE;
+        private String mFromDate;
+        private String mToDate;
+        private boolean mShowContributors = true;
+        private boolean mShowThumbnails = true;
+        private String mApiKey = "test";
+
+        public Builder() {
+        }
+
+        private Builder(GuardianQuery query) {
+            mTopic = query.mTopic;
+            mSection = query.mSection;
+            mOrder = query.mOrder;
+            mPageSize = query.mPageSize;
+            mFromDate = query.mFromDate;
+            mToDate = query.mToDate;
+            mShowContributors = query.mShowContributors;
+            mShowThumbnails = query.mShowThumbnails;
+            mApiKey = query.mApiKey;
+        }
+
+        /** Search for the given terms, or any content if null or blank. */
+        public Builder topic(String topic) {
+            mTopic = trimToNull(topic);
+            return this;
+        }
+
+        /** Only return content from the section with the given id, or from any if null or blank. */
+        public Builder section(String section) {
+            mSection = trimToNull(section);
+            return this;
+        }
+
+        public Builder orderBy(Order order) {
+            if (order == null) {
+                throw new IllegalArgumentException("order == null");
+            }
+            mOrder = order;
+            return this;
+        }
+
+        /** Return the given number of results per page, from 1 to 200. */
+        public Builder pageSize(int pageSize) {
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("page size out of range: " + pageSize);
+            }
+            mPageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Only return content published on or after the given date (yyyy-MM-dd) or UTC time
+         * (yyyy-MM-ddTHH:mm:ssZ), or null.
+         */
+        public Builder fromDate(String date) {
+            mFromDate = checkDate(date);
+            return this;
+        }
+
+        /**
+         * Only return content published on or before the given date (yyyy-MM-dd) or UTC time
+         * (yyyy-MM-ddTHH:mm:ssZ), or null.
+         */
+        public Builder toDate(String date) {
+            mToDate = checkDate(date);
+            return this;
+        }
+
+        /** Ask for the contributor tags, which the author is read from. */
+        public Builder showContributors(boolean show) {
+            mShowContributors = show;
+            return this;
+        }
+
+        /** Ask for the thumbnail field. */
+        public Builder showThumbnails(boolean show) {
+            mShowThumbnails = show;
+            return this;
+        }
+
+        public Builder apiKey(String apiKey) {
+            if (trimToNull(apiKey) == null) {
+                throw new IllegalArgumentException("apiKey is empty");
+            }
+            mApiKey = apiKey.trim();
+            return this;
+        }
+
+        public GuardianQuery build() {
+            if (mFromDate != null && mToDate != null && mFromDate.compareTo(mToDate) > 0) {
+                throw new IllegalArgumentException("from date " + mFromDate + " after to date " + mToDate);
+            }
+            return new GuardianQuery(this);
+        }
+
+        private static String checkDate(String date) {
+            if (date != null && !DATE.matcher(date).matches()) {
+                throw new IllegalArgumentException("not a yyyy-MM-dd date or UTC time: " + date);
+            }
+            return date;
+        }
+
+        private static String trimToNull(String value) {
+            if (value == null) {
+                return null;
+            }
+            String trimmed = value.trim();
+            return trimmed.isEmpty() ? null : trimmed;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the requests in flight to each host, with one semaphore per host shared by every
+ * thread requesting from it.
+ */
+final class HostPermits {
+
+    /** Maximum number of requests in flight to one host */
+    private final int mMaxPerHost;
+
+    /** Permits for the requests in flight, by host */
+    private final ConcurrentMap<String, Semaphore> mPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param maxPerHost maximum number of requests in flight to one host
+     */
+    HostPermits(int maxPerHost) {
+        mMaxPerHost = maxPerHost;
+    }
+
+    /** Return the permits limiting the requests in flight to the host of the given URL. */
+    Semaphore forUrl(String url) {
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            // The request will fail anyway, it needs no limit
+            host = "";
+        }
+        // ConcurrentHashMap.computeIfAbsent needs API 24
+        Semaphore permits = mPermits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(mMaxPerHost);
+            permits = mPermits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.Arrays;
+
+/**
+ * Counts latencies in buckets that grow by a quarter of a power of two, so a few hundred longs
+ * cover nanoseconds to minutes and any percentile is known to within about 19%.
+ * Recording allocates nothing and is safe from any thread.
+ */
+public final class LatencyHistogram {
+
+    /** Buckets for each power of two */
+    private static final int SUB_BUCKETS = 4;
+
+    /** Enough buckets for latencies up to 2^40 ns, about 18 minutes; longer ones share the last */
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /** Count one latency, in nanoseconds. */
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mCounts[bucket(nanos)]++;
+        mCount++;
+        mSum += nanos;
+        mMax = Math.max(mMax, nanos);
+    }
+
+    /** Return the number of latencies counted */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /** Return the longest latency counted, in nanoseconds */
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /** Return the mean latency in nanoseconds, or 0 if none were counted */
+    public synchronized long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * Return the latency in nanoseconds that the given fraction (0.5 for the median) of the
+     * counted latencies did not exceed, or 0 if none were counted.
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * mCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    /** Forget every latency counted. */
+    public synchronized void clear() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Return the counts as text, so they can be stored and added to by a later run of the app.
+     * The format is "sum,max" followed by "bucket:count" for each bucket in use.
+     */
+    public synchronized String encode() {
+        StringBuilder out = new StringBuilder().append(mSum).append(',').append(mMax);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (mCounts[i] != 0) {
+                out.append(',').append(i).append(':').append(mCounts[i]);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Add the counts from text returned by {@link #encode()}. Text that can't be read is
+     * ignored, since it only means older measurements are lost.
+     */
+    public synchronized void decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        String[] parts = encoded.split(",");
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        try {
+            long sum = Long.parseLong(parts[0]);
+            long max = Long.parseLong(parts[1]);
+            for (int i = 2; i < parts.length; i++) {
+                int separator = parts[i].indexOf(':');
+                int bucket = Integer.parseInt(parts[i].substring(0, separator));
+                long bucketCount = Long.parseLong(parts[i].substring(separator + 1));
+                if (bucket < 0 || bucket >= BUCKETS || bucketCount < 0) {
+                    return;
+                }
+                counts[bucket] += bucketCount;
+                count += bucketCount;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                mCounts[i] += counts[i];
+            }
+            mCount += count;
+            mSum += sum;
+            mMax = Math.max(mMax, max);
+        } catch (RuntimeException e) {
+            // Nothing has been added yet
+        }
+    }
+
+    /** Return the bucket counting the given latency. */
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        // Position of the highest bit, then the two bits below it pick the quarter
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int quarter = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return Math.min((exponent - 1) * SUB_BUCKETS + quarter, BUCKETS - 1);
+    }
+
+    /** Return the longest latency counted by the given bucket. */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long width = 1L << (exponent - 2);
+        return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+    }
+}
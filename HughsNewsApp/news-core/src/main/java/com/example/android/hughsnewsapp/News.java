@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+/**
+ * An {@link News} object contains information related toa single news article.
+ * Section and author names are shared between articles through a {@link StringPool}, and the
+ * publication date is kept as epoch milliseconds rather than as its ISO string.
+ * Articles scanned by {@link NewsJsonScanner} keep the raw JSON bytes of their section, title,
+ * author and thumbnail URL, and only decode each one the first time it is asked for.
+ */
+public class News {
+    /** Shared by every article, so each section and author name is held once */
+    private static final StringPool sNames = new StringPool(4096);
+
+    /** Stands for a field whose raw bytes have not been decoded yet; compared by identity */
+    private static final String NOT_DECODED = new String("");
+
+    /** Section name*/
+    private String mSectionName;
+
+    /** news article title */
+    private String mTitle;
+
+    /** author of article */
+    private String mAuthor;
+
+    /** article date in milliseconds since the epoch, or {@link NewsDates#UNKNOWN} */
+    private final long mPublicationTime;
+
+    /** URL of new article  **/
+    private final String mUrl;
+
+    /** URL of the thumbnail image of the article, or null if it has none */
+    private String mThumbnailUrl;
+
+    /**
+     * Raw JSON bytes of the fields that are decoded when first asked for, and the start and end
+     * of each in the order of {@link NewsJsonScanner#SECTION} and the others, or -1 for none.
+     * Null if every field was decoded up front.
+     */
+    private final byte[] mRawFields;
+    private final int[] mRawSpans;
+
+    /** Text of the article's row in the list, made ahead of binding by a {@link NewsRowFormatter} */
+    private volatile NewsRow mRow;
+
+    /** MinHash signature of the title, made by {@link NewsClusterer} when first needed */
+    private volatile int[] mTitleSignature;
+
+    /**
+     * Constructor
+     * @param sectionName name of section
+     * @param author author(s) of article
+     * @param title title of news article
+     * @param publicationDate the ISO-8601 UTC date the article was published
+     * @param url is the website URL to find more details about the new article
+     */
+
+    public News(String sectionName, String title, String publicationDate, String author, String url){
+        this(sectionName, title, publicationDate, author, url, null);
+    }
+
+    /**
+     * Constructor
+     * @param sectionName name of section
+     * @param author author(s) of article
+     * @param title title of news article
+     * @param publicationDate the ISO-8601 UTC date the article was published
+     * @param url is the website URL to find more details about the new article
+     * @param thumbnailUrl URL of the thumbnail image of the article, or null
+     */
+    public News(String sectionName, String title, String publicationDate, String author, String url,
+                String thumbnailUrl) {
+        this(sectionName, title, NewsDates.parseIso(publicationDate), author, url, thumbnailUrl);
+    }
+
+    /**
+     * Constructor for an article whose publication date has already been parsed, as when it is
+     * read back from a {@link NewsSnapshot}
+     * @param publicationTime the date the article was published, in milliseconds since the epoch
+     */
+    News(String sectionName, String title, long publicationTime, String author, String url,
+         String thumbnailUrl) {
+        mSectionName = sNames.intern(sectionName);
+        mTitle = title;
+        mPublicationTime = publicationTime;
+        mAuthor = sNames.intern(author);
+        mUrl = url;
+        mThumbnailUrl = thumbnailUrl;
+        mRawFields = null;
+        mRawSpans = null;
+    }
+
+    /**
+     * Constructor for an article scanned by {@link NewsJsonScanner}, whose other fields are
+     * decoded from their raw JSON bytes when first asked for
+     * @param rawFields raw JSON bytes of the section, title, author and thumbnail URL
+     * @param rawSpans start and end of each field in the raw bytes, or -1 for none
+     */
+    News(byte[] rawFields, int[] rawSpans, long publicationTime, String url) {
+        mSectionName = NOT_DECODED;
+        mTitle = NOT_DECODED;
+        mAuthor = NOT_DECODED;
+        mThumbnailUrl = NOT_DECODED;
+        mPublicationTime = publicationTime;
+        mUrl = url;
+        mRawFields = rawFields;
+        mRawSpans = rawSpans;
+    }
+
+    /** Constructor for {@link #copy} */
+    private News(News other) {
+        mSectionName = other.mSectionName;
+        mTitle = other.mTitle;
+        mAuthor = other.mAuthor;
+        mThumbnailUrl = other.mThumbnailUrl;
+        mPublicationTime = other.mPublicationTime;
+        mUrl = other.mUrl;
+        mRawFields = other.mRawFields;
+        mRawSpans = other.mRawSpans;
+        // Never changed once made, unlike the row whose relative time is kept up to date
+        mTitleSignature = other.mTitleSignature;
+    }
+
+    /**
+     * Return a copy of the article without its row text, for a caller that formats it while
+     * others hold this one.
+     */
+    News copy() {
+        return new News(this);
+    }
+
+    /**
+     * Return the given field decoded from its raw bytes, or null if it has none.
+     * Racing threads would only decode the same value twice.
+     */
+    private String decode(int field) {
+        int start = mRawSpans[field * 2];
+        return start < 0 ? null
+                : NewsJsonScanner.decode(mRawFields, start, mRawSpans[field * 2 + 1]);
+    }
+
+    /** Return the title of the section name*/
+    public String getSectionName(){
+        String sectionName = mSectionName;
+        if (sectionName == NOT_DECODED) {
+            sectionName = sNames.intern(decode(NewsJsonScanner.SECTION));
+            mSectionName = sectionName;
+        }
+        return sectionName;
+    }
+
+    /** Return the title of the news article*/
+    public String getTitle(){
+        String title = mTitle;
+        if (title == NOT_DECODED) {
+            title = decode(NewsJsonScanner.TITLE);
+            mTitle = title;
+        }
+        return title;
+    }
+
+    /** Return the publication date in milliseconds since the epoch, or {@link NewsDates#UNKNOWN} */
+    public long getPublicationTime() {
+        return mPublicationTime;
+    }
+
+    /** Return the publication date as an ISO-8601 UTC string, or null if it is unknown */
+    public String getPublicationDate() {
+        return NewsDates.formatIso(mPublicationTime);
+    }
+
+    /** Return the title of the article author(s), or an empty string if it has no contributor */
+    public String getAuthor(){
+        String author = mAuthor;
+        if (author == NOT_DECODED) {
+            author = decode(NewsJsonScanner.AUTHOR);
+            author = author == null ? "" : sNames.intern(author);
+            mAuthor = author;
+        }
+        return author;
+    }
+
+    /** Return the website URL for the full details of the article*/
+    public String getUrl(){
+        return mUrl;
+    }
+
+    /** Return the URL of the thumbnail image of the article, or null if it has none */
+    public String getThumbnailUrl() {
+        String thumbnailUrl = mThumbnailUrl;
+        if (thumbnailUrl == NOT_DECODED) {
+            thumbnailUrl = decode(NewsJsonScanner.THUMBNAIL);
+            mThumbnailUrl = thumbnailUrl;
+        }
+        return thumbnailUrl;
+    }
+
+    /** Return the text of the article's row in the list, or null if it has not been made yet */
+    NewsRow getRow() {
+        return mRow;
+    }
+
+    void setRow(NewsRow row) {
+        mRow = row;
+    }
+
+    /** Return the MinHash signature of the title, or null if it has not been made yet */
+    int[] getTitleSignature() {
+        return mTitleSignature;
+    }
+
+    void setTitleSignature(int[] titleSignature) {
+        mTitleSignature = titleSignature;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull-parses a News API (newsapi.org) response, as {@link NewsJsonParser} does a Guardian one:
+ * each entry of the articles array becomes a {@link News} article with the name of its source
+ * as the section and urlToImage as the thumbnail. The description and content are skipped
+ * without being built, and so are entries that are not objects or have no URL.
+ */
+final class NewsApiParser implements NewsFeedParser {
+
+    @Override
+    public List<News> parse(InputStream in) throws IOException {
+        List<News> news = new ArrayList<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("articles".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        News article = readArticle(reader);
+                        if (article != null) {
+                            news.add(article);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            // JsonReader reports some malformed JSON this way
+            throw new IOException("Invalid response", e);
+        } finally {
+            reader.close();
+        }
+        return news;
+    }
+
+    /** Read one entry of the articles array, or skip it, returning null, if it cannot be shown. */
+    private static News readArticle(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String source = null;
+        String title = null;
+        String author = null;
+        String url = null;
+        String thumbnailUrl = null;
+        long publicationTime = NewsDates.UNKNOWN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "source":
+                    source = readSourceName(reader);
+                    break;
+                case "title":
+                    title = nextStringOrNull(reader);
+                    break;
+                case "author":
+                    author = nextStringOrNull(reader);
+                    break;
+                case "url":
+                    url = nextStringOrNull(reader);
+                    break;
+                case "urlToImage":
+                    thumbnailUrl = nextStringOrNull(reader);
+                    break;
+                case "publishedAt":
+                    publicationTime = NewsDates.parseIso(nextStringOrNull(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (url == null) {
+            return null;
+        }
+        return new News(source, title, publicationTime, author != null ? author : "", url, thumbnailUrl);
+    }
+
+    /** Read the "source" object and return its name, or null if it has none. */
+    private static String readSourceName(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("name".equals(reader.nextName())) {
+                name = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return name;
+    }
+
+    /** Return the next string value, or null if the value is JSON null or not a string. */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the news core from the command line, without Android:
+ * <pre>
+ * fetch URL...                      print the articles of each page of results
+ * load URL [REQUESTS [THREADS]]     request the URL over and over and print the throughput,
+ *                                   the latency percentiles and the time spent in each stage
+ * </pre>
+ * Pointed at a local stub server, the load generator measures the fetch and parse path in CI
+ * without an emulator or the Guardian API.
+ */
+public final class NewsCli {
+
+    private static final int DEFAULT_REQUESTS = 100;
+    private static final int DEFAULT_THREADS = 4;
+
+    /** Create a private constructor because no one should ever create a {@link NewsCli} object.*/
+    private NewsCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /** Run the command given by the arguments, printing to the given stream, and return the exit status. */
+    static int run(String[] args, PrintStream out) {
+        if (args.length >= 2 && "fetch".equals(args[0])) {
+            boolean allFetched = true;
+            for (int i = 1; i < args.length; i++) {
+                allFetched &= fetch(args[i], out);
+            }
+            return allFetched ? 0 : 1;
+        }
+        if (args.length >= 2 && args.length <= 4 && "load".equals(args[0])) {
+            try {
+                int requests = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS;
+                int threads = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_THREADS;
+                if (requests > 0 && threads > 0) {
+                    return load(args[1], requests, threads, out) ? 0 : 1;
+                }
+            } catch (NumberFormatException e) {
+                // Falls through to the usage
+            }
+        }
+        out.println("usage: fetch URL...");
+        out.println("       load URL [REQUESTS [THREADS]]");
+        return 2;
+    }
+
+    /** Print the articles of the page of results at the given URL, and return true if it was fetched. */
+    private static boolean fetch(String url, PrintStream out) {
+        NewsPage page = QueryUtils.fetchNewsPage(url, null);
+        if (page == null) {
+            out.println("failed: " + url);
+            return false;
+        }
+        out.printf(Locale.US, "page %d of %d: %s%n", page.getCurrentPage(), page.getPageCount(), url);
+        for (News news : page.getNews()) {
+            out.printf(Locale.US, "%s  %-16s %s%s%n", NewsDates.formatDate(news.getPublicationTime()),
+                    news.getSectionName(), news.getTitle(),
+                    news.getAuthor().isEmpty() ? "" : " (" + news.getAuthor() + ")");
+        }
+        return true;
+    }
+
+    /**
+     * Request the given URL the given number of times from the given number of threads and print
+     * what it cost. Return true if every request succeeded.
+     */
+    private static boolean load(final String url, final int requests, int threads, PrintStream out) {
+        NewsTrace.reset();
+        NewsTrace.setEnabled(true);
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicLong articles = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                while (next.getAndIncrement() < requests) {
+                    long requestStart = System.nanoTime();
+                    NewsPage page = QueryUtils.fetchNewsPage(url, null);
+                    latencies.record(System.nanoTime() - requestStart);
+                    if (page == null) {
+                        failures.incrementAndGet();
+                    } else {
+                        articles.addAndGet(page.getNews().size());
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (Exception e) {
+            out.println("failed: " + e);
+            return false;
+        } finally {
+            executor.shutdownNow();
+            NewsTrace.setEnabled(false);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        out.printf(Locale.US, "%d requests, %d failed, %d articles in %d ms: %.1f requests/s%n",
+                requests, failures.get(), articles.get(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                requests * 1e9 / elapsed);
+        out.printf(Locale.US, "latency  p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  max %.2f ms%n",
+                millis(latencies.getPercentile(0.5)), millis(latencies.getPercentile(0.9)),
+                millis(latencies.getPercentile(0.99)), millis(latencies.getMax()));
+        out.println(NewsTrace.summary());
+        return failures.get() == 0;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.example.android.hughsnewsapp.Constants.CLUSTER_BANDS;
+import static com.example.android.hughsnewsapp.Constants.CLUSTER_BAND_ROWS;
+import static com.example.android.hughsnewsapp.Constants.CLUSTER_BUCKET_LIMIT;
+import static com.example.android.hughsnewsapp.Constants.CLUSTER_MIN_SIMILARITY;
+
+/**
+ * Groups articles whose titles are near duplicates, such as a live blog and the updates to it,
+ * or the same story filed under different sections. Each title is normalized into its words,
+ * without case, punctuation or words that say nothing about the story, and made into a MinHash
+ * signature over its single words and pairs of adjacent words. Two titles sharing at least
+ * {@link Constants#CLUSTER_MIN_SIMILARITY} of their signature are near duplicates.
+ * <p>
+ * Articles are added incrementally as pages arrive. Rather than comparing every pair of titles,
+ * the signatures are cut into bands, and an article is only compared with the groups that already
+ * have an article with one of the same bands (locality-sensitive hashing). Groups that an article
+ * is a near duplicate of are merged, so adding n articles takes time close to linear in n.
+ * <p>
+ * The signatures can be made on any thread with {@link #sign}; the rest is not thread safe.
+ */
+public final class NewsClusterer {
+
+    /** Number of MinHash values in a signature */
+    static final int SIGNATURE_LENGTH = CLUSTER_BANDS * CLUSTER_BAND_ROWS;
+
+    /** Signature of a title without any words, which is never grouped */
+    private static final int[] NO_SIGNATURE = new int[0];
+
+    /** Minimum number of equal MinHash values for two titles to be near duplicates */
+    private static final int MIN_MATCHES = (int) Math.ceil(SIGNATURE_LENGTH * CLUSTER_MIN_SIMILARITY);
+
+    /** Words that say nothing about which story a title is about, as hashed by {@link #hashWord} */
+    private static final long[] STOP_WORDS = hashWords("a", "an", "and", "are", "as", "at", "be",
+            "by", "for", "from", "has", "have", "in", "is", "it", "its", "live", "of", "on", "or",
+            "s", "says", "that", "the", "this", "to", "was", "what", "with");
+
+    /** Seeds of the hash functions, one per MinHash value */
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < SEEDS.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = mix(seed);
+        }
+    }
+
+    /** An article added, and the group it belongs to */
+    private static final class Entry {
+        final int[] mSignature;
+        /** The entry this one was merged into, or itself if it is the root of its group */
+        Entry mParent = this;
+        /** Number of articles in the group, only kept up to date on the root */
+        int mSize = 1;
+
+        Entry(int[] signature) {
+            mSignature = signature;
+        }
+    }
+
+    /** Every article added, by URL */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Articles by the hash of one band of their signature: an {@link Entry}, or a list of them
+     * once there are several. A bucket only keeps one article of each group.
+     */
+    private final Map<Long, Object> mBuckets = new HashMap<>();
+
+    /** Make the signature of every article that does not have one yet. Safe on any thread. */
+    public static void sign(List<News> articles) {
+        for (int i = 0; i < articles.size(); i++) {
+            signatureOf(articles.get(i));
+        }
+    }
+
+    /**
+     * Add the article to a group of near duplicates already added, or to a new group of its own.
+     * Return true if it is a near duplicate of an article added before. An article added again
+     * with the same URL is ignored.
+     */
+    public boolean add(News news) {
+        String url = news.getUrl();
+        if (mEntries.containsKey(url)) {
+            return false;
+        }
+        Entry entry = new Entry(signatureOf(news));
+        mEntries.put(url, entry);
+        if (entry.mSignature.length == 0) {
+            return false;
+        }
+        for (int band = 0; band < CLUSTER_BANDS; band++) {
+            Long key = bandKey(entry.mSignature, band);
+            Object bucket = mBuckets.get(key);
+            if (bucket == null) {
+                mBuckets.put(key, entry);
+            } else if (bucket instanceof Entry) {
+                if (!join(entry, (Entry) bucket)) {
+                    List<Entry> entries = new ArrayList<>(2);
+                    entries.add((Entry) bucket);
+                    entries.add(entry);
+                    mBuckets.put(key, entries);
+                }
+            } else {
+                @SuppressWarnings("unchecked")
+                List<Entry> entries = (List<Entry>) bucket;
+                boolean grouped = false;
+                for (int i = 0; i < entries.size(); i++) {
+                    grouped |= join(entry, entries.get(i));
+                }
+                // A band shared by this many groups is made of words that say little about the story
+                if (!grouped && entries.size() < CLUSTER_BUCKET_LIMIT) {
+                    entries.add(entry);
+                }
+            }
+        }
+        boolean duplicate = find(entry).mSize > 1;
+        if (duplicate) {
+            NewsTrace.count(NewsTrace.Counter.DUPLICATES_GROUPED);
+        }
+        return duplicate;
+    }
+
+    /** Return the number of articles added in the same group as the given one, 0 if it was not added */
+    public int getGroupSize(News news) {
+        Entry entry = mEntries.get(news.getUrl());
+        return entry == null ? 0 : find(entry).mSize;
+    }
+
+    /** Return true if both articles were added and are in the same group */
+    public boolean sameGroup(News a, News b) {
+        Entry first = mEntries.get(a.getUrl());
+        Entry second = mEntries.get(b.getUrl());
+        return first != null && second != null && find(first) == find(second);
+    }
+
+    /** Forget every article added, such as to give back memory. */
+    public void clear() {
+        mEntries.clear();
+        mBuckets.clear();
+    }
+
+    /** Return the number of articles added */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Return the rows to show the given articles in, adding those not added yet. The first
+     * article of each group in the list stands for the group, and the others are only shown
+     * below it if its URL is in the given set of expanded rows; otherwise the list keeps its order.
+     */
+    public List<NewsListItem> collapse(List<News> articles, Set<String> expandedUrls) {
+        long start = NewsTrace.begin(NewsTrace.Stage.CLUSTER);
+        int count = articles.size();
+        Entry[] roots = new Entry[count];
+        // The articles of each group of several, in the order of the list
+        Map<Entry, List<News>> groups = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            add(articles.get(i));
+        }
+        for (int i = 0; i < count; i++) {
+            News news = articles.get(i);
+            Entry root = find(mEntries.get(news.getUrl()));
+            roots[i] = root;
+            if (root.mSize > 1) {
+                List<News> group = groups.get(root);
+                if (group == null) {
+                    group = new ArrayList<>(2);
+                    groups.put(root, group);
+                }
+                group.add(news);
+            }
+        }
+
+        List<NewsListItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            News news = articles.get(i);
+            List<News> group = groups.get(roots[i]);
+            if (group == null || group.size() == 1) {
+                items.add(new NewsListItem(news, 0, false, false));
+            } else if (group.get(0) == news) {
+                boolean expanded = expandedUrls.contains(news.getUrl());
+                items.add(new NewsListItem(news, group.size() - 1, expanded, false));
+                if (expanded) {
+                    for (int j = 1; j < group.size(); j++) {
+                        items.add(new NewsListItem(group.get(j), 0, false, true));
+                    }
+                }
+            }
+        }
+        NewsTrace.end(NewsTrace.Stage.CLUSTER, start);
+        return items;
+    }
+
+    /**
+     * Return true if the entry is in the group of the candidate once this returns: it already
+     * was, or the titles are near duplicates and their groups have been merged.
+     */
+    private boolean join(Entry entry, Entry candidate) {
+        Entry root = find(entry);
+        Entry candidateRoot = find(candidate);
+        if (root == candidateRoot) {
+            return true;
+        }
+        if (!similar(entry.mSignature, candidate.mSignature)) {
+            return false;
+        }
+        // The smaller group goes under the larger, which keeps the trees shallow
+        if (root.mSize < candidateRoot.mSize) {
+            Entry swap = root;
+            root = candidateRoot;
+            candidateRoot = swap;
+        }
+        candidateRoot.mParent = root;
+        root.mSize += candidateRoot.mSize;
+        return true;
+    }
+
+    /** Return the root of the entry's group, halving the path to it on the way. */
+    private static Entry find(Entry entry) {
+        while (entry.mParent != entry) {
+            entry.mParent = entry.mParent.mParent;
+            entry = entry.mParent;
+        }
+        return entry;
+    }
+
+    private static boolean similar(int[] a, int[] b) {
+        int matches = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (a[i] == b[i] && ++matches >= MIN_MATCHES) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int i = band * CLUSTER_BAND_ROWS; i < (band + 1) * CLUSTER_BAND_ROWS; i++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[i];
+        }
+        return mix(key);
+    }
+
+    /** Return the signature of the article's title, made and kept on the article if need be. */
+    private static int[] signatureOf(News news) {
+        int[] signature = news.getTitleSignature();
+        if (signature == null) {
+            signature = signature(news.getTitle());
+            news.setTitleSignature(signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Return the MinHash signature of the title over its normalized words and pairs of
+     * adjacent words, or an empty signature if it has no words.
+     */
+    static int[] signature(String title) {
+        if (title == null) {
+            return NO_SIGNATURE;
+        }
+        // Hashes of the words, then of the pairs of adjacent words
+        long[] shingles = new long[16];
+        int words = 0;
+        int length = title.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(title.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            long hash = 0xcbf29ce484222325L;
+            while (i < length) {
+                char c = title.charAt(i);
+                if (!Character.isLetterOrDigit(c)) {
+                    // An apostrophe ends the word too, so "Johnson's" is "johnson" and "s"
+                    break;
+                }
+                hash = (hash ^ Character.toLowerCase(c)) * 0x100000001b3L;
+                i++;
+            }
+            if (Arrays.binarySearch(STOP_WORDS, hash) >= 0) {
+                continue;
+            }
+            if (words == shingles.length) {
+                shingles = Arrays.copyOf(shingles, words * 2);
+            }
+            shingles[words++] = hash;
+        }
+        if (words == 0) {
+            return NO_SIGNATURE;
+        }
+
+        int[] signature = new int[SIGNATURE_LENGTH];
+        for (int h = 0; h < SIGNATURE_LENGTH; h++) {
+            long seed = SEEDS[h];
+            long min = Long.MAX_VALUE;
+            for (int w = 0; w < words; w++) {
+                min = Math.min(min, mix(shingles[w] ^ seed) >>> 1);
+                if (w > 0) {
+                    long pair = shingles[w - 1] * 0x9E3779B97F4A7C15L + shingles[w];
+                    min = Math.min(min, mix(pair ^ seed) >>> 1);
+                }
+            }
+            signature[h] = (int) (min >>> 31);
+        }
+        return signature;
+    }
+
+    /** Return the hash of a lowercase word, as {@link #signature} hashes the words of a title. */
+    private static long hashWord(String word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Return the sorted hashes of the given words. */
+    private static long[] hashWords(String... words) {
+        long[] hashes = new long[words.length];
+        for (int i = 0; i < words.length; i++) {
+            hashes[i] = hashWord(words[i]);
+        }
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    /** Scramble the bits of the value, so every bit of the result depends on every bit of it. */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb33fe64d53cdL;
+        return value ^ (value >>> 33);
+    }
+}
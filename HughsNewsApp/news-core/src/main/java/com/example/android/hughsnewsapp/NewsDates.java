@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+/**
+ * Converts between the ISO-8601 UTC timestamps used by the Guardian API
+ * (e.g. 2021-03-28T10:25:41Z) and epoch milliseconds, without allocating a date formatter.
+ * The RFC 822 dates of RSS feeds (e.g. Sun, 28 Mar 2021 10:25:41 +0100) are read as well.
+ */
+public final class NewsDates {
+
+    /** Stands for an unknown or unparseable publication time */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /** Month abbreviations of RFC 822 dates */
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    /** North American zones RFC 822 dates may name, and their offsets from UTC in hours */
+    private static final String[] ZONE_NAMES = {"EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "PDT"};
+    private static final int[] ZONE_HOURS = {-5, -4, -6, -5, -7, -6, -8, -7};
+
+    /** Create a private constructor because no one should ever create a {@link NewsDates} object.*/
+    private NewsDates() {
+    }
+
+    /** Return the epoch milliseconds of the given timestamp, or {@link #UNKNOWN}. */
+    public static long parseIso(String iso) {
+        // yyyy-MM-ddTHH:mm:ss, optionally followed by fractions and Z or an offset from UTC
+        if (iso == null || iso.length() < 19 || iso.charAt(4) != '-' || iso.charAt(7) != '-'
+                || iso.charAt(10) != 'T' || iso.charAt(13) != ':' || iso.charAt(16) != ':') {
+            return UNKNOWN;
+        }
+        int year = digits(iso, 0, 4);
+        int month = digits(iso, 5, 2);
+        int day = digits(iso, 8, 2);
+        int hour = digits(iso, 11, 2);
+        int minute = digits(iso, 14, 2);
+        int second = digits(iso, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return UNKNOWN;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000;
+        int end = 19;
+        if (end < iso.length() && iso.charAt(end) == '.') {
+            do {
+                end++;
+            } while (end < iso.length() && iso.charAt(end) >= '0' && iso.charAt(end) <= '9');
+        }
+        return end < iso.length() ? millis - offsetMillis(iso, end) : millis;
+    }
+
+    /**
+     * Return the epoch milliseconds of the given RFC 822 date, as RSS feeds give them
+     * (e.g. Sun, 28 Mar 2021 10:25:41 +0100, the day of the week and the seconds being optional),
+     * or {@link #UNKNOWN}.
+     */
+    public static long parseRfc822(String date) {
+        if (date == null) {
+            return UNKNOWN;
+        }
+        String[] parts = date.trim().split("\\s+");
+        int first = parts.length > 0 && parts[0].endsWith(",") ? 1 : 0;
+        if (parts.length - first < 4) {
+            return UNKNOWN;
+        }
+        String dayPart = parts[first];
+        String monthPart = parts[first + 1];
+        String yearPart = parts[first + 2];
+        String timePart = parts[first + 3];
+        int day = dayPart.length() <= 2 ? digits(dayPart, 0, dayPart.length()) : -1;
+        int monthIndex = monthPart.length() == 3 ? MONTHS.indexOf(monthPart) : -1;
+        int month = monthIndex >= 0 && monthIndex % 3 == 0 ? monthIndex / 3 + 1 : 0;
+        int year = yearPart.length() == 4 || yearPart.length() == 2
+                ? digits(yearPart, 0, yearPart.length()) : -1;
+        if (yearPart.length() == 2 && year >= 0) {
+            year += year < 70 ? 2000 : 1900;
+        }
+        if (timePart.length() != 5 && timePart.length() != 8) {
+            return UNKNOWN;
+        }
+        int hour = digits(timePart, 0, 2);
+        int minute = timePart.charAt(2) == ':' ? digits(timePart, 3, 2) : -1;
+        int second = timePart.length() == 8 && timePart.charAt(5) == ':' ? digits(timePart, 6, 2) : 0;
+        if (day < 1 || day > 31 || month < 1 || year < 0
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return UNKNOWN;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000;
+        if (parts.length - first < 5) {
+            // No zone: taken as UTC, as most feeds without one are
+            return millis;
+        }
+        String zone = parts[first + 4];
+        for (int i = 0; i < ZONE_NAMES.length; i++) {
+            if (ZONE_NAMES[i].equals(zone)) {
+                return millis - ZONE_HOURS[i] * 3600_000L;
+            }
+        }
+        return millis - offsetMillis(zone, 0);
+    }
+
+    /**
+     * Return the offset from UTC at the given index of the date: Z, UT, UTC or GMT, or a sign
+     * followed by hh:mm or hhmm. Anything else is taken as UTC.
+     */
+    private static long offsetMillis(String date, int start) {
+        char sign = date.charAt(start);
+        if (sign != '+' && sign != '-') {
+            return 0;
+        }
+        int hours = start + 3 <= date.length() ? digits(date, start + 1, 2) : -1;
+        int colon = start + 3 < date.length() && date.charAt(start + 3) == ':' ? 1 : 0;
+        int minutes = start + 5 + colon <= date.length() ? digits(date, start + 3 + colon, 2) : 0;
+        if (hours < 0 || minutes < 0) {
+            return 0;
+        }
+        long offset = (hours * 60L + minutes) * 60_000L;
+        return sign == '-' ? -offset : offset;
+    }
+
+    /** Return the given time as an ISO-8601 UTC timestamp, or null if it is {@link #UNKNOWN}. */
+    public static String formatIso(long millis) {
+        if (millis == UNKNOWN) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder(20);
+        appendDate(out, millis);
+        long secondOfDay = floorMod(millis, MILLIS_PER_DAY) / 1000;
+        out.append('T');
+        pad(out, (int) (secondOfDay / 3600), 2);
+        out.append(':');
+        pad(out, (int) (secondOfDay / 60 % 60), 2);
+        out.append(':');
+        pad(out, (int) (secondOfDay % 60), 2);
+        return out.append('Z').toString();
+    }
+
+    /** Return the UTC date of the given time as yyyy-MM-dd, or an empty string if it is {@link #UNKNOWN}. */
+    public static String formatDate(long millis) {
+        if (millis == UNKNOWN) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(10);
+        appendDate(out, millis);
+        return out.toString();
+    }
+
+    private static void appendDate(StringBuilder out, long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        // Inverse of daysFromCivil, see http://howardhinnant.github.io/date_algorithms.html
+        days += 719468;
+        long era = floorDiv(days, 146097);
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        pad(out, (int) year, 4);
+        out.append('-');
+        pad(out, month, 2);
+        out.append('-');
+        pad(out, day, 2);
+    }
+
+    /** Return the number of days from 1970-01-01 to the given date in the proleptic Gregorian calendar. */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /** As Math.floorDiv, which needs API 24 */
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? quotient - 1 : quotient;
+    }
+
+    /** As Math.floorMod, which needs API 24 */
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    /** Return the decimal value of the given characters, or -1 if any is not a digit. */
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void pad(StringBuilder out, int value, int width) {
+        String digits = Integer.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            out.append('0');
+        }
+        out.append(digits);
+    }
+}
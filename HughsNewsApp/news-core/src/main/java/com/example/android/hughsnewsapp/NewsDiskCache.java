@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent store of Guardian responses keyed by request URL. Each entry keeps the raw JSON
+ * body together with the ETag and Last-Modified validators the server sent, so the response
+ * can be shown straight away and then revalidated with a conditional GET.
+ * Entries older than the maximum age are dropped, and the least recently validated entries are
+ * evicted once the store grows past its maximum size.
+ */
+public class NewsDiskCache {
+
+    /** Bumped whenever the entry file layout changes; older files are ignored. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** A cached response together with its validators. */
+    public static final class Entry {
+        private final String mUrl;
+        private final String mETag;
+        private final String mLastModified;
+        private final long mValidatedAt;
+        private final byte[] mBody;
+
+        Entry(String url, String eTag, String lastModified, long validatedAt, byte[] body) {
+            mUrl = url;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mValidatedAt = validatedAt;
+            mBody = body;
+        }
+
+        /** Return the request URL the response was fetched from */
+        public String getUrl() { return mUrl; }
+
+        /** Return the ETag sent with the response, or null */
+        public String getETag() { return mETag; }
+
+        /** Return the Last-Modified date sent with the response, or null */
+        public String getLastModified() { return mLastModified; }
+
+        /** Return the time in milliseconds the response was last fetched or revalidated */
+        public long getValidatedAt() { return mValidatedAt; }
+
+        /** Return the raw JSON body of the response */
+        public byte[] getBody() { return mBody; }
+    }
+
+    /** Directory holding one file per entry */
+    private final File mDirectory;
+
+    /** Maximum total size in bytes of all entry files */
+    private final long mMaxBytes;
+
+    /** Maximum time in milliseconds since an entry was last validated before it is dropped */
+    private final long mMaxAgeMillis;
+
+    /**
+     * Constructor
+     * @param directory where the entries are stored, created if needed
+     * @param maxBytes maximum total size of the store
+     * @param maxAgeMillis maximum age of an entry since it was last fetched or revalidated
+     */
+    public NewsDiskCache(File directory, long maxBytes, long maxAgeMillis) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mMaxAgeMillis = maxAgeMillis;
+    }
+
+    /** Return the entry stored for the given URL, or null if there is none or it has expired. */
+    public synchronized Entry get(String url) {
+        File file = entryFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        Entry entry = readEntry(file);
+        if (entry == null || !url.equals(entry.getUrl())) {
+            // Hash collision, treat as a miss
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Return true if an entry that has not expired is stored for the given URL. Only the file's
+     * attributes are read, not the entry.
+     */
+    public synchronized boolean contains(String url) {
+        File file = entryFile(url);
+        return file.exists() && !isExpired(file);
+    }
+
+    /** Return every entry that has not expired. */
+    public synchronized List<Entry> getAll() {
+        List<Entry> entries = new ArrayList<>();
+        for (File file : entryFiles()) {
+            Entry entry = readEntry(file);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /** Return the entry stored in the given file, or null if it has expired or can't be read. */
+    private Entry readEntry(File file) {
+        if (isExpired(file)) {
+            file.delete();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                file.delete();
+                return null;
+            }
+            String storedUrl = in.readUTF();
+            String eTag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(storedUrl, eTag, lastModified, file.lastModified(), body);
+        } catch (IOException e) {
+            // A damaged entry is worth nothing; drop it so it is fetched again
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Store a freshly fetched response for the given URL, replacing any previous entry, then
+     * evict entries if the store has grown too large.
+     */
+    public synchronized void put(String url, String eTag, String lastModified, byte[] body)
+            throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory);
+        }
+        File file = entryFile(url);
+        File temp = new File(mDirectory, file.getName() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            out.writeUTF(eTag == null ? "" : eTag);
+            out.writeUTF(lastModified == null ? "" : lastModified);
+            out.writeInt(body.length);
+            out.write(body);
+        }
+        // Rename so readers never see a half written entry
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to write " + file);
+        }
+        trim();
+    }
+
+    /** Record that the entry for the given URL was just revalidated by the server (HTTP 304). */
+    public synchronized void markValidated(String url) {
+        entryFile(url).setLastModified(System.currentTimeMillis());
+    }
+
+    /** Remove every entry. */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Return the total size in bytes of the stored entries. */
+    public synchronized long size() {
+        long size = 0;
+        for (File file : entryFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /** Drop expired entries, then the least recently validated ones until under the size limit. */
+    public synchronized void trim() {
+        File[] files = entryFiles();
+        // Comparator.comparingLong needs API 24
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        for (File file : files) {
+            if (size <= mMaxBytes && !isExpired(file)) {
+                break;
+            }
+            size -= file.length();
+            file.delete();
+        }
+    }
+
+    private boolean isExpired(File file) {
+        return System.currentTimeMillis() - file.lastModified() > mMaxAgeMillis;
+    }
+
+    private File[] entryFiles() {
+        File[] files = mDirectory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    /** Return the file for the given URL, named after the SHA-1 of the URL. */
+    private File entryFile(String url) {
+        return new File(mDirectory, hash(url) + ENTRY_SUFFIX);
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-1
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.example.android.hughsnewsapp.Constants.DELTA_MAX_PAGES;
+
+/**
+ * Runs several Guardian queries at once, one per followed topic or section, and merges their
+ * results into a single {@link NewsFeed}. The merged list is handed over again each time any
+ * query delivers a page, so results show as soon as the fastest query answers. Further pages of
+ * every query are fetched as the list is scrolled. A refresh only fetches what each query
+ * published since the newest article it holds. The articles a {@link NewsSourcePoller} polls
+ * from other news sources are merged in too. Called on the thread the {@link NewsFetchEngine}
+ * delivers on; with a {@link NewsSpillStore} that is a background thread, as the merged list may
+ * read spilled articles back from disk.
+ */
+public class NewsFanOut {
+
+    /** Receives the merged results. */
+    public interface Listener {
+        /** The merged list changed. It is the same list as before if pages were only appended. */
+        void onArticlesChanged(List<News> articles);
+
+        /** Every query has fetched its first page, or failed to. */
+        void onFinished(boolean anySucceeded);
+    }
+
+    private final List<String> mUrls;
+    private final NewsFetcher mFetcher;
+    private final Listener mListener;
+
+    /** Articles of each query, then those polled from other sources after the last query */
+    private final NewsFeed mFeed;
+
+    /** One pager per query, for the pages after the first */
+    private final List<NewsPager> mPagers = new ArrayList<>();
+
+    /** First page fetches still in flight */
+    private final List<FetchHandle> mFirstPageFetches = new ArrayList<>();
+
+    /** For each query, true if its pages were taken over from an earlier fan-out */
+    private final boolean[] mTakenOver;
+
+    private int mPending;
+    private boolean mAnySucceeded;
+
+    /**
+     * Constructor
+     * @param urls request URLs of the first page of each query
+     * @param maxInFlightPages maximum further pages in flight per query
+     * @param fetcher performs the requests
+     * @param listener receives the merged results
+     */
+    public NewsFanOut(List<String> urls, int maxInFlightPages, NewsFetcher fetcher, Listener listener) {
+        this(urls, maxInFlightPages, fetcher, null, listener);
+    }
+
+    /**
+     * Constructor
+     * @param urls request URLs of the first page of each query
+     * @param maxInFlightPages maximum further pages in flight per query
+     * @param fetcher performs the requests
+     * @param store holds the articles within its heap budget, or null to hold them all in memory
+     * @param listener receives the merged results
+     */
+    public NewsFanOut(List<String> urls, int maxInFlightPages, NewsFetcher fetcher, NewsSpillStore store,
+                      Listener listener) {
+        mUrls = new ArrayList<>(urls);
+        mFetcher = fetcher;
+        mListener = listener;
+        mFeed = new NewsFeed(urls.size() + 1, store);
+        mTakenOver = new boolean[urls.size()];
+        for (int i = 0; i < urls.size(); i++) {
+            final int query = i;
+            mPagers.add(new NewsPager(urls.get(i), maxInFlightPages, fetcher, page -> {
+                mFeed.appendPage(query, page);
+                mListener.onArticlesChanged(mFeed.getArticles());
+            }));
+        }
+    }
+
+    /** Return the request URLs of the queries */
+    public List<String> getUrls() {
+        return mUrls;
+    }
+
+    /**
+     * Take over the articles and paging of every query this fan-out shares with the given one,
+     * which it replaces, so they are neither fetched nor shown again, and its polled articles.
+     * The given fan-out is released. Return the number of queries taken over.
+     */
+    public int takeOver(NewsFanOut previous) {
+        previous.cancel();
+        mFeed.setQueryArticles(mUrls.size(),
+                previous.mFeed.getQueryArticles(previous.mUrls.size()));
+        int takenOver = 0;
+        for (int i = 0; i < mUrls.size(); i++) {
+            int query = previous.mUrls.indexOf(mUrls.get(i));
+            if (query < 0) {
+                continue;
+            }
+            mFeed.setQueryArticles(i, previous.mFeed.getQueryArticles(query));
+            mPagers.get(i).resume(previous.mPagers.get(query));
+            mTakenOver[i] = true;
+            takenOver++;
+        }
+        // Its lists were copied, and would otherwise hold their chunks in the store
+        previous.mFeed.release();
+        return takenOver;
+    }
+
+    /** Replace the articles polled from other sources, newest first, and hand over the list. */
+    public void setPolledArticles(List<News> articles) {
+        mFeed.setQueryArticles(mUrls.size(), articles);
+        mListener.onArticlesChanged(mFeed.getArticles());
+    }
+
+    /** Return the merged articles of every query so far */
+    public List<News> getArticles() {
+        return mFeed.getArticles();
+    }
+
+    /** Return true while any first page is still being fetched */
+    public boolean isRunning() {
+        return mPending > 0;
+    }
+
+    /**
+     * Fetch the first page of every query, showing cached copies first. Without the network only
+     * the cached copies are read, and a query succeeds if it had one.
+     */
+    public void start(boolean useNetwork) {
+        start(useNetwork, false);
+    }
+
+    /**
+     * As {@link #start(boolean)}, for the queries that were not taken over from an earlier
+     * fan-out only. Return false, without fetching or reporting anything, if there are none.
+     */
+    public boolean startAdded(boolean useNetwork) {
+        for (boolean takenOver : mTakenOver) {
+            if (!takenOver) {
+                start(useNetwork, true);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start(boolean useNetwork, boolean addedOnly) {
+        cancelFirstPages();
+        mPending = 0;
+        mAnySucceeded = false;
+        for (boolean takenOver : mTakenOver) {
+            if (!addedOnly || !takenOver) {
+                mPending++;
+            }
+        }
+        for (int i = 0; i < mUrls.size(); i++) {
+            if (!addedOnly || !mTakenOver[i]) {
+                fetchFirstPage(i, useNetwork);
+            }
+        }
+    }
+
+    /**
+     * Fetch only what each query published since the newest article it holds, newest first, and
+     * put it on top of the list. Each query pages through its delta until it reaches an article
+     * it already holds; when nothing new was published that is one request with no results.
+     * A query that holds nothing yet, or has more new articles than {@link Constants#DELTA_MAX_PAGES}
+     * pages of them, fetches its first page again instead. The pages after the first are
+     * offset by the new articles, so the pager gets some of their articles twice, which the
+     * merged list leaves out. Reported to the listener as {@link #start(boolean)} is.
+     */
+    public void refresh() {
+        cancelFirstPages();
+        mPending = mUrls.size();
+        mAnySucceeded = false;
+        for (int i = 0; i < mUrls.size(); i++) {
+            long newest = mFeed.getNewestTime(i);
+            String deltaUrl = newest == NewsDates.UNKNOWN ? null
+                    : GuardianQuery.deltaUrl(mUrls.get(i), newest);
+            if (deltaUrl == null) {
+                fetchFirstPage(i, true);
+                continue;
+            }
+            Set<String> known = new HashSet<>();
+            for (News news : mFeed.getQueryArticles(i)) {
+                known.add(news.getUrl());
+            }
+            fetchDelta(i, deltaUrl, 1, known, new ArrayList<>(), new HashSet<>());
+        }
+    }
+
+    /** Fetch the first page of the given query, from the network or only from the cache. */
+    private void fetchFirstPage(final int query, boolean useNetwork) {
+        NewsFetcher.Callback callback = new NewsFetcher.Callback() {
+            @Override
+            public void onPageLoaded(NewsPage page) {
+                mFeed.setFirstPage(query, page);
+                mPagers.get(query).reset(page);
+                mListener.onArticlesChanged(mFeed.getArticles());
+            }
+
+            @Override
+            public void onFetchFinished(boolean succeeded) {
+                onQueryFinished(succeeded);
+            }
+        };
+        String url = mUrls.get(query);
+        mFirstPageFetches.add(useNetwork ? mFetcher.fetch(url, true, callback)
+                : mFetcher.readCached(url, callback));
+    }
+
+    /**
+     * Fetch the given page of the delta of the given query, adding its articles up to the first
+     * one already held to those of the pages before it, then the pages after it until one is
+     * reached. The new articles are only put on the list once they are all in.
+     */
+    private void fetchDelta(final int query, final String deltaUrl, final int pageNumber,
+            final Set<String> known, final List<News> added, final Set<String> addedUrls) {
+        String url = pageNumber == 1 ? deltaUrl : deltaUrl + "&page=" + pageNumber;
+        mFirstPageFetches.add(mFetcher.fetch(url, false, new NewsFetcher.Callback() {
+            private NewsPage mPage;
+
+            @Override
+            public void onPageLoaded(NewsPage page) {
+                mPage = page;
+            }
+
+            @Override
+            public void onFetchFinished(boolean succeeded) {
+                if (!succeeded || mPage == null) {
+                    onQueryFinished(false);
+                    return;
+                }
+                boolean reachedKnown = false;
+                for (News news : mPage.getNews()) {
+                    if (known.contains(news.getUrl())) {
+                        reachedKnown = true;
+                        break;
+                    }
+                    // Articles published meanwhile push the later ones onto the next page again
+                    if (addedUrls.add(news.getUrl())) {
+                        added.add(news);
+                    }
+                }
+                if (!reachedKnown && mPage.hasNextPage()) {
+                    if (pageNumber < DELTA_MAX_PAGES) {
+                        fetchDelta(query, deltaUrl, pageNumber + 1, known, added, addedUrls);
+                    } else {
+                        // Too much is new to page through: start the query over
+                        fetchFirstPage(query, true);
+                    }
+                    return;
+                }
+                int count = mFeed.prependArticles(query, added);
+                if (count > 0) {
+                    NewsTrace.count(NewsTrace.Counter.DELTA_ARTICLES, count);
+                    mListener.onArticlesChanged(mFeed.getArticles());
+                }
+                onQueryFinished(true);
+            }
+        }));
+    }
+
+    /** One query finished its first page, or its delta. Report once they all have. */
+    private void onQueryFinished(boolean succeeded) {
+        mAnySucceeded |= succeeded;
+        if (--mPending == 0) {
+            mFirstPageFetches.clear();
+            mListener.onFinished(mAnySucceeded);
+        }
+    }
+
+    /** Called as the list scrolls, to prefetch further pages of every query near the end. */
+    public void onScrolled(int lastVisiblePosition, int itemCount, int prefetchDistance) {
+        for (NewsPager pager : mPagers) {
+            pager.onScrolled(lastVisiblePosition, itemCount, prefetchDistance);
+        }
+    }
+
+    /** Abort everything in flight. Nothing more is delivered. */
+    public void cancel() {
+        cancelFirstPages();
+        mPending = 0;
+        for (NewsPager pager : mPagers) {
+            pager.cancel();
+        }
+    }
+
+    /**
+     * Abort everything in flight and give the chunks of the articles back to the spill store.
+     * The merged list handed over is emptied, and the fan-out is not used afterwards.
+     */
+    public void release() {
+        cancel();
+        mFeed.release();
+    }
+
+    private void cancelFirstPages() {
+        for (FetchHandle handle : mFirstPageFetches) {
+            handle.cancel();
+        }
+        mFirstPageFetches.clear();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges the articles returned by several queries into one list, ordered newest first by
+ * publication date, with each article (identified by its web URL) appearing once.
+ * Pages that only hold articles older than everything already merged are appended to the same
+ * list, and articles newer than all of them go on top of a new list holding the same articles
+ * after them; anything else rebuilds it as a new list.
+ * The lists can be kept on a {@link NewsSpillStore}, so however many articles are loaded only
+ * those used lately are held in memory. A merged list replaced by a new one is then emptied, so
+ * the store lets go of its articles.
+ */
+public class NewsFeed {
+
+    /** Newest first. Articles without a date ({@link NewsDates#UNKNOWN}) go last. */
+    static final Comparator<News> NEWEST_FIRST =
+            (a, b) -> Long.compare(b.getPublicationTime(), a.getPublicationTime());
+
+    /** Articles contributed by each query, in the order they arrived */
+    private final List<List<News>> mQueryArticles;
+
+    /** Holds the lists within its heap budget, or null to hold them all in memory */
+    private final NewsSpillStore mStore;
+
+    /** The merged list */
+    private List<News> mArticles;
+
+    /** Web URLs of the articles in the merged list */
+    private final Set<String> mUrls = new HashSet<>();
+
+    /**
+     * Constructor
+     * @param queryCount number of queries feeding the list
+     */
+    public NewsFeed(int queryCount) {
+        this(queryCount, null);
+    }
+
+    /**
+     * Constructor
+     * @param queryCount number of queries feeding the list
+     * @param store holds the lists within its heap budget, or null to hold them all in memory
+     */
+    public NewsFeed(int queryCount, NewsSpillStore store) {
+        mStore = store;
+        mQueryArticles = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            mQueryArticles.add(newList());
+        }
+        mArticles = newList();
+    }
+
+    /** Replace everything the given query contributed with its (cached or fresh) first page. */
+    public void setFirstPage(int query, NewsPage page) {
+        List<News> articles = mQueryArticles.get(query);
+        articles.clear();
+        articles.addAll(page.getNews());
+        rebuild();
+    }
+
+    /** Return every article the given query contributed, in the order they arrived. */
+    public List<News> getQueryArticles(int query) {
+        return mQueryArticles.get(query);
+    }
+
+    /**
+     * Replace everything the given query contributed with the given articles, such as those of
+     * the same query in an earlier feed.
+     */
+    public void setQueryArticles(int query, List<News> news) {
+        List<News> articles = mQueryArticles.get(query);
+        articles.clear();
+        articles.addAll(news);
+        rebuild();
+    }
+
+    /** Add a further page of the given query. */
+    public void appendPage(int query, NewsPage page) {
+        mQueryArticles.get(query).addAll(page.getNews());
+
+        List<News> added = new ArrayList<>();
+        Set<String> addedUrls = new HashSet<>();
+        for (News news : page.getNews()) {
+            if (!mUrls.contains(news.getUrl()) && addedUrls.add(news.getUrl())) {
+                added.add(news);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        Collections.sort(added, NEWEST_FIRST);
+        boolean olderThanAll = mArticles.isEmpty()
+                || NEWEST_FIRST.compare(mArticles.get(mArticles.size() - 1), added.get(0)) <= 0;
+        if (olderThanAll) {
+            mArticles.addAll(added);
+            mUrls.addAll(addedUrls);
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Add articles the given query published after those it contributed so far, such as those
+     * of a delta refresh. Return the number of articles added to the merged list.
+     */
+    public int prependArticles(int query, List<News> news) {
+        mQueryArticles.get(query).addAll(0, news);
+
+        List<News> added = new ArrayList<>();
+        Set<String> addedUrls = new HashSet<>();
+        for (News article : news) {
+            if (!mUrls.contains(article.getUrl()) && addedUrls.add(article.getUrl())) {
+                added.add(article);
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(added, NEWEST_FIRST);
+        boolean newerThanAll = mArticles.isEmpty()
+                || NEWEST_FIRST.compare(added.get(added.size() - 1), mArticles.get(0)) <= 0;
+        if (newerThanAll) {
+            // A new list, so whoever holds the old one sees that it changed
+            List<News> merged = newList();
+            merged.addAll(added);
+            merged.addAll(mArticles);
+            replaceArticles(merged);
+            mUrls.addAll(addedUrls);
+        } else {
+            rebuild();
+        }
+        return added.size();
+    }
+
+    /**
+     * Return the publication time of the newest article the given query contributed, or
+     * {@link NewsDates#UNKNOWN} if it has none with a date.
+     */
+    public long getNewestTime(int query) {
+        long newest = NewsDates.UNKNOWN;
+        for (News news : mQueryArticles.get(query)) {
+            newest = Math.max(newest, news.getPublicationTime());
+        }
+        return newest;
+    }
+
+    /** Return the merged list. The same list is returned until it has to be rebuilt. */
+    public List<News> getArticles() {
+        return mArticles;
+    }
+
+    /**
+     * Give the chunks of every list back to the spill store, if there is one, such as when the
+     * feed is replaced. The feed is not used afterwards.
+     */
+    public void release() {
+        if (mStore == null) {
+            return;
+        }
+        for (List<News> articles : mQueryArticles) {
+            articles.clear();
+        }
+        mArticles.clear();
+        mUrls.clear();
+    }
+
+    /** Return a new, empty list, on the spill store if there is one. */
+    private List<News> newList() {
+        return mStore == null ? new ArrayList<>() : new NewsSpillList(mStore);
+    }
+
+    /** Replace the merged list with the given one. */
+    private void replaceArticles(List<News> articles) {
+        if (mStore != null) {
+            mArticles.clear();
+        }
+        mArticles = articles;
+    }
+
+    /**
+     * Merge every query's articles into a new list. On a spill store, lists that are each newest
+     * first, as the queries return them, are merged reading each in order, so only a chunk of
+     * each is in memory at a time; otherwise they are all in memory while they are sorted.
+     */
+    private void rebuild() {
+        mUrls.clear();
+        if (mStore != null && allNewestFirst()) {
+            replaceArticles(mergeNewestFirst());
+            return;
+        }
+        List<News> merged = new ArrayList<>();
+        for (List<News> articles : mQueryArticles) {
+            for (News news : articles) {
+                if (mUrls.add(news.getUrl())) {
+                    merged.add(news);
+                }
+            }
+        }
+        Collections.sort(merged, NEWEST_FIRST);
+        if (mStore != null) {
+            List<News> spilled = newList();
+            spilled.addAll(merged);
+            merged = spilled;
+        }
+        replaceArticles(merged);
+    }
+
+    /** Return true if the articles of every query are newest first. */
+    private boolean allNewestFirst() {
+        for (List<News> articles : mQueryArticles) {
+            for (int i = 1; i < articles.size(); i++) {
+                if (NEWEST_FIRST.compare(articles.get(i - 1), articles.get(i)) > 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the articles of every query, each newest first, merged into one list in the same
+     * order as sorting them all would: the articles of the first query before those of the
+     * later ones published at the same time.
+     */
+    private List<News> mergeNewestFirst() {
+        int queries = mQueryArticles.size();
+        // The first article with each URL, in the order of the queries
+        BitSet[] kept = new BitSet[queries];
+        for (int q = 0; q < queries; q++) {
+            List<News> articles = mQueryArticles.get(q);
+            kept[q] = new BitSet(articles.size());
+            for (int i = 0; i < articles.size(); i++) {
+                if (mUrls.add(articles.get(i).getUrl())) {
+                    kept[q].set(i);
+                }
+            }
+        }
+
+        List<News> merged = newList();
+        int[] next = new int[queries];
+        News[] heads = new News[queries];
+        for (int q = 0; q < queries; q++) {
+            next[q] = kept[q].nextSetBit(0);
+            heads[q] = next[q] < 0 ? null : mQueryArticles.get(q).get(next[q]);
+        }
+        while (true) {
+            int newest = -1;
+            for (int q = 0; q < queries; q++) {
+                if (heads[q] != null && (newest < 0 || NEWEST_FIRST.compare(heads[q], heads[newest]) < 0)) {
+                    newest = q;
+                }
+            }
+            if (newest < 0) {
+                return merged;
+            }
+            merged.add(heads[newest]);
+            next[newest] = kept[newest].nextSetBit(next[newest] + 1);
+            heads[newest] = next[newest] < 0 ? null : mQueryArticles.get(newest).get(next[newest]);
+        }
+    }
+}
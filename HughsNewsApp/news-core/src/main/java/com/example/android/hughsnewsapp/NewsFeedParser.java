@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads one kind of news feed, as it streams in, into {@link News} articles, so feeds other
+ * than the Guardian API can be merged into the same list. Entries that cannot be shown, such as
+ * those without a link, are skipped rather than failing the whole feed.
+ */
+public interface NewsFeedParser {
+
+    /** Reads Guardian search responses */
+    NewsFeedParser GUARDIAN = NewsJsonParser::parse;
+
+    /** Reads RSS 2.0 and Atom feeds */
+    NewsFeedParser XML = new NewsXmlParser();
+
+    /** Reads the responses of News API (newsapi.org) and the many APIs sharing its layout */
+    NewsFeedParser NEWS_API = new NewsApiParser();
+
+    /** Parse the given stream and return the articles it holds, in the order the feed has them. */
+    List<News> parse(InputStream in) throws IOException;
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.hughsnewsapp.Constants.HTTP_NOT_MODIFIED_CODE;
+
+/**
+ * A {@link NewsFetcher} running its fetches on a bounded pool of background threads, with a
+ * separate cap on the number of requests in flight to any one host.
+ */
+public class NewsFetchEngine implements NewsFetcher {
+
+    /** Idle threads are let go after this many seconds */
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /** Persistent store of previous responses, may be null */
+    private final NewsDiskCache mCache;
+
+    /** Pages fetched in the last few moments and the fetches in flight, may be null */
+    private final NewsMemoryCache mMemoryCache;
+
+    /** Retries failed requests and stops making them while the API keeps failing, may be null */
+    private final NewsFetchPolicy mPolicy;
+
+    /** Runs the callbacks, normally on the main thread */
+    private final Executor mCallbackExecutor;
+
+    /** Permits for the requests in flight, by host */
+    private final HostPermits mHostPermits;
+
+    /** Makes the row text of each article before it is delivered, may be null */
+    private volatile NewsRowFormatter mRowFormatter;
+
+    /**
+     * Constructor
+     * @param threads maximum number of fetches running at once, further ones are queued
+     * @param cache persistent store of previous responses, or null
+     * @param callbackExecutor runs the callbacks, normally on the main thread
+     */
+    public NewsFetchEngine(int threads, NewsDiskCache cache, Executor callbackExecutor) {
+        this(threads, threads, cache, callbackExecutor);
+    }
+
+    /**
+     * Constructor
+     * @param threads maximum number of fetches running at once, further ones are queued
+     * @param maxPerHost maximum number of requests in flight to one host
+     * @param cache persistent store of previous responses, or null
+     * @param callbackExecutor runs the callbacks, normally on the main thread
+     */
+    public NewsFetchEngine(int threads, int maxPerHost, NewsDiskCache cache,
+                           Executor callbackExecutor) {
+        this(threads, maxPerHost, cache, null, null, callbackExecutor);
+    }
+
+    /**
+     * Constructor
+     * @param threads maximum number of fetches running at once, further ones are queued
+     * @param maxPerHost maximum number of requests in flight to one host
+     * @param cache persistent store of previous responses, or null
+     * @param memoryCache recently fetched pages, shared with other engines, or null
+     * @param policy retries failed requests, or null to make a single attempt
+     * @param callbackExecutor runs the callbacks, normally on the main thread
+     */
+    public NewsFetchEngine(int threads, int maxPerHost, NewsDiskCache cache,
+                           NewsMemoryCache memoryCache, NewsFetchPolicy policy,
+                           Executor callbackExecutor) {
+        mMemoryCache = memoryCache;
+        mPolicy = policy;
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+        mCache = cache;
+        mCallbackExecutor = callbackExecutor;
+        mHostPermits = new HostPermits(maxPerHost);
+    }
+
+    @Override
+    public FetchHandle fetch(final String url, final boolean useCache, final Callback callback) {
+        final FetchHandle handle = new FetchHandle();
+        handle.setFuture(mExecutor.submit(() -> run(url, useCache && mCache != null, callback, handle)));
+        return handle;
+    }
+
+    @Override
+    public FetchHandle readCached(final String url, final Callback callback) {
+        final FetchHandle handle = new FetchHandle();
+        handle.setFuture(mExecutor.submit(() -> {
+            NewsPage recentPage = mMemoryCache == null ? null : mMemoryCache.get(url);
+            NewsPage cachedPage = recentPage != null ? recentPage
+                    : mCache == null ? null : QueryUtils.readCachedPage(mCache, url);
+            if (cachedPage != null) {
+                deliverPage(handle, callback, cachedPage);
+            }
+            deliver(handle, () -> callback.onFetchFinished(cachedPage != null));
+        }));
+        return handle;
+    }
+
+    /**
+     * Have the row text of every article made by the given formatter on the fetch thread, before
+     * its page is delivered, so the main thread only has to bind it. Null to make none.
+     */
+    public void setRowFormatter(NewsRowFormatter rowFormatter) {
+        mRowFormatter = rowFormatter;
+    }
+
+    /** Cancel every queued fetch and let the threads go. Fetches in flight should be cancelled first. */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /** This is on a background thread. */
+    private void run(String url, boolean useCache, Callback callback, FetchHandle handle) {
+        long start = NewsTrace.begin(NewsTrace.Stage.FETCH);
+        try {
+            fetchPage(url, useCache, callback, handle);
+        } finally {
+            NewsTrace.end(NewsTrace.Stage.FETCH, start);
+        }
+    }
+
+    /** Deliver the page for the given URL from memory, then the disk cache and the network. */
+    private void fetchPage(String url, boolean useCache, Callback callback, FetchHandle handle) {
+        // A page fetched moments ago, by this screen or one before it, needs no request at all
+        NewsPage recentPage = mMemoryCache == null ? null : mMemoryCache.get(url);
+        if (recentPage != null) {
+            NewsTrace.count(NewsTrace.Counter.MEMORY_CACHE_HITS);
+            deliverPage(handle, callback, recentPage);
+            deliver(handle, () -> callback.onFetchFinished(true));
+            return;
+        }
+
+        // Show whatever was cached for this query straight away. While the API is failing it stays
+        // on screen, and so does the failure.
+        NewsPage cachedPage = useCache ? QueryUtils.readCachedPage(mCache, url) : null;
+        if (cachedPage != null) {
+            deliverPage(handle, callback, cachedPage);
+        }
+
+        // Perform the network request, or wait for the same request already in flight
+        NewsPage currentPage = mMemoryCache == null
+                ? request(url, useCache, cachedPage, handle)
+                : mMemoryCache.fetch(url, handle,
+                        shared -> request(url, useCache, cachedPage, shared));
+
+        // When the server says the cached articles are still current they are not shown again
+        boolean notModified = cachedPage != null
+                && handle.getResponseCode() == HTTP_NOT_MODIFIED_CODE;
+        if (currentPage != null && !notModified) {
+            deliverPage(handle, callback, currentPage);
+        }
+        deliver(handle, () -> callback.onFetchFinished(currentPage != null));
+    }
+
+    /**
+     * Perform the network request, as many times as the policy allows, and return the current
+     * page of news articles: the fresh page, or the cached one if the server confirmed it is
+     * still current. Return null if the request failed.
+     */
+    private NewsPage request(String url, boolean useCache, NewsPage cachedPage, FetchHandle handle) {
+        if (mPolicy == null) {
+            return attempt(url, useCache, cachedPage, handle);
+        }
+        return mPolicy.execute(handle, attemptHandle ->
+                attempt(url, useCache, cachedPage, attemptHandle));
+    }
+
+    /** Perform the network request once, within the limit for its host, as for {@link #request}. */
+    private NewsPage attempt(String url, boolean useCache, NewsPage cachedPage, FetchHandle handle) {
+        Semaphore permits = mHostPermits.forUrl(url);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            // Cancelled while waiting for the host
+            return null;
+        }
+        NewsPage page;
+        try {
+            page = QueryUtils.fetchNewsPage(url, useCache ? mCache : null, handle);
+        } finally {
+            permits.release();
+        }
+        if (page == null && useCache && handle.getResponseCode() == HTTP_NOT_MODIFIED_CODE) {
+            page = cachedPage != null ? cachedPage : QueryUtils.readCachedPage(mCache, url);
+        }
+        return page;
+    }
+
+    /**
+     * Make the row text and title signatures of the articles of the page, then hand it to the
+     * callback. The page is the caller's own: pages held in memory are handed out as copies.
+     */
+    private void deliverPage(FetchHandle handle, Callback callback, NewsPage page) {
+        NewsRowFormatter rowFormatter = mRowFormatter;
+        if (page.getNews() != null && !handle.isCancelled()) {
+            long start = NewsTrace.begin(NewsTrace.Stage.FORMAT);
+            if (rowFormatter != null) {
+                rowFormatter.prepare(page.getNews(), System.currentTimeMillis());
+            }
+            // Leaves the main thread only the cheap lookups to group the near duplicates
+            NewsClusterer.sign(page.getNews());
+            NewsTrace.end(NewsTrace.Stage.FORMAT, start);
+        }
+        deliver(handle, () -> callback.onPageLoaded(page));
+    }
+
+    /** Run the callback on the callback executor unless the fetch has been cancelled by then. */
+    private void deliver(FetchHandle handle, Runnable callback) {
+        if (handle.isCancelled()) {
+            return;
+        }
+        mCallbackExecutor.execute(() -> {
+            if (!handle.isCancelled()) {
+                callback.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.hughsnewsapp.Constants.CIRCUIT_FAILURE_THRESHOLD;
+import static com.example.android.hughsnewsapp.Constants.CIRCUIT_OPEN_TIME;
+import static com.example.android.hughsnewsapp.Constants.FETCH_BACKOFF_BASE;
+import static com.example.android.hughsnewsapp.Constants.FETCH_BACKOFF_MAX;
+import static com.example.android.hughsnewsapp.Constants.FETCH_MAX_ATTEMPTS;
+import static com.example.android.hughsnewsapp.Constants.FETCH_MAX_RETRY_AFTER;
+
+/**
+ * Decides how fetches from the Guardian API cope with failure. Each failed attempt is
+ * classified; those worth repeating are retried after an exponential backoff with full jitter,
+ * or after the wait the server asked for in a Retry-After header. After repeated failures that
+ * suggest an outage (timeouts, network and server errors) the circuit opens: no requests are
+ * made for a while, so callers keep showing what they have cached, then a single trial request
+ * decides whether to close it again. What happened is counted in {@link Stats}. One policy is
+ * shared by every fetch to the API.
+ */
+public class NewsFetchPolicy {
+
+    /** Why an attempt failed. */
+    public enum Failure {
+        /** Connecting or reading took longer than the timeout */
+        TIMEOUT(true, true),
+        /** The connection could not be made or broke */
+        NETWORK(true, true),
+        /** HTTP 429, the API key has used up its requests for now */
+        RATE_LIMITED(true, false),
+        /** HTTP 5xx */
+        SERVER_ERROR(true, true),
+        /** Any other unexpected HTTP status, which asking again won't change */
+        CLIENT_ERROR(false, false),
+        /** The body was not the JSON expected */
+        MALFORMED(false, false),
+        /** Not attempted because the circuit is open or the server asked to wait */
+        CIRCUIT_OPEN(false, false);
+
+        private final boolean mRetryable;
+        private final boolean mOutage;
+
+        Failure(boolean retryable, boolean outage) {
+            mRetryable = retryable;
+            mOutage = outage;
+        }
+
+        /** Return true if another attempt may well succeed */
+        public boolean isRetryable() {
+            return mRetryable;
+        }
+
+        /**
+         * Return true if the server or the network may be down, which counts towards opening
+         * the circuit
+         */
+        public boolean isOutage() {
+            return mOutage;
+        }
+    }
+
+    /** One attempt at a fetch. */
+    public interface Attempt {
+        /**
+         * Make the request and return the page, or null. A failure is recorded on the handle;
+         * an attempt that records none has succeeded, even without a page (HTTP 304).
+         */
+        NewsPage run(FetchHandle handle);
+    }
+
+    /** Source of the time in milliseconds; only differences matter. */
+    interface Clock {
+        long millis();
+    }
+
+    /** Waits between attempts. */
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    /** Snapshot of the counters of a {@link NewsFetchPolicy}. */
+    public static final class Stats {
+        private final long mAttempts;
+        private final long mSuccesses;
+        private final long[] mFailures;
+        private final long mRetries;
+        private final long mShortCircuited;
+        private final long mCircuitOpened;
+        private final boolean mCircuitOpen;
+
+        Stats(long attempts, long successes, long[] failures, long retries, long shortCircuited,
+              long circuitOpened, boolean circuitOpen) {
+            mAttempts = attempts;
+            mSuccesses = successes;
+            mFailures = failures;
+            mRetries = retries;
+            mShortCircuited = shortCircuited;
+            mCircuitOpened = circuitOpened;
+            mCircuitOpen = circuitOpen;
+        }
+
+        /** Return the number of requests made, retries included */
+        public long getAttempts() { return mAttempts; }
+
+        /** Return the number of requests that succeeded */
+        public long getSuccesses() { return mSuccesses; }
+
+        /** Return the number of requests that failed in the given way */
+        public long getFailures(Failure failure) { return mFailures[failure.ordinal()]; }
+
+        /** Return the number of requests made again after a failure */
+        public long getRetries() { return mRetries; }
+
+        /** Return the number of requests not made because the circuit was open */
+        public long getShortCircuited() { return mShortCircuited; }
+
+        /** Return the number of times the circuit opened */
+        public long getCircuitOpened() { return mCircuitOpened; }
+
+        /** Return true if the circuit is open now */
+        public boolean isCircuitOpen() { return mCircuitOpen; }
+
+        @Override
+        public String toString() {
+            StringBuilder failures = new StringBuilder();
+            for (Failure failure : Failure.values()) {
+                long count = mFailures[failure.ordinal()];
+                if (count > 0) {
+                    failures.append(' ').append(failure).append('=').append(count);
+                }
+            }
+            return "attempts=" + mAttempts + " successes=" + mSuccesses + " retries=" + mRetries
+                    + " shortCircuited=" + mShortCircuited + " circuitOpened=" + mCircuitOpened
+                    + (mCircuitOpen ? " open" : " closed") + failures;
+        }
+    }
+
+    private enum State {
+        /** Requests are made */
+        CLOSED,
+        /** Requests are refused until the open time has passed */
+        OPEN,
+        /** One trial request is being made, others are refused */
+        HALF_OPEN
+    }
+
+    private final int mMaxAttempts;
+    private final long mBackoffBase;
+    private final long mBackoffMax;
+    private final long mMaxRetryAfter;
+    private final int mFailureThreshold;
+    private final long mOpenTime;
+    private final Clock mClock;
+    private final Sleeper mSleeper;
+    private final Random mRandom;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+
+    /** No request is made before this time, as the server asked with Retry-After */
+    private long mNotBefore;
+
+    /** Why the last attempt failed, or null if it succeeded */
+    private Failure mLastFailure;
+
+    private long mAttempts;
+    private long mSuccesses;
+    private final long[] mFailures = new long[Failure.values().length];
+    private long mRetries;
+    private long mShortCircuited;
+    private long mCircuitOpened;
+
+    private NewsFetchPolicy(Builder builder) {
+        mMaxAttempts = builder.mMaxAttempts;
+        mBackoffBase = builder.mBackoffBase;
+        mBackoffMax = builder.mBackoffMax;
+        mMaxRetryAfter = builder.mMaxRetryAfter;
+        mFailureThreshold = builder.mFailureThreshold;
+        mOpenTime = builder.mOpenTime;
+        mClock = builder.mClock;
+        mSleeper = builder.mSleeper;
+        mRandom = builder.mRandom;
+    }
+
+    /**
+     * Run the attempt until it succeeds, fails in a way not worth repeating, or runs out of
+     * attempts, waiting between attempts. Return the page of the successful attempt, or null.
+     * The handle is left holding the failure of the last attempt. Nothing is attempted while
+     * the circuit is open. This is on a background thread.
+     */
+    public NewsPage execute(FetchHandle handle, Attempt attempt) {
+        for (int attempts = 1; ; attempts++) {
+            long wait = acquire();
+            if (wait > 0) {
+                handle.setFailure(Failure.CIRCUIT_OPEN, wait);
+                return null;
+            }
+            handle.setFailure(null, 0);
+            NewsPage page = attempt.run(handle);
+            if (handle.isCancelled()) {
+                // Says nothing about the server
+                release();
+                return null;
+            }
+            Failure failure = handle.getFailure();
+            if (failure == null) {
+                onSuccess();
+                return page;
+            }
+            long delay = onFailure(failure, handle.getRetryAfter(), attempts);
+            if (delay < 0) {
+                return null;
+            }
+            try {
+                mSleeper.sleep(delay);
+            } catch (InterruptedException e) {
+                // Cancelled while waiting
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /** Return why the last attempt failed, or null if it succeeded or there was none. */
+    public synchronized Failure getLastFailure() {
+        return mLastFailure;
+    }
+
+    /** Return a snapshot of the counters. */
+    public synchronized Stats getStats() {
+        return new Stats(mAttempts, mSuccesses, mFailures.clone(), mRetries, mShortCircuited,
+                mCircuitOpened, mState != State.CLOSED);
+    }
+
+    /** Return 0 if a request may be made now, otherwise how long to wait in milliseconds. */
+    private synchronized long acquire() {
+        long now = mClock.millis();
+        long wait = mNotBefore - now;
+        if (mState == State.OPEN) {
+            wait = Math.max(wait, mOpenedAt + mOpenTime - now);
+            if (wait <= 0) {
+                // Let this request through as the trial
+                mState = State.HALF_OPEN;
+            }
+        } else if (mState == State.HALF_OPEN) {
+            wait = Math.max(wait, 1);
+        }
+        if (wait > 0) {
+            mShortCircuited++;
+            return wait;
+        }
+        mAttempts++;
+        return 0;
+    }
+
+    /** Called when an attempt was cancelled, so a trial that never finished can be made again. */
+    private synchronized void release() {
+        if (mState == State.HALF_OPEN) {
+            mState = State.OPEN;
+            mOpenedAt = mClock.millis() - mOpenTime;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        mSuccesses++;
+        mLastFailure = null;
+        mConsecutiveFailures = 0;
+        mState = State.CLOSED;
+    }
+
+    /** Record the failure and return how long to wait before retrying, or -1 not to retry. */
+    private synchronized long onFailure(Failure failure, long retryAfter, int attempts) {
+        long now = mClock.millis();
+        mFailures[failure.ordinal()]++;
+        mLastFailure = failure;
+        if (retryAfter > 0) {
+            mNotBefore = Math.max(mNotBefore, now + retryAfter);
+        }
+        if (failure.isOutage()) {
+            mConsecutiveFailures++;
+            if (mState != State.CLOSED || mConsecutiveFailures >= mFailureThreshold) {
+                if (mState != State.OPEN) {
+                    mCircuitOpened++;
+                }
+                mState = State.OPEN;
+                mOpenedAt = now;
+                return -1;
+            }
+        } else if (mState == State.HALF_OPEN) {
+            // The server answered a request it won't serve, which says nothing about an
+            // outage: the next request is the trial instead
+            release();
+        }
+        if (!failure.isRetryable() || attempts >= mMaxAttempts) {
+            return -1;
+        }
+        long delay = Math.max(backoff(attempts), mNotBefore - now);
+        if (delay > mMaxRetryAfter) {
+            // Not worth keeping the caller waiting; what is cached will have to do
+            return -1;
+        }
+        mRetries++;
+        return delay;
+    }
+
+    /**
+     * Return a random wait of up to the base delay doubled for each attempt made so far, so
+     * clients that failed together don't all retry together.
+     */
+    private long backoff(int attempts) {
+        long cap = Math.min(mBackoffMax, mBackoffBase << Math.min(attempts - 1, 30));
+        return (long) (mRandom.nextDouble() * cap);
+    }
+
+    /** Return the failure an HTTP status other than 200 or 304 stands for. */
+    static Failure classify(int statusCode) {
+        if (statusCode == 429) {
+            return Failure.RATE_LIMITED;
+        }
+        return statusCode >= 500 ? Failure.SERVER_ERROR : Failure.CLIENT_ERROR;
+    }
+
+    /** Return the failure an exception thrown while making a request or parsing it stands for. */
+    static Failure classify(Exception e) {
+        if (e instanceof SocketTimeoutException) {
+            return Failure.TIMEOUT;
+        }
+        // JsonReader reports malformed JSON as an IOException or IllegalStateException, and a
+        // body that stops short as an EOFException
+        if (e instanceof MalformedJsonException || e instanceof EOFException
+                || e instanceof RuntimeException) {
+            return Failure.MALFORMED;
+        }
+        return Failure.NETWORK;
+    }
+
+    /**
+     * Return the wait in milliseconds asked for by the value of a Retry-After header, either a
+     * number of seconds or an HTTP date, or 0 if there is none or it can't be read.
+     * @param now current time in milliseconds since the epoch
+     */
+    static long parseRetryAfter(String value, long now) {
+        if (value == null) {
+            return 0;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    /** Builds a {@link NewsFetchPolicy}, starting from the app's defaults. */
+    public static final class Builder {
+        private int mMaxAttempts = FETCH_MAX_ATTEMPTS;
+        private long mBackoffBase = FETCH_BACKOFF_BASE;
+        private long mBackoffMax = FETCH_BACKOFF_MAX;
+        private long mMaxRetryAfter = FETCH_MAX_RETRY_AFTER;
+        private int mFailureThreshold = CIRCUIT_FAILURE_THRESHOLD;
+        private long mOpenTime = CIRCUIT_OPEN_TIME;
+        private Clock mClock = () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        private Sleeper mSleeper = Thread::sleep;
+        private Random mRandom = new Random();
+
+        /** Make at most this many attempts per fetch, the first one included */
+        public Builder maxAttempts(int maxAttempts) {
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        /** Wait up to the base delay before the first retry, doubling for each further one */
+        public Builder backoff(long baseMillis, long maxMillis) {
+            mBackoffBase = baseMillis;
+            mBackoffMax = maxMillis;
+            return this;
+        }
+
+        /** Give up rather than wait longer than this for a retry */
+        public Builder maxRetryAfter(long millis) {
+            mMaxRetryAfter = millis;
+            return this;
+        }
+
+        /** Open the circuit after this many failures in a row, for this many milliseconds */
+        public Builder circuitBreaker(int failureThreshold, long openMillis) {
+            mFailureThreshold = failureThreshold;
+            mOpenTime = openMillis;
+            return this;
+        }
+
+        Builder clock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        Builder sleeper(Sleeper sleeper) {
+            mSleeper = sleeper;
+            return this;
+        }
+
+        Builder random(Random random) {
+            mRandom = random;
+            return this;
+        }
+
+        public NewsFetchPolicy build() {
+            return new NewsFetchPolicy(this);
+        }
+    }
+}
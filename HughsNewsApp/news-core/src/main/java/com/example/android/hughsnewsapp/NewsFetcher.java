@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+/**
+ * Fetches pages of Guardian search results in the background and hands them back on the main
+ * thread. Every fetch can be cancelled through the {@link FetchHandle} it returns.
+ */
+public interface NewsFetcher {
+
+    /** Receives the results of one fetch on the main thread. */
+    interface Callback {
+        /**
+         * A page was loaded. When the fetch uses the cache this may be called twice: first with
+         * the cached page, then with the fresh one if the server had anything newer.
+         */
+        void onPageLoaded(NewsPage page);
+
+        /**
+         * The fetch is over. Succeeded is true if the server answered with a page or confirmed
+         * that the cached page is still current.
+         */
+        void onFetchFinished(boolean succeeded);
+    }
+
+    /**
+     * Fetch the page of results at the given URL.
+     * @param url the request URL
+     * @param useCache true to show the cached copy first and revalidate it
+     * @param callback receives the results on the main thread
+     * @return handle to cancel the fetch
+     */
+    FetchHandle fetch(String url, boolean useCache, Callback callback);
+
+    /**
+     * Deliver the cached page of results at the given URL without going to the network.
+     * The fetch succeeds if there was a cached page.
+     * @param url the request URL
+     * @param callback receives the results on the main thread
+     * @return handle to cancel the read
+     */
+    FetchHandle readCached(String url, Callback callback);
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static com.example.android.hughsnewsapp.Constants.HTTP_SET_CONNECT_TIMEOUT;
+import static com.example.android.hughsnewsapp.Constants.HTTP_SET_READ_TIME;
+
+/**
+ * Makes GET requests over {@link HttpURLConnection} so that connections are kept alive and
+ * reused: a response body is always read to the end and closed instead of disconnecting.
+ * Bodies are requested gzip compressed and decompressed transparently, timeouts are set per
+ * request, and the timings and sizes of every request are recorded as {@link RequestMetrics}.
+ */
+public class NewsHttpClient {
+
+    /** Number of recent requests whose metrics are kept */
+    private static final int RECENT_METRICS = 50;
+
+    /** Bodies left with more than this many unread bytes are not worth draining to keep the connection */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /** Receives the metrics of every finished request, on the thread that made it. */
+    public interface MetricsListener {
+        void onRequestFinished(RequestMetrics metrics);
+    }
+
+    /** A GET request with its own timeouts and headers. */
+    public static final class Request {
+        private final URL mUrl;
+        private final int mConnectTimeout;
+        private final int mReadTimeout;
+        private final Map<String, String> mHeaders;
+
+        private Request(Builder builder) {
+            mUrl = builder.mUrl;
+            mConnectTimeout = builder.mConnectTimeout;
+            mReadTimeout = builder.mReadTimeout;
+            mHeaders = Collections.unmodifiableMap(new LinkedHashMap<>(builder.mHeaders));
+        }
+
+        /** Return the request URL */
+        public URL getUrl() { return mUrl; }
+
+        /** Return the connect timeout in milliseconds */
+        public int getConnectTimeout() { return mConnectTimeout; }
+
+        /** Return the read timeout in milliseconds */
+        public int getReadTimeout() { return mReadTimeout; }
+
+        /** Return the extra request headers */
+        public Map<String, String> getHeaders() { return mHeaders; }
+
+        /** Return a builder starting from this request */
+        public Builder newBuilder() {
+            Builder builder = new Builder(mUrl).connectTimeout(mConnectTimeout).readTimeout(mReadTimeout);
+            builder.mHeaders.putAll(mHeaders);
+            return builder;
+        }
+
+        /** Builds a {@link Request}, starting from the app's default timeouts. */
+        public static final class Builder {
+            private final URL mUrl;
+            private int mConnectTimeout = HTTP_SET_CONNECT_TIMEOUT;
+            private int mReadTimeout = HTTP_SET_READ_TIME;
+            private final Map<String, String> mHeaders = new LinkedHashMap<>();
+
+            public Builder(URL url) {
+                mUrl = url;
+            }
+
+            public Builder connectTimeout(int millis) {
+                mConnectTimeout = millis;
+                return this;
+            }
+
+            public Builder readTimeout(int millis) {
+                mReadTimeout = millis;
+                return this;
+            }
+
+            public Builder header(String name, String value) {
+                mHeaders.put(name, value);
+                return this;
+            }
+
+            public Request build() {
+                return new Request(this);
+            }
+        }
+    }
+
+    /**
+     * The response to a {@link Request}. Its body must be closed, which reads whatever is left
+     * of it so the connection can go back to the pool.
+     */
+    public final class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final int mStatusCode;
+        private final CountingInputStream mWire;
+        private final CountingInputStream mBody;
+        private final String mUrl;
+        private final long mConnectMillis;
+        private final long mTtfbMillis;
+        private final long mHeadersAt;
+        private boolean mClosed;
+
+        private Response(HttpURLConnection connection, int statusCode, CountingInputStream wire,
+                         CountingInputStream body, String url, long connectMillis, long ttfbMillis) {
+            mConnection = connection;
+            mStatusCode = statusCode;
+            mWire = wire;
+            mBody = body;
+            mUrl = url;
+            mConnectMillis = connectMillis;
+            mTtfbMillis = ttfbMillis;
+            mHeadersAt = System.nanoTime();
+        }
+
+        /** Return the HTTP status */
+        public int getStatusCode() { return mStatusCode; }
+
+        /** Return the value of the named response header, or null */
+        public String getHeader(String name) { return mConnection.getHeaderField(name); }
+
+        /** Return the decompressed body, which is empty for responses without one */
+        public InputStream getBody() { return mBody; }
+
+        /** Return the bytes of the body read off the connection so far, as sent over the wire */
+        public long getWireBytes() { return mWire.getCount(); }
+
+        /** Finish reading the body so the connection can be reused, then record the metrics. */
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                drain();
+            } finally {
+                mBody.close();
+                record(new RequestMetrics(mUrl, mStatusCode, mConnectMillis, mTtfbMillis,
+                        millisSince(mHeadersAt), mWire.getCount(), mBody.getCount()));
+            }
+        }
+
+        private void drain() {
+            try {
+                byte[] buffer = new byte[8192];
+                long drained = 0;
+                int read;
+                while (drained < MAX_DRAIN_BYTES && (read = mWire.read(buffer)) != -1) {
+                    drained += read;
+                }
+                if (drained >= MAX_DRAIN_BYTES) {
+                    // Cheaper to open a new connection than to read the rest
+                    mConnection.disconnect();
+                }
+            } catch (IOException e) {
+                // The connection is broken and won't be pooled anyway
+                mConnection.disconnect();
+            }
+        }
+    }
+
+    private final List<MetricsListener> mListeners = new CopyOnWriteArrayList<>();
+
+    /** Metrics of the most recent requests, oldest first */
+    private final Deque<RequestMetrics> mRecentMetrics = new ArrayDeque<>();
+
+    /** Add a listener for the metrics of every finished request. */
+    public void addMetricsListener(MetricsListener listener) {
+        mListeners.add(listener);
+    }
+
+    /** Return the metrics of the most recent requests, oldest first. */
+    public synchronized List<RequestMetrics> getRecentMetrics() {
+        return new ArrayList<>(mRecentMetrics);
+    }
+
+    /**
+     * Send the request and return the response once its headers have arrived.
+     * @param request the request to send
+     * @param handle lets the request be aborted from another thread and receives the HTTP status; may be null
+     */
+    public Response execute(Request request, FetchHandle handle) throws IOException {
+        URL url = request.getUrl();
+        long connectMillis = 0;
+        long ttfbMillis = 0;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            if (handle != null) {
+                // Lets the handle abort the request by disconnecting
+                handle.attach(connection);
+            }
+            connection.setConnectTimeout(request.getConnectTimeout());
+            connection.setReadTimeout(request.getReadTimeout());
+            connection.setRequestMethod("GET");
+            // Asking for gzip explicitly turns off the platform's own transparent decompression,
+            // so the compressed size can be measured
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            // Includes the connection's own lookup of the host
+            long start = System.nanoTime();
+            connection.connect();
+            connectMillis = millisSince(start);
+
+            start = System.nanoTime();
+            int statusCode = connection.getResponseCode();
+            ttfbMillis = millisSince(start);
+            if (handle != null) {
+                handle.setResponseCode(statusCode);
+            }
+
+            InputStream raw = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            CountingInputStream wire = new CountingInputStream(
+                    raw != null ? raw : new ByteArrayInputStream(new byte[0]));
+            InputStream decoded = wire;
+            boolean hasBody = statusCode >= 200 && statusCode != 204 && statusCode != 304;
+            if (hasBody && "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                decoded = new GZIPInputStream(wire);
+            }
+            return new Response(connection, statusCode, wire, new CountingInputStream(decoded),
+                    url.toString(), connectMillis, ttfbMillis);
+        } catch (IOException e) {
+            record(new RequestMetrics(url.toString(), 0, connectMillis, ttfbMillis, 0, 0, 0));
+            throw e;
+        }
+    }
+
+    private void record(RequestMetrics metrics) {
+        synchronized (this) {
+            if (mRecentMetrics.size() == RECENT_METRICS) {
+                mRecentMetrics.removeFirst();
+            }
+            mRecentMetrics.addLast(metrics);
+        }
+        for (MetricsListener listener : mListeners) {
+            listener.onRequestFinished(metrics);
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /** Counts the bytes read through it. */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.hughsnewsapp.Constants.HTTP_SUCCESS_CODE;
+import static com.example.android.hughsnewsapp.Constants.MAX_IMAGE_BYTES;
+
+/**
+ * Loads the thumbnails of the list rows. Images are downloaded and decoded on a small pool of
+ * threads, scaled down to the height they are shown at, and kept in a memory cache holding
+ * the least recently used images up to a maximum size, with the downloaded files kept in a
+ * {@link NewsDiskCache} behind it. Rows asking for the same image share one download, and a
+ * row that is recycled cancels its request; a download nobody is waiting for any more is
+ * aborted. An image evicted from memory is handed back to the {@link Decoder} for its memory
+ * to be reused, but only once no row shows it any more.
+ * Called on the main thread, except where noted.
+ * @param <T> the decoded image type, a Bitmap in the app
+ */
+public class NewsImageLoader<T> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsImageLoader.class.getSimpleName();
+
+    /** Turns downloaded files into images and takes back the images no longer used. */
+    public interface Decoder<T> {
+        /**
+         * Decode the image, scaled down to no less than the given height in pixels, or return
+         * null if it can't be decoded. This is on a background thread.
+         */
+        T decode(byte[] data, int targetHeight);
+
+        /** Return the number of bytes of memory the image takes. */
+        int sizeOf(T image);
+
+        /** The image is neither cached nor shown any more, so its memory may be reused. */
+        void recycle(T image);
+    }
+
+    /** Receives a loaded image. */
+    public interface Target<T> {
+        void onImageLoaded(T image);
+    }
+
+    /**
+     * One row's request for an image. Cancel it when the row is recycled or shows another
+     * article: the image is not delivered, or if it has been the row must no longer show it.
+     */
+    public final class Request {
+        private final String mKey;
+        private final Target<T> mTarget;
+        /** Download the request waits for, or null */
+        private Job mJob;
+        /** Image the request holds once delivered, or null */
+        private Entry mEntry;
+        private boolean mCancelled;
+
+        private Request(String key, Target<T> target) {
+            mKey = key;
+            mTarget = target;
+        }
+
+        /** Cancel the request. Safe to call any number of times. */
+        public void cancel() {
+            NewsImageLoader.this.cancel(this);
+        }
+    }
+
+    /** An image in memory */
+    private final class Entry {
+        final T mImage;
+        final int mBytes;
+        /** Requests holding the image */
+        int mUsers;
+        /** False once evicted from the memory cache */
+        boolean mCached = true;
+
+        Entry(T image, int bytes) {
+            mImage = image;
+            mBytes = bytes;
+        }
+    }
+
+    /** A download and decode in progress, shared by every request for the same image */
+    private final class Job implements Runnable {
+        final String mKey;
+        final String mUrl;
+        final int mTargetHeight;
+        final FetchHandle mHandle = new FetchHandle();
+        final List<Request> mRequests = new ArrayList<>();
+
+        Job(String key, String url, int targetHeight) {
+            mKey = key;
+            mUrl = url;
+            mTargetHeight = targetHeight;
+        }
+
+        /** This is on a background thread. */
+        @Override
+        public void run() {
+            T image = null;
+            byte[] data = readCached(mUrl);
+            if (data == null) {
+                data = download(mUrl, mHandle);
+                if (data != null) {
+                    writeCached(mUrl, data);
+                }
+            }
+            if (data != null) {
+                image = mDecoder.decode(data, mTargetHeight);
+            }
+            complete(this, image);
+        }
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /** Holds the downloaded files, may be null */
+    private final NewsDiskCache mDiskCache;
+
+    private final Decoder<T> mDecoder;
+
+    /** Runs the deliveries, normally on the main thread */
+    private final Executor mCallbackExecutor;
+
+    /** Maximum size in bytes of the images held in memory */
+    private final long mMaxBytes;
+
+    /** Images by key, least recently used first */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Downloads in progress by key */
+    private final Map<String, Job> mJobs = new HashMap<>();
+
+    /** Size of the images held in memory */
+    private long mBytes;
+
+    /**
+     * Constructor
+     * @param threads maximum number of images downloaded and decoded at once
+     * @param maxBytes maximum size of the images held in memory
+     * @param diskCache holds the downloaded files, or null
+     * @param decoder decodes the images and takes back those no longer used
+     * @param callbackExecutor runs the deliveries, normally on the main thread
+     */
+    public NewsImageLoader(int threads, long maxBytes, NewsDiskCache diskCache, Decoder<T> decoder,
+                           Executor callbackExecutor) {
+        mMaxBytes = maxBytes;
+        mDiskCache = diskCache;
+        mDecoder = decoder;
+        mCallbackExecutor = callbackExecutor;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Load the image at the given URL, scaled down to the given height, and hand it to the
+     * target. An image in memory is handed over before this returns.
+     */
+    public Request load(String url, int targetHeight, Target<T> target) {
+        String key = targetHeight + ":" + url;
+        Request request = new Request(key, target);
+        Job newJob = null;
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(key);
+            if (entry != null) {
+                entry.mUsers++;
+                request.mEntry = entry;
+            } else {
+                Job job = mJobs.get(key);
+                if (job == null) {
+                    job = new Job(key, url, targetHeight);
+                    mJobs.put(key, job);
+                    newJob = job;
+                }
+                job.mRequests.add(request);
+                request.mJob = job;
+            }
+        }
+        if (entry != null) {
+            target.onImageLoaded(entry.mImage);
+        } else if (newJob != null) {
+            newJob.mHandle.setFuture(mExecutor.submit(newJob));
+        }
+        return request;
+    }
+
+    /** Drop every image from memory; those still shown are recycled once they no longer are. */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /** Return the size in bytes of the images held in memory */
+    public synchronized long size() {
+        return mBytes;
+    }
+
+    /** Stop the threads. Downloads in progress are aborted and nothing more is delivered. */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private void cancel(Request request) {
+        Job abandoned = null;
+        synchronized (this) {
+            if (request.mCancelled) {
+                return;
+            }
+            request.mCancelled = true;
+            if (request.mEntry != null) {
+                release(request.mEntry);
+                request.mEntry = null;
+            }
+            Job job = request.mJob;
+            if (job != null) {
+                request.mJob = null;
+                job.mRequests.remove(request);
+                if (job.mRequests.isEmpty() && mJobs.get(job.mKey) == job) {
+                    // Anyone asking from now on starts a new download
+                    mJobs.remove(job.mKey);
+                    abandoned = job;
+                }
+            }
+        }
+        if (abandoned != null) {
+            abandoned.mHandle.cancel();
+        }
+    }
+
+    /** Called with the decoded image, or null if it failed. This is on a background thread. */
+    private void complete(Job job, T image) {
+        final Entry entry;
+        final List<Request> requests;
+        synchronized (this) {
+            if (mJobs.get(job.mKey) == job) {
+                mJobs.remove(job.mKey);
+            }
+            requests = new ArrayList<>(job.mRequests);
+            job.mRequests.clear();
+            entry = image == null ? null : new Entry(image, mDecoder.sizeOf(image));
+            if (entry != null) {
+                // Held for the requests until they are delivered or cancelled
+                entry.mUsers = requests.size();
+                for (Request request : requests) {
+                    request.mJob = null;
+                    request.mEntry = entry;
+                }
+                put(job.mKey, entry);
+            }
+        }
+        if (entry == null || requests.isEmpty()) {
+            return;
+        }
+        mCallbackExecutor.execute(() -> {
+            for (Request request : requests) {
+                boolean deliver;
+                synchronized (this) {
+                    deliver = request.mEntry == entry;
+                }
+                if (deliver) {
+                    request.mTarget.onImageLoaded(entry.mImage);
+                }
+            }
+        });
+    }
+
+    private void put(String key, Entry entry) {
+        Entry previous = mEntries.put(key, entry);
+        if (previous != null) {
+            evicted(previous);
+        }
+        mBytes += entry.mBytes;
+        trimToSize(mMaxBytes);
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Entry> eldest = mEntries.values().iterator();
+        while (mBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            evicted(entry);
+        }
+    }
+
+    private void evicted(Entry entry) {
+        mBytes -= entry.mBytes;
+        entry.mCached = false;
+        if (entry.mUsers == 0) {
+            mDecoder.recycle(entry.mImage);
+        }
+    }
+
+    private void release(Entry entry) {
+        if (--entry.mUsers == 0 && !entry.mCached) {
+            mDecoder.recycle(entry.mImage);
+        }
+    }
+
+    /** Return the downloaded file for the URL from the disk cache, or null. */
+    private byte[] readCached(String url) {
+        if (mDiskCache == null) {
+            return null;
+        }
+        NewsDiskCache.Entry entry = mDiskCache.get(url);
+        return entry == null ? null : entry.getBody();
+    }
+
+    private void writeCached(String url, byte[] data) {
+        if (mDiskCache == null) {
+            return;
+        }
+        try {
+            mDiskCache.put(url, null, null, data);
+        } catch (IOException e) {
+            NewsLog.e(LOG_TAG, "Problem caching the image.", e);
+        }
+    }
+
+    /** Download the file at the URL, or return null if that failed. On a background thread. */
+    private static byte[] download(String url, FetchHandle handle) {
+        NewsHttpClient.Response response = null;
+        try {
+            response = QueryUtils.getHttpClient().execute(
+                    new NewsHttpClient.Request.Builder(new URL(url)).build(), handle);
+            if (response.getStatusCode() != HTTP_SUCCESS_CODE) {
+                NewsLog.e(LOG_TAG, "Error response code: " + response.getStatusCode());
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            InputStream in = response.getBody();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (out.size() > MAX_IMAGE_BYTES) {
+                    NewsLog.e(LOG_TAG, "Image too large: " + url);
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            if (!handle.isCancelled()) {
+                NewsLog.e(LOG_TAG, "Problem downloading the image.", e);
+            }
+            return null;
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException ignored) {
+                    // The connection is not reused
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the power of two to divide the size of an image by while decoding it, the largest
+     * that keeps it at least as tall as the target height.
+     */
+    static int sampleSize(int height, int targetHeight) {
+        int sampleSize = 1;
+        if (targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
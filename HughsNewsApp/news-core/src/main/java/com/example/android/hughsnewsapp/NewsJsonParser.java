@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull-parses a Guardian search response straight from the network stream and emits a
+ * {@link News} object for each entry of response.results as soon as it has been read.
+ * The currentPage and pages members are kept so further pages can be requested.
+ * Members the app does not display (apiUrl, the rest of the tags and fields...) are skipped
+ * without being built. Results that are not objects or have no web URL are skipped, and so are
+ * fields of the wrong type, rather than failing the whole page.
+ * {@link NewsJsonScanner} reads responses that are already held in memory.
+ */
+public final class NewsJsonParser {
+
+    /** Receives each {@link News} article as soon as it has been parsed. */
+    public interface Listener {
+        void onNewsParsed(News news);
+    }
+
+    /** Create a private constructor because no one should ever create a {@link NewsJsonParser} object.*/
+    private NewsJsonParser() {
+    }
+
+    /** Parse the given UTF-8 JSON stream and return the list of {@link News} articles it contains.*/
+    public static List<News> parse(InputStream inputStream) throws IOException {
+        return parsePage(inputStream).getNews();
+    }
+
+    /** Parse the given UTF-8 JSON stream and return the {@link NewsPage} it contains.*/
+    public static NewsPage parsePage(InputStream inputStream) throws IOException {
+        final List<News> newsArticlesList = new ArrayList<>();
+        return parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8), newsArticlesList::add,
+                newsArticlesList);
+    }
+
+    /** Parse the given UTF-8 JSON stream, handing each {@link News} article to the listener. */
+    public static void parse(InputStream inputStream, Listener listener) throws IOException {
+        parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8), listener, null);
+    }
+
+    /**
+     * Parse the given JSON character stream, handing each {@link News} article to the listener.
+     * Return the page the articles belong to, holding the given list of articles.
+     */
+    private static NewsPage parse(Reader in, Listener listener, List<News> news) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        int[] paging = {1, 1};
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("response".equals(reader.nextName())) {
+                    readResponse(reader, listener, paging);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return new NewsPage(news, paging[0], paging[1]);
+    }
+
+    /**
+     * Read the "response" object, only descending into the "results" array.
+     * The currentPage and pages values are stored into paging[0] and paging[1].
+     */
+    private static void readResponse(JsonReader reader, Listener listener, int[] paging)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "results":
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        News news = readNews(reader);
+                        if (news == null) {
+                            // Not an article that can be shown; the rest of the page still is
+                            continue;
+                        }
+                        listener.onNewsParsed(news);
+                    }
+                    reader.endArray();
+                    break;
+                case "currentPage":
+                    paging[0] = reader.nextInt();
+                    break;
+                case "pages":
+                    paging[1] = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read a single entry of the "results" array, or skip it, returning null, if it is not an
+     * article that can be shown.
+     */
+    private static News readNews(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String sectionName = null;
+        String title = null;
+        String publicationDate = null;
+        String author = "";
+        String url = null;
+        String thumbnailUrl = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sectionName":
+                    sectionName = nextStringOrNull(reader);
+                    break;
+                case "webTitle":
+                    title = nextStringOrNull(reader);
+                    break;
+                case "webPublicationDate":
+                    publicationDate = nextStringOrNull(reader);
+                    break;
+                case "webUrl":
+                    url = nextStringOrNull(reader);
+                    break;
+                case "tags":
+                    author = readAuthor(reader);
+                    break;
+                case "fields":
+                    thumbnailUrl = readThumbnail(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (url == null) {
+            // Rows are told apart and opened by their URL
+            return null;
+        }
+        return new News(sectionName, title, publicationDate, author, url, thumbnailUrl);
+    }
+
+    /** Read the "fields" object and return its thumbnail URL, or null if it has none. */
+    private static String readThumbnail(JsonReader reader) throws IOException {
+        String thumbnail = null;
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("thumbnail".equals(reader.nextName())) {
+                thumbnail = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return thumbnail;
+    }
+
+    /**
+     * Read the "tags" array and return the webTitle of the first contributor, or an empty string
+     * if the article has no contributor tag (e.g. letters to the editor).
+     */
+    private static String readAuthor(JsonReader reader) throws IOException {
+        String author = "";
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return author;
+        }
+        reader.beginArray();
+        if (reader.hasNext() && reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+        } else if (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("webTitle".equals(reader.nextName())) {
+                    String webTitle = nextStringOrNull(reader);
+                    if (webTitle != null) {
+                        author = webTitle;
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        // Any further contributors are not displayed
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return author;
+    }
+
+    /** Return the next string value, or null if the value is JSON null or not a string. */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
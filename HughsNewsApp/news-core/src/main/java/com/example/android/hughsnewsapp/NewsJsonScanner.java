@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scans a complete Guardian search response held in memory, such as one read back from the
+ * {@link NewsDiskCache}, without decoding it into characters first. Only the web URL and the
+ * publication date of each article are decoded straight away, since the list needs them to
+ * merge and order the articles. The raw bytes of the other fields are copied aside, and
+ * {@link News} only decodes them when they are first asked for, so rows that are never shown
+ * are never decoded.
+ * Results that are not objects or have no web URL are skipped, and so are fields of the wrong
+ * type, rather than failing the whole page. A response that is not well-formed JSON still fails.
+ */
+final class NewsJsonScanner {
+
+    /** The fields decoded when first asked for, in the order of their spans */
+    static final int SECTION = 0;
+    static final int TITLE = 1;
+    static final int AUTHOR = 2;
+    static final int THUMBNAIL = 3;
+    static final int LAZY_FIELDS = 4;
+
+    private static final byte[] RESPONSE = ascii("response");
+    private static final byte[] RESULTS = ascii("results");
+    private static final byte[] CURRENT_PAGE = ascii("currentPage");
+    private static final byte[] PAGES = ascii("pages");
+    private static final byte[] SECTION_NAME = ascii("sectionName");
+    private static final byte[] WEB_TITLE = ascii("webTitle");
+    private static final byte[] WEB_PUBLICATION_DATE = ascii("webPublicationDate");
+    private static final byte[] WEB_URL = ascii("webUrl");
+    private static final byte[] TAGS = ascii("tags");
+    private static final byte[] FIELDS = ascii("fields");
+    private static final byte[] THUMBNAIL_KEY = ascii("thumbnail");
+
+    private final byte[] mJson;
+    private final int mLimit;
+    private int mPos;
+
+    /** Start and end of the last string scanned, between its quotes */
+    private int mStringStart;
+    private int mStringEnd;
+
+    /** Spans of the fields of the article being scanned: start, then end, or -1 for none */
+    private final int[] mSpans = new int[LAZY_FIELDS * 2];
+
+    private NewsJsonScanner(byte[] json) {
+        mJson = json;
+        mLimit = json.length;
+    }
+
+    /** Return the {@link NewsPage} held by the given UTF-8 JSON response. */
+    static NewsPage scan(byte[] json) throws IOException {
+        return new NewsJsonScanner(json).scanPage();
+    }
+
+    private NewsPage scanPage() throws IOException {
+        List<News> news = new ArrayList<>();
+        int[] paging = {1, 1};
+        expect('{');
+        if (!consume('}')) {
+            do {
+                if (nextKey(RESPONSE)) {
+                    scanResponse(news, paging);
+                } else {
+                    skipValue();
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        return new NewsPage(news, paging[0], paging[1]);
+    }
+
+    /**
+     * Scan the "response" object, only descending into the "results" array.
+     * The currentPage and pages values are stored into paging[0] and paging[1].
+     */
+    private void scanResponse(List<News> news, int[] paging) throws IOException {
+        if (peek() != '{') {
+            skipValue();
+            return;
+        }
+        expect('{');
+        if (consume('}')) {
+            return;
+        }
+        do {
+            if (nextKey(RESULTS)) {
+                scanResults(news);
+            } else if (keyEquals(CURRENT_PAGE)) {
+                paging[0] = nextInt(paging[0]);
+            } else if (keyEquals(PAGES)) {
+                paging[1] = nextInt(paging[1]);
+            } else {
+                skipValue();
+            }
+        } while (consume(','));
+        expect('}');
+    }
+
+    private void scanResults(List<News> news) throws IOException {
+        if (peek() != '[') {
+            skipValue();
+            return;
+        }
+        expect('[');
+        if (consume(']')) {
+            return;
+        }
+        do {
+            News article = peek() == '{' ? scanNews() : null;
+            if (article == null) {
+                // Whatever is left of the result is passed over, and the result with it
+                skipValue();
+            } else {
+                news.add(article);
+            }
+        } while (consume(','));
+        expect(']');
+    }
+
+    /**
+     * Scan a single entry of the "results" array, or return null, having consumed nothing but
+     * leaving the scanner at the start of the entry, if it is not an article that can be shown.
+     */
+    private News scanNews() throws IOException {
+        int start = mPos;
+        Arrays.fill(mSpans, -1);
+        String url = null;
+        long publicationTime = NewsDates.UNKNOWN;
+
+        expect('{');
+        if (!consume('}')) {
+            do {
+                if (nextKey(SECTION_NAME)) {
+                    scanField(SECTION);
+                } else if (keyEquals(WEB_TITLE)) {
+                    scanField(TITLE);
+                } else if (keyEquals(WEB_PUBLICATION_DATE)) {
+                    if (nextString()) {
+                        publicationTime = NewsDates.parseIso(new String(mJson, mStringStart,
+                                mStringEnd - mStringStart, StandardCharsets.ISO_8859_1));
+                    }
+                } else if (keyEquals(WEB_URL)) {
+                    if (nextString()) {
+                        url = decode(mJson, mStringStart, mStringEnd);
+                    }
+                } else if (keyEquals(TAGS)) {
+                    scanAuthor();
+                } else if (keyEquals(FIELDS)) {
+                    scanThumbnail();
+                } else {
+                    skipValue();
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        if (url == null) {
+            mPos = start;
+            return null;
+        }
+        return new News(copyFields(), mSpans.clone(), publicationTime, url);
+    }
+
+    /** Scan the "tags" array, keeping the webTitle of the first contributor as the author. */
+    private void scanAuthor() throws IOException {
+        if (peek() != '[') {
+            skipValue();
+            return;
+        }
+        expect('[');
+        if (consume(']')) {
+            // No contributor, e.g. letters to the editor
+            return;
+        }
+        if (peek() == '{') {
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    if (nextKey(WEB_TITLE)) {
+                        scanField(AUTHOR);
+                    } else {
+                        skipValue();
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+        } else {
+            skipValue();
+        }
+        // Any further contributors are not displayed
+        while (consume(',')) {
+            skipValue();
+        }
+        expect(']');
+    }
+
+    /** Scan the "fields" object, keeping its thumbnail URL. */
+    private void scanThumbnail() throws IOException {
+        if (peek() != '{') {
+            skipValue();
+            return;
+        }
+        expect('{');
+        if (consume('}')) {
+            return;
+        }
+        do {
+            if (nextKey(THUMBNAIL_KEY)) {
+                scanField(THUMBNAIL);
+            } else {
+                skipValue();
+            }
+        } while (consume(','));
+        expect('}');
+    }
+
+    /** Keep the span of the next value as the given field if it is a string, else skip it. */
+    private void scanField(int field) throws IOException {
+        if (nextString()) {
+            mSpans[field * 2] = mStringStart;
+            mSpans[field * 2 + 1] = mStringEnd;
+        } else {
+            mSpans[field * 2] = -1;
+            mSpans[field * 2 + 1] = -1;
+        }
+    }
+
+    /**
+     * Copy the raw bytes of the fields kept for the current article into one array, changing
+     * their spans to point into it, so the response itself is not held on to.
+     */
+    private byte[] copyFields() {
+        int length = 0;
+        for (int field = 0; field < LAZY_FIELDS; field++) {
+            if (mSpans[field * 2] >= 0) {
+                length += mSpans[field * 2 + 1] - mSpans[field * 2];
+            }
+        }
+        byte[] fields = new byte[length];
+        int offset = 0;
+        for (int field = 0; field < LAZY_FIELDS; field++) {
+            int start = mSpans[field * 2];
+            if (start < 0) {
+                continue;
+            }
+            int fieldLength = mSpans[field * 2 + 1] - start;
+            System.arraycopy(mJson, start, fields, offset, fieldLength);
+            mSpans[field * 2] = offset;
+            mSpans[field * 2 + 1] = offset + fieldLength;
+            offset += fieldLength;
+        }
+        return fields;
+    }
+
+    /**
+     * Return the raw JSON string between start and end decoded from UTF-8, with its escape
+     * sequences replaced by the characters they stand for.
+     */
+    static String decode(byte[] raw, int start, int end) {
+        boolean escaped = false;
+        for (int i = start; i < end; i++) {
+            if (raw[i] == '\\') {
+                escaped = true;
+                break;
+            }
+        }
+        String text = new String(raw, start, end - start, StandardCharsets.UTF_8);
+        return escaped ? unescape(text) : text;
+    }
+
+    private static String unescape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                out.append(c);
+                continue;
+            }
+            char escape = text.charAt(++i);
+            switch (escape) {
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 < text.length()) {
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                            i += 4;
+                            break;
+                        } catch (NumberFormatException e) {
+                            // Kept as it is, like any other unknown escape
+                        }
+                    }
+                    out.append(escape);
+                    break;
+                default:
+                    // \" \\ \/ stand for themselves
+                    out.append(escape);
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Read the next object key and return true if it is the given one. The key is kept so it
+     * can be compared with others by {@link #keyEquals}. Leaves the scanner at the value.
+     */
+    private boolean nextKey(byte[] key) throws IOException {
+        if (peek() != '"') {
+            throw syntaxError("Expected a name");
+        }
+        mPos++;
+        scanStringBody();
+        expect(':');
+        return keyEquals(key);
+    }
+
+    /** Return true if the key read by the last {@link #nextKey} is the given one. */
+    private boolean keyEquals(byte[] key) {
+        int length = mStringEnd - mStringStart;
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mJson[mStringStart + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scan the next value if it is a string, keeping its span, and return true. Skip it and
+     * return false if it is anything else.
+     */
+    private boolean nextString() throws IOException {
+        if (peek() != '"') {
+            skipValue();
+            return false;
+        }
+        mPos++;
+        scanStringBody();
+        return true;
+    }
+
+    /** Return the next value if it is a whole number that fits an int, or else skip it. */
+    private int nextInt(int defaultValue) throws IOException {
+        int start = skipWhitespace();
+        skipValue();
+        try {
+            return Integer.parseInt(new String(mJson, start, mPos - start,
+                    StandardCharsets.ISO_8859_1).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /** Scan from just after an opening quote to just after the closing quote. */
+    private void scanStringBody() throws IOException {
+        int i = mPos;
+        while (i < mLimit) {
+            byte b = mJson[i];
+            if (b == '"') {
+                mStringStart = mPos;
+                mStringEnd = i;
+                mPos = i + 1;
+                return;
+            }
+            // The byte after a backslash is never the closing quote; \\u escapes are plain hex
+            i += b == '\\' ? 2 : 1;
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    /** Skip the next value, whatever it is, including everything nested in it. */
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case '{':
+                case '[':
+                    depth++;
+                    mPos++;
+                    break;
+                case '}':
+                case ']':
+                    if (depth == 0) {
+                        throw syntaxError("Expected a value");
+                    }
+                    depth--;
+                    mPos++;
+                    break;
+                case '"':
+                    mPos++;
+                    scanStringBody();
+                    break;
+                case ',':
+                case ':':
+                    if (depth == 0) {
+                        throw syntaxError("Expected a value");
+                    }
+                    mPos++;
+                    break;
+                default:
+                    skipLiteral();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    /** Skip a number, true, false or null. */
+    private void skipLiteral() throws IOException {
+        int start = mPos;
+        while (mPos < mLimit) {
+            byte b = mJson[mPos];
+            if (b == ',' || b == '}' || b == ']' || b == ':' || isWhitespace(b)) {
+                break;
+            }
+            mPos++;
+        }
+        if (mPos == start) {
+            throw syntaxError("Expected a value");
+        }
+    }
+
+    /** Return the next byte that is not whitespace, without consuming it. */
+    private byte peek() throws IOException {
+        skipWhitespace();
+        if (mPos >= mLimit) {
+            throw syntaxError("End of input");
+        }
+        return mJson[mPos];
+    }
+
+    /** Consume the given byte if it is next and return true, else return false. */
+    private boolean consume(char c) throws IOException {
+        if (peek() == c) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws IOException {
+        if (!consume(c)) {
+            throw syntaxError("Expected '" + c + "'");
+        }
+    }
+
+    /** Move past any whitespace and return the new position. */
+    private int skipWhitespace() {
+        while (mPos < mLimit && isWhitespace(mJson[mPos])) {
+            mPos++;
+        }
+        return mPos;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + " at byte " + mPos);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
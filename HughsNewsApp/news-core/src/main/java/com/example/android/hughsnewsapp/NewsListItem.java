@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One row of the list of news articles, as made by {@link NewsClusterer#collapse}: an article,
+ * and how many near duplicates of it are grouped under its row.
+ */
+public final class NewsListItem {
+
+    /** The article shown in the row */
+    private final News mNews;
+
+    /** Number of near duplicates grouped under the row, 0 if none */
+    private final int mSimilarCount;
+
+    /** True if the near duplicates grouped under the row are shown below it */
+    private final boolean mExpanded;
+
+    /** True if the article is one of the near duplicates shown below another row */
+    private final boolean mDuplicate;
+
+    NewsListItem(News news, int similarCount, boolean expanded, boolean duplicate) {
+        mNews = news;
+        mSimilarCount = similarCount;
+        mExpanded = expanded;
+        mDuplicate = duplicate;
+    }
+
+    /** Return a row of its own for each of the given articles, grouping none of them */
+    public static List<NewsListItem> of(List<News> articles) {
+        List<NewsListItem> items = new ArrayList<>(articles.size());
+        for (News news : articles) {
+            items.add(new NewsListItem(news, 0, false, false));
+        }
+        return items;
+    }
+
+    /** Return the article shown in the row */
+    public News getNews() {
+        return mNews;
+    }
+
+    /** Return the number of near duplicates grouped under the row, 0 if none */
+    public int getSimilarCount() {
+        return mSimilarCount;
+    }
+
+    /** Return true if the near duplicates grouped under the row are shown below it */
+    public boolean isExpanded() {
+        return mExpanded;
+    }
+
+    /** Return true if the article is one of the near duplicates shown below another row */
+    public boolean isDuplicate() {
+        return mDuplicate;
+    }
+
+    /** Return true if the row shows its article grouped the same way as the given one */
+    public boolean sameGroupingAs(NewsListItem other) {
+        return mSimilarCount == other.mSimilarCount && mExpanded == other.mExpanded
+                && mDuplicate == other.mDuplicate;
+    }
+}
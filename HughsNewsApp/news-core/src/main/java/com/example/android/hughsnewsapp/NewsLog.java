@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Where the core logs its errors. Off Android they go to java.util.logging; the app hands them
+ * on to android.util.Log with {@link #setSink}.
+ */
+public final class NewsLog {
+
+    /** Receives the messages logged. */
+    public interface Sink {
+        /**
+         * Log an error.
+         * @param tag the class it comes from
+         * @param message what went wrong
+         * @param error the exception that was thrown, or null
+         */
+        void error(String tag, String message, Throwable error);
+    }
+
+    private static final Sink JAVA_LOGGING = (tag, message, error) ->
+            Logger.getLogger(tag).log(Level.SEVERE, message, error);
+
+    private static volatile Sink sSink = JAVA_LOGGING;
+
+    /** Create a private constructor because no one should ever create a {@link NewsLog} object.*/
+    private NewsLog() {
+    }
+
+    /** Send the messages logged from now on to the given sink, or back to java.util.logging if null. */
+    public static void setSink(Sink sink) {
+        sSink = sink == null ? JAVA_LOGGING : sink;
+    }
+
+    /** Log an error. */
+    public static void e(String tag, String message) {
+        sSink.error(tag, message, null);
+    }
+
+    /** Log an error and the exception that caused it. */
+    public static void e(String tag, String message, Throwable error) {
+        sSink.error(tag, message, error);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of parsed pages of results in front of the network, keyed by request URL,
+ * so screens recreated in quick succession show them again without a request. Pages are kept
+ * for a short time only, and the least recently used are evicted once the estimated size of the
+ * pages held passes the maximum. A caller asking for a URL that is already being fetched waits
+ * for that fetch instead of starting another one. The shared fetch runs on a thread of its own,
+ * so it is only aborted once every caller waiting for it has been cancelled. Pages held are
+ * never changed: each caller is handed copies of the articles, to format as it pleases.
+ */
+public class NewsMemoryCache {
+
+    /** Performs the one request shared by every caller waiting for a URL. */
+    public interface Loader {
+        /**
+         * Fetch the page, or return null if the request failed. This is on a background thread.
+         * @param handle handle of the shared request, cancelled once no caller is waiting for it
+         */
+        NewsPage load(FetchHandle handle);
+    }
+
+    /** Idle threads running the shared fetches are let go after this many seconds */
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /** Rough fixed cost of an article besides the characters of its title and URL */
+    private static final int ARTICLE_OVERHEAD_BYTES = 120;
+
+    private static final class Entry {
+        final NewsPage mPage;
+        final long mBytes;
+        final long mStoredAt;
+
+        Entry(NewsPage page, long bytes, long storedAt) {
+            mPage = page;
+            mBytes = bytes;
+            mStoredAt = storedAt;
+        }
+    }
+
+    /** A fetch in progress, shared by everyone waiting for the same URL */
+    private static final class InFlight {
+        final String mUrl;
+        final FetchHandle mHandle = new FetchHandle();
+        /** Callers still waiting, guarded by the cache */
+        int mWaiters;
+        private boolean mDone;
+        private NewsPage mPage;
+
+        InFlight(String url) {
+            mUrl = url;
+        }
+
+        synchronized void complete(NewsPage page) {
+            mPage = page;
+            mDone = true;
+            notifyAll();
+        }
+
+        /** Wait for the page, or until the given caller is cancelled and {@link #wake} is called. */
+        synchronized NewsPage await(FetchHandle handle) throws InterruptedException {
+            while (!mDone && !handle.isCancelled()) {
+                wait();
+            }
+            return mPage;
+        }
+
+        synchronized void wake() {
+            notifyAll();
+        }
+    }
+
+    /** Maximum estimated size in bytes of the pages held */
+    private final long mMaxBytes;
+
+    /** Time in nanoseconds a page is served without asking the network */
+    private final long mTimeToLiveNanos;
+
+    /** Pages by URL, least recently used first */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, InFlight> mInFlight = new HashMap<>();
+
+    /**
+     * Runs the shared fetches. There are never more of them than callers waiting for one, each
+     * on a fetch thread of its own.
+     */
+    private final ThreadPoolExecutor mLoadExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+    /** Estimated size of the pages held */
+    private long mBytes;
+
+    /**
+     * Constructor
+     * @param maxBytes maximum estimated size of the pages held
+     * @param timeToLiveMillis time a page is served for after it was fetched
+     */
+    public NewsMemoryCache(long maxBytes, long timeToLiveMillis) {
+        mMaxBytes = maxBytes;
+        mTimeToLiveNanos = timeToLiveMillis * 1_000_000;
+    }
+
+    /** Return a copy of the page fetched for the given URL within the time to live, or null. */
+    public synchronized NewsPage get(String url) {
+        Entry entry = mEntries.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.mStoredAt > mTimeToLiveNanos) {
+            remove(url);
+            return null;
+        }
+        return handOut(entry.mPage);
+    }
+
+    /**
+     * Store a page just fetched for the given URL. Return the page as it is now shared, with a
+     * list of articles nobody may change.
+     */
+    public synchronized NewsPage put(String url, NewsPage page) {
+        remove(url);
+        // Shared by every caller from now on, so nobody may change it
+        NewsPage shared = new NewsPage(Collections.unmodifiableList(page.getNews()),
+                page.getCurrentPage(), page.getPageCount());
+        Entry entry = new Entry(shared, estimateBytes(page), System.nanoTime());
+        if (entry.mBytes > mMaxBytes) {
+            return shared;
+        }
+        mEntries.put(url, entry);
+        mBytes += entry.mBytes;
+        Iterator<Entry> eldest = mEntries.values().iterator();
+        while (mBytes > mMaxBytes) {
+            mBytes -= eldest.next().mBytes;
+            eldest.remove();
+        }
+        return shared;
+    }
+
+    /** Remove every page. Fetches in flight are not affected. */
+    public synchronized void clear() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    /** Return the estimated size in bytes of the pages held */
+    public synchronized long size() {
+        return mBytes;
+    }
+
+    /**
+     * Return the page for the given URL: the page held if it is still within its time to live,
+     * otherwise the result of the fetch already in flight for the URL, otherwise the result of
+     * a new fetch with the loader. Pages fetched are stored. Cancelling the caller's handle
+     * stops it waiting, and aborts the request once nobody else is waiting for it either.
+     * This is on a background thread. The loader runs on a thread of the cache's own, which
+     * cancelling the first caller does not interrupt while others still wait for the page.
+     * Return null if the fetch failed or the caller was cancelled.
+     */
+    public NewsPage fetch(String url, FetchHandle handle, Loader loader) {
+        final InFlight flight;
+        final boolean leader;
+        synchronized (this) {
+            NewsPage page = get(url);
+            if (page != null) {
+                return page;
+            }
+            InFlight existing = mInFlight.get(url);
+            leader = existing == null;
+            flight = leader ? new InFlight(url) : existing;
+            if (leader) {
+                mInFlight.put(url, flight);
+            }
+            flight.mWaiters++;
+        }
+        if (leader) {
+            flight.mHandle.setFuture(mLoadExecutor.submit(() -> load(flight, loader)));
+        }
+        handle.setCancelListener(() -> stopWaiting(flight));
+
+        NewsPage page;
+        try {
+            page = flight.await(handle);
+        } catch (InterruptedException e) {
+            // Cancelled while waiting for the shared fetch
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        handle.setResponseCode(flight.mHandle.getResponseCode());
+        handle.setFailure(flight.mHandle.getFailure(), flight.mHandle.getRetryAfter());
+        return handle.isCancelled() || page == null ? null : handOut(page);
+    }
+
+    /**
+     * Return a copy of the given page, whose articles can be formatted and signed without
+     * touching those of the original: for one caller of a shared page, or to hold a page some
+     * caller was already handed.
+     */
+    private static NewsPage handOut(NewsPage page) {
+        List<News> shared = page.getNews();
+        List<News> copies = new ArrayList<>(shared.size());
+        for (int i = 0; i < shared.size(); i++) {
+            copies.add(shared.get(i).copy());
+        }
+        return new NewsPage(copies, page.getCurrentPage(), page.getPageCount());
+    }
+
+    /** Run the shared fetch, store its page and hand it to every caller waiting for it. */
+    private void load(InFlight flight, Loader loader) {
+        NewsPage page = null;
+        try {
+            page = loader.load(flight.mHandle);
+            if (page != null && page.getNews() != null) {
+                // The loader may return a page its caller was already handed, such as the cached
+                // one a 304 confirmed, so the cache holds articles of its own
+                page = handOut(page);
+                // Once, before it is shared, so the copies handed out carry the signatures
+                NewsClusterer.sign(page.getNews());
+            }
+        } finally {
+            synchronized (this) {
+                forget(flight);
+                if (page != null) {
+                    page = put(flight.mUrl, page);
+                }
+            }
+            flight.complete(page);
+        }
+    }
+
+    /** Called when a waiting caller is cancelled. Abort the request if it was the last one. */
+    private void stopWaiting(InFlight flight) {
+        boolean abandoned;
+        synchronized (this) {
+            abandoned = --flight.mWaiters == 0;
+            if (abandoned) {
+                // Anyone asking from now on starts a new request
+                forget(flight);
+            }
+        }
+        if (abandoned) {
+            flight.mHandle.cancel();
+        }
+        flight.wake();
+    }
+
+    /** Return a rough estimate of the heap taken by the given page. */
+    static long estimateBytes(NewsPage page) {
+        long bytes = 0;
+        for (News news : page.getNews()) {
+            bytes += ARTICLE_OVERHEAD_BYTES;
+            if (news.getTitle() != null) {
+                bytes += news.getTitle().length();
+            }
+            if (news.getUrl() != null) {
+                bytes += news.getUrl().length();
+            }
+        }
+        return bytes;
+    }
+
+    /** Stop sharing the given fetch with new callers. */
+    private void forget(InFlight flight) {
+        if (mInFlight.get(flight.mUrl) == flight) {
+            mInFlight.remove(flight.mUrl);
+        }
+    }
+
+    private void remove(String url) {
+        Entry removed = mEntries.remove(url);
+        if (removed != null) {
+            mBytes -= removed.mBytes;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the articles held in memory within a heap budget, and gives memory back when the system
+ * runs short of it. The articles of the lists and the search index stay within the budget of the
+ * {@link NewsSpillStore}, which is spilled further at each level of pressure; the caches that
+ * only save decoding or fetching again register to be trimmed as well. The app maps the trim
+ * levels of its platform onto {@link Level}. Spilling writes to disk, so it runs on the executor
+ * given, off the thread the system reports the pressure on.
+ */
+public class NewsMemoryGovernor {
+
+    /** How short of memory the system is. */
+    public enum Level {
+        /** The screens are no longer visible: what only helps draw them can go */
+        UI_HIDDEN,
+        /** The system is running low on memory */
+        LOW,
+        /** The system is about to kill processes, this one among the first */
+        CRITICAL
+    }
+
+    /** Gives back memory when the system runs short of it. */
+    public interface Trimmable {
+        /** Drop what can be made again, as much as the level calls for. */
+        void trim(Level level);
+    }
+
+    private final NewsSpillStore mSpillStore;
+
+    /** Spills the articles when the system runs short of memory */
+    private final Executor mSpillExecutor;
+
+    private final List<Trimmable> mTrimmables = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor
+     * @param spillStore holds the articles of the lists and the search index within the budget
+     */
+    public NewsMemoryGovernor(NewsSpillStore spillStore) {
+        this(spillStore, Runnable::run);
+    }
+
+    /**
+     * Constructor
+     * @param spillStore holds the articles of the lists and the search index within the budget
+     * @param spillExecutor spills the articles, off the thread trimming is called on
+     */
+    public NewsMemoryGovernor(NewsSpillStore spillStore, Executor spillExecutor) {
+        mSpillStore = spillStore;
+        mSpillExecutor = spillExecutor;
+    }
+
+    /** Return the bytes the articles in memory may take */
+    public long getHeapBudget() {
+        return mSpillStore.getHeapBudget();
+    }
+
+    /** Change the bytes the articles in memory may take, spilling them if they take more. */
+    public void setHeapBudget(long heapBudget) {
+        mSpillStore.setHeapBudget(heapBudget);
+    }
+
+    /** Trim the given cache too when the system runs short of memory. */
+    public void register(Trimmable trimmable) {
+        mTrimmables.add(trimmable);
+    }
+
+    public void unregister(Trimmable trimmable) {
+        mTrimmables.remove(trimmable);
+    }
+
+    /**
+     * Give back memory as the level calls for: the registered caches are trimmed at every level,
+     * and the articles in memory are spilled down to half the budget while the system is low on
+     * memory and down to the chunks in use when it is critically low. They are read back as they
+     * are used again.
+     */
+    public void trim(Level level) {
+        NewsTrace.count(NewsTrace.Counter.MEMORY_TRIMS);
+        if (level == Level.LOW) {
+            mSpillExecutor.execute(() -> mSpillStore.trim(mSpillStore.getHeapBudget() / 2));
+        } else if (level == Level.CRITICAL) {
+            mSpillExecutor.execute(() -> mSpillStore.trim(0));
+        }
+        for (Trimmable trimmable : mTrimmables) {
+            trimmable.trim(level);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.List;
+
+/**
+ * An {@link NewsPage} object holds one page of Guardian search results together with its
+ * position in the whole result set.
+ */
+public class NewsPage {
+    /** news articles on this page */
+    private final List<News> mNews;
+
+    /** 1-based number of this page */
+    private final int mCurrentPage;
+
+    /** total number of pages available for the query */
+    private final int mPageCount;
+
+    /**
+     * Constructor
+     * @param news the news articles on the page
+     * @param currentPage the 1-based number of the page
+     * @param pageCount the total number of pages available
+     */
+    public NewsPage(List<News> news, int currentPage, int pageCount) {
+        mNews = news;
+        mCurrentPage = currentPage;
+        mPageCount = pageCount;
+    }
+
+    /** Return the news articles on this page */
+    public List<News> getNews() { return mNews; }
+
+    /** Return the 1-based number of this page */
+    public int getCurrentPage() { return mCurrentPage; }
+
+    /** Return the total number of pages available */
+    public int getPageCount() { return mPageCount; }
+
+    /** Return true if there are more pages after this one */
+    public boolean hasNextPage() { return mCurrentPage < mPageCount; }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Fetches the pages after the first one in the background as the user scrolls towards the end
+ * of the list. At most a fixed number of page requests are in flight at once, a page is never
+ * requested twice, and pages are handed over strictly in order so they can simply be appended.
+ * All methods are called on the main thread, which is also where the {@link NewsFetcher}
+ * delivers its results.
+ */
+public class NewsPager {
+
+    /** Receives each further page, in page order. */
+    public interface Listener {
+        void onPageLoaded(NewsPage page);
+    }
+
+    /** Request URL of the first page, without a page parameter */
+    private final String mBaseUrl;
+
+    /** Maximum number of page requests in flight at once */
+    private final int mMaxInFlight;
+
+    private final NewsFetcher mFetcher;
+    private final Listener mListener;
+
+    /** Pages currently being fetched */
+    private final Map<Integer, FetchHandle> mInFlight = new HashMap<>();
+
+    /** Pages fetched but waiting for an earlier page before they can be handed over */
+    private final Map<Integer, NewsPage> mCompleted = new TreeMap<>();
+
+    /** Last page handed over to the listener */
+    private int mDeliveredThrough;
+
+    /** Total number of pages the query has, as last reported by the server */
+    private int mPageCount;
+
+    private boolean mCancelled;
+
+    /**
+     * Constructor
+     * @param baseUrl request URL of the first page
+     * @param maxInFlight maximum number of page requests in flight at once
+     * @param fetcher performs the page requests
+     * @param listener receives the pages in order
+     */
+    public NewsPager(String baseUrl, int maxInFlight, NewsFetcher fetcher, Listener listener) {
+        mBaseUrl = baseUrl;
+        mMaxInFlight = maxInFlight;
+        mFetcher = fetcher;
+        mListener = listener;
+    }
+
+    /**
+     * Start paging after the given page, which is already shown. Pages in flight for an
+     * earlier result set are cancelled.
+     */
+    public void reset(NewsPage shownPage) {
+        cancelInFlight();
+        mCompleted.clear();
+        mDeliveredThrough = shownPage.getCurrentPage();
+        mPageCount = shownPage.getPageCount();
+    }
+
+    /**
+     * Start paging where the given pager of the same query got to, as it is being replaced by
+     * this one. Its pages in flight are not taken over.
+     */
+    public void resume(NewsPager previous) {
+        cancelInFlight();
+        mCompleted.clear();
+        mDeliveredThrough = previous.mDeliveredThrough;
+        mPageCount = previous.mPageCount;
+    }
+
+    /**
+     * Called as the list scrolls. When the last visible row is within the prefetch distance of
+     * the end of the list, request the next pages that are not already in flight.
+     */
+    public void onScrolled(int lastVisiblePosition, int itemCount, int prefetchDistance) {
+        if (itemCount > 0 && lastVisiblePosition >= itemCount - 1 - prefetchDistance) {
+            prefetch();
+        }
+    }
+
+    /** Request the pages after the last delivered one, up to the in-flight limit. */
+    public void prefetch() {
+        if (mCancelled || mDeliveredThrough == 0) {
+            return;
+        }
+        // Never run further ahead of the list than the in-flight limit
+        int lastWanted = Math.min(mDeliveredThrough + mMaxInFlight, mPageCount);
+        for (int page = mDeliveredThrough + 1; page <= lastWanted; page++) {
+            if (mInFlight.size() >= mMaxInFlight) {
+                break;
+            }
+            if (mInFlight.containsKey(page) || mCompleted.containsKey(page)) {
+                continue;
+            }
+            final int pageNumber = page;
+            mInFlight.put(pageNumber, mFetcher.fetch(pageUrl(pageNumber), false,
+                    new NewsFetcher.Callback() {
+                        @Override
+                        public void onPageLoaded(NewsPage page) {
+                            onFetched(pageNumber, page);
+                        }
+
+                        @Override
+                        public void onFetchFinished(boolean succeeded) {
+                            // On failure the page is requested again on the next scroll
+                            mInFlight.remove(pageNumber);
+                        }
+                    }));
+        }
+    }
+
+    /** Stop paging. Requests in flight are aborted and nothing more is delivered. */
+    public void cancel() {
+        mCancelled = true;
+        cancelInFlight();
+        mCompleted.clear();
+    }
+
+    /** Return true once every page of the query has been handed over. */
+    public boolean isComplete() {
+        return mDeliveredThrough >= mPageCount;
+    }
+
+    /** Return the request URL for the given page. */
+    String pageUrl(int page) {
+        return mBaseUrl + (mBaseUrl.indexOf('?') >= 0 ? "&" : "?") + "page=" + page;
+    }
+
+    private void cancelInFlight() {
+        for (FetchHandle handle : mInFlight.values()) {
+            handle.cancel();
+        }
+        mInFlight.clear();
+    }
+
+    private void onFetched(int pageNumber, NewsPage page) {
+        mInFlight.remove(pageNumber);
+        mPageCount = page.getPageCount();
+        mCompleted.put(pageNumber, page);
+
+        // Hand over every page that no longer waits for an earlier one
+        NewsPage next;
+        while ((next = mCompleted.remove(mDeliveredThrough + 1)) != null) {
+            mDeliveredThrough++;
+            mListener.onPageLoaded(next);
+        }
+    }
+}
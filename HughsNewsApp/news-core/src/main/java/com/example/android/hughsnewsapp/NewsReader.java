@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.example.android.hughsnewsapp.Constants.HTTP_SUCCESS_CODE;
+
+/**
+ * Readable copies of articles, so a tapped article can be shown from storage in a few hundred
+ * milliseconds rather than loaded as a web page. The text of each article is fetched ahead from
+ * the Guardian content API with {@code show-fields=bodyText} and kept in a {@link NewsDiskCache}
+ * keyed by the article's web URL. Fetching ahead is capped by a budget of bytes for each run.
+ * Safe to use from any thread.
+ */
+public class NewsReader {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsReader.class.getSimpleName();
+
+    /** Start of the web URL of every Guardian article; the rest is its content id */
+    private static final String WEB_URL_PREFIX = "https://www.theguardian.com/";
+
+    /** Start of the Guardian content API URL of an article, followed by its content id */
+    private static final String CONTENT_API_URL = "https://content.guardianapis.com/";
+
+    /** Stores the text of each article by its web URL */
+    private final NewsDiskCache mStore;
+
+    /** Where the content API is, which tests point at a local server */
+    private final String mContentApiUrl;
+
+    private final String mApiKey;
+
+    /**
+     * Constructor
+     * @param store where the text of the articles is kept
+     */
+    public NewsReader(NewsDiskCache store) {
+        this(store, CONTENT_API_URL, "test");
+    }
+
+    NewsReader(NewsDiskCache store, String contentApiUrl, String apiKey) {
+        mStore = store;
+        mContentApiUrl = contentApiUrl;
+        mApiKey = apiKey;
+    }
+
+    /** Return true if the text of the article with the given web URL is stored. Reads no file. */
+    public boolean contains(String webUrl) {
+        return mStore.contains(webUrl);
+    }
+
+    /** Return the stored text of the article with the given web URL, or null if there is none. */
+    public String getBodyText(String webUrl) {
+        NewsDiskCache.Entry entry = mStore.get(webUrl);
+        return entry == null ? null : new String(entry.getBody(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the content API URL of the text of the article with the given web URL, or null if
+     * it is not a Guardian article.
+     */
+    String contentUrl(String webUrl) {
+        if (webUrl == null || !webUrl.startsWith(WEB_URL_PREFIX)
+                || webUrl.length() == WEB_URL_PREFIX.length()) {
+            return null;
+        }
+        return mContentApiUrl + webUrl.substring(WEB_URL_PREFIX.length())
+                + "?show-fields=bodyText&api-key=" + GuardianQuery.encode(mApiKey);
+    }
+
+    /**
+     * Fetch and store the text of the first of the given articles, in their order, that are not
+     * stored yet. Stop after the given number of articles, stored before or now, or once the
+     * given budget of bytes is spent; as the size of an article is only known once it has been
+     * fetched, the last one can go over the budget. Return the number of bytes fetched.
+     * This is on a background thread.
+     */
+    public long prefetch(List<News> articles, int maxArticles, long byteBudget) {
+        long spent = 0;
+        int covered = 0;
+        for (int i = 0; i < articles.size() && covered < maxArticles && spent < byteBudget; i++) {
+            String webUrl = articles.get(i).getUrl();
+            if (mStore.contains(webUrl)) {
+                covered++;
+                continue;
+            }
+            String contentUrl = contentUrl(webUrl);
+            if (contentUrl == null) {
+                continue;
+            }
+            long[] bytes = new long[1];
+            String bodyText = fetch(contentUrl, bytes);
+            spent += bytes[0];
+            if (bodyText == null) {
+                continue;
+            }
+            try {
+                mStore.put(webUrl, null, null, bodyText.getBytes(StandardCharsets.UTF_8));
+                covered++;
+                NewsTrace.count(NewsTrace.Counter.ARTICLES_PREFETCHED);
+            } catch (IOException e) {
+                NewsLog.e(LOG_TAG, "Problem storing the article.", e);
+            }
+        }
+        NewsTrace.count(NewsTrace.Counter.PREFETCH_BYTES, spent);
+        return spent;
+    }
+
+    /**
+     * Fetch the text of an article from the content API, and set the bytes it took in the array.
+     * Return null if there was none or the request failed.
+     */
+    private String fetch(String contentUrl, long[] bytes) {
+        NewsHttpClient.Response response = null;
+        try {
+            response = QueryUtils.getHttpClient().execute(
+                    new NewsHttpClient.Request.Builder(new URL(contentUrl)).build(), null);
+            if (response.getStatusCode() != HTTP_SUCCESS_CODE) {
+                NewsLog.e(LOG_TAG, "Error response code: " + response.getStatusCode());
+                return null;
+            }
+            return readBodyText(new JsonReader(
+                    new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)));
+        } catch (MalformedURLException e) {
+            NewsLog.e(LOG_TAG, "Problem building the URL ", e);
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // JsonReader reports malformed JSON as an IOException or IllegalStateException
+            NewsLog.e(LOG_TAG, "Problem retrieving the article.", e);
+            return null;
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    NewsLog.e(LOG_TAG, "Problem closing the response.", e);
+                }
+                bytes[0] = response.getWireBytes();
+            }
+        }
+    }
+
+    /** Return response.content.fields.bodyText of a content API response, or null if it has none. */
+    static String readBodyText(JsonReader reader) throws IOException {
+        String[] path = {"response", "content", "fields", "bodyText"};
+        int depth = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals(path[depth])) {
+                reader.skipValue();
+            } else if (depth == path.length - 1) {
+                if (reader.peek() != JsonToken.STRING) {
+                    return null;
+                }
+                String bodyText = reader.nextString();
+                return bodyText.isEmpty() ? null : bodyText;
+            } else if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                depth++;
+            } else {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+/**
+ * The text of one row of the article list, made ready by a {@link NewsRowFormatter} off the main
+ * thread so binding the row only has to hand each view its text. The relative publication time
+ * ("2h ago") is the only part that goes on changing, and is replaced in batches by
+ * {@link NewsRowFormatter#refreshRelativeTimes}.
+ */
+final class NewsRow {
+
+    /** The formatter the text was made by, which it is only valid for */
+    final NewsRowFormatter mFormatter;
+
+    final CharSequence mSection;
+
+    final CharSequence mTitle;
+
+    final CharSequence mAuthor;
+
+    /** Replaced by whichever thread refreshes the relative times, read on the main thread */
+    private volatile CharSequence mRelativeTime;
+
+    /** Time from which the relative time shown is out of date, in milliseconds since the epoch */
+    private volatile long mRefreshAt;
+
+    NewsRow(NewsRowFormatter formatter, CharSequence section, CharSequence title, CharSequence author) {
+        mFormatter = formatter;
+        mSection = section;
+        mTitle = title;
+        mAuthor = author;
+    }
+
+    /** Return the publication time relative to when it was last refreshed, e.g. "2h ago" */
+    CharSequence getRelativeTime() {
+        return mRelativeTime;
+    }
+
+    long getRefreshAt() {
+        return mRefreshAt;
+    }
+
+    void setRelativeTime(CharSequence relativeTime, long refreshAt) {
+        mRefreshAt = refreshAt;
+        mRelativeTime = relativeTime;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static com.example.android.hughsnewsapp.Constants.SECTION_LABEL_MAX_LENGTH;
+
+/**
+ * Makes the {@link NewsRow} text of each article ahead of binding, on whichever background thread
+ * loaded it: the section label cut short with an ellipsis, the author or the fallback shown for
+ * articles without a contributor, and the publication time relative to now in the user's locale.
+ * The relative times of rows already made are brought up to date by
+ * {@link #refreshRelativeTimes}, which only formats those whose text has gone out of date.
+ */
+public final class NewsRowFormatter {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    /** Articles older than this many days show their date rather than a relative time */
+    private static final int RELATIVE_DAYS = 7;
+
+    private static final String ELLIPSIS = "\u2026";
+
+    private final String mJustNow;
+    private final String mMinutesPattern;
+    private final String mHoursPattern;
+    private final String mDaysPattern;
+
+    /** Shown for articles without a contributor, or null to show nothing */
+    private final String mNoAuthor;
+
+    /** False if authors are not shown at all */
+    private final boolean mShowAuthors;
+
+    private final Locale mLocale;
+
+    /** Formats the dates of older articles; not thread safe */
+    private final DateFormat mDateFormat;
+
+    /** Each relative time formatted so far, so refreshing the rows rarely builds a new string */
+    private final String[] mMinutes = new String[60];
+    private final String[] mHours = new String[24];
+    private final String[] mDays = new String[RELATIVE_DAYS];
+
+    /**
+     * Constructor
+     * @param justNow shown for articles published less than a minute ago
+     * @param minutesPattern format of the minutes since an article was published, e.g. "%1$dm ago"
+     * @param hoursPattern format of the hours since an article was published
+     * @param daysPattern format of the days since an article was published
+     * @param noAuthor shown for articles without a contributor, or null to show nothing
+     * @param showAuthors false to show no authors at all
+     * @param locale locale of the numbers and dates
+     * @param timeZone time zone of the dates of older articles
+     */
+    public NewsRowFormatter(String justNow, String minutesPattern, String hoursPattern,
+                            String daysPattern, String noAuthor, boolean showAuthors,
+                            Locale locale, TimeZone timeZone) {
+        mJustNow = justNow;
+        mMinutesPattern = minutesPattern;
+        mHoursPattern = hoursPattern;
+        mDaysPattern = daysPattern;
+        mNoAuthor = noAuthor;
+        mShowAuthors = showAuthors;
+        mLocale = locale;
+        mDateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+        mDateFormat.setTimeZone(timeZone);
+    }
+
+    /** Return true if this formats rows the same as the given formatter. */
+    public boolean sameAs(NewsRowFormatter other) {
+        return other != null && mShowAuthors == other.mShowAuthors && mLocale.equals(other.mLocale)
+                && mDateFormat.getTimeZone().equals(other.mDateFormat.getTimeZone())
+                && mJustNow.equals(other.mJustNow) && mMinutesPattern.equals(other.mMinutesPattern)
+                && mHoursPattern.equals(other.mHoursPattern) && mDaysPattern.equals(other.mDaysPattern)
+                && (mNoAuthor == null ? other.mNoAuthor == null : mNoAuthor.equals(other.mNoAuthor));
+    }
+
+    /** Make the row text of each of the given articles that has none by this formatter yet. */
+    public void prepare(List<News> articles, long now) {
+        for (int i = 0; i < articles.size(); i++) {
+            rowFor(articles.get(i), now);
+        }
+    }
+
+    /** Return the row text of the given article, made now unless it was made by this formatter. */
+    NewsRow rowFor(News news, long now) {
+        NewsRow row = news.getRow();
+        if (row != null && row.mFormatter == this) {
+            return row;
+        }
+        String author = news.getAuthor();
+        if (!mShowAuthors) {
+            author = "";
+        } else if (author.isEmpty() && mNoAuthor != null) {
+            author = mNoAuthor;
+        }
+        String title = news.getTitle();
+        row = new NewsRow(this, sectionLabel(news.getSectionName()), title == null ? "" : title, author);
+        updateRelativeTime(row, news.getPublicationTime(), now);
+        // Racing threads would only make the same text twice
+        news.setRow(row);
+        return row;
+    }
+
+    /**
+     * Bring the relative time of each of the given articles up to date, where it has a row made by
+     * this formatter. Return the number of rows whose relative time changed.
+     */
+    public int refreshRelativeTimes(List<News> articles, long now) {
+        int changed = 0;
+        for (int i = 0; i < articles.size(); i++) {
+            News news = articles.get(i);
+            NewsRow row = news.getRow();
+            if (row != null && row.mFormatter == this && row.getRefreshAt() <= now) {
+                CharSequence before = row.getRelativeTime();
+                updateRelativeTime(row, news.getPublicationTime(), now);
+                if (before != row.getRelativeTime()) {
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** Set the publication time of the row relative to now, and when that next goes out of date. */
+    private void updateRelativeTime(NewsRow row, long publicationTime, long now) {
+        if (publicationTime == NewsDates.UNKNOWN) {
+            row.setRelativeTime("", Long.MAX_VALUE);
+            return;
+        }
+        long age = now - publicationTime;
+        if (age < MINUTE) {
+            // Also covers articles a little ahead of the device clock
+            row.setRelativeTime(mJustNow, publicationTime + MINUTE);
+        } else if (age < HOUR) {
+            int minutes = (int) (age / MINUTE);
+            row.setRelativeTime(cached(mMinutes, minutes, mMinutesPattern),
+                    publicationTime + (minutes + 1) * MINUTE);
+        } else if (age < DAY) {
+            int hours = (int) (age / HOUR);
+            row.setRelativeTime(cached(mHours, hours, mHoursPattern),
+                    publicationTime + (hours + 1) * HOUR);
+        } else if (age < RELATIVE_DAYS * DAY) {
+            int days = (int) (age / DAY);
+            row.setRelativeTime(cached(mDays, days, mDaysPattern),
+                    publicationTime + (days + 1) * DAY);
+        } else {
+            String date;
+            synchronized (mDateFormat) {
+                date = mDateFormat.format(new Date(publicationTime));
+            }
+            row.setRelativeTime(date, Long.MAX_VALUE);
+        }
+    }
+
+    /** Return the given pattern formatted with the given count, formatting it only once. */
+    private String cached(String[] formatted, int count, String pattern) {
+        // Racing threads would only format the same string twice
+        String text = formatted[count];
+        if (text == null) {
+            text = String.format(mLocale, pattern, count);
+            formatted[count] = text;
+        }
+        return text;
+    }
+
+    /** Return the section name, cut short with an ellipsis if it is too long for its column. */
+    static String sectionLabel(String section) {
+        if (section == null) {
+            return "";
+        }
+        if (section.length() <= SECTION_LABEL_MAX_LENGTH) {
+            return section;
+        }
+        int end = SECTION_LABEL_MAX_LENGTH - 1;
+        // Break at the last space if there is one, and never inside a surrogate pair
+        int space = section.lastIndexOf(' ', end);
+        if (space > end / 2) {
+            end = space;
+        } else if (Character.isHighSurrogate(section.charAt(end - 1))) {
+            end--;
+        }
+        return section.substring(0, end).trim() + ELLIPSIS;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index over the titles, section names and authors of the articles fetched
+ * so far, for searching them without a network call. Every word of a query is matched as a
+ * prefix, so results come up as the user types. An article matches if it contains every word of
+ * the query; matches are ranked by the fields the words were found in, then newest first.
+ * Articles are added incrementally as pages are parsed; adding an article again with the same
+ * URL replaces it. They are only indexed by the next search, so fetching articles does not
+ * decode fields that are never searched or shown. The articles can be kept on a
+ * {@link NewsSpillStore}, so only the terms and URLs of those not used lately stay in memory.
+ * Safe to use from any thread.
+ */
+public class NewsSearchIndex {
+
+    /** Score of a word found in each field. A word found in several fields adds them up. */
+    private static final int TITLE_WEIGHT = 4;
+    private static final int AUTHOR_WEIGHT = 2;
+    private static final int SECTION_WEIGHT = 1;
+
+    /** A word only matched as a prefix of a longer term scores this fraction of an exact match */
+    private static final float PREFIX_FACTOR = 0.6f;
+
+    /** The documents containing one term, in increasing document id order. */
+    private static final class Postings {
+        int[] mDocs = new int[2];
+        /** Sum of the weights of the fields the term appears in, for each document */
+        byte[] mWeights = new byte[2];
+        int mSize;
+
+        void add(int doc, int weight) {
+            if (mSize > 0 && mDocs[mSize - 1] == doc) {
+                mWeights[mSize - 1] = (byte) Math.min(Byte.MAX_VALUE, mWeights[mSize - 1] + weight);
+                return;
+            }
+            if (mSize == mDocs.length) {
+                mDocs = Arrays.copyOf(mDocs, mSize * 2);
+                mWeights = Arrays.copyOf(mWeights, mSize * 2);
+            }
+            mDocs[mSize] = doc;
+            mWeights[mSize] = (byte) weight;
+            mSize++;
+        }
+    }
+
+    /** Terms in sorted order, so every term starting with a prefix is one contiguous range */
+    private final TreeMap<String, Postings> mTerms = new TreeMap<>();
+
+    /** Indexed articles by document id */
+    private final List<News> mDocs;
+
+    /** Document ids of the replaced articles, which are no longer returned */
+    private final BitSet mDeleted = new BitSet();
+
+    /** Document id of each live article, by URL */
+    private final Map<String, Integer> mIdsByUrl = new HashMap<>();
+
+    /** Articles added since the last search, in the order they were added */
+    private final List<News> mPending;
+
+    public NewsSearchIndex() {
+        mDocs = new ArrayList<>();
+        mPending = new ArrayList<>();
+    }
+
+    /**
+     * Constructor
+     * @param store holds the articles indexed within its heap budget
+     */
+    public NewsSearchIndex(NewsSpillStore store) {
+        mDocs = new NewsSpillList(store);
+        mPending = new NewsSpillList(store);
+    }
+
+    /** Add the given articles to the index. */
+    public synchronized void addAll(List<News> articles) {
+        mPending.addAll(articles);
+    }
+
+    /** Add the given article to the index. */
+    public synchronized void add(News news) {
+        mPending.add(news);
+    }
+
+    /** Index the articles added since the last search. */
+    private void indexPendingLocked() {
+        for (int i = 0; i < mPending.size(); i++) {
+            addLocked(mPending.get(i));
+        }
+        mPending.clear();
+    }
+
+    private void addLocked(News news) {
+        String url = news.getUrl();
+        if (url == null) {
+            return;
+        }
+        Integer previous = mIdsByUrl.get(url);
+        if (previous != null) {
+            News indexed = mDocs.get(previous);
+            if (sameText(indexed, news)) {
+                return;
+            }
+            mDeleted.set(previous);
+        }
+        int doc = mDocs.size();
+        mDocs.add(news);
+        mIdsByUrl.put(url, doc);
+        indexField(doc, news.getTitle(), TITLE_WEIGHT);
+        indexField(doc, news.getAuthor(), AUTHOR_WEIGHT);
+        indexField(doc, news.getSectionName(), SECTION_WEIGHT);
+    }
+
+    private void indexField(int doc, String text, int weight) {
+        for (String term : tokenize(text)) {
+            Postings postings = mTerms.get(term);
+            if (postings == null) {
+                postings = new Postings();
+                mTerms.put(term, postings);
+            }
+            postings.add(doc, weight);
+        }
+    }
+
+    /**
+     * Return up to limit articles containing every word of the query, best match first.
+     * An empty query matches nothing.
+     */
+    public synchronized List<News> search(String query, int limit) {
+        indexPendingLocked();
+        List<String> words = tokenize(query);
+        int docCount = mDocs.size();
+        if (words.isEmpty() || docCount == 0) {
+            return Collections.emptyList();
+        }
+
+        float[] scores = new float[docCount];
+        // Number of query words each document has matched so far
+        int[] matched = new int[docCount];
+        // Best score of the current word in each document, and which documents it touched
+        float[] wordScores = new float[docCount];
+        int[] touched = new int[docCount];
+
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            int touchedCount = 0;
+            NavigableMap<String, Postings> range = mTerms.subMap(word, true, word + Character.MAX_VALUE, false);
+            for (Map.Entry<String, Postings> entry : range.entrySet()) {
+                float factor = entry.getKey().length() == word.length() ? 1f : PREFIX_FACTOR;
+                Postings postings = entry.getValue();
+                for (int i = 0; i < postings.mSize; i++) {
+                    int doc = postings.mDocs[i];
+                    // Only documents that matched every previous word can still match
+                    if (matched[doc] != w) {
+                        continue;
+                    }
+                    float score = postings.mWeights[i] * factor;
+                    if (wordScores[doc] == 0) {
+                        touched[touchedCount++] = doc;
+                    }
+                    if (score > wordScores[doc]) {
+                        wordScores[doc] = score;
+                    }
+                }
+            }
+            if (touchedCount == 0) {
+                return Collections.emptyList();
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                scores[doc] += wordScores[doc];
+                matched[doc]++;
+                wordScores[doc] = 0;
+            }
+        }
+
+        List<Integer> hits = new ArrayList<>();
+        // Read in document order, so spilled articles are read back a chunk at a time
+        long[] times = new long[docCount];
+        for (int doc = 0; doc < docCount; doc++) {
+            if (matched[doc] == words.size() && !mDeleted.get(doc)) {
+                News news = mDocs.get(doc);
+                // Found again once it is fetched again
+                if (NewsSpillStore.isLost(news)) {
+                    continue;
+                }
+                hits.add(doc);
+                times[doc] = news.getPublicationTime();
+            }
+        }
+        Collections.sort(hits, (a, b) -> {
+            int byScore = Float.compare(scores[b], scores[a]);
+            return byScore != 0 ? byScore : Long.compare(times[b], times[a]);
+        });
+        List<News> results = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            results.add(mDocs.get(hits.get(i)));
+        }
+        return results;
+    }
+
+    /** Return the number of articles that can be found */
+    public synchronized int size() {
+        indexPendingLocked();
+        return mIdsByUrl.size();
+    }
+
+    /** Return the number of distinct terms indexed */
+    public synchronized int termCount() {
+        indexPendingLocked();
+        return mTerms.size();
+    }
+
+    /** Split the text into lower case words of letters and digits. */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static boolean sameText(News a, News b) {
+        return equals(a.getTitle(), b.getTitle()) && equals(a.getAuthor(), b.getAuthor())
+                && equals(a.getSectionName(), b.getSectionName());
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
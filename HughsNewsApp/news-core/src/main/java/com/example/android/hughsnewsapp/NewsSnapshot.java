@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The article list as last shown, saved in a compact binary file so the next cold start can
+ * show it before anything has been fetched or parsed. Every distinct string is stored once in
+ * a table of length-prefixed UTF-8 strings, and each article is then a fixed-size record of
+ * indexes into it plus its publication time:
+ * <pre>
+ * int magic, int version, int string count, int article count
+ * string count x (int byte length, UTF-8 bytes)
+ * article count x (int section, int title, int author, int url, int thumbnail,
+ *                  long publication time)
+ * </pre>
+ * The file is memory-mapped to be read, and written to a temporary file first, then renamed
+ * over the snapshot, so a crash leaves either the old snapshot or the new one.
+ */
+public class NewsSnapshot {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsSnapshot.class.getSimpleName();
+
+    /** "HNSS" */
+    private static final int MAGIC = 0x484E5353;
+
+    /** Bumped whenever the layout changes; older files are ignored. */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Index standing for a null string */
+    private static final int NO_STRING = -1;
+
+    /** Number of string fields of an article record */
+    private static final int STRING_FIELDS = 5;
+
+    /** Size in bytes of an article record */
+    private static final int RECORD_BYTES = STRING_FIELDS * 4 + 8;
+
+    private final File mFile;
+
+    /**
+     * Constructor
+     * @param file where the snapshot is stored; its directory is created if needed
+     */
+    public NewsSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Return the articles of the snapshot, or null if there is none or it can't be read.
+     * Fast enough for the main thread with a snapshot of a few screens of articles.
+     */
+    public synchronized List<News> read() {
+        if (!mFile.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } catch (IOException | RuntimeException e) {
+            // BufferUnderflowException and friends when the file is damaged
+            NewsLog.e(LOG_TAG, "Problem reading the snapshot.", e);
+            return null;
+        }
+    }
+
+    /** Return the articles held in the buffer, or null if it is not a snapshot of this version. */
+    static List<News> read(ByteBuffer buffer) {
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        int stringCount = buffer.getInt();
+        int articleCount = buffer.getInt();
+        // Each string takes at least its length, each article a whole record
+        if (stringCount < 0 || articleCount < 0 || stringCount > buffer.remaining() / 4
+                || articleCount > buffer.remaining() / RECORD_BYTES) {
+            return null;
+        }
+
+        String[] strings = new String[stringCount];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < stringCount; i++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        List<News> articles = new ArrayList<>(articleCount);
+        for (int i = 0; i < articleCount; i++) {
+            String section = string(strings, buffer.getInt());
+            String title = string(strings, buffer.getInt());
+            String author = string(strings, buffer.getInt());
+            String url = string(strings, buffer.getInt());
+            String thumbnailUrl = string(strings, buffer.getInt());
+            articles.add(new News(section, title, buffer.getLong(), author, url, thumbnailUrl));
+        }
+        return articles;
+    }
+
+    /** Replace the snapshot with the given articles. This is on a background thread. */
+    public synchronized void write(List<News> articles) throws IOException {
+        File directory = mFile.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        File temp = new File(mFile.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            write(articles, out);
+            out.flush();
+            // On disk before the rename, or a crash could leave a renamed but empty file
+            file.getFD().sync();
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Unable to write " + mFile);
+        }
+    }
+
+    /** Write the snapshot of the given articles to the stream. */
+    static void write(List<News> articles, DataOutputStream out) throws IOException {
+        // Number every distinct string in order of first use
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] records = new int[articles.size() * STRING_FIELDS];
+        for (int i = 0; i < articles.size(); i++) {
+            News news = articles.get(i);
+            int record = i * STRING_FIELDS;
+            records[record] = index(news.getSectionName(), indexes, strings);
+            records[record + 1] = index(news.getTitle(), indexes, strings);
+            records[record + 2] = index(news.getAuthor(), indexes, strings);
+            records[record + 3] = index(news.getUrl(), indexes, strings);
+            records[record + 4] = index(news.getThumbnailUrl(), indexes, strings);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(strings.size());
+        out.writeInt(articles.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        for (int i = 0; i < articles.size(); i++) {
+            for (int field = 0; field < STRING_FIELDS; field++) {
+                out.writeInt(records[i * STRING_FIELDS + field]);
+            }
+            out.writeLong(articles.get(i).getPublicationTime());
+        }
+    }
+
+    /** Remove the snapshot. */
+    public synchronized void delete() {
+        mFile.delete();
+    }
+
+    private static int index(String string, Map<String, Integer> indexes, List<String> strings) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = indexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            indexes.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    private static String string(String[] strings, int index) {
+        if (index == NO_STRING) {
+            return null;
+        }
+        if (index < 0 || index >= strings.length) {
+            throw new BufferUnderflowException();
+        }
+        return strings[index];
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+/**
+ * A feed polled by {@link NewsSourcePoller}: where it is, how it is read and how often it is
+ * polled for new articles.
+ */
+public final class NewsSource {
+
+    private final String mName;
+    private final String mUrl;
+    private final NewsFeedParser mParser;
+    private final long mPollInterval;
+
+    /**
+     * Constructor
+     * @param name name of the source, as shown in logs
+     * @param url URL of the feed
+     * @param parser reads the feed, such as {@link NewsFeedParser#XML}
+     * @param pollInterval milliseconds between the end of one poll and the start of the next
+     */
+    public NewsSource(String name, String url, NewsFeedParser parser, long pollInterval) {
+        if (pollInterval <= 0) {
+            throw new IllegalArgumentException("poll interval out of range: " + pollInterval);
+        }
+        mName = name;
+        mUrl = url;
+        mParser = parser;
+        mPollInterval = pollInterval;
+    }
+
+    /** Return the name of the source */
+    public String getName() { return mName; }
+
+    /** Return the URL of the feed */
+    public String getUrl() { return mUrl; }
+
+    /** Return the parser reading the feed */
+    public NewsFeedParser getParser() { return mParser; }
+
+    /** Return the milliseconds between the end of one poll and the start of the next */
+    public long getPollInterval() { return mPollInterval; }
+
+    @Override
+    public String toString() {
+        return mName + " " + mUrl;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.android.hughsnewsapp.Constants.HTTP_NOT_MODIFIED_CODE;
+import static com.example.android.hughsnewsapp.Constants.HTTP_SUCCESS_CODE;
+import static com.example.android.hughsnewsapp.Constants.SOURCE_HOST_BUSY_DELAY;
+import static com.example.android.hughsnewsapp.Constants.SOURCE_START_SPREAD;
+
+/**
+ * Polls any number of {@link NewsSource}s on a bounded pool of background threads, each at its
+ * own interval, and merges their articles into one timeline, newest first, with each article
+ * (identified by its URL) appearing once. At most a fixed number of requests are in flight to
+ * any one host: a poll finding its host busy is put back for a moment rather than holding a
+ * thread. The first polls are spread out so that hundreds of sources do not all start at once,
+ * and starting only schedules them. Each feed is requested conditionally on the validators of
+ * its last response, and a poll of a source never overlaps the one before it. A source that
+ * fails is polled again at its usual interval.
+ */
+public class NewsSourcePoller {
+
+    private static final String LOG_TAG = NewsSourcePoller.class.getSimpleName();
+
+    /** Receives the merged timeline. */
+    public interface Listener {
+        /**
+         * The timeline changed. The list is never changed afterwards. Changes made in quick
+         * succession are handed over once.
+         */
+        void onTimelineChanged(List<News> timeline);
+    }
+
+    private final List<NewsSource> mSources;
+
+    /** Runs the polls and schedules the next ones */
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    /** Permits for the requests in flight, by host */
+    private final HostPermits mHostPermits;
+
+    /** Runs the listener, normally on the main thread */
+    private final Executor mCallbackExecutor;
+    private final Listener mListener;
+
+    /** Articles of every source, by source. Guarded by itself. */
+    private final NewsFeed mFeed;
+
+    /** ETag and Last-Modified of the last response of each source, only used by its polls */
+    private final String[] mETags;
+    private final String[] mLastModified;
+
+    /** Request in flight for each source, so stopping can abort it */
+    private final FetchHandle[] mHandles;
+
+    /** Number of polls of each source that got an answer, fresh or not */
+    private final int[] mPollCounts;
+
+    /** True while a change of the timeline waits to be handed over */
+    private final AtomicBoolean mChangePending = new AtomicBoolean();
+
+    private volatile boolean mStopped;
+
+    /**
+     * Constructor
+     * @param sources the sources to poll
+     * @param threads maximum number of polls running at once
+     * @param maxPerHost maximum number of requests in flight to one host
+     * @param callbackExecutor runs the listener, normally on the main thread
+     * @param listener receives the merged timeline
+     */
+    public NewsSourcePoller(List<NewsSource> sources, int threads, int maxPerHost,
+                            Executor callbackExecutor, Listener listener) {
+        mSources = new ArrayList<>(sources);
+        mExecutor = new ScheduledThreadPoolExecutor(threads);
+        mHostPermits = new HostPermits(maxPerHost);
+        mCallbackExecutor = callbackExecutor;
+        mListener = listener;
+        mFeed = new NewsFeed(sources.size());
+        mETags = new String[sources.size()];
+        mLastModified = new String[sources.size()];
+        mHandles = new FetchHandle[sources.size()];
+        mPollCounts = new int[sources.size()];
+    }
+
+    /** Schedule the first poll of every source, spread over a moment, and return at once. */
+    public void start() {
+        int count = mSources.size();
+        for (int i = 0; i < count; i++) {
+            final int source = i;
+            mExecutor.schedule(() -> poll(source), SOURCE_START_SPREAD * i / count, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Stop polling. Requests in flight are aborted and nothing more is handed over. */
+    public void stop() {
+        mStopped = true;
+        mExecutor.shutdownNow();
+        synchronized (mHandles) {
+            for (FetchHandle handle : mHandles) {
+                if (handle != null) {
+                    handle.cancel();
+                }
+            }
+        }
+    }
+
+    /** Return the merged articles of every source so far, newest first. The list is never changed. */
+    public List<News> getTimeline() {
+        synchronized (mFeed) {
+            return mFeed.getArticles();
+        }
+    }
+
+    /** Return the number of polls of the given source that got an answer, fresh or not. */
+    public int getPollCount(int source) {
+        synchronized (mPollCounts) {
+            return mPollCounts[source];
+        }
+    }
+
+    /**
+     * Poll the given source, or put the poll back for a moment if its host is busy. This is on a
+     * background thread.
+     */
+    private void poll(final int source) {
+        if (mStopped) {
+            return;
+        }
+        NewsSource newsSource = mSources.get(source);
+        Semaphore permits = mHostPermits.forUrl(newsSource.getUrl());
+        if (!permits.tryAcquire()) {
+            reschedule(source, SOURCE_HOST_BUSY_DELAY);
+            return;
+        }
+        try {
+            fetch(source, newsSource);
+        } finally {
+            permits.release();
+        }
+        reschedule(source, newsSource.getPollInterval());
+    }
+
+    private void reschedule(final int source, long delay) {
+        if (!mStopped) {
+            mExecutor.schedule(() -> poll(source), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Request the feed of the given source and merge its articles if it changed. */
+    private void fetch(int source, NewsSource newsSource) {
+        URL url;
+        try {
+            url = new URL(newsSource.getUrl());
+        } catch (MalformedURLException e) {
+            NewsLog.e(LOG_TAG, "Invalid source " + newsSource, e);
+            return;
+        }
+        NewsHttpClient.Request.Builder request = new NewsHttpClient.Request.Builder(url);
+        if (mETags[source] != null) {
+            request.header("If-None-Match", mETags[source]);
+        }
+        if (mLastModified[source] != null) {
+            request.header("If-Modified-Since", mLastModified[source]);
+        }
+        FetchHandle handle = new FetchHandle();
+        synchronized (mHandles) {
+            if (mStopped) {
+                return;
+            }
+            mHandles[source] = handle;
+        }
+
+        List<News> news = null;
+        NewsHttpClient.Response response = null;
+        try {
+            NewsTrace.count(NewsTrace.Counter.REQUESTS);
+            long start = NewsTrace.begin(NewsTrace.Stage.NETWORK);
+            try {
+                response = QueryUtils.getHttpClient().execute(request.build(), handle);
+            } finally {
+                NewsTrace.end(NewsTrace.Stage.NETWORK, start);
+            }
+            int responseCode = response.getStatusCode();
+            if (responseCode == HTTP_SUCCESS_CODE) {
+                start = NewsTrace.begin(NewsTrace.Stage.PARSE);
+                try {
+                    news = newsSource.getParser().parse(response.getBody());
+                } finally {
+                    NewsTrace.end(NewsTrace.Stage.PARSE, start);
+                }
+                NewsTrace.count(NewsTrace.Counter.ARTICLES_PARSED, news.size());
+                mETags[source] = response.getHeader("ETag");
+                mLastModified[source] = response.getHeader("Last-Modified");
+            } else if (responseCode == HTTP_NOT_MODIFIED_CODE) {
+                NewsTrace.count(NewsTrace.Counter.NOT_MODIFIED);
+            } else {
+                NewsLog.e(LOG_TAG, "Error response code " + responseCode + " from " + newsSource);
+                NewsTrace.count(NewsTrace.Counter.REQUEST_FAILURES);
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            // JsonReader reports malformed JSON as an IOException or IllegalStateException
+            if (!handle.isCancelled()) {
+                NewsLog.e(LOG_TAG, "Problem polling " + newsSource, e);
+                NewsTrace.count(NewsTrace.Counter.REQUEST_FAILURES);
+            }
+            return;
+        } finally {
+            synchronized (mHandles) {
+                mHandles[source] = null;
+            }
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    // The connection is not reused
+                }
+            }
+        }
+        synchronized (mPollCounts) {
+            mPollCounts[source]++;
+        }
+        if (news != null) {
+            merge(source, news);
+        }
+    }
+
+    /** Replace the articles of the given source in the timeline, and hand the timeline over. */
+    private void merge(int source, List<News> news) {
+        synchronized (mFeed) {
+            mFeed.setQueryArticles(source, news);
+        }
+        if (mChangePending.compareAndSet(false, true)) {
+            mCallbackExecutor.execute(() -> {
+                mChangePending.set(false);
+                if (!mStopped) {
+                    mListener.onTimelineChanged(getTimeline());
+                }
+            });
+        }
+    }
+}
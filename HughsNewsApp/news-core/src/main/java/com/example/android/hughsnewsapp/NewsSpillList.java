@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static com.example.android.hughsnewsapp.Constants.SPILL_CHUNK_ARTICLES;
+
+/**
+ * A list of articles whose chunks a {@link NewsSpillStore} writes to disk once the articles of
+ * all its lists take more memory than its budget, and reads back as they are used again. Reading
+ * in order, or around one position, only reads back a chunk at a time. Adding at either end only
+ * touches the first or the last chunk; adding anywhere else splits the chunk if it is full.
+ * Safe to use from any thread, though iterating is not while another thread changes the list.
+ */
+public class NewsSpillList extends AbstractList<News> implements RandomAccess {
+
+    private final NewsSpillStore mStore;
+
+    /** The chunks, in list order */
+    private final List<NewsSpillStore.Chunk> mChunks = new ArrayList<>();
+
+    /** Index in the list of the first article of each chunk */
+    private int[] mStarts = new int[16];
+
+    private int mSize;
+
+    /**
+     * Constructor
+     * @param store keeps the articles of the list within its heap budget
+     */
+    public NewsSpillList(NewsSpillStore store) {
+        mStore = store;
+    }
+
+    @Override
+    public News get(int index) {
+        checkIndex(index);
+        synchronized (mStore) {
+            int chunk = chunkAt(index);
+            return mStore.articles(mChunks.get(chunk)).get(index - mStarts[chunk]);
+        }
+    }
+
+    @Override
+    public News set(int index, News news) {
+        checkIndex(index);
+        synchronized (mStore) {
+            int chunk = chunkAt(index);
+            NewsSpillStore.Chunk c = mChunks.get(chunk);
+            News previous = mStore.articles(c).set(index - mStarts[chunk], news);
+            mStore.changed(c);
+            return previous;
+        }
+    }
+
+    @Override
+    public void add(int index, News news) {
+        if (index < 0 || index > mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        synchronized (mStore) {
+            int chunk;
+            if (mChunks.isEmpty()) {
+                chunk = insertChunk(0);
+            } else if (index == mSize) {
+                chunk = mChunks.size() - 1;
+                if (mChunks.get(chunk).mSize >= SPILL_CHUNK_ARTICLES) {
+                    chunk = insertChunk(mChunks.size());
+                }
+            } else {
+                chunk = chunkAt(index);
+                if (mChunks.get(chunk).mSize >= SPILL_CHUNK_ARTICLES) {
+                    if (index == mStarts[chunk] && chunk > 0
+                            && mChunks.get(chunk - 1).mSize < SPILL_CHUNK_ARTICLES) {
+                        // At the end of the chunk before, such as the articles put on top one by one
+                        chunk--;
+                    } else if (index == mStarts[chunk]) {
+                        chunk = insertChunk(chunk);
+                    } else {
+                        split(chunk);
+                        chunk = chunkAt(index);
+                    }
+                }
+            }
+            NewsSpillStore.Chunk c = mChunks.get(chunk);
+            mStore.articles(c).add(index - mStarts[chunk], news);
+            mStore.changed(c);
+            mSize++;
+            updateStarts(chunk + 1);
+            modCount++;
+        }
+    }
+
+    @Override
+    public News remove(int index) {
+        checkIndex(index);
+        synchronized (mStore) {
+            int chunk = chunkAt(index);
+            NewsSpillStore.Chunk c = mChunks.get(chunk);
+            News removed = mStore.articles(c).remove(index - mStarts[chunk]);
+            mStore.changed(c);
+            if (c.mSize == 0) {
+                mStore.release(c);
+                mChunks.remove(chunk);
+            }
+            mSize--;
+            updateStarts(chunk);
+            modCount++;
+            return removed;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mStore) {
+            for (NewsSpillStore.Chunk chunk : mChunks) {
+                mStore.release(chunk);
+            }
+            mChunks.clear();
+            mSize = 0;
+            modCount++;
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (mStore) {
+            return mSize;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    /** Return the chunk holding the article at the given index, which is in the list. */
+    private int chunkAt(int index) {
+        int low = 0;
+        int high = mChunks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /** Insert a new, empty chunk at the given position among the chunks, and return it. */
+    private int insertChunk(int position) {
+        mChunks.add(position, mStore.newChunk());
+        updateStarts(position);
+        return position;
+    }
+
+    /** Move the second half of the chunk at the given position to a new chunk after it. */
+    private void split(int position) {
+        NewsSpillStore.Chunk chunk = mChunks.get(position);
+        List<News> articles = mStore.articles(chunk);
+        NewsSpillStore.Chunk second = mStore.newChunk();
+        List<News> moved = articles.subList(articles.size() / 2, articles.size());
+        mStore.articles(second).addAll(moved);
+        moved.clear();
+        mChunks.add(position + 1, second);
+        mStore.changed(chunk, second);
+        updateStarts(position + 1);
+    }
+
+    /** Recompute where each chunk from the given position on starts. */
+    private void updateStarts(int from) {
+        if (mStarts.length < mChunks.size()) {
+            mStarts = Arrays.copyOf(mStarts, Math.max(mChunks.size(), mStarts.length * 2));
+        }
+        int start = from == 0 ? 0 : mStarts[from - 1] + mChunks.get(from - 1).mSize;
+        for (int i = from; i < mChunks.size(); i++) {
+            mStarts[i] = start;
+            start += mChunks.get(i).mSize;
+        }
+    }
+}
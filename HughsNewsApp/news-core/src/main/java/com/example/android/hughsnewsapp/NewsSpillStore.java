@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static com.example.android.hughsnewsapp.Constants.SPILL_ARTICLE_BYTES;
+import static com.example.android.hughsnewsapp.Constants.SPILL_CHUNK_ARTICLES;
+
+/**
+ * Keeps the articles of every {@link NewsSpillList} made on it within a heap budget. The lists
+ * are held in chunks of a few dozen articles; once the articles in memory take more than the
+ * budget, the chunks used least recently are written to a file of their own in the
+ * {@link NewsSnapshot} format and dropped from memory, and read back the next time one of their
+ * articles is asked for. The budget is counted in articles of {@link Constants#SPILL_ARTICLE_BYTES}
+ * each, an estimate of an article with the text of its row made.
+ * The directory only holds chunks of this store, and is emptied as it is made. A chunk whose file
+ * went missing or could not be read is not fatal: its articles are replaced by {@link #isLost}
+ * stand-ins, so the lists keep their positions, and whoever shows them fetches them again.
+ * Safe to use from any thread.
+ */
+public class NewsSpillStore {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsSpillStore.class.getSimpleName();
+
+    private static final String CHUNK_PREFIX = "chunk-";
+
+    /** Stands in for each article of a chunk that could not be read back */
+    private static final News LOST = new News("", "", NewsDates.UNKNOWN, "", null, null);
+
+    /** A run of consecutive articles of one list, in memory, on disk or both. */
+    static final class Chunk {
+        /** The articles while they are in memory, null while they are only on disk */
+        List<News> mArticles = new ArrayList<>(SPILL_CHUNK_ARTICLES);
+        /** Number of articles, kept while they are only on disk */
+        int mSize;
+        /** The file the articles were last written to, null if they never were */
+        File mFile;
+        /** True if the articles in memory have changed since they were written */
+        boolean mDirty = true;
+        /** True if the articles could not be read back and were replaced by stand-ins */
+        boolean mLost;
+    }
+
+    private final File mDirectory;
+
+    /** Chunks in memory, least recently used first */
+    private final LinkedHashMap<Chunk, Chunk> mResident = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Number of articles in memory */
+    private int mResidentArticles;
+
+    /** Number of articles kept in memory at most */
+    private int mMaxResidentArticles;
+
+    private long mHeapBudget;
+
+    /** Number given to the next chunk file */
+    private int mNextFile;
+
+    /** Number of chunks read back from disk */
+    private long mPageIns;
+
+    /** Number of chunks written to disk */
+    private long mPageOuts;
+
+    /** Number of articles that could not be read back from disk */
+    private long mLostArticles;
+
+    /**
+     * Constructor
+     * @param directory directory holding the chunks spilled to disk
+     * @param heapBudget bytes the articles in memory may take
+     */
+    public NewsSpillStore(File directory, long heapBudget) {
+        mDirectory = directory;
+        setHeapBudget(heapBudget);
+        // Left over by an earlier process, whose lists are gone
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(CHUNK_PREFIX)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /** Change the bytes the articles in memory may take, spilling chunks if they take more. */
+    public synchronized void setHeapBudget(long heapBudget) {
+        mHeapBudget = heapBudget;
+        // One chunk is always in memory, the one being read or written
+        mMaxResidentArticles = (int) Math.max(SPILL_CHUNK_ARTICLES,
+                Math.min(Integer.MAX_VALUE, heapBudget / SPILL_ARTICLE_BYTES));
+        evict(mMaxResidentArticles);
+    }
+
+    /** Return the bytes the articles in memory may take */
+    public synchronized long getHeapBudget() {
+        return mHeapBudget;
+    }
+
+    /**
+     * Spill chunks until the articles in memory take no more than the given number of bytes,
+     * such as when the system runs low on memory. They are read back as they are used again,
+     * within the whole budget.
+     */
+    public synchronized void trim(long bytes) {
+        evict((int) Math.min(Integer.MAX_VALUE, bytes / SPILL_ARTICLE_BYTES));
+    }
+
+    /** Return the number of articles in memory */
+    public synchronized int getResidentArticles() {
+        return mResidentArticles;
+    }
+
+    /** Return the number of articles kept in memory at most */
+    public synchronized int getMaxResidentArticles() {
+        return mMaxResidentArticles;
+    }
+
+    /** Return the number of chunks read back from disk so far */
+    public synchronized long getPageIns() {
+        return mPageIns;
+    }
+
+    /** Return the number of chunks written to disk so far */
+    public synchronized long getPageOuts() {
+        return mPageOuts;
+    }
+
+    /** Return the number of articles that could not be read back from disk so far */
+    public synchronized long getLostArticles() {
+        return mLostArticles;
+    }
+
+    /**
+     * Return true if the article stands in for one that could not be read back from disk. It has
+     * no URL, no date and empty text, and is best left out of what is shown.
+     */
+    public static boolean isLost(News news) {
+        return news == LOST;
+    }
+
+    /** Return a new, empty chunk, in memory. Called with the store locked. */
+    Chunk newChunk() {
+        Chunk chunk = new Chunk();
+        mResident.put(chunk, chunk);
+        return chunk;
+    }
+
+    /**
+     * Return the articles of the chunk, read back from disk if need be, and mark it the most
+     * recently used. The caller holds the store locked for as long as it uses the list.
+     */
+    List<News> articles(Chunk chunk) {
+        if (chunk.mArticles == null) {
+            chunk.mArticles = read(chunk);
+            chunk.mDirty = false;
+            if (chunk.mArticles == null) {
+                // Kept in memory from now on, so the stand-ins stay recognisable
+                chunk.mArticles = new ArrayList<>(Collections.nCopies(chunk.mSize, LOST));
+                chunk.mLost = true;
+                chunk.mFile.delete();
+                chunk.mFile = null;
+                mLostArticles += chunk.mSize;
+            }
+            mResident.put(chunk, chunk);
+            mResidentArticles += chunk.mSize;
+            mPageIns++;
+            evict(mMaxResidentArticles, chunk);
+        } else {
+            mResident.get(chunk);
+        }
+        return chunk.mArticles;
+    }
+
+    /**
+     * Record that articles were added to, removed from or replaced in the given chunks, which
+     * are in memory and stay in memory. Called with the store locked.
+     */
+    void changed(Chunk... chunks) {
+        for (Chunk chunk : chunks) {
+            int size = chunk.mArticles.size();
+            mResidentArticles += size - chunk.mSize;
+            chunk.mSize = size;
+            chunk.mDirty = true;
+        }
+        evict(mMaxResidentArticles, chunks);
+    }
+
+    /** Forget the chunk, which no list holds any more. Called with the store locked. */
+    void release(Chunk chunk) {
+        if (mResident.remove(chunk) != null) {
+            mResidentArticles -= chunk.mSize;
+        }
+        chunk.mArticles = null;
+        if (chunk.mFile != null) {
+            chunk.mFile.delete();
+            chunk.mFile = null;
+        }
+    }
+
+    /**
+     * Spill the least recently used chunks, other than the given ones, until no more than the
+     * given number of articles are in memory.
+     */
+    private void evict(int maxArticles, Chunk... keep) {
+        Iterator<Chunk> chunks = mResident.keySet().iterator();
+        while (mResidentArticles > maxArticles && chunks.hasNext()) {
+            Chunk chunk = chunks.next();
+            if (chunk.mLost || contains(keep, chunk)) {
+                continue;
+            }
+            if (chunk.mDirty && !write(chunk)) {
+                // Kept in memory rather than lost, over the budget
+                return;
+            }
+            chunk.mArticles = null;
+            chunks.remove();
+            mResidentArticles -= chunk.mSize;
+        }
+    }
+
+    private static boolean contains(Chunk[] chunks, Chunk chunk) {
+        for (Chunk c : chunks) {
+            if (c == chunk) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Write the articles of the chunk to its file. Return false if they could not be. */
+    private boolean write(Chunk chunk) {
+        if (chunk.mFile == null) {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                NewsLog.e(LOG_TAG, "Unable to create " + mDirectory);
+                return false;
+            }
+            chunk.mFile = new File(mDirectory, CHUNK_PREFIX + mNextFile++);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(chunk.mFile)))) {
+            NewsSnapshot.write(chunk.mArticles, out);
+        } catch (IOException e) {
+            NewsLog.e(LOG_TAG, "Problem spilling articles to " + chunk.mFile, e);
+            return false;
+        }
+        chunk.mDirty = false;
+        mPageOuts++;
+        return true;
+    }
+
+    /** Read back the articles of the chunk from its file. Return null if they could not be. */
+    private static List<News> read(Chunk chunk) {
+        List<News> articles = null;
+        try (FileInputStream in = new FileInputStream(chunk.mFile)) {
+            byte[] bytes = new byte[(int) chunk.mFile.length()];
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0) {
+                length += read;
+            }
+            articles = NewsSnapshot.read(ByteBuffer.wrap(bytes, 0, length));
+        } catch (IOException | RuntimeException e) {
+            NewsLog.e(LOG_TAG, "Problem reading back " + chunk.mFile, e);
+        }
+        if (articles == null || articles.size() != chunk.mSize) {
+            NewsLog.e(LOG_TAG, "Spilled articles lost from " + chunk.mFile);
+            return null;
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.example.android.hughsnewsapp.Constants.TRACE_MAX_SPANS;
+
+/**
+ * Spans, counters and latency histograms for the stages between opening the app and showing
+ * the articles. Disabled, a span costs one volatile read, so the calls stay in release builds.
+ * Enabled, each span is also a section of the {@link Sections} set, such as the app's systrace
+ * sections, is counted in its stage's histogram and is kept
+ * in a ring buffer of the latest spans, which can be written out in the Chrome trace format read
+ * by Perfetto and chrome://tracing.
+ * The time to first article is always measured: there is one sample per launch.
+ *
+ * <pre>
+ * long start = NewsTrace.begin(NewsTrace.Stage.PARSE);
+ * ...
+ * NewsTrace.end(NewsTrace.Stage.PARSE, start);
+ * </pre>
+ */
+public final class NewsTrace {
+
+    /** Stages that are timed */
+    public enum Stage {
+        /** Creating the list screen */
+        CREATE("create"),
+        /** A whole fetch, from memory, disk cache or network, on the fetch thread */
+        FETCH("fetch"),
+        /** Sending a request until the response headers arrive */
+        NETWORK("network"),
+        /** Reading and parsing a response body as it streams in */
+        PARSE("parse"),
+        /** Parsing a response stored in the disk cache */
+        CACHE_READ("cache read"),
+        /** Making the row text and title signatures of the articles of a page, on the fetch thread */
+        FORMAT("format"),
+        /** Grouping near-duplicate articles into the rows of the list */
+        CLUSTER("cluster"),
+        /** Binding an article to a row of the list */
+        BIND("bind"),
+        /** Launching the list screen until articles are drawn */
+        FIRST_ARTICLE("first article"),
+        /** Tapping an article until its stored text is shown in the reader */
+        TAP_TO_CONTENT("tap to content");
+
+        private final String mLabel;
+
+        Stage(String label) {
+            mLabel = label;
+        }
+
+        /** Return the name of the stage, as shown in traces */
+        public String getLabel() {
+            return mLabel;
+        }
+    }
+
+    /** Marks the spans in a platform tracer too, e.g. android.os.Trace. */
+    public interface Sections {
+        /** Begin a section on this thread. */
+        void begin(String name);
+
+        /** End the last section begun on this thread. */
+        void end();
+    }
+
+    /** Sections that mark nothing, as off Android */
+    private static final Sections NO_SECTIONS = new Sections() {
+        @Override
+        public void begin(String name) {
+        }
+
+        @Override
+        public void end() {
+        }
+    };
+
+    /** Events that are counted */
+    public enum Counter {
+        /** Requests sent to the API */
+        REQUESTS,
+        /** Responses telling that the cached copy is still current */
+        NOT_MODIFIED,
+        /** Requests that failed */
+        REQUEST_FAILURES,
+        /** Fetches answered by a page fetched moments ago */
+        MEMORY_CACHE_HITS,
+        /** Articles parsed from the network or the disk cache */
+        ARTICLES_PARSED,
+        /** Rows bound to an article */
+        ROWS_BOUND,
+        /** Rows whose text had not been made ahead and was made as they were bound */
+        ROWS_FORMATTED_ON_BIND,
+        /** Articles grouped under a near duplicate loaded before them */
+        DUPLICATES_GROUPED,
+        /** Articles whose text was fetched ahead and stored for the reader */
+        ARTICLES_PREFETCHED,
+        /** Bytes fetched ahead for the reader */
+        PREFETCH_BYTES,
+        /** Articles added to the top of the list by a delta refresh */
+        DELTA_ARTICLES,
+        /** Times memory was given back because the system ran short of it */
+        MEMORY_TRIMS
+    }
+
+    private static volatile boolean sEnabled;
+
+    private static volatile Sections sSections = NO_SECTIONS;
+
+    private static final LatencyHistogram[] sHistograms = new LatencyHistogram[Stage.values().length];
+    private static final AtomicLongArray sCounters = new AtomicLongArray(Counter.values().length);
+
+    /** Ring buffer of the latest spans, as parallel arrays */
+    private static final int[] sSpanStages = new int[TRACE_MAX_SPANS];
+    private static final long[] sSpanThreads = new long[TRACE_MAX_SPANS];
+    private static final long[] sSpanStarts = new long[TRACE_MAX_SPANS];
+    private static final long[] sSpanDurations = new long[TRACE_MAX_SPANS];
+    private static long sSpanCount;
+
+    /** Names of the threads spans were recorded on, by thread id */
+    private static final ConcurrentMap<Long, String> sThreadNames = new ConcurrentHashMap<>();
+
+    /** Time the list screen was launched, or 0 once its first article was drawn */
+    private static volatile long sLaunchedAt;
+
+    /** Time an article was last tapped, or 0 once its content was shown */
+    private static volatile long sTappedAt;
+
+    static {
+        for (int i = 0; i < sHistograms.length; i++) {
+            sHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Create a private constructor because no one should ever create a {@link NewsTrace} object.*/
+    private NewsTrace() {
+    }
+
+    /** Start or stop recording spans and counters. */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Mark every span in the given tracer too, or in none if null. Set it before enabling, so
+     * every section begun is ended in the same tracer.
+     */
+    public static void setSections(Sections sections) {
+        sSections = sections == null ? NO_SECTIONS : sections;
+    }
+
+    /** Return true while spans and counters are recorded */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Start a span of the given stage on this thread, and return the value to hand to
+     * {@link #end}: its start time, or 0 when disabled.
+     */
+    public static long begin(Stage stage) {
+        if (!sEnabled) {
+            return 0;
+        }
+        sSections.begin(stage.mLabel);
+        return System.nanoTime();
+    }
+
+    /** End the span of the given stage started on this thread by {@link #begin}. */
+    public static void end(Stage stage, long start) {
+        if (start == 0) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        sSections.end();
+        record(stage, start, duration);
+    }
+
+    /** Count one event, if enabled. */
+    public static void count(Counter counter) {
+        count(counter, 1);
+    }
+
+    /** Count the given number of events, if enabled. */
+    public static void count(Counter counter, long events) {
+        if (sEnabled) {
+            sCounters.addAndGet(counter.ordinal(), events);
+        }
+    }
+
+    /** Return the number of events counted */
+    public static long getCount(Counter counter) {
+        return sCounters.get(counter.ordinal());
+    }
+
+    /** Return the latencies counted for the given stage */
+    public static LatencyHistogram getHistogram(Stage stage) {
+        return sHistograms[stage.ordinal()];
+    }
+
+    /** Record that the list screen is being launched, starting the time to first article. */
+    public static void markLaunch() {
+        sLaunchedAt = System.nanoTime();
+    }
+
+    /** Record that an article was tapped, starting the time to its content. */
+    public static void markArticleTapped() {
+        sTappedAt = System.nanoTime();
+    }
+
+    /**
+     * Record that the text of the article last tapped is being shown, and return the time from
+     * the tap in nanoseconds. Return -1 if it was already recorded for this tap.
+     */
+    public static long markArticleShown() {
+        long tappedAt = sTappedAt;
+        if (tappedAt == 0) {
+            return -1;
+        }
+        sTappedAt = 0;
+        long duration = System.nanoTime() - tappedAt;
+        sHistograms[Stage.TAP_TO_CONTENT.ordinal()].record(duration);
+        if (sEnabled) {
+            addSpan(Stage.TAP_TO_CONTENT, tappedAt, duration);
+        }
+        return duration;
+    }
+
+    /**
+     * Record that the first articles since the launch are being drawn, and return the time to
+     * first article in nanoseconds. Return -1 if it was already recorded for this launch.
+     */
+    public static long markFirstArticle() {
+        long launchedAt = sLaunchedAt;
+        if (launchedAt == 0) {
+            return -1;
+        }
+        sLaunchedAt = 0;
+        long duration = System.nanoTime() - launchedAt;
+        sHistograms[Stage.FIRST_ARTICLE.ordinal()].record(duration);
+        if (sEnabled) {
+            addSpan(Stage.FIRST_ARTICLE, launchedAt, duration);
+        }
+        return duration;
+    }
+
+    /** Count a span in its stage's histogram and keep it in the ring buffer. */
+    static void record(Stage stage, long start, long duration) {
+        sHistograms[stage.ordinal()].record(duration);
+        addSpan(stage, start, duration);
+    }
+
+    private static void addSpan(Stage stage, long start, long duration) {
+        Thread thread = Thread.currentThread();
+        Long threadId = thread.getId();
+        if (!sThreadNames.containsKey(threadId)) {
+            sThreadNames.putIfAbsent(threadId, thread.getName());
+        }
+        synchronized (sSpanStages) {
+            int slot = (int) (sSpanCount++ % TRACE_MAX_SPANS);
+            sSpanStages[slot] = stage.ordinal();
+            sSpanThreads[slot] = threadId;
+            sSpanStarts[slot] = start;
+            sSpanDurations[slot] = duration;
+        }
+    }
+
+    /** Forget every span, count and latency, including the time to first article. */
+    public static void reset() {
+        for (LatencyHistogram histogram : sHistograms) {
+            histogram.clear();
+        }
+        for (int i = 0; i < sCounters.length(); i++) {
+            sCounters.set(i, 0);
+        }
+        synchronized (sSpanStages) {
+            sSpanCount = 0;
+        }
+        sThreadNames.clear();
+        sLaunchedAt = 0;
+        sTappedAt = 0;
+    }
+
+    /** Return a few lines summing up each stage and counter, for the debug overlay. */
+    public static String summary() {
+        StringBuilder out = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = getHistogram(stage);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.US, "%-13s n=%-5d p50 %7.1f  p95 %7.1f  max %7.1f ms\n",
+                    stage.mLabel, histogram.getCount(), millis(histogram.getPercentile(0.5)),
+                    millis(histogram.getPercentile(0.95)), millis(histogram.getMax())));
+        }
+        for (Counter counter : Counter.values()) {
+            out.append(String.format(Locale.US, "%-13s %d\n",
+                    counter.name().toLowerCase(Locale.US), getCount(counter)));
+        }
+        return out.toString().trim();
+    }
+
+    /**
+     * Write the histograms and counters as a JSON object, with "stages" holding the count, p50,
+     * p95 and max in milliseconds of each stage and "counters" each counter.
+     */
+    public static void writeMetrics(Writer out) throws IOException {
+        out.write("{\"enabled\":" + sEnabled + ",\"stages\":{");
+        Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram histogram = getHistogram(stages[i]);
+            out.write(String.format(Locale.US,
+                    "%s\"%s\":{\"count\":%d,\"p50\":%.3f,\"p95\":%.3f,\"max\":%.3f}",
+                    i == 0 ? "" : ",", stages[i].mLabel, histogram.getCount(),
+                    millis(histogram.getPercentile(0.5)), millis(histogram.getPercentile(0.95)),
+                    millis(histogram.getMax())));
+        }
+        out.write("},\"counters\":{");
+        Counter[] counters = Counter.values();
+        for (int i = 0; i < counters.length; i++) {
+            out.write((i == 0 ? "\"" : ",\"") + counters[i].name().toLowerCase(Locale.US)
+                    + "\":" + getCount(counters[i]));
+        }
+        out.write("}}");
+        out.flush();
+    }
+
+    /**
+     * Write the spans in the ring buffer as a JSON trace of complete ("X") events, which
+     * Perfetto, chrome://tracing and systrace's viewer can open. Times are in microseconds.
+     */
+    public static void writeChromeTrace(Writer out) throws IOException {
+        int count;
+        int first;
+        int[] stages = new int[TRACE_MAX_SPANS];
+        long[] threads = new long[TRACE_MAX_SPANS];
+        long[] starts = new long[TRACE_MAX_SPANS];
+        long[] durations = new long[TRACE_MAX_SPANS];
+        synchronized (sSpanStages) {
+            count = (int) Math.min(sSpanCount, TRACE_MAX_SPANS);
+            first = (int) ((sSpanCount - count) % TRACE_MAX_SPANS);
+            System.arraycopy(sSpanStages, 0, stages, 0, TRACE_MAX_SPANS);
+            System.arraycopy(sSpanThreads, 0, threads, 0, TRACE_MAX_SPANS);
+            System.arraycopy(sSpanStarts, 0, starts, 0, TRACE_MAX_SPANS);
+            System.arraycopy(sSpanDurations, 0, durations, 0, TRACE_MAX_SPANS);
+        }
+        Stage[] stageValues = Stage.values();
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean separate = false;
+        for (Map.Entry<Long, String> thread : sThreadNames.entrySet()) {
+            out.write(String.format(Locale.US, "%s{\"name\":\"thread_name\",\"ph\":\"M\","
+                            + "\"pid\":1,\"tid\":%d,\"args\":{\"name\":\"%s\"}}",
+                    separate ? "," : "", thread.getKey(), escape(thread.getValue())));
+            separate = true;
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = (first + i) % TRACE_MAX_SPANS;
+            out.write(String.format(Locale.US, "%s{\"name\":\"%s\",\"cat\":\"news\",\"ph\":\"X\","
+                            + "\"pid\":1,\"tid\":%d,\"ts\":%.3f,\"dur\":%.3f}",
+                    separate ? "," : "", stageValues[stages[slot]].mLabel, threads[slot],
+                    starts[slot] / 1000.0, durations[slot] / 1000.0));
+            separate = true;
+        }
+        out.write("]}");
+        out.flush();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /** Return the text with the characters JSON strings can't hold as they are escaped. */
+    private static String escape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
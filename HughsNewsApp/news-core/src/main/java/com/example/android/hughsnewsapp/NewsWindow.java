@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The part of a long list of articles that is made into rows, so however many articles are
+ * loaded, the adapter only holds a bounded number of rows and of the articles behind them. The
+ * window moves to be centred on the rows shown once they come near one of its edges; the
+ * articles spilled to disk meanwhile are read back as it moves over them again.
+ * Not thread safe.
+ */
+public class NewsWindow {
+
+    /** Number of articles in the window */
+    private final int mSize;
+
+    /** Number of articles between the rows shown and an edge of the window at which it moves */
+    private final int mMargin;
+
+    /** Index in the list of the first article in the window */
+    private int mStart;
+
+    /**
+     * Constructor
+     * @param size number of articles in the window
+     * @param margin number of articles left beyond the rows shown when the window moves
+     */
+    public NewsWindow(int size, int margin) {
+        mSize = size;
+        mMargin = margin;
+    }
+
+    /** Return the index in the list of the first article in the window */
+    public int getStart() {
+        return mStart;
+    }
+
+    /**
+     * Return a copy of the articles of the list in the window, moving it back if the list has
+     * become shorter than where it was.
+     */
+    public List<News> slice(List<News> articles) {
+        int size = articles.size();
+        mStart = Math.max(0, Math.min(mStart, size - mSize));
+        return new ArrayList<>(articles.subList(mStart, Math.min(size, mStart + mSize)));
+    }
+
+    /**
+     * Called with the indices in the list of the first and last articles shown, out of the given
+     * number. Return true if the window moved, and the rows have to be made again.
+     */
+    public boolean onShown(int first, int last, int count) {
+        int end = Math.min(count, mStart + mSize);
+        boolean nearStart = mStart > 0 && first - mStart < mMargin;
+        boolean nearEnd = end < count && end - 1 - last < mMargin;
+        if (!nearStart && !nearEnd) {
+            return false;
+        }
+        int start = Math.max(0, Math.min((first + last) / 2 - mSize / 2, count - mSize));
+        if (start == mStart) {
+            return false;
+        }
+        mStart = start;
+        return true;
+    }
+}
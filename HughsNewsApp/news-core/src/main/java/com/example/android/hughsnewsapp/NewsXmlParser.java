@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Reads RSS 2.0 and Atom feeds with a SAX parser, so each entry becomes a {@link News} article
+ * as soon as its end tag has streamed in and nothing but the entry being read is held.
+ * The link (or a permalink guid), title, publication date, first author, first category and
+ * a thumbnail (media:thumbnail, media:content or an image enclosure) are read; the section is
+ * the title of the feed when an entry has no category. Entries without a link are skipped.
+ */
+final class NewsXmlParser implements NewsFeedParser {
+
+    private static final String ATOM = "http://www.w3.org/2005/Atom";
+    private static final String DUBLIN_CORE = "http://purl.org/dc/elements/1.1/";
+    private static final String MEDIA = "http://search.yahoo.com/mrss/";
+
+    private static final SAXParserFactory sFactory = newFactory();
+
+    @Override
+    public List<News> parse(InputStream in) throws IOException {
+        Handler handler = new Handler();
+        try {
+            SAXParser parser;
+            synchronized (sFactory) {
+                parser = sFactory.newSAXParser();
+            }
+            parser.parse(new InputSource(in), handler);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Invalid feed", e);
+        }
+        return handler.mNews;
+    }
+
+    private static SAXParserFactory newFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            // Feeds come from anywhere: no document type, so no external entities
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (ParserConfigurationException | SAXException e) {
+            // The parser of the platform has no such feature, and does not read external entities
+        }
+        return factory;
+    }
+
+    /** Builds an article from the elements of each item or entry. */
+    private static final class Handler extends DefaultHandler {
+        final List<News> mNews = new ArrayList<>();
+
+        /** Text of the element being read */
+        private final StringBuilder mText = new StringBuilder();
+
+        /** Title of the feed, the section of entries without a category */
+        private String mFeedTitle;
+
+        private boolean mInEntry;
+        private boolean mInAuthor;
+        private boolean mHtmlTitle;
+        private String mTitle;
+        private String mUrl;
+        private String mGuid;
+        private boolean mGuidIsLink;
+        private long mPublished;
+        private long mUpdated;
+        private String mAuthor;
+        private String mCategory;
+        private String mThumbnail;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            mText.setLength(0);
+            if ("item".equals(localName) || ("entry".equals(localName) && ATOM.equals(uri))) {
+                mInEntry = true;
+                mTitle = null;
+                mUrl = null;
+                mGuid = null;
+                mPublished = NewsDates.UNKNOWN;
+                mUpdated = NewsDates.UNKNOWN;
+                mAuthor = null;
+                mCategory = null;
+                mThumbnail = null;
+                return;
+            }
+            if (!mInEntry) {
+                return;
+            }
+            switch (localName) {
+                case "author":
+                    mInAuthor = ATOM.equals(uri);
+                    break;
+                case "title":
+                    mHtmlTitle = "html".equals(attributes.getValue("type"));
+                    break;
+                case "link":
+                    // Atom links are attributes; RSS links are text
+                    String rel = attributes.getValue("rel");
+                    String href = attributes.getValue("href");
+                    if (href != null && mUrl == null && (rel == null || "alternate".equals(rel))) {
+                        mUrl = href.trim();
+                    }
+                    break;
+                case "guid":
+                    // A guid is the item's link unless it says otherwise
+                    mGuidIsLink = !"false".equals(attributes.getValue("isPermaLink"));
+                    break;
+                case "category":
+                    String term = attributes.getValue("term");
+                    if (term != null && mCategory == null) {
+                        mCategory = term.trim();
+                    }
+                    break;
+                case "thumbnail":
+                case "content":
+                    if (MEDIA.equals(uri) && mThumbnail == null) {
+                        mThumbnail = attributes.getValue("url");
+                    }
+                    break;
+                case "enclosure":
+                    String type = attributes.getValue("type");
+                    if (type != null && type.startsWith("image/") && mThumbnail == null) {
+                        mThumbnail = attributes.getValue("url");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            mText.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String text = mText.toString().trim();
+            mText.setLength(0);
+            if (!mInEntry) {
+                if ("title".equals(localName) && mFeedTitle == null) {
+                    mFeedTitle = text;
+                }
+                return;
+            }
+            switch (localName) {
+                case "item":
+                case "entry":
+                    mInEntry = false;
+                    addEntry();
+                    break;
+                case "title":
+                    mTitle = mHtmlTitle ? text.replaceAll("<[^>]*>", "") : text;
+                    break;
+                case "link":
+                    if (mUrl == null && !text.isEmpty()) {
+                        mUrl = text;
+                    }
+                    break;
+                case "guid":
+                    if (mGuidIsLink && !text.isEmpty()) {
+                        mGuid = text;
+                    }
+                    break;
+                case "pubDate":
+                    mPublished = NewsDates.parseRfc822(text);
+                    break;
+                case "published":
+                    mPublished = NewsDates.parseIso(text);
+                    break;
+                case "date":
+                    if (DUBLIN_CORE.equals(uri) && mPublished == NewsDates.UNKNOWN) {
+                        mPublished = NewsDates.parseIso(text);
+                    }
+                    break;
+                case "updated":
+                    mUpdated = NewsDates.parseIso(text);
+                    break;
+                case "creator":
+                    if (DUBLIN_CORE.equals(uri) && mAuthor == null) {
+                        mAuthor = text;
+                    }
+                    break;
+                case "name":
+                    if (mInAuthor && mAuthor == null) {
+                        mAuthor = text;
+                    }
+                    break;
+                case "author":
+                    if (mInAuthor) {
+                        mInAuthor = false;
+                    } else if (mAuthor == null) {
+                        mAuthor = rssAuthor(text);
+                    }
+                    break;
+                case "category":
+                    if (mCategory == null && !text.isEmpty()) {
+                        mCategory = text;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void addEntry() {
+            String url = mUrl != null ? mUrl : mGuid;
+            if (url == null) {
+                return;
+            }
+            long published = mPublished != NewsDates.UNKNOWN ? mPublished : mUpdated;
+            mNews.add(new News(mCategory != null ? mCategory : mFeedTitle, mTitle, published,
+                    mAuthor != null ? mAuthor : "", url, mThumbnail));
+        }
+
+        /** Return the name of an RSS author, given as an email address followed by the name in brackets. */
+        private static String rssAuthor(String author) {
+            int open = author.indexOf('(');
+            int close = author.lastIndexOf(')');
+            return open >= 0 && close > open ? author.substring(open + 1, close).trim() : author;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.hughsnewsapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import static com.example.android.hughsnewsapp.Constants.HTTP_NOT_MODIFIED_CODE;
+import static com.example.android.hughsnewsapp.Constants.HTTP_SUCCESS_CODE;
+
+public class QueryUtils {
+    /** Tag for the log messages */
+    private static final String LOG_TAG = QueryUtils.class.getSimpleName();
+
+    /** Shared so that connections to the Guardian API are kept alive between requests */
+    private static final NewsHttpClient HTTP_CLIENT = new NewsHttpClient();
+
+    /** Receives every article parsed from the network or the cache, may be null */
+    private static volatile NewsSearchIndex sSearchIndex;
+
+    /** Create a private constructor because no one should ever create a {@link QueryUtils} object.*/
+    private QueryUtils() {
+    }
+
+    /**
+     * Query the Guardian news dataset, revalidating any response already held in the cache, and
+     * return the fresh {@link NewsPage} of articles. Return null when the cached response is
+     * still current (HTTP 304) or the request failed, in which case the caller should keep
+     * showing the articles from {@link #readCachedPage}. The cache may be null.
+     */
+    public static NewsPage fetchNewsPage(String requestUrl, NewsDiskCache cache) {
+        return fetchNewsPage(requestUrl, cache, null);
+    }
+
+    /**
+     * As {@link #fetchNewsPage(String, NewsDiskCache)}, with a handle through which the request
+     * can be aborted from another thread and which receives the HTTP status. The handle may be null.
+     */
+    public static NewsPage fetchNewsPage(String requestUrl, NewsDiskCache cache, FetchHandle handle) {
+        // Create URL object
+        URL url = createUrl(requestUrl);
+
+        // If the URL is null, then return early.
+        if (url == null) {
+            fail(handle, NewsFetchPolicy.Failure.CLIENT_ERROR, 0);
+            return null;
+        }
+        return fetchNewsPage(new NewsHttpClient.Request.Builder(url).build(), cache, handle);
+    }
+
+    /**
+     * As {@link #fetchNewsPage(String, NewsDiskCache, FetchHandle)}, for a request carrying its
+     * own timeouts.
+     */
+    public static NewsPage fetchNewsPage(NewsHttpClient.Request request, NewsDiskCache cache,
+                                         FetchHandle handle) {
+        // Perform HTTP request to the URL and parse the JSON response as it streams in
+        NewsPage page = null;
+        try {
+            page = makeHttpRequest(request, cache, handle);
+        } catch (IOException e) {
+            NewsLog.e(LOG_TAG, "Problem making the HTTP request.", e);
+        }
+
+        // Return the page of {@link News} articles
+        return indexed(page);
+    }
+
+    /** Return the HTTP client shared by every request, which pools their connections. */
+    public static NewsHttpClient getHttpClient() {
+        return HTTP_CLIENT;
+    }
+
+    /** Set the index every article is added to as it is parsed, or null for none. */
+    public static void setSearchIndex(NewsSearchIndex index) {
+        sSearchIndex = index;
+    }
+
+    /** Return the {@link NewsPage} cached for the given URL, or null if none. */
+    public static NewsPage readCachedPage(NewsDiskCache cache, String requestUrl) {
+        NewsDiskCache.Entry entry = cache.get(requestUrl);
+        return entry == null ? null : parseCachedPage(entry);
+    }
+
+    /**
+     * Add the articles of every cached response to the search index, so articles fetched by an
+     * earlier run of the app can be found. This is on a background thread.
+     */
+    public static void indexCachedPages(NewsDiskCache cache) {
+        if (sSearchIndex == null) {
+            return;
+        }
+        for (NewsDiskCache.Entry entry : cache.getAll()) {
+            parseCachedPage(entry);
+        }
+    }
+
+    private static NewsPage parseCachedPage(NewsDiskCache.Entry entry) {
+        long start = NewsTrace.begin(NewsTrace.Stage.CACHE_READ);
+        try {
+            // Fields of articles that are never shown are never decoded
+            NewsPage page = NewsJsonScanner.scan(entry.getBody());
+            NewsTrace.count(NewsTrace.Counter.ARTICLES_PARSED, page.getNews().size());
+            return indexed(page);
+        } catch (IOException | RuntimeException e) {
+            NewsLog.e(LOG_TAG, "Problem parsing the cached news JSON results.", e);
+            return null;
+        } finally {
+            NewsTrace.end(NewsTrace.Stage.CACHE_READ, start);
+        }
+    }
+
+    /** Add the articles of the page to the search index, if there is one, and return the page. */
+    private static NewsPage indexed(NewsPage page) {
+        NewsSearchIndex index = sSearchIndex;
+        if (index != null && page != null) {
+            index.addAll(page.getNews());
+        }
+        return page;
+    }
+
+    /** Returns new URL object from the given string URL. */
+    private static URL createUrl(String stringUrl) {
+        URL url = null;
+        try {
+            url = new URL(stringUrl);
+        } catch (MalformedURLException e) {
+            NewsLog.e(LOG_TAG, "Problem building the URL ", e);
+        }
+        return url;
+    }
+
+    /**
+     * Make an HTTP request and return the {@link NewsPage} of articles parsed straight from the
+     * response stream, or null if the request failed. When a cache is given, the request is made
+     * conditional on the cached validators, a 200 response is stored and a 304 response returns
+     * null without parsing anything. Why a request failed is recorded on the handle, for the
+     * {@link NewsFetchPolicy} to decide whether to try again.
+     */
+    private static NewsPage makeHttpRequest(NewsHttpClient.Request request, NewsDiskCache cache,
+                                            FetchHandle handle) throws IOException {
+        NewsPage page = null;
+        String url = request.getUrl().toString();
+
+        // Only ask for the body if it has changed since the cached copy
+        NewsDiskCache.Entry cached = cache == null ? null : cache.get(url);
+        if (cached != null) {
+            NewsHttpClient.Request.Builder conditional = request.newBuilder();
+            if (cached.getETag() != null) {
+                conditional.header("If-None-Match", cached.getETag());
+            }
+            if (cached.getLastModified() != null) {
+                conditional.header("If-Modified-Since", cached.getLastModified());
+            }
+            request = conditional.build();
+        }
+
+        NewsHttpClient.Response response = null;
+        try {
+            NewsTrace.count(NewsTrace.Counter.REQUESTS);
+            long start = NewsTrace.begin(NewsTrace.Stage.NETWORK);
+            try {
+                response = HTTP_CLIENT.execute(request, handle);
+            } finally {
+                NewsTrace.end(NewsTrace.Stage.NETWORK, start);
+            }
+
+            // If the request was successful (response code 200), then parse the input stream
+            // as it is read from the connection.
+            int responseCode = response.getStatusCode();
+            if (responseCode == HTTP_SUCCESS_CODE) {
+                InputStream inputStream = response.getBody();
+                start = NewsTrace.begin(NewsTrace.Stage.PARSE);
+                try {
+                    if (cache == null) {
+                        page = NewsJsonParser.parsePage(inputStream);
+                    } else {
+                        // Keep a copy of the bytes as they are parsed so they can be cached
+                        ByteArrayOutputStream body = new ByteArrayOutputStream();
+                        page = NewsJsonParser.parsePage(new TeeInputStream(inputStream, body));
+                        cache.put(url, response.getHeader("ETag"),
+                                response.getHeader("Last-Modified"), body.toByteArray());
+                    }
+                } finally {
+                    NewsTrace.end(NewsTrace.Stage.PARSE, start);
+                }
+                NewsTrace.count(NewsTrace.Counter.ARTICLES_PARSED, page.getNews().size());
+            } else if (responseCode == HTTP_NOT_MODIFIED_CODE && cached != null) {
+                // The cached copy is still current
+                NewsTrace.count(NewsTrace.Counter.NOT_MODIFIED);
+                cache.markValidated(url);
+            } else {
+                NewsLog.e(LOG_TAG, "Error response code: " + responseCode);
+                fail(handle, NewsFetchPolicy.classify(responseCode), NewsFetchPolicy.parseRetryAfter(
+                        response.getHeader("Retry-After"), System.currentTimeMillis()));
+            }
+        } catch (IOException | RuntimeException e) {
+            // JsonReader reports malformed JSON as an IOException or IllegalStateException
+            NewsLog.e(LOG_TAG, "Problem retrieving the news JSON results.", e);
+            if (page == null) {
+                // Only the cache could not be written if the page was parsed
+                fail(handle, NewsFetchPolicy.classify(e), 0);
+            }
+        } finally {
+            if (response != null) {
+                // Reads what is left of the body so the connection can be reused. This could
+                // throw an IOException, which is why the method signature declares it.
+                response.close();
+            }
+        }
+        return page;
+    }
+
+    /** Record why the request failed on the handle, if there is one. */
+    private static void fail(FetchHandle handle, NewsFetchPolicy.Failure failure, long retryAfter) {
+        NewsTrace.count(NewsTrace.Counter.REQUEST_FAILURES);
+        if (handle != null) {
+            handle.setFailure(failure, retryAfter);
+        }
+    }
+
+    /** Copies every byte read from the wrapped stream into an output stream. */
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream mCopy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            mCopy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCopy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCopy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the copy, so read them instead
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+    }
+}
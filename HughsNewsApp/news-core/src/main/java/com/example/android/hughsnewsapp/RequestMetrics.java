@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+/** Timings and sizes of one HTTP request made by {@link NewsHttpClient}. */
+public class RequestMetrics {
+    /** request URL */
+    private final String mUrl;
+
+    /** HTTP status, or 0 if no response was received */
+    private final int mStatusCode;
+
+    /**
+     * time to open the connection, including the host name lookup and TLS; close to 0 when a
+     * pooled connection is reused
+     */
+    private final long mConnectMillis;
+
+    /** time from sending the request to receiving the response headers */
+    private final long mTtfbMillis;
+
+    /** time from receiving the headers to the body being closed */
+    private final long mBodyMillis;
+
+    /** body bytes as sent by the server, compressed or not */
+    private final long mWireBytes;
+
+    /** body bytes after decompression */
+    private final long mDecodedBytes;
+
+    RequestMetrics(String url, int statusCode, long connectMillis, long ttfbMillis,
+                   long bodyMillis, long wireBytes, long decodedBytes) {
+        mUrl = url;
+        mStatusCode = statusCode;
+        mConnectMillis = connectMillis;
+        mTtfbMillis = ttfbMillis;
+        mBodyMillis = bodyMillis;
+        mWireBytes = wireBytes;
+        mDecodedBytes = decodedBytes;
+    }
+
+    /** Return the request URL */
+    public String getUrl() { return mUrl; }
+
+    /** Return the HTTP status, or 0 if no response was received */
+    public int getStatusCode() { return mStatusCode; }
+
+    /** Return the time spent opening the connection, including the host name lookup */
+    public long getConnectMillis() { return mConnectMillis; }
+
+    /** Return the time from sending the request to receiving the response headers */
+    public long getTtfbMillis() { return mTtfbMillis; }
+
+    /** Return the time spent reading the body */
+    public long getBodyMillis() { return mBodyMillis; }
+
+    /** Return the total time of the request */
+    public long getTotalMillis() { return mConnectMillis + mTtfbMillis + mBodyMillis; }
+
+    /** Return the number of body bytes received from the server */
+    public long getWireBytes() { return mWireBytes; }
+
+    /** Return the number of body bytes after decompression */
+    public long getDecodedBytes() { return mDecodedBytes; }
+
+    @Override
+    public String toString() {
+        return mStatusCode + " " + mUrl + " connect=" + mConnectMillis
+                + "ms ttfb=" + mTtfbMillis + "ms body=" + mBodyMillis + "ms wire=" + mWireBytes
+                + "B decoded=" + mDecodedBytes + "B";
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+/**
+ * Hands out one shared instance for each distinct string, so values that repeat across many
+ * articles (section names, authors) are only held once however many articles use them.
+ * The pool is a fixed size table where a new string replaces whichever one shared its slot,
+ * so it never grows and values that keep repeating stay pooled.
+ */
+public final class StringPool {
+
+    /** Strings longer than this are unlikely to repeat and are not pooled */
+    private static final int MAX_POOLED_LENGTH = 64;
+
+    /** Pooled strings by hash; a lost race only means a string is not shared */
+    private final String[] mSlots;
+
+    /**
+     * Constructor
+     * @param size number of slots, rounded up to a power of two
+     */
+    public StringPool(int size) {
+        mSlots = new String[Integer.highestOneBit(Math.max(1, size - 1)) << 1];
+    }
+
+    /** Return the pooled instance equal to the given string, pooling it if it is new. */
+    public String intern(String value) {
+        if (value == null || value.length() > MAX_POOLED_LENGTH) {
+            return value;
+        }
+        int hash = value.hashCode();
+        // Spread the high bits, as HashMap does, since only the low bits pick the slot
+        int slot = (hash ^ (hash >>> 16)) & (mSlots.length - 1);
+        String pooled = mSlots[slot];
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+        mSlots[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The org.json DOM parsing path the app started out with, which reads the whole response into a
+ * String and builds the whole tree first. Kept as the baseline {@link NewsJsonParser} and
+ * {@link NewsJsonScanner} are measured against; the core itself has no org.json dependency.
+ */
+final class DomNewsParser {
+
+    private DomNewsParser() {
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the whole JSON response from the
+     * server, as the DOM parsing path needs it.
+     */
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+            BufferedReader reader = new BufferedReader(inputStreamReader);
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+        }
+        return output.toString();
+    }
+    /**
+     * Return a list of {@link News} objects that has been built up from parsing the given JSON response.
+     * This builds the whole org.json tree first; {@link NewsJsonParser} is used for network responses.
+     */
+    static List<News> extractFeatureFromJson(String newsJSON) {
+
+        // If the JSON string is empty or null, then return early.
+        if (newsJSON == null || newsJSON.isEmpty()) {
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding news articles to
+        List<News> newsArticlesList = new ArrayList<>();
+
+        // Try to parse the JSON response string. If there's a problem with the way the JSON
+        // is formatted, a JSONException exception object will be thrown.
+        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        try {
+            // Create a JSONObject from the JSON response string
+            JSONObject baseJsonResponse = new JSONObject(newsJSON);
+
+            JSONObject articles = baseJsonResponse.getJSONObject("response");
+
+            JSONArray resultsArray = articles.getJSONArray("results");
+            // Extract the JSONArray associated with the key called "results",
+            // which represents a list of response (or news articles).
+            // JSONArray newsArray = baseJsonResponse.getJSONArray("response");
+
+            // For each news article in the newsArticleArray, create an {@link News} object
+            for (int i = 0; i < resultsArray.length(); i++) {
+
+                // Get a single new article at position i within the list of news articles
+                JSONObject currentNewsArticle = resultsArray.optJSONObject(i);
+                if (currentNewsArticle == null) {
+                    continue;
+                }
+                try {
+                    newsArticlesList.add(extractNews(currentNewsArticle));
+                } catch (JSONException e) {
+                    // One malformed article is left out rather than the whole page
+                    System.err.println("Problem parsing a news article: " + e);
+                }
+            }
+
+        } catch (JSONException e) {
+            // If an error is thrown when executing any of the above statements in the "try" block,
+            // catch the exception here, so the app doesn't crash. Print a log message
+            // with the message from the exception.
+            System.err.println("Problem parsing the news JSON results: " + e);
+        }
+
+        // Return the list of new articles
+        return newsArticlesList;
+    }
+
+    /** Return the {@link News} article held by one entry of the "results" array. */
+    private static News extractNews(JSONObject currentNewsArticle) throws JSONException {
+
+        // Extract the value for the key called "sectionName")
+        String sectionName = currentNewsArticle.getString("sectionName");
+
+        // For a given news article, extract the JSONObject associated with the
+        // key called "currentNewsArticle"
+        // Extract the value for the key called "webTitle"
+        String title  = currentNewsArticle.getString("webTitle");
+
+        // Extract the value for the key called "webTitle" from the array 'tags'. Letters to the
+        // editor have no contributor, so the array can be empty or missing.
+        JSONArray tagsArray = currentNewsArticle.optJSONArray("tags");
+        // Reference https://knowledge.udacity.com/questions/203555
+
+        String author = "";
+        if (tagsArray != null && tagsArray.length() > 0) {
+            JSONObject contributor = tagsArray.getJSONObject(0);
+            author = contributor.getString("webTitle");
+        }
+
+        // Extract the value for the key called "webPublicationDate"
+        String publicationDate = currentNewsArticle.getString("webPublicationDate");
+
+        // Extract the value for the key called "webUrl"
+        String url = currentNewsArticle.getString("webUrl");
+
+        // Create a new {@link News} object with the Title, time and URL from the JSON response.
+        return new News(sectionName, title, publicationDate, author, url);
+    }
+}
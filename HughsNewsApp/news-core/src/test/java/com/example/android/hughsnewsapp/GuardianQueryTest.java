@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GuardianQueryTest {
+
+    @Test
+    public void defaults_buildTheUrlTheAppHasAlwaysRequested() {
+        // Cached responses are keyed on the URL, so it must not change for the same query
+        assertEquals("https://content.guardianapis.com/search?order-by=newest&show-tags=contributor"
+                        + "&show-fields=thumbnail&page-size=20&q=northern%20ireland%20protocol&api-key=test",
+                new GuardianQuery.Builder().topic("northern ireland protocol").build().toUrl());
+    }
+
+    @Test
+    public void everyParameter_isEncodedInAFixedOrder() {
+        GuardianQuery query = new GuardianQuery.Builder()
+                .topic(" brexit AND \"trade deal\" ")
+                .section("uk-news")
+                .orderBy(GuardianQuery.Order.RELEVANCE)
+                .pageSize(50)
+                .fromDate("2021-01-01")
+                .toDate("2021-03-31")
+                .apiKey("key&1")
+                .build();
+
+        assertEquals("https://content.guardianapis.com/search?order-by=relevance&show-tags=contributor"
+                + "&show-fields=thumbnail&page-size=50&section=uk-news"
+                + "&q=brexit%20AND%20%22trade%20deal%22&from-date=2021-01-01&to-date=2021-03-31"
+                + "&api-key=key%261", query.toUrl());
+    }
+
+    @Test
+    public void fieldsThatAreNotShown_areNotRequested() {
+        String url = new GuardianQuery.Builder().section("politics")
+                .showContributors(false).showThumbnails(false).build().toUrl();
+
+        assertFalse(url.contains("show-tags"));
+        assertFalse(url.contains("show-fields"));
+    }
+
+    @Test
+    public void encode_matchesAndroidUri() {
+        assertEquals("a-z_A.Z~0!9'()*", GuardianQuery.encode("a-z_A.Z~0!9'()*"));
+        assertEquals("%C3%A9t%C3%A9%2F%3F%2B", GuardianQuery.encode("\u00e9t\u00e9/?+"));
+    }
+
+    @Test
+    public void newBuilder_changesOnlyWhatIsSet() {
+        GuardianQuery query = new GuardianQuery.Builder().topic("brexit").pageSize(10).build();
+        GuardianQuery changed = query.newBuilder().orderBy(GuardianQuery.Order.OLDEST).build();
+
+        assertEquals("brexit", changed.getTopic());
+        assertEquals(10, changed.getPageSize());
+        assertEquals(GuardianQuery.Order.OLDEST, changed.getOrder());
+        assertNotEquals(query, changed);
+        assertEquals(query, query.newBuilder().build());
+        assertTrue(query.newBuilder().topic("  ").build().toUrl().indexOf("q=") < 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pageSize_mustBeServed() {
+        new GuardianQuery.Builder().pageSize(GuardianQuery.MAX_PAGE_SIZE + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dates_mustBeIso() {
+        new GuardianQuery.Builder().fromDate("1/2/2021");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dateRange_mustNotBeBackwards() {
+        new GuardianQuery.Builder().fromDate("2021-02-01").toDate("2021-01-01").build();
+    }
+
+    @Test
+    public void order_fallsBackForUnknownValues() {
+        assertEquals(GuardianQuery.Order.OLDEST, GuardianQuery.Order.fromValue("oldest", null));
+        assertEquals(GuardianQuery.Order.NEWEST,
+                GuardianQuery.Order.fromValue("date", GuardianQuery.Order.NEWEST));
+    }
+
+    @Test
+    public void fromDate_takesAUtcTimeToTheSecond() {
+        String url = new GuardianQuery.Builder().fromDate("2021-03-28T10:25:41Z").build().toUrl();
+
+        assertTrue(url, url.contains("&from-date=2021-03-28T10%3A25%3A41Z&"));
+    }
+
+    @Test
+    public void deltaUrl_asksNewestFirstForWhatCameAfterTheNewestArticle() {
+        String url = new GuardianQuery.Builder().topic("brexit").orderBy(GuardianQuery.Order.OLDEST)
+                .fromDate("2021-03-01").build().toUrl();
+
+        assertEquals("https://content.guardianapis.com/search?show-tags=contributor"
+                        + "&show-fields=thumbnail&page-size=20&q=brexit&api-key=test"
+                        + "&order-by=newest&from-date=2021-03-28T10%3A25%3A42Z",
+                GuardianQuery.deltaUrl(url, NewsDates.parseIso("2021-03-28T10:25:41Z")));
+        assertNull(GuardianQuery.deltaUrl(new GuardianQuery.Builder().toDate("2021-03-31").build().toUrl(), 0));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmarks the pure Java steps between the network and the list: reading the response into a
+ * String, the org.json parse, the streaming parse and building the {@link News} objects, each on
+ * recorded Guardian responses of 10, 50, 200 and 1000 results. Throughput and allocation rate
+ * are printed and written to build/reports/benchmarks/hot-path.csv so runs can be compared.
+ * Binding rows is benchmarked on a device by NewsAdapterBindBenchmark.
+ */
+public class HotPathBenchmarkTest {
+
+    private static final int[] RESULT_COUNTS = {10, 50, 200, 1000};
+
+    private static final File REPORT = new File("build/reports/benchmarks/hot-path.csv");
+
+    /** One line per operation and response size */
+    private static final List<String> sRows = new ArrayList<>();
+
+    private static void report(String operation, int resultCount, Benchmark.Result result) {
+        System.out.printf("%-22s %5d results %s %10.0f ops/s %8.1f MB/s%n", operation, resultCount,
+                result, result.throughput(), result.allocationRate());
+        sRows.add(String.format("%s,%d,%.2f,%.0f,%d,%.1f", operation, resultCount, result.micros,
+                result.throughput(), result.bytes, result.allocationRate()));
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        File directory = REPORT.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            // Not run from the module directory; the printed figures will have to do
+            return;
+        }
+        try (PrintWriter out = new PrintWriter(REPORT, StandardCharsets.UTF_8.name())) {
+            out.println("operation,results,us_per_op,ops_per_s,bytes_per_op,mb_per_s");
+            for (String row : sRows) {
+                out.println(row);
+            }
+        }
+    }
+
+    @Test
+    public void readFromStream() throws IOException {
+        for (int resultCount : RESULT_COUNTS) {
+            final byte[] page = GuardianFixtures.scaled(resultCount);
+            report("readFromStream", resultCount, Benchmark.measure(() ->
+                    DomNewsParser.readFromStream(new ByteArrayInputStream(page))));
+        }
+    }
+
+    @Test
+    public void extractFeatureFromJson() throws IOException {
+        for (int resultCount : RESULT_COUNTS) {
+            final String json = new String(GuardianFixtures.scaled(resultCount), StandardCharsets.UTF_8);
+            assertEquals(resultCount, DomNewsParser.extractFeatureFromJson(json).size());
+            report("extractFeatureFromJson", resultCount, Benchmark.measure(() ->
+                    DomNewsParser.extractFeatureFromJson(json)));
+        }
+    }
+
+    @Test
+    public void streamingParse() throws IOException {
+        for (int resultCount : RESULT_COUNTS) {
+            final byte[] page = GuardianFixtures.scaled(resultCount);
+            report("NewsJsonParser.parse", resultCount, Benchmark.measure(() ->
+                    NewsJsonParser.parse(new ByteArrayInputStream(page))));
+        }
+    }
+
+    @Test
+    public void newsConstruction() throws IOException {
+        for (int resultCount : RESULT_COUNTS) {
+            // The field values as the parser hands them over, so only the model is measured
+            List<News> parsed = NewsJsonParser.parse(new ByteArrayInputStream(GuardianFixtures.scaled(resultCount)));
+            final String[][] fields = new String[parsed.size()][];
+            for (int i = 0; i < fields.length; i++) {
+                News news = parsed.get(i);
+                fields[i] = new String[]{news.getSectionName(), news.getTitle(),
+                        news.getPublicationDate(), news.getAuthor(), news.getUrl()};
+            }
+            report("new News", resultCount, Benchmark.measure(() -> {
+                List<News> articles = new ArrayList<>(fields.length);
+                for (String[] f : fields) {
+                    articles.add(new News(f[0], f[1], f[2], f[3], f[4]));
+                }
+                return articles;
+            }));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueInOrder() {
+        int previous = 0;
+        for (long nanos = 0; nanos < 100_000; nanos++) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(nanos <= LatencyHistogram.upperBound(bucket));
+            previous = bucket;
+        }
+        assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.bucket(1L << 50));
+    }
+
+    @Test
+    public void percentiles_areWithinABucketOfTheExactValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10_000];
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal around a millisecond, like request latencies
+            values[i] = (long) (1_000_000 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double fraction : new double[] {0.5, 0.95, 0.99}) {
+            long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+            long estimate = histogram.getPercentile(fraction);
+            assertTrue(estimate >= exact);
+            assertTrue(estimate <= exact * 1.25);
+        }
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getPercentile(1));
+    }
+
+    @Test
+    public void emptyHistogram_reportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    public void decode_addsToTheCountsAlreadyThere() {
+        LatencyHistogram earlier = new LatencyHistogram();
+        earlier.record(5_000_000);
+        earlier.record(7_000_000);
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(900_000_000);
+
+        histogram.decode(earlier.encode());
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(900_000_000, histogram.getMax());
+        assertEquals(304_000_000, histogram.getMean());
+        assertTrue(histogram.getPercentile(0.5) >= 7_000_000);
+        assertTrue(histogram.getPercentile(0.5) < 9_000_000);
+    }
+
+    @Test
+    public void decode_ignoresDamagedText() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.decode("12,5,3:x");
+        histogram.decode("12,5,9999:1");
+        histogram.decode(null);
+        assertEquals(1, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+    }
+}
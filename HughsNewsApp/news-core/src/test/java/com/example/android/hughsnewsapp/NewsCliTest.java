@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Runs the command line fetcher and load generator against a local stub server. */
+public class NewsCliTest {
+
+    private StubServer mServer;
+
+    /** Number of articles in the page served */
+    private int mArticles;
+
+    @Before
+    public void setUp() throws IOException {
+        final byte[] page = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        mArticles = NewsJsonParser.parse(new ByteArrayInputStream(page)).size();
+        mServer = new StubServer()
+                .handle("/search", exchange -> StubServer.respond(exchange, 200, page))
+                .handle("/broken", exchange -> StubServer.respond(exchange, 500, new byte[0]));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void fetch_printsEveryArticle() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int status = NewsCli.run(new String[]{"fetch", mServer.url("/search?q=brexit")},
+                new PrintStream(out, true));
+
+        String printed = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(0, status);
+        assertTrue(printed, printed.startsWith("page 1 of "));
+        // A header line then one line per article
+        assertEquals(mArticles + 1, printed.split("\n").length);
+    }
+
+    @Test
+    public void load_printsThroughputAndLatency() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int status = NewsCli.run(new String[]{"load", mServer.url("/search?q=brexit"), "200", "4"},
+                new PrintStream(out, true));
+
+        String printed = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        System.out.println(printed);
+        assertEquals(0, status);
+        assertTrue(printed, printed.startsWith("200 requests, 0 failed, "
+                + 200 * mArticles + " articles"));
+        assertTrue(printed, printed.contains("latency  p50 "));
+        assertTrue(printed, printed.contains("requests      200"));
+    }
+
+    @Test
+    public void failures_setTheExitStatus() {
+        PrintStream out = new PrintStream(new ByteArrayOutputStream(), true);
+        assertEquals(1, NewsCli.run(new String[]{"load", mServer.url("/broken"), "3", "1"}, out));
+        assertEquals(1, NewsCli.run(new String[]{"fetch", mServer.url("/broken")}, out));
+        assertEquals(2, NewsCli.run(new String[]{"load", mServer.url("/search"), "many"}, out));
+        assertEquals(2, NewsCli.run(new String[0], out));
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NewsClustererTest {
+
+    private static News news(String url, String title) {
+        return new News("Politics", title, "2021-03-28T10:00:00Z", "Author", url);
+    }
+
+    @Test
+    public void nearDuplicateTitles_areGrouped() {
+        NewsClusterer clusterer = new NewsClusterer();
+        News story = news("a", "Boris Johnson says Northern Ireland protocol deal is done");
+        News liveBlog = news("b", "Brexit live: Boris Johnson says Northern Ireland protocol deal is done");
+        News update = news("c", "Boris Johnson's Northern Ireland protocol deal is done, says PM");
+        News other = news("d", "Fishing industry counts the cost of leaving the single market");
+
+        assertFalse(clusterer.add(story));
+        assertTrue(clusterer.add(liveBlog));
+        assertTrue(clusterer.add(update));
+        assertFalse(clusterer.add(other));
+        assertTrue(clusterer.sameGroup(story, update));
+        assertFalse(clusterer.sameGroup(story, other));
+        assertEquals(3, clusterer.getGroupSize(liveBlog));
+        assertEquals(1, clusterer.getGroupSize(other));
+    }
+
+    @Test
+    public void titles_areComparedWithoutCaseOrPunctuation() {
+        assertTrue(Arrays.equals(NewsClusterer.signature("Brexit: UK and EU agree deal"),
+                NewsClusterer.signature("BREXIT \u2013 uk and eu agree deal!")));
+        assertEquals(0, NewsClusterer.signature(" \u2013 ").length);
+        assertEquals(0, NewsClusterer.signature(null).length);
+    }
+
+    @Test
+    public void titlesWithoutWords_areNeverGrouped() {
+        NewsClusterer clusterer = new NewsClusterer();
+        assertFalse(clusterer.add(news("a", "")));
+        assertFalse(clusterer.add(news("b", "")));
+        assertFalse(clusterer.sameGroup(news("a", ""), news("b", "")));
+    }
+
+    @Test
+    public void sameUrl_isOnlyAddedOnce() {
+        NewsClusterer clusterer = new NewsClusterer();
+        clusterer.add(news("a", "UK and EU agree Northern Ireland deal"));
+        assertFalse(clusterer.add(news("a", "UK and EU agree Northern Ireland deal")));
+        assertEquals(1, clusterer.size());
+        assertEquals(1, clusterer.getGroupSize(news("a", "")));
+    }
+
+    @Test
+    public void collapse_showsTheFirstOfEachGroupAndExpandsItOnRequest() {
+        NewsClusterer clusterer = new NewsClusterer();
+        List<News> articles = Arrays.asList(
+                news("a", "UK and EU agree Northern Ireland protocol deal"),
+                news("b", "Fishing industry counts the cost of Brexit"),
+                news("c", "UK and EU agree Northern Ireland protocol deal \u2013 live"),
+                news("d", "As it happened: UK and EU agree Northern Ireland protocol deal"));
+
+        List<NewsListItem> rows = clusterer.collapse(articles, Collections.<String>emptySet());
+        assertEquals(2, rows.size());
+        assertSame(articles.get(0), rows.get(0).getNews());
+        assertEquals(2, rows.get(0).getSimilarCount());
+        assertFalse(rows.get(0).isExpanded());
+        assertSame(articles.get(1), rows.get(1).getNews());
+        assertEquals(0, rows.get(1).getSimilarCount());
+
+        rows = clusterer.collapse(articles, new HashSet<>(Collections.singletonList("a")));
+        assertEquals(4, rows.size());
+        assertTrue(rows.get(0).isExpanded());
+        assertSame(articles.get(2), rows.get(1).getNews());
+        assertTrue(rows.get(1).isDuplicate());
+        assertSame(articles.get(3), rows.get(2).getNews());
+        assertSame(articles.get(1), rows.get(3).getNews());
+        assertFalse(rows.get(3).isDuplicate());
+    }
+
+    @Test
+    public void collapse_onlyGroupsTheArticlesInTheList() {
+        NewsClusterer clusterer = new NewsClusterer();
+        News story = news("a", "UK and EU agree Northern Ireland protocol deal");
+        clusterer.add(news("b", "UK and EU agree Northern Ireland protocol deal \u2013 live"));
+
+        List<NewsListItem> rows = clusterer.collapse(Collections.singletonList(story),
+                Collections.<String>emptySet());
+        assertEquals(1, rows.size());
+        assertEquals(0, rows.get(0).getSimilarCount());
+    }
+
+    /** Words of the synthetic headlines: made-up, so how often they repeat is under control */
+    private static List<String> vocabulary(Random random, int size) {
+        String[] syllables = {"ba", "ro", "ki", "men", "tor", "lu", "sha", "de", "vin", "po",
+                "gra", "nel", "su", "tek", "ar", "mo", "fi", "zan", "le", "qu"};
+        List<String> words = new ArrayList<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 2 + random.nextInt(2); i > 0; i--) {
+                word.append(syllables[random.nextInt(syllables.length)]);
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Return a corpus of the given number of headlines, a quarter of them rewordings of an earlier
+     * one the way live blogs and updates reword a story, in a random order. The story of each
+     * headline is kept in {@code stories}.
+     */
+    private static List<News> corpus(int size, List<Integer> stories) {
+        Random random = new Random(21);
+        List<String> words = vocabulary(random, 5000);
+        List<String> titles = new ArrayList<>();
+        List<News> articles = new ArrayList<>();
+        while (articles.size() < size) {
+            String title;
+            int story;
+            if (titles.size() > 0 && random.nextInt(4) == 0) {
+                story = random.nextInt(titles.size());
+                String original = titles.get(story);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        title = "Brexit live: " + original;
+                        break;
+                    case 1:
+                        title = original + " \u2013 as it happened";
+                        break;
+                    case 2:
+                        // One word changed
+                        List<String> changed = new ArrayList<>(Arrays.asList(original.split(" ")));
+                        changed.set(random.nextInt(changed.size()), words.get(random.nextInt(words.size())));
+                        title = join(changed);
+                        break;
+                    default:
+                        title = "Update: " + original + ", says minister";
+                        break;
+                }
+            } else {
+                story = titles.size();
+                List<String> fresh = new ArrayList<>();
+                // Every third story is about Brexit, as most are in the app
+                if (random.nextInt(3) == 0) {
+                    fresh.add("Brexit:");
+                }
+                for (int i = 6 + random.nextInt(5); i > 0; i--) {
+                    fresh.add(words.get(random.nextInt(words.size())));
+                }
+                title = join(fresh);
+                titles.add(title);
+            }
+            stories.add(story);
+            articles.add(news("https://www.theguardian.com/" + articles.size(), title));
+        }
+        return articles;
+    }
+
+    private static String join(List<String> words) {
+        StringBuilder joined = new StringBuilder();
+        for (String word : words) {
+            joined.append(joined.length() == 0 ? "" : " ").append(word);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Prints the cost of grouping 10k and 50k synthetic headlines, added a page at a time as
+     * they would arrive, and how many rewordings were grouped with their story and how many
+     * different stories were grouped together.
+     */
+    @Test
+    public void benchmark_incrementalClustering() {
+        for (int size : new int[]{10_000, 50_000}) {
+            List<Integer> stories = new ArrayList<>();
+            final List<News> articles = corpus(size, stories);
+            // Made on the fetch threads in the app, so measured apart
+            Benchmark.Result sign = Benchmark.measure(1, 3, () -> {
+                int[] last = null;
+                for (News news : articles) {
+                    last = NewsClusterer.signature(news.getTitle());
+                }
+                return last;
+            });
+            NewsClusterer.sign(articles);
+            Benchmark.Result cluster = Benchmark.measure(1, 3, () -> {
+                NewsClusterer clusterer = new NewsClusterer();
+                for (int page = 0; page < articles.size(); page += 50) {
+                    for (News news : articles.subList(page, Math.min(articles.size(), page + 50))) {
+                        clusterer.add(news);
+                    }
+                }
+                return clusterer;
+            });
+
+            NewsClusterer clusterer = new NewsClusterer();
+            for (News news : articles) {
+                clusterer.add(news);
+            }
+            int rewordings = 0;
+            int grouped = 0;
+            int wronglyGrouped = 0;
+            // The first headline of each story, by story
+            List<News> firsts = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int story = stories.get(i);
+                if (story == firsts.size()) {
+                    firsts.add(articles.get(i));
+                    continue;
+                }
+                rewordings++;
+                if (clusterer.sameGroup(articles.get(i), firsts.get(story))) {
+                    grouped++;
+                }
+            }
+            // Stories drawn at random should almost never be grouped
+            Random random = new Random(5);
+            for (int i = 0; i < 10_000; i++) {
+                News a = firsts.get(random.nextInt(firsts.size()));
+                News b = firsts.get(random.nextInt(firsts.size()));
+                if (a != b && clusterer.sameGroup(a, b)) {
+                    wronglyGrouped++;
+                }
+            }
+            System.out.printf("%6d headlines  sign: %s  (%.2f us/headline)%n", size, sign, sign.micros / size);
+            System.out.printf("%6d headlines  cluster: %s  (%.2f us/headline)  %d/%d rewordings grouped, "
+                    + "%d/10000 story pairs wrongly grouped%n", size, cluster, cluster.micros / size,
+                    grouped, rewordings, wronglyGrouped);
+            assertTrue(grouped + "/" + rewordings, grouped >= rewordings * 0.9);
+            assertTrue(String.valueOf(wronglyGrouped), wronglyGrouped <= 10);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NewsDiskCacheTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void putThenGet_returnsBodyAndValidators() throws IOException {
+        NewsDiskCache cache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, DAY);
+        byte[] body = "{\"response\":{}}".getBytes(StandardCharsets.UTF_8);
+
+        cache.put("https://example.com/a", "\"v1\"", "Sun, 28 Mar 2021 10:00:00 GMT", body);
+        NewsDiskCache.Entry entry = cache.get("https://example.com/a");
+
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.getETag());
+        assertEquals("Sun, 28 Mar 2021 10:00:00 GMT", entry.getLastModified());
+        assertArrayEquals(body, entry.getBody());
+        assertNull(cache.get("https://example.com/b"));
+    }
+
+    @Test
+    public void put_missingValidators_areReadBackAsNull() throws IOException {
+        NewsDiskCache cache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, DAY);
+        cache.put("https://example.com/a", null, null, new byte[]{1});
+
+        NewsDiskCache.Entry entry = cache.get("https://example.com/a");
+        assertNull(entry.getETag());
+        assertNull(entry.getLastModified());
+    }
+
+    @Test
+    public void get_expiredEntry_isDropped() throws IOException {
+        File directory = mFolder.newFolder();
+        NewsDiskCache cache = new NewsDiskCache(directory, 1024 * 1024, DAY);
+        cache.put("https://example.com/a", "\"v1\"", null, new byte[]{1});
+        for (File file : directory.listFiles()) {
+            assertTrue(file.setLastModified(System.currentTimeMillis() - 2 * DAY));
+        }
+
+        assertNull(cache.get("https://example.com/a"));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void put_overSizeLimit_evictsLeastRecentlyValidated() throws IOException {
+        File directory = mFolder.newFolder();
+        NewsDiskCache cache = new NewsDiskCache(directory, 2500, DAY);
+        cache.put("https://example.com/old", null, null, new byte[1000]);
+        cache.put("https://example.com/newer", null, null, new byte[1000]);
+        for (File file : directory.listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - 60_000);
+        }
+        // Revalidating makes the oldest entry the most recently used one
+        cache.markValidated("https://example.com/old");
+
+        cache.put("https://example.com/newest", null, null, new byte[1000]);
+
+        assertNotNull(cache.get("https://example.com/old"));
+        assertNull(cache.get("https://example.com/newer"));
+        assertNotNull(cache.get("https://example.com/newest"));
+        assertTrue(cache.size() <= 2500);
+    }
+}
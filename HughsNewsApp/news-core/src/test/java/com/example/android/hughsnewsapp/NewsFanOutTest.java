@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Runs {@link NewsFanOut} over a real {@link NewsFetchEngine} against a slow local server. */
+public class NewsFanOutTest {
+
+    /** Each stub query answers after this many milliseconds */
+    private static final int DELAY = 300;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+
+    /** Stands in for the main thread */
+    private ExecutorService mMainThread;
+
+    @Before
+    public void setUp() throws IOException {
+        mMainThread = Executors.newSingleThreadExecutor();
+        mServer = new StubServer();
+        for (String topic : new String[]{"a", "b", "c"}) {
+            final byte[] page = GuardianFixtures.scaled(20, topic);
+            mServer.handle("/" + topic, exchange -> {
+                sleep(DELAY);
+                StubServer.respond(exchange, 200, page);
+            });
+        }
+        // The slowest query repeats the articles of "a"
+        final byte[] slow = GuardianFixtures.scaled(20, "a");
+        mServer.handle("/slow", exchange -> {
+            sleep(2 * DELAY);
+            StubServer.respond(exchange, 200, slow);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+        mMainThread.shutdownNow();
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Runs a fan-out and records what it delivers and when */
+    private static final class Run implements NewsFanOut.Listener {
+        final long mStart = System.nanoTime();
+        final List<Integer> mSizes = new ArrayList<>();
+        final List<Long> mTimes = new ArrayList<>();
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        long mFinishedAt;
+        List<News> mArticles;
+
+        @Override
+        public void onArticlesChanged(List<News> articles) {
+            mArticles = articles;
+            mSizes.add(articles.size());
+            mTimes.add(elapsedMillis());
+        }
+
+        @Override
+        public void onFinished(boolean anySucceeded) {
+            mFinishedAt = elapsedMillis();
+            mFinished.countDown();
+        }
+
+        long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStart);
+        }
+    }
+
+    private String url(String path) {
+        return mServer.url(path + "?page-size=20");
+    }
+
+    private Run fanOut(int maxPerHost, String... paths) throws Exception {
+        NewsFetchEngine engine = new NewsFetchEngine(paths.length, maxPerHost, null, mMainThread);
+        List<String> urls = new ArrayList<>();
+        for (String path : paths) {
+            urls.add(url(path));
+        }
+        Run run = new Run();
+        mMainThread.submit(() -> new NewsFanOut(urls, 1, engine, run).start(true)).get();
+        assertTrue(run.mFinished.await(10, TimeUnit.SECONDS));
+        engine.shutdown();
+        return run;
+    }
+
+    @Test
+    public void totalLatency_tracksTheSlowestQueryNotTheSum() throws Exception {
+        Run run = fanOut(4, "/a", "/b", "/c", "/slow");
+
+        // Sequentially this would take 5 * DELAY
+        assertTrue("took " + run.mFinishedAt, run.mFinishedAt >= 2 * DELAY);
+        assertTrue("took " + run.mFinishedAt, run.mFinishedAt < 4 * DELAY);
+    }
+
+    @Test
+    public void partialResults_renderBeforeTheSlowestQueryCompletes() throws Exception {
+        Run run = fanOut(4, "/a", "/b", "/c", "/slow");
+
+        assertEquals(4, run.mSizes.size());
+        assertTrue("first at " + run.mTimes.get(0), run.mTimes.get(0) < 2 * DELAY);
+        // "slow" only repeats "a", so the last delivery adds nothing new
+        assertEquals(Arrays.asList(20, 40, 60, 60), run.mSizes);
+        for (int i = 1; i < run.mArticles.size(); i++) {
+            assertTrue(NewsFeed.NEWEST_FIRST.compare(run.mArticles.get(i - 1), run.mArticles.get(i)) <= 0);
+        }
+    }
+
+    @Test
+    public void takeOver_onlyFetchesTheAddedQueries() throws Exception {
+        NewsFetchEngine engine = new NewsFetchEngine(2, 4, null, mMainThread);
+        Run first = new Run();
+        NewsFanOut previous = mMainThread.submit(() -> {
+            NewsFanOut fanOut = new NewsFanOut(Arrays.asList(url("/a"), url("/b")), 1, engine, first);
+            fanOut.start(true);
+            return fanOut;
+        }).get();
+        assertTrue(first.mFinished.await(10, TimeUnit.SECONDS));
+        int requestsBefore = mServer.requests().size();
+
+        Run second = new Run();
+        int takenOver = mMainThread.submit(() -> {
+            NewsFanOut replacement = new NewsFanOut(Arrays.asList(url("/b"), url("/c")), 1, engine, second);
+            int count = replacement.takeOver(previous);
+            // Dropping "a" leaves the articles of "b" until those of "c" arrive
+            second.onArticlesChanged(replacement.getArticles());
+            assertTrue(replacement.startAdded(true));
+            return count;
+        }).get();
+        assertTrue(second.mFinished.await(10, TimeUnit.SECONDS));
+        engine.shutdown();
+
+        assertEquals(1, takenOver);
+        assertEquals(Arrays.asList(20, 40), second.mSizes);
+        assertEquals(requestsBefore + 1, mServer.requests().size());
+        assertEquals("/c", mServer.requests().get(requestsBefore).getRequestURI().getPath());
+    }
+
+    @Test
+    public void polledArticles_mergeWithTheQueriesAndAreTakenOver() throws Exception {
+        NewsFetchEngine engine = new NewsFetchEngine(2, 4, null, mMainThread);
+        final List<News> polled = Arrays.asList(
+                new News("World", "Polled 1", "2100-01-02T00:00:00Z", "", "https://example.com/1"),
+                new News("World", "Polled 2", "2100-01-01T00:00:00Z", "", "https://example.com/2"));
+        Run first = new Run();
+        NewsFanOut previous = mMainThread.submit(() -> {
+            NewsFanOut fanOut = new NewsFanOut(Collections.singletonList(url("/a")), 1, engine, first);
+            fanOut.setPolledArticles(polled);
+            fanOut.start(true);
+            return fanOut;
+        }).get();
+        assertTrue(first.mFinished.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(2, 22), first.mSizes);
+        // Published later than any query result
+        assertSame(polled.get(0), first.mArticles.get(0));
+
+        List<News> takenOver = mMainThread.submit(() -> {
+            NewsFanOut replacement = new NewsFanOut(Collections.singletonList(url("/b")), 1, engine,
+                    new Run());
+            replacement.takeOver(previous);
+            return replacement.getArticles();
+        }).get();
+        engine.shutdown();
+
+        assertEquals(2, takenOver.size());
+        assertSame(polled.get(1), takenOver.get(1));
+    }
+
+    @Test
+    public void replacedFanOut_givesItsChunksBackToTheStore() throws Exception {
+        NewsFetchEngine engine = new NewsFetchEngine(3, 4, null, mMainThread);
+        File directory = mFolder.newFolder();
+        NewsSpillStore store = new NewsSpillStore(directory, 1024 * 1024);
+        Run first = new Run();
+        NewsFanOut previous = mMainThread.submit(() -> {
+            NewsFanOut fanOut = new NewsFanOut(Arrays.asList(url("/a"), url("/b"), url("/c")), 1,
+                    engine, store, first);
+            fanOut.start(true);
+            return fanOut;
+        }).get();
+        assertTrue(first.mFinished.await(10, TimeUnit.SECONDS));
+        // The articles of each query, and all of them merged
+        assertEquals(120, store.getResidentArticles());
+
+        NewsFanOut replacement = mMainThread.submit(() -> {
+            NewsFanOut fanOut = new NewsFanOut(Collections.singletonList(url("/a")), 1, engine,
+                    store, new Run());
+            fanOut.takeOver(previous);
+            return fanOut;
+        }).get();
+        engine.shutdown();
+        assertEquals(20, replacement.getArticles().size());
+        assertEquals(40, store.getResidentArticles());
+        // One chunk for the query and one for the merged list
+        store.trim(0);
+        assertEquals(2, directory.list().length);
+
+        mMainThread.submit(replacement::release).get();
+        assertEquals(0, store.getResidentArticles());
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void perHostCap_limitsConcurrentRequests() throws Exception {
+        Run run = fanOut(1, "/a", "/b", "/c");
+
+        // One at a time to the one host
+        assertTrue("took " + run.mFinishedAt, run.mFinishedAt >= 3 * DELAY);
+    }
+
+    /**
+     * Answers like the search API over the given articles, newest first: one web URL and
+     * publication date each. Takes page-size, page and a from-date to the second into account,
+     * and adds the size of each response body to the given count.
+     */
+    private void serveLive(final List<String[]> articles, final AtomicLong bodyBytes) {
+        mServer.handle("/live", exchange -> {
+            Map<String, String> parameters = new HashMap<>();
+            for (String parameter : exchange.getRequestURI().getRawQuery().split("&")) {
+                String[] pair = parameter.split("=", 2);
+                parameters.put(pair[0], URLDecoder.decode(pair[1], "UTF-8"));
+            }
+            List<String[]> matching = new ArrayList<>();
+            String fromDate = parameters.get("from-date");
+            for (String[] article : articles) {
+                if (fromDate == null || article[1].compareTo(fromDate) >= 0) {
+                    matching.add(article);
+                }
+            }
+            int pageSize = Integer.parseInt(parameters.get("page-size"));
+            int page = parameters.containsKey("page") ? Integer.parseInt(parameters.get("page")) : 1;
+            try {
+                JSONArray results = new JSONArray();
+                for (int i = (page - 1) * pageSize; i < Math.min(matching.size(), page * pageSize); i++) {
+                    results.put(new JSONObject().put("webUrl", matching.get(i)[0])
+                            .put("webTitle", "Title " + matching.get(i)[0])
+                            .put("sectionName", "Politics")
+                            .put("webPublicationDate", matching.get(i)[1]));
+                }
+                JSONObject response = new JSONObject().put("status", "ok")
+                        .put("total", matching.size()).put("currentPage", page)
+                        .put("pages", (matching.size() + pageSize - 1) / pageSize)
+                        .put("results", results);
+                byte[] body = new JSONObject().put("response", response).toString()
+                        .getBytes(StandardCharsets.UTF_8);
+                bodyBytes.addAndGet(body.length);
+                StubServer.respond(exchange, 200, body);
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        });
+    }
+
+    /** Return articles "prefix-0" to "prefix-(count - 1)", newest first, a minute apart from the given time. */
+    private static List<String[]> articles(String prefix, int count, long newest) {
+        List<String[]> articles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            articles.add(new String[]{prefix + "-" + i, NewsDates.formatIso(newest - i * 60_000L)});
+        }
+        return articles;
+    }
+
+    /** Hands what a fan-out reports to the current run, so one fan-out can be run several times */
+    private static final class Relay implements NewsFanOut.Listener {
+        volatile Run mRun = new Run();
+
+        @Override
+        public void onArticlesChanged(List<News> articles) {
+            mRun.onArticlesChanged(articles);
+        }
+
+        @Override
+        public void onFinished(boolean anySucceeded) {
+            mRun.onFinished(anySucceeded);
+        }
+    }
+
+    /** Fan out the "/live" query with the given page size and wait for its first page. */
+    private NewsFanOut startLive(NewsFetchEngine engine, int pageSize, Relay relay) throws Exception {
+        NewsFanOut fanOut = mMainThread.submit(() -> {
+            NewsFanOut live = new NewsFanOut(Arrays.asList(mServer.url("/live?page-size=" + pageSize)),
+                    1, engine, relay);
+            live.start(true);
+            return live;
+        }).get();
+        assertTrue(relay.mRun.mFinished.await(10, TimeUnit.SECONDS));
+        return fanOut;
+    }
+
+    /** Refresh the fan-out and wait for it to finish. Return what it reported. */
+    private Run refresh(NewsFanOut fanOut, Relay relay) throws Exception {
+        Run run = new Run();
+        relay.mRun = run;
+        mMainThread.submit(fanOut::refresh).get();
+        assertTrue(run.mFinished.await(10, TimeUnit.SECONDS));
+        return run;
+    }
+
+    @Test
+    public void refreshWithNothingNew_isOneRequestWithNoResults() throws Exception {
+        long now = NewsDates.parseIso("2021-03-28T10:00:00Z");
+        AtomicLong bodyBytes = new AtomicLong();
+        serveLive(articles("old", 20, now), bodyBytes);
+        NewsFetchEngine engine = new NewsFetchEngine(1, 4, null, mMainThread);
+        Relay relay = new Relay();
+        NewsFanOut fanOut = startLive(engine, 20, relay);
+        List<News> shown = fanOut.getArticles();
+        int requestsBefore = mServer.requests().size();
+        bodyBytes.set(0);
+
+        Run run = refresh(fanOut, relay);
+        engine.shutdown();
+
+        assertTrue(run.mSizes.isEmpty());
+        assertSame(shown, fanOut.getArticles());
+        assertEquals(requestsBefore + 1, mServer.requests().size());
+        String query = mServer.requests().get(requestsBefore).getRequestURI().getQuery();
+        assertTrue(query, query.contains("order-by=newest") && query.contains("from-date=2021-03-28T10:00:01Z"));
+        System.out.printf("refresh with nothing new: %d body bytes%n", bodyBytes.get());
+        assertTrue(String.valueOf(bodyBytes.get()), bodyBytes.get() < 200);
+    }
+
+    @Test
+    public void refresh_putsNewArticlesOnTopAndStopsAtAKnownOne() throws Exception {
+        long now = NewsDates.parseIso("2021-03-28T10:00:00Z");
+        List<String[]> live = new ArrayList<>(articles("old", 20, now));
+        serveLive(live, new AtomicLong());
+        NewsFetchEngine engine = new NewsFetchEngine(1, 4, null, mMainThread);
+        Relay relay = new Relay();
+        NewsFanOut fanOut = startLive(engine, 10, relay);
+        List<News> shown = new ArrayList<>(fanOut.getArticles());
+        int requestsBefore = mServer.requests().size();
+
+        // 15 new articles, then one held already whose publication date was moved on
+        List<String[]> added = articles("new", 15, now + 60 * 60_000L);
+        added.add(new String[]{"old-5", NewsDates.formatIso(now + 60_000L)});
+        live.addAll(0, added);
+        Run run = refresh(fanOut, relay);
+        engine.shutdown();
+
+        // Two pages of the delta, the second ending at the known article
+        assertEquals(requestsBefore + 2, mServer.requests().size());
+        assertEquals(Arrays.asList(25), run.mSizes);
+        List<News> articles = fanOut.getArticles();
+        for (int i = 0; i < 15; i++) {
+            assertEquals("new-" + i, articles.get(i).getUrl());
+        }
+        // The articles shown before are the same objects, so their rows are not bound again
+        for (int i = 0; i < shown.size(); i++) {
+            assertSame(shown.get(i), articles.get(15 + i));
+        }
+    }
+
+    @Test
+    public void refreshWithTooMuchNew_fetchesTheFirstPageAgain() throws Exception {
+        long now = NewsDates.parseIso("2021-03-28T10:00:00Z");
+        List<String[]> live = new ArrayList<>(articles("old", 5, now));
+        serveLive(live, new AtomicLong());
+        NewsFetchEngine engine = new NewsFetchEngine(1, 4, null, mMainThread);
+        Relay relay = new Relay();
+        NewsFanOut fanOut = startLive(engine, 5, relay);
+        List<News> shown = fanOut.getArticles();
+        int requestsBefore = mServer.requests().size();
+
+        live.addAll(0, articles("new", 5 * Constants.DELTA_MAX_PAGES + 1, now + 60 * 60_000L));
+        Run run = refresh(fanOut, relay);
+        engine.shutdown();
+
+        assertEquals(requestsBefore + Constants.DELTA_MAX_PAGES + 1, mServer.requests().size());
+        assertNotSame(shown, fanOut.getArticles());
+        assertEquals(Arrays.asList(5), run.mSizes);
+        assertEquals("new-0", fanOut.getArticles().get(0).getUrl());
+    }
+}
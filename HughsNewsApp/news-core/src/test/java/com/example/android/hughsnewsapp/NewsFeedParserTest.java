@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/** Reads the recorded feed of each kind of source with its parser. */
+public class NewsFeedParserTest {
+
+    private static List<News> parse(NewsFeedParser parser, String fixture) throws IOException {
+        return parser.parse(new ByteArrayInputStream(GuardianFixtures.load(fixture)));
+    }
+
+    @Test
+    public void guardianParser_readsTheSearchResults() throws IOException {
+        List<News> news = parse(NewsFeedParser.GUARDIAN, GuardianFixtures.BREXIT_PAGE);
+
+        assertEquals(20, news.size());
+        assertEquals("Brexit talks stall over Northern Ireland protocol", news.get(0).getTitle());
+    }
+
+    @Test
+    public void rssParser_readsEachItemWithALink() throws IOException {
+        List<News> news = parse(NewsFeedParser.XML, GuardianFixtures.RSS_FEED);
+
+        assertEquals(3, news.size());
+        News first = news.get(0);
+        assertEquals("EU leaders back Covid vaccine export controls", first.getTitle());
+        assertEquals("https://www.theguardian.com/world/2021/mar/25/eu-leaders-back-covid-vaccine-export-controls",
+                first.getUrl());
+        assertEquals("European Union", first.getSectionName());
+        assertEquals("Jennifer Rankin", first.getAuthor());
+        assertEquals("2021-03-25T21:14:09Z", first.getPublicationDate());
+        assertEquals("https://i.guim.co.uk/img/media/eu-140.jpg", first.getThumbnailUrl());
+
+        News second = news.get(1);
+        // Without a category the feed's title stands for the section
+        assertEquals("World news | The Guardian", second.getSectionName());
+        assertEquals("", second.getAuthor());
+        assertEquals("2021-03-26T08:30:00Z", second.getPublicationDate());
+        assertEquals("https://i.guim.co.uk/img/media/suez.jpg", second.getThumbnailUrl());
+
+        News third = news.get(2);
+        assertEquals("https://www.theguardian.com/world/2021/mar/27/myanmar-junta-parade", third.getUrl());
+        assertEquals("Rebecca Ratcliffe", third.getAuthor());
+        assertEquals(NewsDates.UNKNOWN, third.getPublicationTime());
+        assertNull(third.getThumbnailUrl());
+    }
+
+    @Test
+    public void atomParser_readsEachEntry() throws IOException {
+        List<News> news = parse(NewsFeedParser.XML, GuardianFixtures.ATOM_FEED);
+
+        assertEquals(2, news.size());
+        News first = news.get(0);
+        assertEquals("Perseverance listens to Mars", first.getTitle());
+        assertEquals("https://science.example.com/2021/03/perseverance", first.getUrl());
+        assertEquals("Space", first.getSectionName());
+        assertEquals("Ian Sample", first.getAuthor());
+        assertEquals("2021-03-27T17:30:00Z", first.getPublicationDate());
+        assertEquals("https://science.example.com/img/perseverance.jpg", first.getThumbnailUrl());
+
+        News second = news.get(1);
+        assertEquals("Science news", second.getSectionName());
+        assertEquals("2021-03-26T12:00:00Z", second.getPublicationDate());
+    }
+
+    @Test
+    public void newsApiParser_readsEachArticleWithAUrl() throws IOException {
+        List<News> news = parse(NewsFeedParser.NEWS_API, GuardianFixtures.NEWS_API_PAGE);
+
+        assertEquals(2, news.size());
+        News first = news.get(0);
+        assertEquals("Suez Canal: Ever Given container ship freed after a week", first.getTitle());
+        assertEquals("BBC News", first.getSectionName());
+        assertEquals("BBC News", first.getAuthor());
+        assertEquals("2021-03-29T13:52:11Z", first.getPublicationDate());
+        assertEquals("https://ichef.bbci.co.uk/news/1024/suez.jpg", first.getThumbnailUrl());
+        assertEquals("", news.get(1).getAuthor());
+        assertNull(news.get(1).getThumbnailUrl());
+        assertEquals("2021-03-29T12:00:00Z", news.get(1).getPublicationDate());
+    }
+
+    @Test
+    public void documentTypes_areRefused() {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE rss [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+                + "<rss><channel><item><title>&x;</title><link>https://a</link></item></channel></rss>";
+        try {
+            NewsFeedParser.XML.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            fail("a document type was read");
+        } catch (IOException expected) {
+            // Refused before any entity is resolved
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedFeed_fails() throws IOException {
+        NewsFeedParser.XML.parse(new ByteArrayInputStream("<rss><channel>".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NewsFeedTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static News news(String url, String date) {
+        return new News("Politics", "Title " + url, date, "", url);
+    }
+
+    private static NewsPage page(News... news) {
+        return new NewsPage(new ArrayList<>(Arrays.asList(news)), 1, 1);
+    }
+
+    private static List<String> urls(List<News> articles) {
+        List<String> urls = new ArrayList<>();
+        for (News news : articles) {
+            urls.add(news.getUrl());
+        }
+        return urls;
+    }
+
+    @Test
+    public void firstPages_areMergedNewestFirstWithoutDuplicates() {
+        NewsFeed feed = new NewsFeed(2);
+        feed.setFirstPage(0, page(news("a", "2021-03-28T10:00:00Z"), news("c", "2021-03-26T10:00:00Z")));
+        feed.setFirstPage(1, page(news("b", "2021-03-27T10:00:00Z"), news("a", "2021-03-28T10:00:00Z"),
+                news("d", null)));
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), urls(feed.getArticles()));
+    }
+
+    @Test
+    public void olderPage_isAppendedToTheSameList() {
+        NewsFeed feed = new NewsFeed(1);
+        feed.setFirstPage(0, page(news("a", "2021-03-28T10:00:00Z")));
+        List<News> before = feed.getArticles();
+
+        feed.appendPage(0, page(news("b", "2021-03-27T10:00:00Z"), news("a", "2021-03-28T10:00:00Z")));
+
+        assertSame(before, feed.getArticles());
+        assertEquals(Arrays.asList("a", "b"), urls(feed.getArticles()));
+    }
+
+    @Test
+    public void pageInterleavingWithShownArticles_rebuildsTheList() {
+        NewsFeed feed = new NewsFeed(2);
+        feed.setFirstPage(0, page(news("a", "2021-03-28T10:00:00Z"), news("c", "2021-03-20T10:00:00Z")));
+        List<News> before = feed.getArticles();
+
+        feed.appendPage(1, page(news("b", "2021-03-25T10:00:00Z")));
+
+        assertNotSame(before, feed.getArticles());
+        assertEquals(Arrays.asList("a", "b", "c"), urls(feed.getArticles()));
+    }
+
+    @Test
+    public void freshFirstPage_replacesWhatTheQueryHadContributed() {
+        NewsFeed feed = new NewsFeed(1);
+        feed.setFirstPage(0, page(news("old", "2021-03-27T10:00:00Z")));
+        feed.setFirstPage(0, page(news("new", "2021-03-28T10:00:00Z")));
+
+        assertEquals(Arrays.asList("new"), urls(feed.getArticles()));
+    }
+
+    @Test
+    public void newerArticles_goOnTopOfANewListWithTheSameArticlesAfterThem() {
+        NewsFeed feed = new NewsFeed(1);
+        feed.setFirstPage(0, page(news("a", "2021-03-28T10:00:00Z"), news("b", "2021-03-27T10:00:00Z")));
+        List<News> before = feed.getArticles();
+
+        int added = feed.prependArticles(0, Arrays.asList(news("d", "2021-03-28T12:00:00Z"),
+                news("c", "2021-03-28T11:00:00Z"), news("a", "2021-03-28T10:00:00Z")));
+
+        assertEquals(2, added);
+        assertNotSame(before, feed.getArticles());
+        assertEquals(Arrays.asList("d", "c", "a", "b"), urls(feed.getArticles()));
+        assertSame(before.get(0), feed.getArticles().get(2));
+        assertEquals(NewsDates.parseIso("2021-03-28T12:00:00Z"), feed.getNewestTime(0));
+    }
+
+    @Test
+    public void prependedArticlesOlderThanAnotherQuerys_rebuildTheList() {
+        NewsFeed feed = new NewsFeed(2);
+        feed.setFirstPage(0, page(news("a", "2021-03-27T10:00:00Z")));
+        feed.setFirstPage(1, page(news("b", "2021-03-28T10:00:00Z")));
+
+        feed.prependArticles(0, Arrays.asList(news("c", "2021-03-27T12:00:00Z")));
+
+        assertEquals(Arrays.asList("b", "c", "a"), urls(feed.getArticles()));
+        assertEquals(0, feed.prependArticles(1, Arrays.asList(news("c", "2021-03-27T12:00:00Z"))));
+        assertEquals(NewsDates.UNKNOWN, new NewsFeed(1).getNewestTime(0));
+    }
+
+    @Test
+    public void spilledFeed_mergesAsTheFeedInMemory() throws IOException {
+        NewsFeed inMemory = new NewsFeed(2);
+        NewsFeed spilled = new NewsFeed(2, new NewsSpillStore(mFolder.newFolder(), 0));
+        for (NewsFeed feed : Arrays.asList(inMemory, spilled)) {
+            feed.setFirstPage(0, page(news("a", "2021-03-28T10:00:00Z"), news("c", "2021-03-26T10:00:00Z")));
+            feed.setFirstPage(1, page(news("b", "2021-03-27T10:00:00Z"), news("a", "2021-03-28T10:00:00Z"),
+                    news("e", "2021-03-27T10:00:00Z")));
+            feed.appendPage(0, page(news("d", "2021-03-27T10:00:00Z")));
+            // Out of order within the query, so it is sorted rather than merged
+            feed.appendPage(1, page(news("f", "2021-03-29T10:00:00Z"), news("g", null)));
+        }
+        assertEquals(Arrays.asList("f", "a", "d", "b", "e", "c", "g"), urls(inMemory.getArticles()));
+        assertEquals(urls(inMemory.getArticles()), urls(spilled.getArticles()));
+
+        // The list replaced lets go of its articles
+        List<News> before = spilled.getArticles();
+        spilled.prependArticles(0, Arrays.asList(news("h", "2021-03-30T10:00:00Z")));
+        assertTrue(before.isEmpty());
+        assertEquals("h", spilled.getArticles().get(0).getUrl());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NewsFetchEngineTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+    private NewsDiskCache mCache;
+    private NewsFetchEngine mEngine;
+    private byte[] mPage;
+
+    /** Released by the test to let a stalled response finish */
+    private final CountDownLatch mUnstall = new CountDownLatch(1);
+
+    /** Counted down once the stalled handler has returned */
+    private final CountDownLatch mStallEnded = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        mPage = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        mCache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, 60_000);
+        mEngine = new NewsFetchEngine(2, mCache, Runnable::run);
+        mServer = new StubServer()
+                .handle("/search", exchange -> {
+                    if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        StubServer.respond(exchange, 304, null);
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                    StubServer.respond(exchange, 200, mPage);
+                })
+                .handle("/stall", exchange -> {
+                    // Send half the body, then hang until released
+                    exchange.sendResponseHeaders(200, mPage.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(mPage, 0, mPage.length / 2);
+                    out.flush();
+                    try {
+                        mUnstall.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        mStallEnded.countDown();
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        mUnstall.countDown();
+        mEngine.shutdown();
+        mServer.close();
+    }
+
+    /** Records the callbacks of one fetch */
+    private static final class RecordingCallback implements NewsFetcher.Callback {
+        final List<NewsPage> mPages = new CopyOnWriteArrayList<>();
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        volatile boolean mSucceeded;
+
+        @Override
+        public void onPageLoaded(NewsPage page) {
+            mPages.add(page);
+        }
+
+        @Override
+        public void onFetchFinished(boolean succeeded) {
+            mSucceeded = succeeded;
+            mFinished.countDown();
+        }
+    }
+
+    @Test
+    public void cachedFetch_deliversCachedPageThenTreats304AsSuccess() throws InterruptedException {
+        String url = mServer.url("/search?q=brexit");
+        RecordingCallback first = new RecordingCallback();
+        mEngine.fetch(url, true, first);
+        assertTrue(first.mFinished.await(5, TimeUnit.SECONDS));
+        assertEquals(1, first.mPages.size());
+        assertTrue(first.mSucceeded);
+
+        RecordingCallback second = new RecordingCallback();
+        mEngine.fetch(url, true, second);
+        assertTrue(second.mFinished.await(5, TimeUnit.SECONDS));
+
+        // Only the cached page: the 304 is not parsed or delivered again
+        assertEquals(1, second.mPages.size());
+        assertEquals(20, second.mPages.get(0).getNews().size());
+        assertTrue(second.mSucceeded);
+    }
+
+    @Test
+    public void readCached_deliversTheCachedPageWithoutARequest() throws InterruptedException {
+        String url = mServer.url("/search?q=brexit");
+        RecordingCallback missing = new RecordingCallback();
+        mEngine.readCached(url, missing);
+        assertTrue(missing.mFinished.await(5, TimeUnit.SECONDS));
+        assertFalse(missing.mSucceeded);
+
+        RecordingCallback fetched = new RecordingCallback();
+        mEngine.fetch(url, true, fetched);
+        assertTrue(fetched.mFinished.await(5, TimeUnit.SECONDS));
+
+        RecordingCallback cached = new RecordingCallback();
+        mEngine.readCached(url, cached);
+        assertTrue(cached.mFinished.await(5, TimeUnit.SECONDS));
+        assertTrue(cached.mSucceeded);
+        assertEquals(20, cached.mPages.get(0).getNews().size());
+        assertEquals(1, mServer.requests().size());
+    }
+
+    @Test
+    public void failedFetch_reportsFailure() throws InterruptedException {
+        mServer.handle("/broken", exchange -> StubServer.respond(exchange, 503, null));
+        RecordingCallback callback = new RecordingCallback();
+        mEngine.fetch(mServer.url("/broken"), true, callback);
+
+        assertTrue(callback.mFinished.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.mPages.isEmpty());
+        assertFalse(callback.mSucceeded);
+    }
+
+    @Test
+    public void cancelBeforeStart_neverConnects() throws InterruptedException {
+        NewsFetchEngine single = new NewsFetchEngine(1, null, Runnable::run);
+        try {
+            // Occupy the only thread so the second fetch is still queued when cancelled
+            RecordingCallback blocker = new RecordingCallback();
+            FetchHandle blocking = single.fetch(mServer.url("/stall"), false, blocker);
+            RecordingCallback callback = new RecordingCallback();
+            FetchHandle queued = single.fetch(mServer.url("/search"), false, callback);
+            queued.cancel();
+            mUnstall.countDown();
+
+            assertTrue(blocker.mFinished.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(0, queued.getResponseCode());
+            assertEquals(1, callback.mFinished.getCount());
+            assertFalse(blocking.isCancelled());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelDuringRead_suppressesCallbacks() throws InterruptedException {
+        RecordingCallback callback = new RecordingCallback();
+        final FetchHandle handle = mEngine.fetch(mServer.url("/stall"), false, callback);
+
+        // Wait until the fetch is blocked reading the body
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handle.getResponseCode() != 200 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(200, handle.getResponseCode());
+
+        // Android's HttpURLConnection aborts the read on disconnect; the JDK's waits for the read
+        // to finish, so cancel from another thread and let the server finish the response.
+        Thread canceller = new Thread(handle::cancel);
+        canceller.start();
+        Thread.sleep(100);
+        mUnstall.countDown();
+        canceller.join(5000);
+        assertTrue(mStallEnded.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        assertTrue(handle.isCancelled());
+        assertEquals(1, callback.mFinished.getCount());
+        assertTrue(callback.mPages.isEmpty());
+    }
+}
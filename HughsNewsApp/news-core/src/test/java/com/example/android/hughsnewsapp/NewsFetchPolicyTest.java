@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link NewsFetchPolicy} copes with the faults a local server injects. Time is
+ * simulated: the policy's waits advance a fake clock instead of sleeping.
+ */
+public class NewsFetchPolicyTest {
+
+    private static final long BACKOFF_BASE = 500;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+    private byte[] mPage;
+
+    /** Faults answering the next requests, in order; once empty the page is served */
+    private final Queue<StubServer.Handler> mFaults = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong mNow = new AtomicLong(1_000_000);
+
+    /** Every wait the policy asked for */
+    private final List<Long> mWaits = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mPage = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        mServer = new StubServer().handle("/search", exchange -> {
+            StubServer.Handler fault = mFaults.poll();
+            if (fault != null) {
+                fault.handle(exchange);
+            } else {
+                StubServer.respond(exchange, 200, mPage);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    private NewsFetchPolicy.Builder policy() {
+        return new NewsFetchPolicy.Builder()
+                .maxAttempts(3)
+                .backoff(BACKOFF_BASE, 8_000)
+                .maxRetryAfter(30_000)
+                .circuitBreaker(5, 60_000)
+                .clock(mNow::get)
+                .sleeper(millis -> {
+                    mWaits.add(millis);
+                    mNow.addAndGet(millis);
+                })
+                .random(new Random(42));
+    }
+
+    /** Fetch the page once through the policy, with a short read timeout. */
+    private NewsPage fetch(NewsFetchPolicy policy, FetchHandle handle) throws MalformedURLException {
+        final NewsHttpClient.Request request = new NewsHttpClient.Request.Builder(
+                new URL(mServer.url("/search?q=brexit"))).readTimeout(200).build();
+        return policy.execute(handle, attemptHandle ->
+                QueryUtils.fetchNewsPage(request, null, attemptHandle));
+    }
+
+    private static StubServer.Handler status(int status) {
+        return exchange -> StubServer.respond(exchange, status, null);
+    }
+
+    @Test
+    public void serverErrors_areRetriedWithGrowingJitteredBackoff() throws IOException {
+        mFaults.add(status(503));
+        mFaults.add(status(500));
+        NewsFetchPolicy policy = policy().build();
+        FetchHandle handle = new FetchHandle();
+
+        assertEquals(20, fetch(policy, handle).getNews().size());
+        assertNull(handle.getFailure());
+        assertEquals(3, mServer.requests().size());
+        assertEquals(2, mWaits.size());
+        assertTrue(mWaits.get(0) <= BACKOFF_BASE);
+        assertTrue(mWaits.get(1) <= BACKOFF_BASE * 2);
+
+        NewsFetchPolicy.Stats stats = policy.getStats();
+        assertEquals(3, stats.getAttempts());
+        assertEquals(1, stats.getSuccesses());
+        assertEquals(2, stats.getFailures(NewsFetchPolicy.Failure.SERVER_ERROR));
+        assertEquals(2, stats.getRetries());
+        assertNull(policy.getLastFailure());
+    }
+
+    @Test
+    public void giveUpAfterTheLastAttempt() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            mFaults.add(status(502));
+        }
+        NewsFetchPolicy policy = policy().build();
+        FetchHandle handle = new FetchHandle();
+
+        assertNull(fetch(policy, handle));
+        assertEquals(NewsFetchPolicy.Failure.SERVER_ERROR, handle.getFailure());
+        assertEquals(3, mServer.requests().size());
+        assertEquals(NewsFetchPolicy.Failure.SERVER_ERROR, policy.getLastFailure());
+    }
+
+    @Test
+    public void rateLimited_waitsAsLongAsRetryAfterAsks() throws IOException {
+        mFaults.add(exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "2");
+            StubServer.respond(exchange, 429, null);
+        });
+        NewsFetchPolicy policy = policy().build();
+
+        assertEquals(20, fetch(policy, new FetchHandle()).getNews().size());
+        assertEquals(1, mWaits.size());
+        assertEquals(2_000, (long) mWaits.get(0));
+        assertEquals(1, policy.getStats().getFailures(NewsFetchPolicy.Failure.RATE_LIMITED));
+    }
+
+    @Test
+    public void rateLimited_forLongerThanWorthWaiting_holdsOffEveryRequest() throws IOException {
+        mFaults.add(exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "120");
+            StubServer.respond(exchange, 429, null);
+        });
+        NewsFetchPolicy policy = policy().build();
+
+        assertNull(fetch(policy, new FetchHandle()));
+        assertTrue(mWaits.isEmpty());
+
+        // Nobody asks again before the server said to
+        FetchHandle handle = new FetchHandle();
+        assertNull(fetch(policy, handle));
+        assertEquals(NewsFetchPolicy.Failure.CIRCUIT_OPEN, handle.getFailure());
+        assertEquals(120_000, handle.getRetryAfter());
+        assertEquals(1, mServer.requests().size());
+        assertEquals(1, policy.getStats().getShortCircuited());
+
+        mNow.addAndGet(120_000);
+        assertEquals(20, fetch(policy, new FetchHandle()).getNews().size());
+        assertEquals(2, mServer.requests().size());
+    }
+
+    @Test
+    public void malformedJson_isNotRetried() throws IOException {
+        mFaults.add(exchange -> StubServer.respond(exchange, 200,
+                "{\"response\":{\"results\":[{\"webTitle\":".getBytes(StandardCharsets.UTF_8)));
+        NewsFetchPolicy policy = policy().build();
+        FetchHandle handle = new FetchHandle();
+
+        assertNull(fetch(policy, handle));
+        assertEquals(NewsFetchPolicy.Failure.MALFORMED, handle.getFailure());
+        assertEquals(1, mServer.requests().size());
+        assertTrue(mWaits.isEmpty());
+    }
+
+    @Test
+    public void clientError_isNotRetried() throws IOException {
+        mFaults.add(status(403));
+        FetchHandle handle = new FetchHandle();
+
+        assertNull(fetch(policy().build(), handle));
+        assertEquals(NewsFetchPolicy.Failure.CLIENT_ERROR, handle.getFailure());
+        assertEquals(1, mServer.requests().size());
+    }
+
+    @Test
+    public void clientErrors_leaveTheCircuitClosed() throws IOException {
+        mFaults.add(status(403));
+        mFaults.add(status(404));
+        mFaults.add(exchange -> StubServer.respond(exchange, 200,
+                "{\"response\":".getBytes(StandardCharsets.UTF_8)));
+        NewsFetchPolicy policy = policy().circuitBreaker(2, 60_000).build();
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(fetch(policy, new FetchHandle()));
+        }
+        assertFalse(policy.getStats().isCircuitOpen());
+        assertEquals(0, policy.getStats().getCircuitOpened());
+        assertEquals(20, fetch(policy, new FetchHandle()).getNews().size());
+        assertEquals(4, mServer.requests().size());
+    }
+
+    @Test
+    public void timeout_isRetried() throws IOException {
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        mFaults.add(exchange -> {
+            try {
+                // Longer than the read timeout of the request
+                timedOut.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        NewsFetchPolicy policy = policy().build();
+
+        assertEquals(20, fetch(policy, new FetchHandle()).getNews().size());
+        timedOut.countDown();
+        assertEquals(1, policy.getStats().getFailures(NewsFetchPolicy.Failure.TIMEOUT));
+        assertEquals(1, policy.getStats().getRetries());
+    }
+
+    @Test
+    public void circuitOpensAfterRepeatedFailures_andTheEngineKeepsServingTheCache()
+            throws IOException, InterruptedException {
+        NewsFetchPolicy policy = policy().maxAttempts(1).circuitBreaker(3, 60_000).build();
+        NewsDiskCache cache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, 60 * 60_000);
+        NewsFetchEngine engine = new NewsFetchEngine(1, 1, cache, null, policy, Runnable::run);
+        String url = mServer.url("/search?q=brexit");
+        try {
+            assertTrue(fetch(engine, url).mSucceeded);
+            for (int i = 0; i < 3; i++) {
+                mFaults.add(status(503));
+                RecordingCallback failed = fetch(engine, url);
+                assertFalse(failed.mSucceeded);
+                assertEquals(1, failed.mPages.size());
+            }
+            assertEquals(4, mServer.requests().size());
+            assertTrue(policy.getStats().isCircuitOpen());
+            assertEquals(1, policy.getStats().getCircuitOpened());
+
+            // While open the cached page is shown and the server is left alone
+            RecordingCallback shortCircuited = fetch(engine, url);
+            assertFalse(shortCircuited.mSucceeded);
+            assertEquals(20, shortCircuited.mPages.get(0).getNews().size());
+            assertEquals(4, mServer.requests().size());
+
+            // Once the open time has passed a trial request closes it again
+            mNow.addAndGet(60_000);
+            assertTrue(fetch(engine, url).mSucceeded);
+            assertEquals(5, mServer.requests().size());
+            assertFalse(policy.getStats().isCircuitOpen());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void failedTrial_opensTheCircuitAgain() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            mFaults.add(status(500));
+        }
+        NewsFetchPolicy policy = policy().maxAttempts(1).circuitBreaker(1, 60_000).build();
+
+        assertNull(fetch(policy, new FetchHandle()));
+        mNow.addAndGet(60_000);
+        assertNull(fetch(policy, new FetchHandle()));
+        assertEquals(2, mServer.requests().size());
+        assertEquals(2, policy.getStats().getCircuitOpened());
+
+        FetchHandle handle = new FetchHandle();
+        assertNull(fetch(policy, handle));
+        assertEquals(NewsFetchPolicy.Failure.CIRCUIT_OPEN, handle.getFailure());
+        assertEquals(2, mServer.requests().size());
+    }
+
+    @Test
+    public void parseRetryAfter_secondsOrHttpDate() {
+        // Sun, 28 Mar 2021 10:25:41 GMT
+        long now = 1616927141000L;
+        assertEquals(120_000, NewsFetchPolicy.parseRetryAfter("120", now));
+        assertEquals(30_000, NewsFetchPolicy.parseRetryAfter("Sun, 28 Mar 2021 10:26:11 GMT", now));
+        assertEquals(0, NewsFetchPolicy.parseRetryAfter("Sun, 28 Mar 2021 10:00:00 GMT", now));
+        assertEquals(0, NewsFetchPolicy.parseRetryAfter("soon", now));
+        assertEquals(0, NewsFetchPolicy.parseRetryAfter(null, now));
+    }
+
+    /** Records the callbacks of one fetch */
+    private static final class RecordingCallback implements NewsFetcher.Callback {
+        final List<NewsPage> mPages = new CopyOnWriteArrayList<>();
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        volatile boolean mSucceeded;
+
+        @Override
+        public void onPageLoaded(NewsPage page) {
+            mPages.add(page);
+        }
+
+        @Override
+        public void onFetchFinished(boolean succeeded) {
+            mSucceeded = succeeded;
+            mFinished.countDown();
+        }
+    }
+
+    private static RecordingCallback fetch(NewsFetchEngine engine, String url)
+            throws InterruptedException {
+        RecordingCallback callback = new RecordingCallback();
+        engine.fetch(url, true, callback);
+        assertTrue(callback.mFinished.await(5, TimeUnit.SECONDS));
+        return callback;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NewsHttpClientTest {
+
+    private StubServer mServer;
+    private NewsHttpClient mClient;
+    private byte[] mPage;
+
+    /** Client ports seen by the server; one port means one reused connection */
+    private final Set<Integer> mClientPorts = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws IOException {
+        mPage = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        mClient = new NewsHttpClient();
+        mServer = new StubServer()
+                .handle("/search", exchange -> {
+                    mClientPorts.add(exchange.getRemoteAddress().getPort());
+                    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                    if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                        exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                        StubServer.respond(exchange, 200, gzip(mPage));
+                    } else {
+                        StubServer.respond(exchange, 200, mPage);
+                    }
+                })
+                .handle("/slow", exchange -> {
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException ignored) {
+                    }
+                    StubServer.respond(exchange, 200, mPage);
+                });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private NewsHttpClient.Request request(String path) throws IOException {
+        return new NewsHttpClient.Request.Builder(new URL(mServer.url(path))).build();
+    }
+
+    @Test
+    public void gzipBody_isDecodedAndBothSizesAreRecorded() throws IOException {
+        byte[] body;
+        try (NewsHttpClient.Response response = mClient.execute(request("/search"), null)) {
+            assertEquals(200, response.getStatusCode());
+            body = readAll(response.getBody());
+        }
+
+        assertArrayEquals(mPage, body);
+        List<RequestMetrics> metrics = mClient.getRecentMetrics();
+        assertEquals(1, metrics.size());
+        assertEquals(200, metrics.get(0).getStatusCode());
+        assertEquals(mPage.length, metrics.get(0).getDecodedBytes());
+        assertTrue(metrics.get(0).getWireBytes() < metrics.get(0).getDecodedBytes());
+    }
+
+    @Test
+    public void backToBackRequests_reuseOneConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            try (NewsHttpClient.Response response = mClient.execute(request("/search"), null)) {
+                // Only read part of the body; close() drains the rest
+                assertTrue(response.getBody().read(new byte[100]) > 0);
+            }
+        }
+        assertEquals(1, mClientPorts.size());
+        assertEquals(5, mClient.getRecentMetrics().size());
+    }
+
+    @Test
+    public void perRequestReadTimeout_overridesTheDefault() throws IOException {
+        NewsHttpClient.Request request = request("/slow").newBuilder().readTimeout(200).build();
+        long start = System.nanoTime();
+        try {
+            mClient.execute(request, null).close();
+            fail("Expected a timeout");
+        } catch (SocketTimeoutException expected) {
+            assertTrue((System.nanoTime() - start) / 1_000_000 < 1500);
+        }
+        // Failed requests are recorded too, without a status
+        assertEquals(0, mClient.getRecentMetrics().get(0).getStatusCode());
+    }
+
+    @Test
+    public void metricsListener_receivesEveryRequest() throws IOException {
+        final int[] seen = {0};
+        mClient.addMetricsListener(metrics -> seen[0]++);
+        mClient.execute(request("/search"), null).close();
+        mClient.execute(request("/search"), null).close();
+        assertEquals(2, seen[0]);
+    }
+}
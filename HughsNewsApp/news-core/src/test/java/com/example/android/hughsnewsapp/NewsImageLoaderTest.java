@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks {@link NewsImageLoader} against a local image server, with a fake decoder. */
+public class NewsImageLoaderTest {
+
+    /** Every image served is this many bytes, so is every fake decoded image */
+    private static final int IMAGE_BYTES = 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+    private final FakeDecoder mDecoder = new FakeDecoder();
+
+    /** Released by the test to let the slow images be served */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubServer()
+                .handle("/img/", exchange -> {
+                    int inFlight = mInFlight.incrementAndGet();
+                    mMaxInFlight.set(Math.max(mMaxInFlight.get(), inFlight));
+                    try {
+                        String name = exchange.getRequestURI().getPath().substring("/img/".length());
+                        if (name.startsWith("slow")) {
+                            mRelease.await(5, TimeUnit.SECONDS);
+                        }
+                        StubServer.respond(exchange, 200, image(name));
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        mInFlight.decrementAndGet();
+                    }
+                })
+                .handle("/missing", exchange -> StubServer.respond(exchange, 404, null));
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mServer.close();
+    }
+
+    /** A decoded image: the name it was served under */
+    private static final class FakeImage {
+        final String mName;
+
+        FakeImage(String name) {
+            mName = name;
+        }
+    }
+
+    private static final class FakeDecoder implements NewsImageLoader.Decoder<FakeImage> {
+        final AtomicInteger mDecodes = new AtomicInteger();
+        final List<String> mRecycled = new CopyOnWriteArrayList<>();
+        volatile int mTargetHeight;
+
+        @Override
+        public FakeImage decode(byte[] data, int targetHeight) {
+            mDecodes.incrementAndGet();
+            mTargetHeight = targetHeight;
+            String name = new String(data, StandardCharsets.UTF_8).trim();
+            return name.startsWith("broken") ? null : new FakeImage(name);
+        }
+
+        @Override
+        public int sizeOf(FakeImage image) {
+            return IMAGE_BYTES;
+        }
+
+        @Override
+        public void recycle(FakeImage image) {
+            mRecycled.add(image.mName);
+        }
+    }
+
+    /** Records the images delivered to one row */
+    private static final class RecordingTarget implements NewsImageLoader.Target<FakeImage> {
+        final List<String> mImages = new CopyOnWriteArrayList<>();
+        final CountDownLatch mLoaded = new CountDownLatch(1);
+
+        @Override
+        public void onImageLoaded(FakeImage image) {
+            mImages.add(image.mName);
+            mLoaded.countDown();
+        }
+    }
+
+    /** Return the bytes served for the named image, padded to the same size as every other. */
+    private static byte[] image(String name) {
+        StringBuilder image = new StringBuilder(name);
+        while (image.length() < IMAGE_BYTES) {
+            image.append(' ');
+        }
+        return image.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private NewsImageLoader<FakeImage> newLoader(int threads, long maxBytes, NewsDiskCache diskCache) {
+        return new NewsImageLoader<>(threads, maxBytes, diskCache, mDecoder, Runnable::run);
+    }
+
+    private RecordingTarget loadAndWait(NewsImageLoader<FakeImage> loader, String path)
+            throws InterruptedException {
+        RecordingTarget target = new RecordingTarget();
+        loader.load(mServer.url(path), 80, target);
+        assertTrue(target.mLoaded.await(5, TimeUnit.SECONDS));
+        return target;
+    }
+
+    @Test
+    public void load_downloadsAndDecodesOnce_thenServesFromMemory() throws InterruptedException {
+        NewsImageLoader<FakeImage> loader = newLoader(2, 10 * IMAGE_BYTES, null);
+        try {
+            assertEquals("a", loadAndWait(loader, "/img/a").mImages.get(0));
+            assertEquals(80, mDecoder.mTargetHeight);
+
+            // Handed over before load returns
+            RecordingTarget again = new RecordingTarget();
+            loader.load(mServer.url("/img/a"), 80, again);
+            assertEquals(1, again.mImages.size());
+            assertEquals(1, mServer.requests().size());
+            assertEquals(1, mDecoder.mDecodes.get());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void load_readsTheDiskCacheBeforeTheNetwork() throws IOException, InterruptedException {
+        NewsDiskCache diskCache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, 60_000);
+        NewsImageLoader<FakeImage> first = newLoader(2, 10 * IMAGE_BYTES, diskCache);
+        NewsImageLoader<FakeImage> second = newLoader(2, 10 * IMAGE_BYTES, diskCache);
+        try {
+            loadAndWait(first, "/img/a");
+            assertEquals("a", loadAndWait(second, "/img/a").mImages.get(0));
+            assertEquals(1, mServer.requests().size());
+            assertEquals(2, mDecoder.mDecodes.get());
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void rowsAskingForTheSameImage_shareOneDownload() throws InterruptedException {
+        NewsImageLoader<FakeImage> loader = newLoader(2, 10 * IMAGE_BYTES, null);
+        try {
+            RecordingTarget[] targets = new RecordingTarget[3];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = new RecordingTarget();
+                loader.load(mServer.url("/img/slow"), 80, targets[i]);
+            }
+            mRelease.countDown();
+            for (RecordingTarget target : targets) {
+                assertTrue(target.mLoaded.await(5, TimeUnit.SECONDS));
+                assertEquals("slow", target.mImages.get(0));
+            }
+            assertEquals(1, mServer.requests().size());
+            assertEquals(1, mDecoder.mDecodes.get());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void recycledRow_isNotDelivered_andTheNextRowStartsAfresh() throws InterruptedException {
+        NewsImageLoader<FakeImage> loader = newLoader(2, 10 * IMAGE_BYTES, null);
+        try {
+            RecordingTarget recycled = new RecordingTarget();
+            NewsImageLoader<FakeImage>.Request request =
+                    loader.load(mServer.url("/img/slow"), 80, recycled);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (mServer.requests().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            request.cancel();
+
+            RecordingTarget next = new RecordingTarget();
+            loader.load(mServer.url("/img/slow"), 80, next);
+            mRelease.countDown();
+            assertTrue(next.mLoaded.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+
+            assertTrue(recycled.mImages.isEmpty());
+            // The abandoned download was not shared with the next row
+            assertEquals(2, mServer.requests().size());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void cancellingOneOfTwoRows_keepsTheDownloadForTheOther() throws InterruptedException {
+        NewsImageLoader<FakeImage> loader = newLoader(2, 10 * IMAGE_BYTES, null);
+        try {
+            RecordingTarget cancelled = new RecordingTarget();
+            NewsImageLoader<FakeImage>.Request request =
+                    loader.load(mServer.url("/img/slow"), 80, cancelled);
+            RecordingTarget kept = new RecordingTarget();
+            loader.load(mServer.url("/img/slow"), 80, kept);
+            request.cancel();
+            mRelease.countDown();
+
+            assertTrue(kept.mLoaded.await(5, TimeUnit.SECONDS));
+            assertTrue(cancelled.mImages.isEmpty());
+            assertEquals(1, mServer.requests().size());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void evictedImages_areRecycledOnceNoRowShowsThem() throws InterruptedException {
+        NewsImageLoader<FakeImage> loader = newLoader(2, 2 * IMAGE_BYTES, null);
+        try {
+            RecordingTarget a = new RecordingTarget();
+            NewsImageLoader<FakeImage>.Request aRequest = loader.load(mServer.url("/img/a"), 80, a);
+            assertTrue(a.mLoaded.await(5, TimeUnit.SECONDS));
+            RecordingTarget b = new RecordingTarget();
+            NewsImageLoader<FakeImage>.Request bRequest = loader.load(mServer.url("/img/b"), 80, b);
+            assertTrue(b.mLoaded.await(5, TimeUnit.SECONDS));
+
+            // a is no longer shown, so making room for c recycles it
+            aRequest.cancel();
+            loadAndWait(loader, "/img/c");
+            assertEquals(1, mDecoder.mRecycled.size());
+            assertEquals("a", mDecoder.mRecycled.get(0));
+
+            // b is still shown: evicted, but only recycled once its row lets go of it
+            loadAndWait(loader, "/img/d");
+            assertEquals(1, mDecoder.mRecycled.size());
+            bRequest.cancel();
+            assertEquals("b", mDecoder.mRecycled.get(1));
+            assertEquals(2 * IMAGE_BYTES, loader.size());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void downloads_runOnTheBoundedPool() throws InterruptedException {
+        NewsImageLoader<FakeImage> loader = newLoader(2, 10 * IMAGE_BYTES, null);
+        try {
+            RecordingTarget[] targets = new RecordingTarget[6];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = new RecordingTarget();
+                loader.load(mServer.url("/img/slow" + i), 80, targets[i]);
+            }
+            Thread.sleep(200);
+            mRelease.countDown();
+            for (RecordingTarget target : targets) {
+                assertTrue(target.mLoaded.await(5, TimeUnit.SECONDS));
+            }
+            assertEquals(2, mMaxInFlight.get());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void failedImages_areNotDeliveredOrCached() throws InterruptedException {
+        NewsImageLoader<FakeImage> loader = newLoader(2, 10 * IMAGE_BYTES, null);
+        try {
+            RecordingTarget missing = new RecordingTarget();
+            loader.load(mServer.url("/missing"), 80, missing);
+            RecordingTarget broken = new RecordingTarget();
+            loader.load(mServer.url("/img/broken"), 80, broken);
+            assertFalse(missing.mLoaded.await(300, TimeUnit.MILLISECONDS));
+            assertFalse(broken.mLoaded.await(300, TimeUnit.MILLISECONDS));
+            assertEquals(0, loader.size());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void sampleSize_keepsTheImageAtLeastAsTallAsTheRow() {
+        // A 500x300 Guardian thumbnail in an 80dp row
+        assertEquals(1, NewsImageLoader.sampleSize(300, 210));
+        assertEquals(1, NewsImageLoader.sampleSize(300, 160));
+        assertEquals(2, NewsImageLoader.sampleSize(300, 120));
+        assertEquals(8, NewsImageLoader.sampleSize(2100, 210));
+        assertEquals(1, NewsImageLoader.sampleSize(300, 0));
+    }
+}
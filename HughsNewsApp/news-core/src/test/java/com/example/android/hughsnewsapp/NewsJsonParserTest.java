@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks {@link NewsJsonParser} against the org.json DOM path and compares their cost. */
+public class NewsJsonParserTest {
+
+    @Test
+    public void streamingParse_matchesDomParse() throws IOException {
+        byte[] page = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+
+        List<News> streamed = NewsJsonParser.parse(new ByteArrayInputStream(page));
+        List<News> dom = DomNewsParser.extractFeatureFromJson(
+                DomNewsParser.readFromStream(new ByteArrayInputStream(page)));
+
+        assertEquals(20, streamed.size());
+        assertEquals(dom.size(), streamed.size());
+        for (int i = 0; i < dom.size(); i++) {
+            assertEquals(dom.get(i).getSectionName(), streamed.get(i).getSectionName());
+            assertEquals(dom.get(i).getTitle(), streamed.get(i).getTitle());
+            assertEquals(dom.get(i).getPublicationDate(), streamed.get(i).getPublicationDate());
+            assertEquals(dom.get(i).getAuthor(), streamed.get(i).getAuthor());
+            assertEquals(dom.get(i).getUrl(), streamed.get(i).getUrl());
+        }
+    }
+
+    @Test
+    public void streamingParse_readsTheThumbnailField() throws IOException {
+        List<News> news = NewsJsonParser.parse(new ByteArrayInputStream(
+                GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE)));
+        assertEquals("https://media.guim.co.uk/9531985d5d9dc9f81818e811892f902bd23f0824/0_0_3500_2100/500.jpg",
+                news.get(0).getThumbnailUrl());
+    }
+
+    @Test
+    public void streamingParse_emitsEachArticleInOrder() throws IOException {
+        byte[] page = GuardianFixtures.scaled(50);
+        final int[] count = {0};
+        NewsJsonParser.parse(new ByteArrayInputStream(page), news -> {
+            assertTrue(news.getUrl(), news.getUrl().endsWith("-" + (count[0] / 20)));
+            count[0]++;
+        });
+        assertEquals(50, count[0]);
+    }
+
+    /** Prints time and bytes allocated per parse for both paths on 20, 200 and 1000 results. */
+    @Test
+    public void benchmark_streamingVersusDom() throws IOException {
+        for (int resultCount : new int[]{20, 200, 1000}) {
+            final byte[] page = GuardianFixtures.scaled(resultCount);
+            Benchmark.Result dom = Benchmark.measure(() -> DomNewsParser.extractFeatureFromJson(
+                    DomNewsParser.readFromStream(new ByteArrayInputStream(page))));
+            Benchmark.Result streaming = Benchmark.measure(() ->
+                    NewsJsonParser.parse(new ByteArrayInputStream(page)));
+            System.out.printf("%5d results  dom: %s  streaming: %s%n", resultCount, dom, streaming);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/** Checks {@link NewsJsonScanner} against {@link NewsJsonParser} and compares their cost. */
+public class NewsJsonScannerTest {
+
+    /** Results the app can show, around results it can't */
+    private static final String MIXED_RESULTS = "{\"response\":{\"status\":\"ok\",\"currentPage\":2,"
+            + "\"pages\":7,\"results\":["
+            + "{\"webUrl\":\"https://a\",\"webTitle\":\"Caf\\u00e9 \\\"quotes\\\" \\\\ \\/ \u20ac\","
+            + "\"sectionName\":\"World\",\"webPublicationDate\":\"2021-03-28T10:25:41Z\","
+            + "\"tags\":[{\"webTitle\":\"Ann\"},{\"webTitle\":\"Bob\"}],"
+            + "\"fields\":{\"thumbnail\":\"https://a.jpg\"}},"
+            + "42,"
+            + "{\"webTitle\":\"No URL\",\"tags\":[]},"
+            + "{\"webUrl\":\"https://b\",\"webTitle\":{\"nested\":[1,2,{\"x\":\"]}\"}]},"
+            + "\"tags\":[],\"fields\":null,\"isHosted\":false},"
+            + "[\"not\",\"an\",\"article\"],"
+            + "{\"webUrl\":\"https://c\",\"sectionName\":7,\"tags\":[\"odd\"],"
+            + "\"webPublicationDate\":null}"
+            + "]}}";
+
+    @Test
+    public void scan_matchesTheStreamingParser() throws IOException {
+        byte[] page = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        assertSame(NewsJsonParser.parsePage(new ByteArrayInputStream(page)), NewsJsonScanner.scan(page));
+
+        byte[] mixed = MIXED_RESULTS.getBytes(StandardCharsets.UTF_8);
+        assertSame(NewsJsonParser.parsePage(new ByteArrayInputStream(mixed)), NewsJsonScanner.scan(mixed));
+    }
+
+    @Test
+    public void malformedResults_areSkippedNotTheWholePage() throws IOException {
+        NewsPage page = NewsJsonScanner.scan(MIXED_RESULTS.getBytes(StandardCharsets.UTF_8));
+        List<News> news = page.getNews();
+
+        assertEquals(3, news.size());
+        assertEquals(2, page.getCurrentPage());
+        assertEquals(7, page.getPageCount());
+
+        assertEquals("Caf\u00e9 \"quotes\" \\ / \u20ac", news.get(0).getTitle());
+        assertEquals("Ann", news.get(0).getAuthor());
+        assertEquals("World", news.get(0).getSectionName());
+        assertEquals("https://a.jpg", news.get(0).getThumbnailUrl());
+        assertEquals("2021-03-28T10:25:41Z", news.get(0).getPublicationDate());
+
+        // Fields of the wrong type are left out, an empty tag list is no author
+        assertNull(news.get(1).getTitle());
+        assertEquals("", news.get(1).getAuthor());
+        assertNull(news.get(1).getThumbnailUrl());
+        assertNull(news.get(2).getSectionName());
+        assertEquals("", news.get(2).getAuthor());
+        assertEquals(NewsDates.UNKNOWN, news.get(2).getPublicationTime());
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void truncatedResponse_fails() throws IOException {
+        byte[] page = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        NewsJsonScanner.scan(Arrays.copyOf(page, page.length / 2));
+    }
+
+    @Test
+    public void emptyTags_doNotFailTheDomBaseline() {
+        List<News> news = DomNewsParser.extractFeatureFromJson("{\"response\":{\"results\":["
+                + "{\"webUrl\":\"https://a\",\"webTitle\":\"Letter\",\"sectionName\":\"Opinion\","
+                + "\"webPublicationDate\":\"2021-03-28T10:25:41Z\",\"tags\":[]},"
+                + "{\"webUrl\":\"https://b\",\"webTitle\":{}},"
+                + "{\"webUrl\":\"https://c\",\"webTitle\":\"Piece\",\"sectionName\":\"World\","
+                + "\"webPublicationDate\":\"2021-03-28T10:25:41Z\",\"tags\":[{\"webTitle\":\"Ann\"}]}"
+                + "]}}");
+
+        assertEquals(2, news.size());
+        assertEquals("", news.get(0).getAuthor());
+        assertEquals("Ann", news.get(1).getAuthor());
+    }
+
+    /**
+     * Prints the cost of reading a cached page with each parser, and of the scanner then
+     * decoding the first screen of rows as they are bound.
+     */
+    @Test
+    public void benchmark_scanVersusStreamingParse() throws IOException {
+        for (int resultCount : new int[]{20, 200, 1000}) {
+            final byte[] page = GuardianFixtures.scaled(resultCount);
+            Benchmark.Result streaming = Benchmark.measure(() ->
+                    NewsJsonParser.parsePage(new ByteArrayInputStream(page)));
+            Benchmark.Result scanned = Benchmark.measure(() -> NewsJsonScanner.scan(page));
+            Benchmark.Result firstScreen = Benchmark.measure(() -> {
+                List<News> news = NewsJsonScanner.scan(page).getNews();
+                for (int i = 0; i < 10; i++) {
+                    News article = news.get(i);
+                    article.getTitle();
+                    article.getSectionName();
+                    article.getAuthor();
+                    article.getThumbnailUrl();
+                }
+                return news;
+            });
+            System.out.printf("%5d results  streaming: %s  scan: %s  scan + 10 rows: %s  %.1fx faster%n",
+                    resultCount, streaming, scanned, firstScreen, streaming.micros / firstScreen.micros);
+        }
+    }
+
+    private static void assertSame(NewsPage expected, NewsPage actual) {
+        assertEquals(expected.getCurrentPage(), actual.getCurrentPage());
+        assertEquals(expected.getPageCount(), actual.getPageCount());
+        assertEquals(expected.getNews().size(), actual.getNews().size());
+        for (int i = 0; i < expected.getNews().size(); i++) {
+            News a = expected.getNews().get(i);
+            News b = actual.getNews().get(i);
+            assertEquals(a.getUrl(), b.getUrl());
+            assertEquals(a.getTitle(), b.getTitle());
+            assertEquals(a.getSectionName(), b.getSectionName());
+            assertEquals(a.getAuthor(), b.getAuthor());
+            assertEquals(a.getThumbnailUrl(), b.getThumbnailUrl());
+            assertEquals(a.getPublicationTime(), b.getPublicationTime());
+        }
+    }
+}
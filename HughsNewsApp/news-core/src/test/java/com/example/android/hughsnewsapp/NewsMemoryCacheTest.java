@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class NewsMemoryCacheTest {
+
+    private StubServer mServer;
+    private byte[] mPage;
+
+    /** Released by the test to let the slow responses finish */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        mPage = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        mServer = new StubServer()
+                .handle("/slow", exchange -> {
+                    try {
+                        mRelease.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                    StubServer.respond(exchange, 200, mPage);
+                });
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mServer.close();
+    }
+
+    /** Records the callbacks of one fetch */
+    private static final class RecordingCallback implements NewsFetcher.Callback {
+        final List<NewsPage> mPages = new ArrayList<>();
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        volatile boolean mSucceeded;
+
+        @Override
+        public synchronized void onPageLoaded(NewsPage page) {
+            mPages.add(page);
+        }
+
+        @Override
+        public void onFetchFinished(boolean succeeded) {
+            mSucceeded = succeeded;
+            mFinished.countDown();
+        }
+    }
+
+    @Test
+    public void concurrentFetches_shareOneRequest() throws InterruptedException {
+        NewsMemoryCache cache = new NewsMemoryCache(1024 * 1024, 60_000);
+        // Two engines, as two screens would have
+        NewsFetchEngine first = new NewsFetchEngine(2, 2, null, cache, null, Runnable::run);
+        NewsFetchEngine second = new NewsFetchEngine(2, 2, null, cache, null, Runnable::run);
+        try {
+            String url = mServer.url("/slow?q=brexit");
+            RecordingCallback a = new RecordingCallback();
+            RecordingCallback b = new RecordingCallback();
+            RecordingCallback c = new RecordingCallback();
+            first.fetch(url, false, a);
+            first.fetch(url, false, b);
+            second.fetch(url, false, c);
+            Thread.sleep(200);
+            mRelease.countDown();
+
+            for (RecordingCallback callback : new RecordingCallback[]{a, b, c}) {
+                assertTrue(callback.mFinished.await(5, TimeUnit.SECONDS));
+                assertTrue(callback.mSucceeded);
+                assertEquals(20, callback.mPages.get(0).getNews().size());
+            }
+            assertEquals(1, mServer.requests().size());
+
+            // Within the time to live the page is served again without a request
+            RecordingCallback again = new RecordingCallback();
+            second.fetch(url, false, again);
+            assertTrue(again.mFinished.await(5, TimeUnit.SECONDS));
+            List<News> shown = a.mPages.get(0).getNews();
+            List<News> shownAgain = again.mPages.get(0).getNews();
+            assertEquals(shown.size(), shownAgain.size());
+            for (int i = 0; i < shown.size(); i++) {
+                // Each screen formats articles of its own
+                assertNotSame(shown.get(i), shownAgain.get(i));
+                assertEquals(shown.get(i).getUrl(), shownAgain.get(i).getUrl());
+            }
+            assertEquals(1, mServer.requests().size());
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void get_dropsPagesPastTheirTimeToLive() throws InterruptedException {
+        NewsMemoryCache cache = new NewsMemoryCache(1024 * 1024, 20);
+        cache.put("a", page("a", 3));
+        assertNotNull(cache.get("a"));
+
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsedPagesOverTheSizeLimit() {
+        long pageBytes = NewsMemoryCache.estimateBytes(page("a", 10));
+        NewsMemoryCache cache = new NewsMemoryCache(pageBytes * 2, 60_000);
+        cache.put("a", page("a", 10));
+        cache.put("b", page("b", 10));
+        // Using a makes b the least recently used
+        assertNotNull(cache.get("a"));
+        cache.put("c", page("c", 10));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(pageBytes * 2, cache.size());
+
+        // A page bigger than the whole cache is not kept
+        cache.put("d", page("d", 30));
+        assertNull(cache.get("d"));
+        assertEquals(pageBytes * 2, cache.size());
+    }
+
+    @Test
+    public void pageTheLoaderAlreadyHandedOut_isNotTheOneHeld() {
+        NewsMemoryCache cache = new NewsMemoryCache(1024 * 1024, 60_000);
+        // As the engine returns the cached page it already delivered when the server answers 304
+        NewsPage delivered = page("a", 3);
+        NewsPage fetched = cache.fetch("u", new FetchHandle(), handle -> delivered);
+        NewsPage held = cache.get("u");
+
+        for (int i = 0; i < 3; i++) {
+            assertNotSame(delivered.getNews().get(i), fetched.getNews().get(i));
+            assertNotSame(delivered.getNews().get(i), held.getNews().get(i));
+            assertEquals(delivered.getNews().get(i).getUrl(), held.getNews().get(i).getUrl());
+        }
+    }
+
+    @Test
+    public void cancellingOneOfTwoWaiters_keepsTheSharedRequest() throws InterruptedException {
+        NewsMemoryCache cache = new NewsMemoryCache(1024 * 1024, 60_000);
+        BlockingLoader loader = new BlockingLoader();
+        FetchHandle leader = new FetchHandle();
+        FetchHandle follower = new FetchHandle();
+        AtomicReference<NewsPage> leaderResult = new AtomicReference<>();
+        AtomicReference<NewsPage> followerResult = new AtomicReference<>();
+        Thread leaderThread = start(() -> leaderResult.set(cache.fetch("u", leader, loader)));
+        assertTrue(loader.mStarted.await(5, TimeUnit.SECONDS));
+        Thread followerThread = start(() -> followerResult.set(cache.fetch("u", follower, loader)));
+        Thread.sleep(100);
+
+        follower.cancel();
+        followerThread.join(5000);
+        assertNull(followerResult.get());
+        assertFalse(loader.mShared.isCancelled());
+
+        loader.mRelease.countDown();
+        leaderThread.join(5000);
+        assertEquals(5, leaderResult.get().getNews().size());
+        assertEquals(1, loader.mLoads);
+    }
+
+    @Test
+    public void cancellingTheFirstCaller_doesNotInterruptTheRequestOthersWaitFor() throws Exception {
+        NewsMemoryCache cache = new NewsMemoryCache(1024 * 1024, 60_000);
+        BlockingLoader loader = new BlockingLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Cancelling a fetch of the engine interrupts the thread it runs on
+            FetchHandle leader = new FetchHandle();
+            leader.setFuture(executor.submit(() -> cache.fetch("u", leader, loader)));
+            assertTrue(loader.mStarted.await(5, TimeUnit.SECONDS));
+            FetchHandle follower = new FetchHandle();
+            Future<NewsPage> followerResult = executor.submit(() -> cache.fetch("u", follower, loader));
+            Thread.sleep(100);
+
+            leader.cancel();
+            assertFalse(loader.mShared.isCancelled());
+            loader.mRelease.countDown();
+            assertEquals(5, followerResult.get(5, TimeUnit.SECONDS).getNews().size());
+            assertEquals(1, loader.mLoads);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancellingTheOnlyWaiter_abortsTheSharedRequest() throws InterruptedException {
+        NewsMemoryCache cache = new NewsMemoryCache(1024 * 1024, 60_000);
+        BlockingLoader loader = new BlockingLoader();
+        FetchHandle handle = new FetchHandle();
+        AtomicReference<NewsPage> result = new AtomicReference<>(page("x", 1));
+        Thread thread = start(() -> result.set(cache.fetch("u", handle, loader)));
+        assertTrue(loader.mStarted.await(5, TimeUnit.SECONDS));
+
+        handle.cancel();
+        thread.join(5000);
+        assertTrue(loader.mShared.isCancelled());
+        assertNull(result.get());
+        assertNull(cache.get("u"));
+
+        // The next caller starts a new request
+        loader.mRelease.countDown();
+        assertEquals(5, cache.fetch("u", new FetchHandle(), loader).getNews().size());
+        assertEquals(2, loader.mLoads);
+    }
+
+    /** Loader that blocks until released or cancelled, then returns a page of five articles */
+    private static final class BlockingLoader implements NewsMemoryCache.Loader {
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        volatile FetchHandle mShared;
+        volatile int mLoads;
+
+        @Override
+        public NewsPage load(FetchHandle handle) {
+            mShared = handle;
+            mLoads++;
+            mStarted.countDown();
+            while (!handle.isCancelled()) {
+                try {
+                    if (mRelease.await(10, TimeUnit.MILLISECONDS)) {
+                        return page("u", 5);
+                    }
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static Thread start(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        return thread;
+    }
+
+    private static NewsPage page(String prefix, int count) {
+        List<News> news = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            news.add(new News("World news", prefix + " headline " + i, "2021-03-01T10:00:00Z",
+                    "", "https://www.theguardian.com/" + prefix + "/" + i));
+        }
+        return new NewsPage(news, 1, 1);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NewsPagerTest {
+
+    private static final String BASE_URL = "https://content.guardianapis.com/search?q=brexit";
+
+    /** Records fetches so the test decides when and how each one completes */
+    private static final class FakeFetcher implements NewsFetcher {
+        final Map<String, Callback> mPending = new LinkedHashMap<>();
+        final Map<String, FetchHandle> mHandles = new LinkedHashMap<>();
+        final List<String> mRequested = new ArrayList<>();
+
+        @Override
+        public FetchHandle fetch(String url, boolean useCache, Callback callback) {
+            FetchHandle handle = new FetchHandle();
+            mRequested.add(url);
+            mPending.put(url, callback);
+            mHandles.put(url, handle);
+            return handle;
+        }
+
+        @Override
+        public FetchHandle readCached(String url, Callback callback) {
+            throw new UnsupportedOperationException("Pages after the first are never read from the cache");
+        }
+
+        void complete(String url, int page) {
+            Callback callback = mPending.remove(url);
+            if (mHandles.get(url).isCancelled()) {
+                return;
+            }
+            List<News> news = Collections.singletonList(
+                    new News("Politics", "Page " + page, "2021-03-28T10:00:00Z", "", url));
+            callback.onPageLoaded(new NewsPage(news, page, 4));
+            callback.onFetchFinished(true);
+        }
+
+        void fail(String url) {
+            mPending.remove(url).onFetchFinished(false);
+        }
+    }
+
+    private FakeFetcher mFetcher;
+    private NewsPager mPager;
+    private final List<Integer> mDelivered = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mFetcher = new FakeFetcher();
+        mPager = new NewsPager(BASE_URL, 2, mFetcher, page -> mDelivered.add(page.getCurrentPage()));
+        mPager.reset(new NewsPage(new ArrayList<>(), 1, 4));
+    }
+
+    @Test
+    public void scrollingAwayFromEnd_requestsNothing() {
+        mPager.onScrolled(5, 20, 5);
+        assertTrue(mFetcher.mRequested.isEmpty());
+    }
+
+    @Test
+    public void pagesCompletingOutOfOrder_areDeliveredInOrder() {
+        mPager.onScrolled(19, 20, 5);
+
+        mFetcher.complete(mPager.pageUrl(3), 3);
+        assertTrue("page 3 must wait for page 2", mDelivered.isEmpty());
+        mFetcher.complete(mPager.pageUrl(2), 2);
+        assertEquals(Arrays.asList(2, 3), mDelivered);
+
+        mPager.onScrolled(39, 40, 5);
+        mFetcher.complete(mPager.pageUrl(4), 4);
+        assertEquals(Arrays.asList(2, 3, 4), mDelivered);
+        assertTrue(mPager.isComplete());
+
+        // Nothing after the last page
+        mPager.onScrolled(59, 60, 5);
+        assertEquals(3, mFetcher.mRequested.size());
+    }
+
+    @Test
+    public void repeatedScrolls_neverRequestAPageTwiceOrExceedTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            mPager.onScrolled(19, 20, 5);
+        }
+        assertEquals(Arrays.asList(mPager.pageUrl(2), mPager.pageUrl(3)), mFetcher.mRequested);
+    }
+
+    @Test
+    public void failedPage_isRequestedAgainOnNextScroll() {
+        mPager.onScrolled(19, 20, 5);
+        mFetcher.fail(mPager.pageUrl(2));
+
+        mPager.onScrolled(19, 20, 5);
+        assertEquals(3, mFetcher.mRequested.size());
+        assertEquals(mPager.pageUrl(2), mFetcher.mRequested.get(2));
+    }
+
+    @Test
+    public void cancel_abortsPagesInFlight() {
+        mPager.onScrolled(19, 20, 5);
+        mPager.cancel();
+
+        assertTrue(mFetcher.mHandles.get(mPager.pageUrl(2)).isCancelled());
+        assertTrue(mFetcher.mHandles.get(mPager.pageUrl(3)).isCancelled());
+        mPager.onScrolled(19, 20, 5);
+        assertEquals(2, mFetcher.mRequested.size());
+        assertFalse(mPager.isComplete());
+    }
+}
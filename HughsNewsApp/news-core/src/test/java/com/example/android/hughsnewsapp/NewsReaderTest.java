@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.google.gson.stream.JsonReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Checks fetching the text of articles ahead with {@link NewsReader} against a local server. */
+public class NewsReaderTest {
+
+    /** Size of the text of every article the server sends */
+    private static final int BODY_TEXT_LENGTH = 20_000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+    private NewsDiskCache mStore;
+    private NewsReader mReader;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubServer().handle("/content/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/missing")) {
+                StubServer.respond(exchange, 404, null);
+                return;
+            }
+            StubServer.respond(exchange, 200, contentResponse(path).getBytes(StandardCharsets.UTF_8));
+        });
+        mStore = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, 60_000);
+        mReader = new NewsReader(mStore, mServer.url("/content/"), "key");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    /** A content API response whose text names the path it was asked for */
+    private static String contentResponse(String path) {
+        StringBuilder bodyText = new StringBuilder(path);
+        while (bodyText.length() < BODY_TEXT_LENGTH) {
+            bodyText.append(" The prime minister said the deal was done.");
+        }
+        return "{\"response\":{\"status\":\"ok\",\"total\":1,\"content\":{\"id\":\"" + path
+                + "\",\"webTitle\":\"Title\",\"fields\":{\"bodyText\":\"" + bodyText + "\"}}}}";
+    }
+
+    private static News article(String id) {
+        return new News("Politics", "Title " + id, "2021-03-28T10:00:00Z", "Author",
+                "https://www.theguardian.com/politics/2021/mar/28/" + id);
+    }
+
+    private static List<News> articles(int count) {
+        List<News> articles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            articles.add(article("story-" + i));
+        }
+        return articles;
+    }
+
+    @Test
+    public void contentUrl_isTheArticlePathOnTheContentApi() {
+        NewsReader reader = new NewsReader(mStore);
+        assertEquals("https://content.guardianapis.com/politics/2021/mar/28/story"
+                        + "?show-fields=bodyText&api-key=test",
+                reader.contentUrl("https://www.theguardian.com/politics/2021/mar/28/story"));
+        assertNull(reader.contentUrl("https://example.com/politics/2021/mar/28/story"));
+        assertNull(reader.contentUrl("https://www.theguardian.com/"));
+        assertNull(reader.contentUrl(null));
+    }
+
+    @Test
+    public void prefetch_storesTheTextOfTheFirstArticles() {
+        List<News> articles = articles(5);
+
+        long bytes = mReader.prefetch(articles, 3, 1024 * 1024);
+
+        assertTrue(bytes > 3 * BODY_TEXT_LENGTH);
+        assertEquals(3, mServer.requests().size());
+        for (int i = 0; i < 3; i++) {
+            String url = articles.get(i).getUrl();
+            assertTrue(mReader.contains(url));
+            assertTrue(mReader.getBodyText(url).startsWith("/content/politics/2021/mar/28/story-" + i + " "));
+        }
+        assertFalse(mReader.contains(articles.get(3).getUrl()));
+        assertNull(mReader.getBodyText(articles.get(3).getUrl()));
+    }
+
+    @Test
+    public void prefetch_skipsTheArticlesAlreadyStored() {
+        List<News> articles = articles(5);
+        mReader.prefetch(articles, 3, 1024 * 1024);
+
+        // Only the next two are fetched, the first three still count towards the five
+        mReader.prefetch(articles, 5, 1024 * 1024);
+
+        assertEquals(5, mServer.requests().size());
+        assertEquals(0, mReader.prefetch(articles, 5, 1024 * 1024));
+    }
+
+    @Test
+    public void prefetch_stopsOnceTheBudgetIsSpent() {
+        List<News> articles = articles(10);
+
+        long budget = 2 * BODY_TEXT_LENGTH + BODY_TEXT_LENGTH / 2;
+        long bytes = mReader.prefetch(articles, 10, budget);
+
+        // The third article goes over the budget, and no more are fetched after it
+        assertEquals(3, mServer.requests().size());
+        assertTrue(bytes > budget);
+        assertTrue(bytes < 4 * BODY_TEXT_LENGTH);
+        assertTrue(mReader.contains(articles.get(2).getUrl()));
+        assertFalse(mReader.contains(articles.get(3).getUrl()));
+    }
+
+    @Test
+    public void prefetch_skipsFailedAndOtherArticles() {
+        List<News> articles = Arrays.asList(article("missing"),
+                new News("Politics", "Elsewhere", "2021-03-28T10:00:00Z", "Author", "https://example.com/a"),
+                article("story"));
+
+        mReader.prefetch(articles, 2, 1024 * 1024);
+
+        assertEquals(2, mServer.requests().size());
+        assertFalse(mReader.contains(articles.get(0).getUrl()));
+        assertTrue(mReader.contains(articles.get(2).getUrl()));
+    }
+
+    @Test
+    public void readBodyText_findsTheFieldAmongOthers() throws IOException {
+        assertEquals("Text", NewsReader.readBodyText(new JsonReader(new StringReader(
+                "{\"response\":{\"status\":\"ok\",\"content\":{\"fields\":{\"headline\":\"H\","
+                        + "\"bodyText\":\"Text\"},\"tags\":[]}}}"))));
+        assertNull(NewsReader.readBodyText(new JsonReader(new StringReader(
+                "{\"response\":{\"status\":\"error\",\"message\":\"The requested resource could not be found\"}}"))));
+        assertNull(NewsReader.readBodyText(new JsonReader(new StringReader(
+                "{\"response\":{\"content\":{\"fields\":{\"bodyText\":\"\"}}}}"))));
+        assertNull(NewsReader.readBodyText(new JsonReader(new StringReader(
+                "{\"response\":{\"content\":[]}}"))));
+    }
+
+    /** Prints the time from a tap to having the text of an article fetched ahead to show. */
+    @Test
+    public void benchmark_readStoredArticle() {
+        final List<News> articles = articles(10);
+        mReader.prefetch(articles, 10, 1024 * 1024);
+        final int[] next = {0};
+        Benchmark.Result result = Benchmark.measure(() -> {
+            String url = articles.get(next[0]++ % articles.size()).getUrl();
+            return mReader.contains(url) ? mReader.getBodyText(url) : null;
+        });
+        System.out.printf("%d char article  read from storage: %s%n", BODY_TEXT_LENGTH, result);
+    }
+}
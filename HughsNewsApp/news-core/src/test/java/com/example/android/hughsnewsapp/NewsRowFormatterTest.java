@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NewsRowFormatterTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    /** 2021-03-28T10:25:41Z */
+    private static final long NOW = NewsDates.parseIso("2021-03-28T10:25:41Z");
+
+    private static NewsRowFormatter formatter(boolean showAuthors) {
+        return new NewsRowFormatter("Just now", "%1$dm ago", "%1$dh ago", "%1$dd ago",
+                "Letter to Editor", showAuthors, Locale.UK, TimeZone.getTimeZone("UTC"));
+    }
+
+    private static News publishedAt(long time, String author) {
+        return new News("Politics", "Title", time, author, "https://a/" + time, null);
+    }
+
+    @Test
+    public void relativeTime_isFormattedFromTheAge() {
+        NewsRowFormatter formatter = formatter(true);
+        long old = NOW - 10 * DAY;
+        List<News> articles = Arrays.asList(publishedAt(NOW - 30 * 1000, "Ann"),
+                publishedAt(NOW - 5 * MINUTE, "Ann"), publishedAt(NOW - 3 * HOUR - MINUTE, "Ann"),
+                publishedAt(NOW - 2 * DAY, "Ann"), publishedAt(old, "Ann"),
+                publishedAt(NOW + 10 * 1000, "Ann"), publishedAt(NewsDates.UNKNOWN, "Ann"));
+        formatter.prepare(articles, NOW);
+
+        DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, Locale.UK);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        assertEquals("Just now", text(articles.get(0)));
+        assertEquals("5m ago", text(articles.get(1)));
+        assertEquals("3h ago", text(articles.get(2)));
+        assertEquals("2d ago", text(articles.get(3)));
+        assertEquals(dateFormat.format(new Date(old)), text(articles.get(4)));
+        // Ahead of the device clock
+        assertEquals("Just now", text(articles.get(5)));
+        assertEquals("", text(articles.get(6)));
+    }
+
+    @Test
+    public void missingAuthor_showsTheFallbackUnlessAuthorsAreHidden() {
+        News withAuthor = publishedAt(NOW, "Ann");
+        News withoutAuthor = publishedAt(NOW, "");
+
+        NewsRowFormatter showing = formatter(true);
+        assertEquals("Ann", showing.rowFor(withAuthor, NOW).mAuthor);
+        assertEquals("Letter to Editor", showing.rowFor(withoutAuthor, NOW).mAuthor);
+
+        NewsRowFormatter hiding = formatter(false);
+        assertEquals("", hiding.rowFor(withAuthor, NOW).mAuthor);
+        assertEquals("", hiding.rowFor(withoutAuthor, NOW).mAuthor);
+    }
+
+    @Test
+    public void sectionLabel_isCutShortAtAWord() {
+        assertEquals("Politics", NewsRowFormatter.sectionLabel("Politics"));
+        assertEquals("", NewsRowFormatter.sectionLabel(null));
+
+        String label = NewsRowFormatter.sectionLabel("Australia news and opinion");
+        assertEquals("Australia news and\u2026", label);
+        assertTrue(label.length() <= Constants.SECTION_LABEL_MAX_LENGTH);
+
+        label = NewsRowFormatter.sectionLabel("Supercalifragilisticexpialidocious");
+        assertEquals(Constants.SECTION_LABEL_MAX_LENGTH, label.length());
+        assertTrue(label.endsWith("\u2026"));
+    }
+
+    @Test
+    public void rows_areOnlyMadeAgainByAnotherFormatter() {
+        News news = publishedAt(NOW - 5 * MINUTE, "Ann");
+        NewsRowFormatter formatter = formatter(true);
+        NewsRow row = formatter.rowFor(news, NOW);
+
+        assertSame(row, formatter.rowFor(news, NOW + HOUR));
+        NewsRowFormatter other = formatter(true);
+        assertTrue(other.sameAs(formatter));
+        assertNotSame(row, other.rowFor(news, NOW));
+        assertTrue(!formatter(false).sameAs(formatter));
+    }
+
+    @Test
+    public void refresh_onlyChangesTheRowsThatWentOutOfDate() {
+        NewsRowFormatter formatter = formatter(true);
+        List<News> articles = Arrays.asList(publishedAt(NOW - 5 * MINUTE - 30 * 1000, "Ann"),
+                publishedAt(NOW - 5 * MINUTE - 20 * 1000, "Bob"), publishedAt(NOW - 3 * HOUR, "Ann"));
+        formatter.prepare(articles, NOW);
+        CharSequence hours = text(articles.get(2));
+
+        assertEquals(0, formatter.refreshRelativeTimes(articles, NOW + 10 * 1000));
+        assertEquals(2, formatter.refreshRelativeTimes(articles, NOW + 45 * 1000));
+        assertEquals("6m ago", text(articles.get(0)));
+        // Rows showing the same time share its text
+        assertSame(text(articles.get(0)), text(articles.get(1)));
+        assertSame(hours, text(articles.get(2)));
+    }
+
+    /** Prints the cost of refreshing a long list once a minute, and what it allocates. */
+    @Test
+    public void benchmark_refreshRelativeTimes() {
+        final NewsRowFormatter formatter = formatter(true);
+        final List<News> articles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            articles.add(publishedAt(NOW - i * 7 * MINUTE, "Ann"));
+        }
+        formatter.prepare(articles, NOW);
+        final long[] now = {NOW};
+        Benchmark.Result result = Benchmark.measure(() -> {
+            now[0] += MINUTE;
+            return formatter.refreshRelativeTimes(articles, now[0]);
+        });
+        System.out.printf("1000 rows  refresh once a minute: %s%n", result);
+    }
+
+    private static CharSequence text(News news) {
+        return news.getRow().getRelativeTime();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NewsSearchIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static News news(String url, String title, String section, String author, String date) {
+        return new News(section, title, date, author, url);
+    }
+
+    private static List<String> urls(List<News> articles) {
+        List<String> urls = new ArrayList<>();
+        for (News news : articles) {
+            urls.add(news.getUrl());
+        }
+        return urls;
+    }
+
+    private static NewsSearchIndex sampleIndex() {
+        NewsSearchIndex index = new NewsSearchIndex();
+        index.addAll(Arrays.asList(
+                news("a", "Brexit: EU and UK agree Northern Ireland deal", "Politics", "Lisa O'Carroll", "2021-03-26T10:00:00Z"),
+                news("b", "Fishing industry counts the cost of Brexit", "Business", "Daniel Boffey", "2021-03-27T10:00:00Z"),
+                news("c", "Breakfast briefing", "World news", "Brenda Smith", "2021-03-28T10:00:00Z"),
+                news("d", "Budget 2021: what it means for you", "Money", "Patrick Collinson", "2021-03-25T10:00:00Z")));
+        return index;
+    }
+
+    @Test
+    public void prefix_matchesEveryWordStartingWithIt() {
+        // "bre" is the start of brexit, breakfast and brenda
+        assertEquals(Arrays.asList("c", "b", "a"), urls(sampleIndex().search("bre", 10)));
+    }
+
+    @Test
+    public void titleAndExactWord_rankAboveOtherFieldsAndPrefixes() {
+        NewsSearchIndex index = sampleIndex();
+        index.add(news("e", "Interview", "Politics", "Brexit Watcher", "2021-03-29T10:00:00Z"));
+        index.add(news("f", "The BRE report", "Business", "", "2021-03-01T10:00:00Z"));
+
+        // A title beats an author even for an older article; equal scores go newest first
+        assertEquals(Arrays.asList("b", "a", "e"), urls(index.search("brexit", 10)));
+        // An exact word beats a prefix of a longer one
+        assertEquals("f", index.search("bre", 10).get(0).getUrl());
+    }
+
+    @Test
+    public void everyWord_mustMatch() {
+        NewsSearchIndex index = sampleIndex();
+
+        assertEquals(Arrays.asList("a"), urls(index.search("Brexit northern", 10)));
+        assertEquals(Arrays.asList("a"), urls(index.search("o'carroll", 10)));
+        assertTrue(index.search("brexit budget", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void sameUrl_replacesTheIndexedArticle() {
+        NewsSearchIndex index = sampleIndex();
+        index.add(news("d", "Spring statement: what it means for you", "Money", "Patrick Collinson", "2021-03-25T10:00:00Z"));
+
+        assertEquals(4, index.size());
+        assertTrue(index.search("budget", 10).isEmpty());
+        assertEquals(Arrays.asList("d"), urls(index.search("spring", 10)));
+    }
+
+    @Test
+    public void cachedPages_areIndexedAsTheyAreRead() throws IOException {
+        NewsDiskCache cache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, 60_000);
+        cache.put("https://example.com/search", null, null, GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE));
+        NewsSearchIndex index = new NewsSearchIndex();
+        QueryUtils.setSearchIndex(index);
+        try {
+            QueryUtils.indexCachedPages(cache);
+        } finally {
+            QueryUtils.setSearchIndex(null);
+        }
+
+        assertEquals(20, index.size());
+        assertTrue(index.search("brexit", 20).size() > 0);
+    }
+
+    /** Generates a corpus of articles drawn from a fixed vocabulary. */
+    private static List<News> corpus(int size) {
+        Random random = new Random(42);
+        String[] vocabulary = new String[3000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            // Pronounceable made-up words, 4 to 10 letters long
+            StringBuilder word = new StringBuilder();
+            int length = 4 + random.nextInt(7);
+            for (int j = 0; j < length; j++) {
+                word.append(j % 2 == 0 ? "bcdfghklmnprstvw".charAt(random.nextInt(16))
+                        : "aeiou".charAt(random.nextInt(5)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        String[] sections = {"Politics", "World news", "UK news", "Opinion", "Business", "Sport",
+                "Environment", "Society", "Money", "Culture"};
+        List<News> articles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 6 + random.nextInt(8);
+            for (int j = 0; j < words; j++) {
+                // Skewed towards the start of the vocabulary, as word frequencies are
+                int index = (int) (vocabulary.length * Math.pow(random.nextDouble(), 3));
+                title.append(j == 0 ? "" : " ").append(vocabulary[index]);
+            }
+            String author = vocabulary[random.nextInt(300)] + " " + vocabulary[random.nextInt(300)];
+            String date = String.format("2021-%02d-%02dT%02d:00:00Z", 1 + random.nextInt(12),
+                    1 + random.nextInt(28), random.nextInt(24));
+            articles.add(news("https://www.theguardian.com/" + i, title.toString(),
+                    sections[random.nextInt(sections.length)], author, date));
+        }
+        return articles;
+    }
+
+    /** Prints the index build time and query latencies on generated corpora of 10k and 50k articles. */
+    @Test
+    public void benchmark_buildAndQuery() {
+        for (int size : new int[]{10_000, 50_000}) {
+            final List<News> articles = corpus(size);
+            Benchmark.Result build = Benchmark.measure(2, 5, () -> {
+                NewsSearchIndex index = new NewsSearchIndex();
+                index.addAll(articles);
+                return index;
+            });
+            final NewsSearchIndex index = new NewsSearchIndex();
+            index.addAll(articles);
+            System.out.printf("%6d articles, %d terms  build: %s%n", size, index.termCount(), build);
+
+            // A frequent word, a short prefix, a rare word and a two word query
+            String rare = NewsSearchIndex.tokenize(articles.get(size - 1).getTitle()).get(0);
+            String[] queries = {articles.get(0).getSectionName(), "ba", rare,
+                    NewsSearchIndex.tokenize(articles.get(7).getTitle()).get(0) + " "
+                            + articles.get(7).getSectionName().substring(0, 3)};
+            for (final String query : queries) {
+                final AtomicReference<List<News>> results = new AtomicReference<>();
+                Benchmark.Result search = Benchmark.measure(20, 100, () -> {
+                    results.set(index.search(query, 200));
+                    return results.get();
+                });
+                System.out.printf("%6d articles  %-20s %5d hits  %s%n", size, "\"" + query + "\"",
+                        results.get().size(), search);
+                assertTrue(query, !results.get().isEmpty());
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NewsSnapshotTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private NewsSnapshot newSnapshot() throws IOException {
+        return new NewsSnapshot(new File(mFolder.newFolder(), "snapshot.bin"));
+    }
+
+    @Test
+    public void write_thenRead_givesBackTheArticles() throws IOException {
+        List<News> articles = Arrays.asList(
+                new News("Politics", "Brexit deal agreed", "2021-03-28T10:25:41Z", "Jane Doe",
+                        "https://www.theguardian.com/politics/1",
+                        "https://media.guim.co.uk/1/500.jpg"),
+                new News("Opinion", "Letters: on Brexit \u2013 \u00fcn\u00efc\u00f6d\u00e9",
+                        "2021-03-27T08:00:00Z", "", "https://www.theguardian.com/opinion/2"),
+                new News(null, "No section or date", null, "Jane Doe", null));
+        NewsSnapshot snapshot = newSnapshot();
+        snapshot.write(articles);
+
+        List<News> read = snapshot.read();
+        assertEquals(articles.size(), read.size());
+        for (int i = 0; i < articles.size(); i++) {
+            News expected = articles.get(i);
+            News actual = read.get(i);
+            assertEquals(expected.getSectionName(), actual.getSectionName());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getPublicationTime(), actual.getPublicationTime());
+            assertEquals(expected.getAuthor(), actual.getAuthor());
+            assertEquals(expected.getUrl(), actual.getUrl());
+            assertEquals(expected.getThumbnailUrl(), actual.getThumbnailUrl());
+        }
+        assertEquals(NewsDates.UNKNOWN, read.get(2).getPublicationTime());
+    }
+
+    @Test
+    public void write_storesEachDistinctStringOnce() throws IOException {
+        List<News> articles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            articles.add(new News("Politics", "Headline " + i, "2021-03-28T10:25:41Z",
+                    "Jane Doe", "https://www.theguardian.com/politics/" + i));
+        }
+        File file = new File(mFolder.newFolder(), "snapshot.bin");
+        new NewsSnapshot(file).write(articles);
+
+        long strings = "Politics".length() + "Jane Doe".length() + 4 * 2;
+        for (News news : articles) {
+            strings += news.getTitle().length() + news.getUrl().length() + 4 * 2;
+        }
+        // Four strings per article plus the thumbnail, which none has
+        assertEquals(16 + strings + 100 * (5 * 4 + 8), file.length());
+    }
+
+    @Test
+    public void read_withoutASnapshot_returnsNull() throws IOException {
+        assertNull(newSnapshot().read());
+    }
+
+    @Test
+    public void read_damagedSnapshot_returnsNull() throws IOException {
+        File file = new File(mFolder.newFolder(), "snapshot.bin");
+        NewsSnapshot snapshot = new NewsSnapshot(file);
+        snapshot.write(NewsJsonParser.parse(new ByteArrayInputStream(GuardianFixtures.scaled(20))));
+
+        // Cut short, as a write interrupted without the rename would have left it
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        assertNull(snapshot.read());
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("{\"response\":{}}".getBytes(StandardCharsets.UTF_8));
+        }
+        assertNull(snapshot.read());
+    }
+
+    @Test
+    public void write_replacesThePreviousSnapshotWhole() throws IOException {
+        File file = new File(mFolder.newFolder(), "snapshot.bin");
+        NewsSnapshot snapshot = new NewsSnapshot(file);
+        snapshot.write(NewsJsonParser.parse(new ByteArrayInputStream(GuardianFixtures.scaled(50))));
+        // A temporary file left behind by a crash is simply overwritten
+        assertTrue(new File(file.getPath() + ".tmp").createNewFile());
+
+        snapshot.write(NewsJsonParser.parse(new ByteArrayInputStream(GuardianFixtures.scaled(10))));
+        assertEquals(10, snapshot.read().size());
+        assertEquals(1, file.getParentFile().list().length);
+    }
+
+    /** Compares a cold start from the snapshot with re-parsing the cached JSON response. */
+    @Test
+    public void benchmark_snapshotVersusCachedJson() throws IOException {
+        for (int resultCount : new int[]{20, 100, 200, 1000}) {
+            byte[] json = GuardianFixtures.scaled(resultCount);
+            List<News> articles = NewsJsonParser.parse(new ByteArrayInputStream(json));
+            final NewsSnapshot snapshot = newSnapshot();
+            snapshot.write(articles);
+            final NewsDiskCache cache = new NewsDiskCache(mFolder.newFolder(), 16 * 1024 * 1024, 60_000);
+            final String url = "https://content.guardianapis.com/search?q=brexit";
+            cache.put(url, null, null, json);
+
+            assertEquals(resultCount, snapshot.read().size());
+            assertEquals(resultCount, QueryUtils.readCachedPage(cache, url).getNews().size());
+            Benchmark.Result fromSnapshot = Benchmark.measure(snapshot::read);
+            Benchmark.Result fromJson = Benchmark.measure(() -> QueryUtils.readCachedPage(cache, url));
+            System.out.printf("%5d articles  snapshot %s  cached JSON %s  %.1fx faster%n",
+                    resultCount, fromSnapshot, fromJson, fromJson.micros / fromSnapshot.micros);
+        }
+    }
+}
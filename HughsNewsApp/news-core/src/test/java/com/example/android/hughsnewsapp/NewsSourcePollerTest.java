@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Runs {@link NewsSourcePoller} against a local server answering with the recorded feeds. */
+public class NewsSourcePollerTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private StubServer mServer;
+
+    /** Stands in for the main thread */
+    private ExecutorService mMainThread;
+
+    /** Every timeline handed over, in order */
+    private final List<List<News>> mTimelines = new CopyOnWriteArrayList<>();
+
+    private NewsSourcePoller mPoller;
+
+    @Before
+    public void setUp() throws IOException {
+        mMainThread = Executors.newSingleThreadExecutor();
+        mServer = new StubServer();
+        serveFixture("/guardian", GuardianFixtures.BREXIT_PAGE);
+        serveFixture("/rss", GuardianFixtures.RSS_FEED);
+        serveFixture("/atom", GuardianFixtures.ATOM_FEED);
+        serveFixture("/newsapi", GuardianFixtures.NEWS_API_PAGE);
+    }
+
+    @After
+    public void tearDown() {
+        if (mPoller != null) {
+            mPoller.stop();
+        }
+        mServer.close();
+        mMainThread.shutdownNow();
+    }
+
+    /** Answer requests for the path with the named fixture file, or 304 if the client has it. */
+    private void serveFixture(String path, final String fixture) throws IOException {
+        final byte[] body = GuardianFixtures.load(fixture);
+        final String eTag = "\"" + fixture + "\"";
+        mServer.handle(path, exchange -> {
+            if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                StubServer.respond(exchange, 304, null);
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", eTag);
+            StubServer.respond(exchange, 200, body);
+        });
+    }
+
+    private NewsSourcePoller poller(List<NewsSource> sources, int threads, int maxPerHost) {
+        mPoller = new NewsSourcePoller(sources, threads, maxPerHost, mMainThread, mTimelines::add);
+        return mPoller;
+    }
+
+    /** Wait until every source has been polled the given number of times. */
+    private static void awaitPolls(NewsSourcePoller poller, int sources, int polls) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        for (int i = 0; i < sources; i++) {
+            while (poller.getPollCount(i) < polls) {
+                assertTrue("source " + i + " not polled", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    public void sourcesOfEachKind_areMergedNewestFirst() throws Exception {
+        List<NewsSource> sources = new ArrayList<>();
+        sources.add(new NewsSource("Guardian", mServer.url("/guardian"), NewsFeedParser.GUARDIAN, HOUR));
+        sources.add(new NewsSource("RSS", mServer.url("/rss"), NewsFeedParser.XML, HOUR));
+        sources.add(new NewsSource("Atom", mServer.url("/atom"), NewsFeedParser.XML, HOUR));
+        sources.add(new NewsSource("News API", mServer.url("/newsapi"), NewsFeedParser.NEWS_API, HOUR));
+        NewsSourcePoller poller = poller(sources, 2, 2);
+
+        poller.start();
+        awaitPolls(poller, sources.size(), 1);
+        // Lets the last change be handed over
+        mMainThread.submit(() -> { }).get();
+
+        List<News> timeline = poller.getTimeline();
+        assertEquals(20 + 3 + 2 + 2, timeline.size());
+        assertSame(timeline, mTimelines.get(mTimelines.size() - 1));
+        for (int i = 1; i < timeline.size(); i++) {
+            assertTrue(NewsFeed.NEWEST_FIRST.compare(timeline.get(i - 1), timeline.get(i)) <= 0);
+        }
+        // The News API headlines are the newest, the RSS item without a date goes last
+        assertEquals("BBC News", timeline.get(0).getSectionName());
+        assertEquals(NewsDates.UNKNOWN, timeline.get(timeline.size() - 1).getPublicationTime());
+    }
+
+    @Test
+    public void eachSource_isPolledConditionallyAtItsOwnInterval() throws Exception {
+        List<NewsSource> sources = new ArrayList<>();
+        sources.add(new NewsSource("Often", mServer.url("/rss"), NewsFeedParser.XML, 50));
+        sources.add(new NewsSource("Seldom", mServer.url("/atom"), NewsFeedParser.XML, HOUR));
+        NewsSourcePoller poller = poller(sources, 2, 2);
+
+        poller.start();
+        // The first poll of the second source is a little later, to spread them out
+        awaitPolls(poller, 2, 1);
+        awaitPolls(poller, 1, 5);
+        mMainThread.submit(() -> { }).get();
+
+        assertEquals(1, poller.getPollCount(1));
+        // Only the first answer of each source had a body, the rest were not modified
+        assertTrue("timelines: " + mTimelines.size(), mTimelines.size() <= 2);
+        assertEquals(3 + 2, poller.getTimeline().size());
+        int conditional = 0;
+        for (HttpExchange exchange : mServer.requests()) {
+            if (exchange.getRequestHeaders().getFirst("If-None-Match") != null) {
+                conditional++;
+            }
+        }
+        assertTrue("conditional requests: " + conditional, conditional >= 4);
+    }
+
+    /**
+     * Prints how long it takes to start polling 300 sources on one host, and to poll each of them
+     * once, with at most 4 requests in flight to the host.
+     */
+    @Test
+    public void hundredsOfSources_startAtOnceAndKeepToTheHostLimit() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final byte[] body = GuardianFixtures.load(GuardianFixtures.RSS_FEED);
+        mServer.handle("/slow", exchange -> {
+            int now = inFlight.incrementAndGet();
+            while (true) {
+                int max = maxInFlight.get();
+                if (now <= max || maxInFlight.compareAndSet(max, now)) {
+                    break;
+                }
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            StubServer.respond(exchange, 200, body);
+        });
+        List<NewsSource> sources = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            sources.add(new NewsSource("Source " + i, mServer.url("/slow/" + i), NewsFeedParser.XML, HOUR));
+        }
+        NewsSourcePoller poller = poller(sources, 8, 4);
+
+        long start = System.nanoTime();
+        poller.start();
+        long startMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        awaitPolls(poller, sources.size(), 1);
+        long allMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        mMainThread.submit(() -> { }).get();
+
+        System.out.printf("300 sources  start: %d ms  every source polled: %d ms  max in flight: %d  "
+                + "timelines handed over: %d%n", startMillis, allMillis, maxInFlight.get(), mTimelines.size());
+        assertTrue("start took " + startMillis + " ms", startMillis < 100);
+        assertTrue("in flight: " + maxInFlight.get(), maxInFlight.get() <= 4);
+        // Every source has the same items, so they appear once
+        assertEquals(3, poller.getTimeline().size());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NewsSpillListTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /** Publication time of the newest article made */
+    private static final long NEWEST = 1_616_927_141_000L;
+
+    /** Return the article with the given number, published a minute after the one before it. */
+    private static News article(int number) {
+        return new News("Politics", "Article " + number, NEWEST - number * 60_000L, "Jane Doe",
+                "https://www.theguardian.com/" + number, null);
+    }
+
+    private static NewsPage page(int first, int count) {
+        List<News> articles = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            articles.add(article(i));
+        }
+        return new NewsPage(articles, 1, 1);
+    }
+
+    private static List<String> urls(List<News> articles) {
+        List<String> urls = new ArrayList<>();
+        for (News news : articles) {
+            urls.add(news.getUrl());
+        }
+        return urls;
+    }
+
+    @Test
+    public void randomEdits_matchThoseOfAnArrayList() throws IOException {
+        // The smallest budget, so nearly every chunk is spilled and read back
+        NewsSpillStore store = new NewsSpillStore(mFolder.newFolder(), 0);
+        NewsSpillList list = new NewsSpillList(store);
+        List<News> expected = new ArrayList<>();
+        Random random = new Random(25);
+        for (int i = 0; i < 20_000; i++) {
+            News news = article(i);
+            switch (random.nextInt(6)) {
+                case 0:
+                    list.add(0, news);
+                    expected.add(0, news);
+                    break;
+                case 1:
+                    int index = random.nextInt(expected.size() + 1);
+                    list.add(index, news);
+                    expected.add(index, news);
+                    break;
+                case 2:
+                    if (!expected.isEmpty()) {
+                        index = random.nextInt(expected.size());
+                        assertEquals(expected.remove(index).getUrl(), list.remove(index).getUrl());
+                    }
+                    break;
+                case 3:
+                    if (!expected.isEmpty()) {
+                        index = random.nextInt(expected.size());
+                        assertEquals(expected.set(index, news).getUrl(), list.set(index, news).getUrl());
+                    }
+                    break;
+                default:
+                    list.add(news);
+                    expected.add(news);
+                    break;
+            }
+            assertTrue(store.getResidentArticles() <= store.getMaxResidentArticles());
+        }
+        assertEquals(urls(expected), urls(list));
+        assertTrue(store.getPageIns() > 0);
+
+        list.clear();
+        assertEquals(0, list.size());
+        assertEquals(0, store.getResidentArticles());
+        assertEquals(0, mFolder.getRoot().listFiles()[0].list().length);
+    }
+
+    /**
+     * Pushes 100k articles through a feed of two queries on a 1 MB budget, a page at a time, and
+     * prints what was spilled and read back. The articles in memory never exceed the budget, and
+     * every article reads back as it was.
+     */
+    @Test
+    public void hundredThousandArticles_keepTheResidentSetBounded() throws IOException {
+        NewsSpillStore store = new NewsSpillStore(mFolder.newFolder(), 1024 * 1024);
+        int maxResident = store.getMaxResidentArticles();
+        NewsFeed feed = new NewsFeed(2, store);
+        int count = 100_000;
+        int peak = 0;
+        long start = System.nanoTime();
+        for (int first = 0; first < count; first += 50) {
+            feed.appendPage(first / 50 % 2, page(first, 50));
+            peak = Math.max(peak, store.getResidentArticles());
+        }
+        long appended = System.nanoTime();
+
+        List<News> articles = feed.getArticles();
+        assertEquals(count, articles.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("Article " + i, articles.get(i).getTitle());
+            peak = Math.max(peak, store.getResidentArticles());
+        }
+        Random random = new Random(25);
+        for (int i = 0; i < 1000; i++) {
+            int index = random.nextInt(count);
+            assertEquals(article(index).getUrl(), articles.get(index).getUrl());
+            peak = Math.max(peak, store.getResidentArticles());
+        }
+
+        // An article published among those already merged merges the queries again, reading
+        // them in order
+        News late = new News("Politics", "Late article", NEWEST - 50_000 * 60_000L - 30_000, "Jane Doe",
+                "https://www.theguardian.com/late", null);
+        feed.appendPage(1, new NewsPage(new ArrayList<>(Arrays.asList(late)), 1, 1));
+        peak = Math.max(peak, store.getResidentArticles());
+        articles = feed.getArticles();
+        assertEquals(count + 1, articles.size());
+        assertEquals("Late article", articles.get(50_001).getTitle());
+        assertEquals("Article 99999", articles.get(count).getTitle());
+        peak = Math.max(peak, store.getResidentArticles());
+        System.out.printf("%d articles: appended in %d ms, read and merged in %d ms, "
+                + "at most %d of %d allowed in memory, %d chunks spilled, %d read back%n",
+                count, (appended - start) / 1_000_000, (System.nanoTime() - appended) / 1_000_000,
+                peak, maxResident, store.getPageOuts(), store.getPageIns());
+        assertTrue(peak + " articles in memory", peak <= maxResident);
+    }
+
+    @Test
+    public void trimmedArticles_areReadBackAsTheyAreUsed() throws IOException {
+        NewsSpillStore store = new NewsSpillStore(mFolder.newFolder(), 4 * 1024 * 1024);
+        NewsMemoryGovernor governor = new NewsMemoryGovernor(store);
+        List<NewsMemoryGovernor.Level> trimmed = new ArrayList<>();
+        governor.register(trimmed::add);
+        NewsSpillList list = new NewsSpillList(store);
+        list.addAll(page(0, 2000).getNews());
+        assertEquals(2000, store.getResidentArticles());
+
+        governor.trim(NewsMemoryGovernor.Level.UI_HIDDEN);
+        assertEquals(2000, store.getResidentArticles());
+        governor.trim(NewsMemoryGovernor.Level.LOW);
+        assertTrue(store.getResidentArticles() <= store.getMaxResidentArticles() / 2);
+        governor.trim(NewsMemoryGovernor.Level.CRITICAL);
+        assertEquals(0, store.getResidentArticles());
+        assertEquals(Arrays.asList(NewsMemoryGovernor.Level.UI_HIDDEN, NewsMemoryGovernor.Level.LOW,
+                NewsMemoryGovernor.Level.CRITICAL), trimmed);
+
+        long pageIns = store.getPageIns();
+        assertEquals("Article 1234", list.get(1234).getTitle());
+        assertEquals("Article 1235", list.get(1235).getTitle());
+        assertEquals(pageIns + 1, store.getPageIns());
+        assertEquals(Constants.SPILL_CHUNK_ARTICLES, store.getResidentArticles());
+
+        // A smaller budget spills at once
+        governor.setHeapBudget(2 * Constants.SPILL_CHUNK_ARTICLES * Constants.SPILL_ARTICLE_BYTES);
+        list.addAll(page(2000, 500).getNews());
+        assertTrue(store.getResidentArticles() <= 2 * Constants.SPILL_CHUNK_ARTICLES);
+        assertEquals("Article 7", list.get(7).getTitle());
+    }
+
+    @Test
+    public void chunksLeftByAnEarlierProcess_areDeleted() throws IOException {
+        File directory = mFolder.newFolder();
+        NewsSpillList list = new NewsSpillList(new NewsSpillStore(directory, 0));
+        list.addAll(page(0, 1000).getNews());
+        assertTrue(directory.list().length > 0);
+
+        new NewsSpillStore(directory, 0);
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void chunksDeletedFromUnderTheStore_standInForTheirArticles() throws IOException {
+        File directory = mFolder.newFolder();
+        NewsSpillStore store = new NewsSpillStore(directory, 0);
+        NewsSpillList list = new NewsSpillList(store);
+        list.addAll(page(0, 1000).getNews());
+        // As the system may do to a directory it can clear
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+
+        assertEquals(1000, list.size());
+        assertTrue(NewsSpillStore.isLost(list.get(0)));
+        assertTrue(NewsSpillStore.isLost(list.get(500)));
+        assertTrue(store.getLostArticles() > 0);
+        // New articles are kept as before
+        list.add(0, article(-1));
+        assertFalse(NewsSpillStore.isLost(list.get(0)));
+        assertEquals("Article -1", list.get(0).getTitle());
+        assertEquals(1001, list.size());
+    }
+}
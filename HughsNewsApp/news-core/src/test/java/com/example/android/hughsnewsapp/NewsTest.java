@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NewsTest {
+
+    private static final int ARTICLES = 10_000;
+
+    private static final String[] SECTIONS = {"Politics", "World news", "UK news", "Opinion",
+            "Business", "Sport", "Environment", "Society"};
+
+    /** The article model as it was before sections were pooled and dates parsed. */
+    private static final class LegacyNews {
+        private final String mSectionName;
+        private final String mTitle;
+        private final String mAuthor;
+        private final String mPublicationDate;
+        private final String mUrl;
+
+        LegacyNews(String sectionName, String title, String publicationDate, String author, String url) {
+            mSectionName = sectionName;
+            mTitle = title;
+            mPublicationDate = publicationDate;
+            mAuthor = author;
+            mUrl = url;
+        }
+    }
+
+    /**
+     * The fields of article i, each as a new String as they would come out of the parser.
+     * Order: section, title, date, author, url.
+     */
+    private static String[] fields(int i) {
+        return new String[] {
+                new String(SECTIONS[i % SECTIONS.length]),
+                "Brexit: headline number " + i + " about the Northern Ireland protocol",
+                String.format("2021-%02d-%02dT%02d:%02d:00Z", i % 12 + 1, i % 28 + 1, i % 24, i % 60),
+                "Author " + (i % 40),
+                "https://www.theguardian.com/politics/2021/mar/28/article-" + i};
+    }
+
+    @Test
+    public void publicationDate_roundTripsThroughEpochTime() {
+        News news = new News("Politics", "Title", "2021-03-28T10:25:41Z", "", "url");
+
+        assertEquals(1616927141000L, news.getPublicationTime());
+        assertEquals("2021-03-28T10:25:41Z", news.getPublicationDate());
+        assertEquals("2021-03-28", NewsDates.formatDate(news.getPublicationTime()));
+        assertEquals("1969-12-31T23:59:59Z", NewsDates.formatIso(-1000));
+        assertEquals("2000-02-29T00:00:00Z", NewsDates.formatIso(NewsDates.parseIso("2000-02-29T00:00:00Z")));
+    }
+
+    @Test
+    public void malformedDate_isUnknown() {
+        News news = new News("Politics", "Title", "28/03/2021", "", "url");
+
+        assertEquals(NewsDates.UNKNOWN, news.getPublicationTime());
+        assertNull(news.getPublicationDate());
+        assertEquals("", NewsDates.formatDate(news.getPublicationTime()));
+        assertEquals(NewsDates.UNKNOWN, NewsDates.parseIso(null));
+        assertEquals(NewsDates.UNKNOWN, NewsDates.parseIso("2021-13-01T00:00:00Z"));
+    }
+
+    @Test
+    public void datesOfOtherFeeds_areReadWithTheirOffsets() {
+        long utc = NewsDates.parseIso("2021-03-28T10:25:41Z");
+
+        assertEquals(utc, NewsDates.parseIso("2021-03-28T11:25:41+01:00"));
+        assertEquals(utc, NewsDates.parseIso("2021-03-28T05:25:41.250-0500"));
+        assertEquals(utc, NewsDates.parseRfc822("Sun, 28 Mar 2021 10:25:41 GMT"));
+        assertEquals(utc, NewsDates.parseRfc822("28 Mar 2021 11:25:41 +0100"));
+        assertEquals(utc, NewsDates.parseRfc822("Sun, 28 Mar 21 06:25:41 EDT"));
+        assertEquals(utc - 41_000, NewsDates.parseRfc822("Sun, 28 Mar 2021 10:25 Z"));
+        assertEquals(NewsDates.UNKNOWN, NewsDates.parseRfc822("Sun, 28 Mrz 2021 10:25:41 GMT"));
+        assertEquals(NewsDates.UNKNOWN, NewsDates.parseRfc822("not a date"));
+        assertEquals(NewsDates.UNKNOWN, NewsDates.parseRfc822(null));
+    }
+
+    @Test
+    public void repeatedNames_areShared() {
+        News first = new News(new String("Politics"), "a", null, new String("Lisa O'Carroll"), "a");
+        News second = new News(new String("Politics"), "b", null, new String("Lisa O'Carroll"), "b");
+
+        assertSame(first.getSectionName(), second.getSectionName());
+        assertSame(first.getAuthor(), second.getAuthor());
+    }
+
+    /** Prints and compares the heap retained by 10k articles in the old and the new model. */
+    @Test
+    public void tenThousandArticles_retainLessHeapThanTheStringModel() {
+        List<LegacyNews> legacyArticles = new ArrayList<>(ARTICLES);
+        List<News> articles = new ArrayList<>(ARTICLES);
+        for (int i = 0; i < ARTICLES; i++) {
+            String[] f = fields(i);
+            legacyArticles.add(new LegacyNews(f[0], f[1], f[2], f[3], f[4]));
+            f = fields(i);
+            articles.add(new News(f[0], f[1], f[2], f[3], f[4]));
+        }
+
+        long legacy = HeapSize.deepSize(legacyArticles);
+        long compact = HeapSize.deepSize(articles);
+        System.out.printf("%d articles: String model %d B (%d B/article), compact model %d B (%d B/article)%n",
+                ARTICLES, legacy, legacy / ARTICLES, compact, compact / ARTICLES);
+        assertTrue("compact model retained " + compact + " B, String model " + legacy + " B",
+                compact < legacy);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NewsTraceTest {
+
+    @Before
+    public void setUp() {
+        NewsTrace.reset();
+    }
+
+    @After
+    public void tearDown() {
+        NewsTrace.setEnabled(false);
+        NewsTrace.reset();
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        NewsTrace.setEnabled(false);
+        long start = NewsTrace.begin(NewsTrace.Stage.PARSE);
+        NewsTrace.end(NewsTrace.Stage.PARSE, start);
+        NewsTrace.count(NewsTrace.Counter.REQUESTS);
+
+        assertEquals(0, start);
+        assertEquals(0, NewsTrace.getHistogram(NewsTrace.Stage.PARSE).getCount());
+        assertEquals(0, NewsTrace.getCount(NewsTrace.Counter.REQUESTS));
+    }
+
+    @Test
+    public void enabled_recordsSpansAndCounters() throws InterruptedException {
+        NewsTrace.setEnabled(true);
+        long start = NewsTrace.begin(NewsTrace.Stage.NETWORK);
+        Thread.sleep(5);
+        NewsTrace.end(NewsTrace.Stage.NETWORK, start);
+        NewsTrace.count(NewsTrace.Counter.ARTICLES_PARSED, 20);
+
+        LatencyHistogram network = NewsTrace.getHistogram(NewsTrace.Stage.NETWORK);
+        assertEquals(1, network.getCount());
+        assertTrue(network.getMax() >= 5_000_000);
+        assertEquals(20, NewsTrace.getCount(NewsTrace.Counter.ARTICLES_PARSED));
+    }
+
+    @Test
+    public void firstArticle_isRecordedOncePerLaunchEvenWhenDisabled() {
+        NewsTrace.setEnabled(false);
+        assertEquals(-1, NewsTrace.markFirstArticle());
+
+        NewsTrace.markLaunch();
+        assertTrue(NewsTrace.markFirstArticle() >= 0);
+        assertEquals(-1, NewsTrace.markFirstArticle());
+        assertEquals(1, NewsTrace.getHistogram(NewsTrace.Stage.FIRST_ARTICLE).getCount());
+    }
+
+    @Test
+    public void chromeTrace_holdsTheLatestSpansInOrder() throws Exception {
+        NewsTrace.setEnabled(true);
+        int spans = Constants.TRACE_MAX_SPANS + 11;
+        for (int i = 0; i < spans; i++) {
+            NewsTrace.Stage stage = i % 2 == 0 ? NewsTrace.Stage.FETCH : NewsTrace.Stage.BIND;
+            NewsTrace.end(stage, NewsTrace.begin(stage));
+        }
+        StringWriter out = new StringWriter();
+        NewsTrace.writeChromeTrace(out);
+
+        JSONArray events = new JSONObject(out.toString()).getJSONArray("traceEvents");
+        int complete = 0;
+        double lastStart = 0;
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject event = events.getJSONObject(i);
+            if ("M".equals(event.getString("ph"))) {
+                assertEquals(Thread.currentThread().getName(),
+                        event.getJSONObject("args").getString("name"));
+                continue;
+            }
+            assertEquals("X", event.getString("ph"));
+            assertTrue(event.getDouble("ts") >= lastStart);
+            assertTrue(event.getDouble("dur") >= 0);
+            lastStart = event.getDouble("ts");
+            complete++;
+        }
+        assertEquals(Constants.TRACE_MAX_SPANS, complete);
+        // The oldest eleven spans were overwritten, so the first one left is a bind
+        assertEquals("bind", events.getJSONObject(1).getString("name"));
+    }
+
+    @Test
+    public void metrics_areValidJson() throws IOException, JSONException {
+        NewsTrace.setEnabled(true);
+        NewsTrace.getHistogram(NewsTrace.Stage.FIRST_ARTICLE).record(800_000_000);
+        NewsTrace.count(NewsTrace.Counter.NOT_MODIFIED);
+        StringWriter out = new StringWriter();
+        NewsTrace.writeMetrics(out);
+
+        JSONObject metrics = new JSONObject(out.toString());
+        JSONObject firstArticle = metrics.getJSONObject("stages").getJSONObject("first article");
+        assertEquals(1, firstArticle.getInt("count"));
+        assertEquals(800, firstArticle.getDouble("p95"), 0.001);
+        assertEquals(1, metrics.getJSONObject("counters").getInt("not_modified"));
+        assertTrue(NewsTrace.summary().contains("first article"));
+    }
+
+    @Test
+    public void disabledSpans_costAlmostNothing() {
+        NewsTrace.setEnabled(false);
+        Benchmark.Result disabled = Benchmark.measure(5, 20, () -> {
+            long total = 0;
+            for (int i = 0; i < 100_000; i++) {
+                long start = NewsTrace.begin(NewsTrace.Stage.BIND);
+                NewsTrace.end(NewsTrace.Stage.BIND, start);
+                total += start;
+            }
+            return total;
+        });
+        NewsTrace.setEnabled(true);
+        Benchmark.Result enabled = Benchmark.measure(5, 20, () -> {
+            for (int i = 0; i < 100_000; i++) {
+                NewsTrace.end(NewsTrace.Stage.BIND, NewsTrace.begin(NewsTrace.Stage.BIND));
+            }
+            return null;
+        });
+        System.out.printf("span disabled %.2f ns, enabled %.2f ns%n",
+                disabled.micros * 1000 / 100_000, enabled.micros * 1000 / 100_000);
+        assertEquals(0, disabled.bytes / 100_000);
+        assertTrue(disabled.micros < enabled.micros);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NewsWindowTest {
+
+    private static List<News> articles(int count) {
+        List<News> articles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            articles.add(new News("Politics", "Article " + i, "2021-03-28T10:00:00Z", "", "url" + i));
+        }
+        return articles;
+    }
+
+    @Test
+    public void window_movesOnceTheRowsShownNearAnEdge() {
+        List<News> articles = articles(1000);
+        NewsWindow window = new NewsWindow(100, 20);
+        List<News> slice = window.slice(articles);
+        assertEquals(100, slice.size());
+        assertEquals("Article 0", slice.get(0).getTitle());
+
+        assertFalse(window.onShown(60, 70, 1000));
+        assertTrue(window.onShown(75, 85, 1000));
+        assertEquals(30, window.getStart());
+        assertEquals("Article 30", window.slice(articles).get(0).getTitle());
+
+        // Back towards the top
+        assertTrue(window.onShown(35, 45, 1000));
+        assertEquals(0, window.getStart());
+        // Nothing beyond either edge to move to
+        assertFalse(window.onShown(0, 10, 1000));
+        assertFalse(window.onShown(85, 95, 100));
+    }
+
+    @Test
+    public void window_movesBackWhenTheListGetsShorter() {
+        NewsWindow window = new NewsWindow(100, 20);
+        assertTrue(window.onShown(880, 890, 1000));
+        assertEquals(835, window.getStart());
+
+        List<News> slice = window.slice(articles(500));
+        assertEquals(400, window.getStart());
+        assertEquals(100, slice.size());
+        assertEquals("Article 499", slice.get(99).getTitle());
+        assertEquals(10, window.slice(articles(10)).size());
+        assertEquals(0, window.getStart());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/** Checks the conditional GET handling of {@link QueryUtils} against a local server. */
+public class QueryUtilsCacheTest {
+
+    private static final String ETAG = "\"brexit-v1\"";
+    private static final String LAST_MODIFIED = "Sun, 28 Mar 2021 10:25:41 GMT";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+    private NewsDiskCache mCache;
+    private byte[] mPage;
+
+    @Before
+    public void setUp() throws IOException {
+        mPage = GuardianFixtures.load(GuardianFixtures.BREXIT_PAGE);
+        mCache = new NewsDiskCache(mFolder.newFolder(), 1024 * 1024, 60_000);
+        mServer = new StubServer().handle("/search", exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ETAG.equals(ifNoneMatch)) {
+                StubServer.respond(exchange, 304, null);
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            StubServer.respond(exchange, 200, mPage);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void firstFetch_storesResponseWithValidators() {
+        String url = mServer.url("/search?q=brexit");
+
+        NewsPage page = QueryUtils.fetchNewsPage(url, mCache);
+
+        assertEquals(20, page.getNews().size());
+        assertEquals(1, page.getCurrentPage());
+        assertEquals(729, page.getPageCount());
+        NewsDiskCache.Entry entry = mCache.get(url);
+        assertNotNull(entry);
+        assertEquals(ETAG, entry.getETag());
+        assertEquals(LAST_MODIFIED, entry.getLastModified());
+        assertEquals(20, QueryUtils.readCachedPage(mCache, url).getNews().size());
+    }
+
+    @Test
+    public void repeatFetch_sendsValidatorsAndSkipsParseOn304() {
+        String url = mServer.url("/search?q=brexit");
+        QueryUtils.fetchNewsPage(url, mCache);
+
+        NewsPage page = QueryUtils.fetchNewsPage(url, mCache);
+
+        assertNull(page);
+        assertEquals(2, mServer.requests().size());
+        assertEquals(ETAG, mServer.requests().get(1).getRequestHeaders().getFirst("If-None-Match"));
+        assertEquals(LAST_MODIFIED,
+                mServer.requests().get(1).getRequestHeaders().getFirst("If-Modified-Since"));
+        // The cached copy is still there to be shown
+        assertEquals(20, QueryUtils.readCachedPage(mCache, url).getNews().size());
+    }
+
+    @Test
+    public void serverError_returnsNothingAndCachesNothing() {
+        String url = mServer.url("/broken?q=brexit");
+        mServer.handle("/broken", exchange -> StubServer.respond(exchange, 500, null));
+
+        assertNull(QueryUtils.fetchNewsPage(url, mCache));
+        assertNull(QueryUtils.readCachedPage(mCache, url));
+    }
+}
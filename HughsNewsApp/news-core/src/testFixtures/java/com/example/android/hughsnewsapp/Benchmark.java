@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/** Minimal timing and allocation harness for the benchmarks run as local unit tests. */
+final class Benchmark {
+
+    /** Default number of untimed runs before measuring. */
+    static final int WARMUP = 50;
+
+    /** Default number of timed runs. */
+    static final int ITERATIONS = 100;
+
+    /** Work to be measured. The result is kept so the JIT can't drop the work. */
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    /** Average cost of one run of an {@link Operation}. */
+    static final class Result {
+        final double micros;
+        final long bytes;
+
+        Result(double micros, long bytes) {
+            this.micros = micros;
+            this.bytes = bytes;
+        }
+
+        /** Runs per second. */
+        double throughput() {
+            return micros == 0 ? 0 : 1_000_000 / micros;
+        }
+
+        /** Megabytes allocated per second of running. */
+        double allocationRate() {
+            return micros == 0 ? 0 : bytes / micros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%9.1f us/op %10d B/op", micros, bytes);
+        }
+    }
+
+    /** Sink for operation results. */
+    private static volatile Object sSink;
+
+    private Benchmark() {
+    }
+
+    static Result measure(Operation operation) {
+        return measure(WARMUP, ITERATIONS, operation);
+    }
+
+    static Result measure(int warmup, int iterations, Operation operation) {
+        try {
+            for (int i = 0; i < warmup; i++) {
+                sSink = operation.run();
+            }
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sSink = operation.run();
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - startBytes;
+            return new Result(elapsed / 1000.0 / iterations, allocated / iterations);
+        } catch (Exception e) {
+            throw new AssertionError("Benchmark operation failed", e);
+        }
+    }
+
+    /** Bytes allocated by this thread so far, or 0 when the JVM can't tell us. */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Recorded Guardian search responses, and feeds of other sources, used by the unit tests and benchmarks. */
+final class GuardianFixtures {
+
+    /** A recorded page of 20 results for q=brexit with show-fields and show-tags=contributor. */
+    static final String BREXIT_PAGE = "guardian_search_brexit.json";
+
+    /** An RSS 2.0 feed in the Guardian's layout, with an item lacking a link and one with a bad date. */
+    static final String RSS_FEED = "feed_rss.xml";
+
+    /** An Atom feed with an HTML title and an entry that was only ever updated. */
+    static final String ATOM_FEED = "feed_atom.xml";
+
+    /** A News API top-headlines response, with an entry lacking a URL and one that is not an object. */
+    static final String NEWS_API_PAGE = "newsapi_top_headlines.json";
+
+    private GuardianFixtures() {
+    }
+
+    /** Return the raw bytes of the named fixture from the test resources. */
+    static byte[] load(String name) throws IOException {
+        try (InputStream in = GuardianFixtures.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Return the recorded page with its results repeated until it holds the given number of
+     * results. Each copy gets a distinct id and webUrl so the articles stay unique.
+     */
+    static byte[] scaled(int resultCount) throws IOException {
+        return scaled(resultCount, "");
+    }
+
+    /**
+     * As {@link #scaled(int)}, with the tag added to every id and webUrl so that pages built
+     * with different tags share no articles.
+     */
+    static byte[] scaled(int resultCount, String tag) throws IOException {
+        try {
+            JSONObject page = new JSONObject(new String(load(BREXIT_PAGE), StandardCharsets.UTF_8));
+            JSONObject response = page.getJSONObject("response");
+            JSONArray recorded = response.getJSONArray("results");
+            JSONArray results = new JSONArray();
+            for (int i = 0; i < resultCount; i++) {
+                JSONObject result = new JSONObject(recorded.getJSONObject(i % recorded.length()).toString());
+                String copy = tag + "-" + (i / recorded.length());
+                result.put("id", result.getString("id") + copy);
+                result.put("webUrl", result.getString("webUrl") + copy);
+                results.put(result);
+            }
+            response.put("results", results);
+            response.put("pageSize", resultCount);
+            return page.toString().getBytes(StandardCharsets.UTF_8);
+        } catch (JSONException e) {
+            throw new IOException("Invalid fixture " + BREXIT_PAGE, e);
+        }
+    }
+}
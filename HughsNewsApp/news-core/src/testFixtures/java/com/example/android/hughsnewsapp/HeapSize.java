@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Estimates the heap retained by an object graph as laid out by a 64-bit JVM with compressed
+ * references, counting every object reachable from the root once. Sizes are computed rather
+ * than read from the garbage collector, whose figures are only accurate to a whole heap region.
+ * Only Strings, arrays, Lists and the app's own classes can be measured.
+ */
+final class HeapSize {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+
+    /** Header, value reference, hash and coder fields of a String */
+    private static final int STRING_SHALLOW = 24;
+
+    /** Header, size, modCount and elementData fields of an ArrayList */
+    private static final int LIST_SHALLOW = 24;
+
+    private HeapSize() {
+    }
+
+    /** Return the estimated number of bytes retained by the root and everything it references. */
+    static long deepSize(Object root) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            if (!seen.add(object)) {
+                continue;
+            }
+            size += shallowSize(object, pending);
+        }
+        return size;
+    }
+
+    /** Return the size of the object itself, pushing what it references. */
+    private static long shallowSize(Object object, ArrayDeque<Object> pending) {
+        Class<?> type = object.getClass();
+        if (object instanceof String) {
+            // Each String is counted with its own array of Latin-1 or UTF-16 characters
+            String string = (String) object;
+            boolean latin1 = true;
+            for (int i = 0; i < string.length() && latin1; i++) {
+                latin1 = string.charAt(i) < 256;
+            }
+            return STRING_SHALLOW + align(ARRAY_HEADER + string.length() * (latin1 ? 1 : 2));
+        }
+        if (type.isArray()) {
+            int length = Array.getLength(object);
+            Class<?> component = type.getComponentType();
+            if (!component.isPrimitive()) {
+                for (int i = 0; i < length; i++) {
+                    push(pending, Array.get(object, i));
+                }
+            }
+            return align(ARRAY_HEADER + (long) length * fieldSize(component));
+        }
+        if (object instanceof List) {
+            // java.util can't be reflected into; count an exactly sized backing array
+            List<?> list = (List<?>) object;
+            for (Object element : list) {
+                push(pending, element);
+            }
+            return LIST_SHALLOW + align(ARRAY_HEADER + (long) list.size() * REFERENCE);
+        }
+        if (type.getName().startsWith("java.")) {
+            throw new IllegalArgumentException("Can't measure " + type.getName());
+        }
+        long size = OBJECT_HEADER;
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                size += fieldSize(field.getType());
+                if (!field.getType().isPrimitive()) {
+                    field.setAccessible(true);
+                    try {
+                        push(pending, field.get(object));
+                    } catch (IllegalAccessException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static void push(ArrayDeque<Object> pending, Object object) {
+        if (object != null) {
+            pending.push(object);
+        }
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
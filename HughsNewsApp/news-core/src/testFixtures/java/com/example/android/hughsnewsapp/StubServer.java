@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 Hugh Davidson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.hughsnewsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/** A local HTTP server the tests point the fetch code at instead of the Guardian API. */
+final class StubServer implements AutoCloseable {
+
+    /** Answers one request. */
+    interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer mServer;
+
+    /** Every request received so far, in arrival order */
+    private final List<HttpExchange> mRequests = new CopyOnWriteArrayList<>();
+
+    StubServer() throws IOException {
+        // Otherwise Nagle's algorithm and delayed ACKs hold every response back for ~40 ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+    }
+
+    /** Answer requests for the given path, and any path below it, with the handler. */
+    StubServer handle(String path, Handler handler) {
+        mServer.createContext(path, exchange -> {
+            mRequests.add(exchange);
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        return this;
+    }
+
+    /** Return the absolute URL of the given path and query on this server. */
+    String url(String pathAndQuery) {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + pathAndQuery;
+    }
+
+    List<HttpExchange> requests() {
+        return mRequests;
+    }
+
+    /** Send a complete response with the given status and body. */
+    static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null || body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        mServer.stop(0);
+        ((java.util.concurrent.ExecutorService) mServer.getExecutor()).shutdownNow();
+    }
+}